@@ -20,10 +20,17 @@ package org.apache.metamodel;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.query.CompiledQuery;
@@ -32,9 +39,12 @@ import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.builder.InitFromBuilder;
 import org.apache.metamodel.query.builder.InitFromBuilderImpl;
 import org.apache.metamodel.query.parser.QueryParser;
+import org.apache.metamodel.query.parser.QueryParserCache;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Schema;
+import org.apache.metamodel.schema.SchemaSnapshotStore;
 import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.SharedExecutorService;
 
 /**
  * Abstract implementation of the DataContext interface. Provides convenient
@@ -43,21 +53,149 @@ import org.apache.metamodel.schema.Table;
 public abstract class AbstractDataContext implements DataContext {
 
     private static final String NULL_SCHEMA_NAME_TOKEN = "<metamodel.schema.name.null>";
+    private static final int SCHEMA_LOAD_LOCK_STRIPES = 16;
     private final ConcurrentMap<String, Schema> _schemaCache = new ConcurrentHashMap<String, Schema>();
     private final Comparator<? super String> _schemaNameComparator = SchemaNameComparator.getInstance();
-    private String[] _schemaNameCache;
+    private final Object[] _schemaLoadLocks = createSchemaLoadLocks();
+    private final Set<String> _staleSchemaSnapshotKeys = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Object _schemaNameLock = new Object();
+    private volatile String[] _schemaNameCache;
+    private volatile QueryParserCache _queryParserCache;
+    private volatile SchemaSnapshotStore _schemaSnapshotStore;
 
     /**
      * {@inheritDoc}
      */
     @Override
     public final DataContext refreshSchemas() {
+        for (String key : _schemaCache.keySet()) {
+            invalidateSchemaSnapshot(getSchemaName(key));
+        }
         _schemaCache.clear();
         _schemaNameCache = null;
+        clearQueryParserCache();
         onSchemaCacheRefreshed();
         return this;
     }
 
+    /**
+     * Refreshes a single schema. Other cached schemas and the list of schema
+     * names are kept, so this is a cheaper alternative to
+     * {@link #refreshSchemas()} when only a single schema is known to have
+     * changed. The schema will be reloaded the next time it is requested.
+     * 
+     * @param schemaName
+     *            the name of the schema to refresh
+     * @return this {@link DataContext}
+     */
+    public final DataContext refreshSchema(final String schemaName) {
+        for (String key : _schemaCache.keySet()) {
+            final String name = getSchemaName(key);
+            if (name == null ? schemaName == null : name.equalsIgnoreCase(schemaName)) {
+                _schemaCache.remove(key);
+                invalidateSchemaSnapshot(name);
+            }
+        }
+        invalidateSchemaSnapshot(schemaName);
+        clearQueryParserCache();
+        return this;
+    }
+
+    /**
+     * Refreshes the metadata of a single table. Subclasses can support this
+     * by overriding {@link #refreshTableInternal(Table)} - otherwise the
+     * schema of the table is refreshed using {@link #refreshSchema(String)}.
+     * 
+     * @param table
+     *            the table to refresh
+     * @return this {@link DataContext}
+     */
+    public final DataContext refreshTable(final Table table) {
+        if (table == null) {
+            throw new IllegalArgumentException("Table cannot be null");
+        }
+        final Schema schema = table.getSchema();
+        final String schemaName = (schema == null ? null : schema.getName());
+        if (schema != null && refreshTableInternal(table)) {
+            invalidateSchemaSnapshot(schemaName);
+            clearQueryParserCache();
+        } else {
+            refreshSchema(schemaName);
+        }
+        return this;
+    }
+
+    /**
+     * Refreshes the metadata of a table in place. The default implementation
+     * returns false, which means that the table's entire schema will be
+     * refreshed instead.
+     * 
+     * @param table
+     *            the table to refresh
+     * @return true if the table was refreshed, or false if not supported
+     */
+    protected boolean refreshTableInternal(final Table table) {
+        return false;
+    }
+
+    /**
+     * Refreshes the schemas in the background. Unlike {@link #refreshSchemas()}
+     * the currently cached schemas remain available while the refresh is
+     * ongoing. All cached schemas are reloaded and then swapped in together
+     * once loading has succeeded, so queries never have to wait for the
+     * reload. If loading fails the current schemas are kept and the failure
+     * is reported through the returned {@link Future}.
+     * 
+     * @return a {@link Future} which completes when the new schemas have been
+     *         swapped in
+     */
+    public final Future<DataContext> refreshSchemasInBackground() {
+        return SharedExecutorService.get().submit(new Callable<DataContext>() {
+            @Override
+            public DataContext call() throws Exception {
+                final String[] schemaNames = getSchemaNamesInternal();
+
+                final Map<String, Schema> schemas = new LinkedHashMap<String, Schema>();
+                for (String key : _schemaCache.keySet()) {
+                    final String name = getSchemaName(key);
+                    if (name == null || containsIgnoreCase(schemaNames, name)) {
+                        schemas.put(key, loadSchema(name, false));
+                    } else {
+                        schemas.put(key, null);
+                    }
+                }
+
+                _schemaNameCache = schemaNames;
+                for (Entry<String, Schema> entry : schemas.entrySet()) {
+                    if (entry.getValue() == null) {
+                        _schemaCache.remove(entry.getKey());
+                    } else {
+                        _schemaCache.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                clearQueryParserCache();
+                return AbstractDataContext.this;
+            }
+        });
+    }
+
+    private static boolean containsIgnoreCase(final String[] names, final String name) {
+        for (String candidate : names) {
+            if (name.equalsIgnoreCase(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void clearQueryParserCache() {
+        final QueryParserCache queryParserCache = _queryParserCache;
+        if (queryParserCache != null) {
+            queryParserCache.clear();
+        }
+    }
+
     /**
      * Method invoked when schemas have been refreshed using
      * {@link #refreshSchemas()}. Can be overridden to add callback
@@ -101,15 +239,51 @@ public abstract class AbstractDataContext implements DataContext {
         return name;
     }
 
+    private String getSchemaName(String schemaCacheKey) {
+        if (NULL_SCHEMA_NAME_TOKEN.equals(schemaCacheKey)) {
+            return null;
+        }
+        return schemaCacheKey;
+    }
+
+    private static Object[] createSchemaLoadLocks() {
+        final Object[] locks = new Object[SCHEMA_LOAD_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * Gets the lock object used to make sure that only a single thread loads
+     * a particular schema, while other threads wait for the result. Locks are
+     * striped by the hash of the key, so the number of lock objects is fixed
+     * no matter how many schemas are loaded.
+     * 
+     * @param schemaCacheKey
+     * @return
+     */
+    private Object getSchemaLoadLock(String schemaCacheKey) {
+        final int hash = (schemaCacheKey == null ? 0 : schemaCacheKey.hashCode());
+        return _schemaLoadLocks[(hash & 0x7fffffff) % _schemaLoadLocks.length];
+    }
+
     /**
      * m {@inheritDoc}
      */
     @Override
     public final String[] getSchemaNames() throws MetaModelException {
-        if (_schemaNameCache == null) {
-            _schemaNameCache = getSchemaNamesInternal();
+        String[] schemaNameCache = _schemaNameCache;
+        if (schemaNameCache == null) {
+            synchronized (_schemaNameLock) {
+                schemaNameCache = _schemaNameCache;
+                if (schemaNameCache == null) {
+                    schemaNameCache = getSchemaNamesInternal();
+                    _schemaNameCache = schemaNameCache;
+                }
+            }
         }
-        String[] schemaNames = Arrays.copyOf(_schemaNameCache, _schemaNameCache.length);
+        String[] schemaNames = Arrays.copyOf(schemaNameCache, schemaNameCache.length);
         Arrays.sort(schemaNames, _schemaNameComparator);
         return schemaNames;
     }
@@ -160,11 +334,48 @@ public abstract class AbstractDataContext implements DataContext {
      */
     @Override
     public Query parseQuery(final String queryString) throws MetaModelException {
+        final QueryParserCache queryParserCache = _queryParserCache;
+        if (queryParserCache != null) {
+            return queryParserCache.parse(queryString);
+        }
         final QueryParser parser = new QueryParser(this, queryString);
         final Query query = parser.parse();
         return query;
     }
 
+    /**
+     * Enables or disables caching of parsed query strings. When enabled, query
+     * strings that differ only in their WHERE clause will share a single
+     * parsed template, and only the WHERE clause is parsed for each query
+     * string. The cache is cleared whenever {@link #refreshSchemas()} is
+     * invoked.
+     * 
+     * @param maxSize
+     *            the maximum number of query templates to cache, or 0 to
+     *            disable the cache.
+     */
+    public void setQueryParserCacheSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Query parser cache size cannot be negative");
+        }
+        if (maxSize == 0) {
+            _queryParserCache = null;
+        } else {
+            _queryParserCache = new QueryParserCache(this, maxSize);
+        }
+    }
+
+    /**
+     * Gets the cache of parsed query strings, if enabled.
+     * 
+     * @return the query parser cache, or null if not enabled.
+     * 
+     * @see #setQueryParserCacheSize(int)
+     */
+    public QueryParserCache getQueryParserCache() {
+        return _queryParserCache;
+    }
+
     @Override
     public CompiledQuery compileQuery(final Query query) throws MetaModelException {
         return new DefaultCompiledQuery(query);
@@ -195,15 +406,26 @@ public abstract class AbstractDataContext implements DataContext {
      */
     @Override
     public final Schema getSchemaByName(String name) throws MetaModelException {
-        Schema schema = _schemaCache.get(getSchemaCacheKey(name));
-        if (schema == null) {
+        final String schemaCacheKey = getSchemaCacheKey(name);
+        Schema schema = _schemaCache.get(schemaCacheKey);
+        if (schema != null) {
+            return schema;
+        }
+
+        // only let one thread load the schema, concurrent requests wait for it
+        synchronized (getSchemaLoadLock(schemaCacheKey)) {
+            schema = _schemaCache.get(schemaCacheKey);
+            if (schema != null) {
+                return schema;
+            }
+
             if (name == null) {
-                schema = getSchemaByNameInternal(null);
+                schema = loadSchema(null, true);
             } else {
                 String[] schemaNames = getSchemaNames();
                 for (String schemaName : schemaNames) {
                     if (name.equalsIgnoreCase(schemaName)) {
-                        schema = getSchemaByNameInternal(name);
+                        schema = loadSchema(name, true);
                         break;
                     }
                 }
@@ -212,7 +434,7 @@ public abstract class AbstractDataContext implements DataContext {
                         if (name.equalsIgnoreCase(schemaName)) {
                             // try again with "schemaName" as param instead of
                             // "name".
-                            schema = getSchemaByNameInternal(schemaName);
+                            schema = loadSchema(schemaName, true);
                             break;
                         }
                     }
@@ -231,6 +453,128 @@ public abstract class AbstractDataContext implements DataContext {
         return schema;
     }
 
+    /**
+     * Loads a schema, either from a snapshot in the {@link SchemaSnapshotStore}
+     * (if configured and supported) or using
+     * {@link #getSchemaByNameInternal(String)}.
+     * 
+     * @param name
+     * @param useSnapshot
+     *            whether or not an existing snapshot may be used. If false, or
+     *            if the snapshot has been invalidated by a refresh, the schema
+     *            is loaded from the source and the snapshot is overwritten.
+     * @return
+     */
+    private Schema loadSchema(final String name, final boolean useSnapshot) {
+        final SchemaSnapshotStore snapshotStore = _schemaSnapshotStore;
+        if (snapshotStore == null) {
+            return getSchemaByNameInternal(name);
+        }
+
+        final String key = getSchemaSnapshotKey(name);
+        final String version = (key == null ? null : getSchemaSnapshotVersion(name));
+        if (key == null || version == null) {
+            return getSchemaByNameInternal(name);
+        }
+
+        final boolean stale = _staleSchemaSnapshotKeys.contains(key);
+        final Schema snapshot = (useSnapshot && !stale ? snapshotStore.read(key, version) : null);
+        if (snapshot != null) {
+            final Schema schema = restoreSchemaSnapshot(snapshot);
+            if (schema != null) {
+                return schema;
+            }
+        }
+
+        final Schema schema = getSchemaByNameInternal(name);
+        if (schema != null) {
+            snapshotStore.write(key, version, schema);
+            _staleSchemaSnapshotKeys.remove(key);
+        }
+        return schema;
+    }
+
+    /**
+     * Marks the snapshot of a schema as stale, so that the schema is loaded
+     * from the source the next time it is requested. The snapshot itself is
+     * kept in the {@link SchemaSnapshotStore} until it is overwritten by that
+     * load.
+     * 
+     * @param name
+     */
+    private void invalidateSchemaSnapshot(final String name) {
+        if (_schemaSnapshotStore != null) {
+            final String key = getSchemaSnapshotKey(name);
+            if (key != null) {
+                _staleSchemaSnapshotKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Sets a {@link SchemaSnapshotStore} to use for persisting schemas across
+     * instances of this {@link DataContext}. Only subclasses which support
+     * snapshots (see {@link #getSchemaSnapshotKey(String)}) will use the
+     * store.
+     * 
+     * @param schemaSnapshotStore
+     *            the store to use, or null to disable schema snapshots
+     */
+    public void setSchemaSnapshotStore(final SchemaSnapshotStore schemaSnapshotStore) {
+        _schemaSnapshotStore = schemaSnapshotStore;
+    }
+
+    /**
+     * Gets the {@link SchemaSnapshotStore} of this {@link DataContext}, if
+     * any.
+     * 
+     * @return
+     */
+    public SchemaSnapshotStore getSchemaSnapshotStore() {
+        return _schemaSnapshotStore;
+    }
+
+    /**
+     * Gets the key of a schema, for storing it in a {@link SchemaSnapshotStore}
+     * . The key should identify the datastore as well as the schema. Subclasses
+     * that support schema snapshots should override this method - the default
+     * implementation returns null, which means that snapshots are not used.
+     * 
+     * @param schemaName
+     *            the name of the schema
+     * @return a key for the schema, or null if snapshots are not supported
+     */
+    protected String getSchemaSnapshotKey(final String schemaName) {
+        return null;
+    }
+
+    /**
+     * Gets the current version token of a schema, used to validate snapshots
+     * of it. Determining the version should be cheap compared to loading the
+     * schema, e.g. based on the last modified timestamp of a resource or the
+     * version of a database.
+     * 
+     * @param schemaName
+     *            the name of the schema
+     * @return a version token, or null if it cannot be determined (in which
+     *         case snapshots are not used)
+     */
+    protected String getSchemaSnapshotVersion(final String schemaName) {
+        return null;
+    }
+
+    /**
+     * Prepares a schema read from a {@link SchemaSnapshotStore} for use in
+     * this {@link DataContext}, e.g. by re-attaching any transient state.
+     * 
+     * @param snapshot
+     *            the deserialized schema
+     * @return the schema to use, or null if the snapshot could not be used
+     */
+    protected Schema restoreSchemaSnapshot(final Schema snapshot) {
+        return snapshot;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -51,6 +51,7 @@ import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.ScalarFunction;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.query.parser.QueryParser;
+import org.apache.metamodel.query.parser.QueryParserCache;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.Schema;
@@ -805,6 +806,12 @@ public final class MetaModelHelper {
     }
 
     public static Query parseQuery(DataContext dc, String queryString) {
+        if (dc instanceof AbstractDataContext) {
+            final QueryParserCache queryParserCache = ((AbstractDataContext) dc).getQueryParserCache();
+            if (queryParserCache != null) {
+                return queryParserCache.parse(queryString);
+            }
+        }
         final QueryParser parser = new QueryParser(dc, queryString);
         return parser.parse();
     }
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.metamodel.query.DefaultCompiledQuery;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.QueryParameter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Table;
+
+/**
+ * {@link DefaultCompiledQuery} subclass used by
+ * {@link QueryPostprocessDataContext} to hold a reusable execution plan for
+ * single-table queries. The plan is resolved once, when the query is compiled,
+ * and the WHERE items containing query parameters are registered as
+ * "parameter slots". Executing the compiled query then only requires binding
+ * the parameter values to these slots - the query itself is not cloned and
+ * does not need to be analyzed again.
+ */
+final class QueryPostprocessCompiledQuery extends DefaultCompiledQuery {
+
+    private final Table _table;
+    private final List<SelectItem> _selectItems;
+    private final FilterItem[] _whereItems;
+    private final boolean[] _parameterSlots;
+    private final boolean _simpleSelect;
+    private final boolean _noOrderBy;
+    private final int _firstRow;
+    private final int _maxRows;
+
+    /**
+     * Creates a compiled query with an execution plan, if the query is
+     * eligible for it. Use {@link #isPlanned()} to determine if a plan was
+     * created.
+     *
+     * @param query
+     * @param simpleSelect
+     */
+    public QueryPostprocessCompiledQuery(Query query, boolean simpleSelect) {
+        super(query);
+
+        final List<FromItem> fromItems = query.getFromClause().getItems();
+        final boolean noGrouping = query.getGroupByClause().getItems().isEmpty()
+                && query.getHavingClause().getItems().isEmpty();
+        if (fromItems.size() == 1 && noGrouping && fromItems.get(0).getTable() != null) {
+            _table = fromItems.get(0).getTable();
+        } else {
+            _table = null;
+        }
+
+        _selectItems = Collections.unmodifiableList(new ArrayList<SelectItem>(query.getSelectClause().getItems()));
+
+        final List<FilterItem> whereItems = query.getWhereClause().getItems();
+        _whereItems = whereItems.toArray(new FilterItem[whereItems.size()]);
+        _parameterSlots = new boolean[_whereItems.length];
+        for (int i = 0; i < _whereItems.length; i++) {
+            _parameterSlots[i] = containsParameter(_whereItems[i]);
+        }
+
+        _simpleSelect = simpleSelect;
+        _noOrderBy = query.getOrderByClause().getItems().isEmpty();
+        _firstRow = (query.getFirstRow() == null ? 1 : query.getFirstRow());
+        _maxRows = (query.getMaxRows() == null ? -1 : query.getMaxRows());
+    }
+
+    private static boolean containsParameter(FilterItem item) {
+        if (item.isCompoundFilter()) {
+            for (FilterItem childItem : item.getChildItems()) {
+                if (containsParameter(childItem)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return item.getOperand() instanceof QueryParameter;
+    }
+
+    /**
+     * Determines if an execution plan was created for this query, or if it
+     * should be executed through the regular query post-processing.
+     *
+     * @return
+     */
+    public boolean isPlanned() {
+        return _table != null;
+    }
+
+    /**
+     * Binds parameter values to the parameter slots of the WHERE clause.
+     * Filter items without parameters are reused as-is.
+     *
+     * @param values
+     * @return the list of WHERE items to apply for this execution
+     */
+    public List<FilterItem> bindWhereItems(Object[] values) {
+        final List<FilterItem> result = new ArrayList<FilterItem>(_whereItems.length);
+        final AtomicInteger parameterIndex = new AtomicInteger(0);
+        for (int i = 0; i < _whereItems.length; i++) {
+            if (_parameterSlots[i]) {
+                result.add(copyFilterItem(_whereItems[i], values, parameterIndex));
+            } else {
+                result.add(_whereItems[i]);
+            }
+        }
+        return result;
+    }
+
+    public Table getTable() {
+        return _table;
+    }
+
+    public List<SelectItem> getSelectItems() {
+        return _selectItems;
+    }
+
+    public boolean isSimpleSelect() {
+        return _simpleSelect;
+    }
+
+    public boolean isNoOrderBy() {
+        return _noOrderBy;
+    }
+
+    public int getFirstRow() {
+        return _firstRow;
+    }
+
+    public int getMaxRows() {
+        return _maxRows;
+    }
+}
@@ -37,6 +37,7 @@ import org.apache.metamodel.data.FirstRowDataSet;
 import org.apache.metamodel.data.InMemoryDataSet;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.query.CompiledQuery;
 import org.apache.metamodel.query.FilterItem;
 import org.apache.metamodel.query.FromItem;
 import org.apache.metamodel.query.GroupByItem;
@@ -84,6 +85,10 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
 
     @Override
     public DataSet executeQuery(final Query query) {
+        return executeQuery(query, true);
+    }
+
+    private DataSet executeQuery(final Query query, final boolean trySingleTableQuery) {
         final List<SelectItem> selectItems = query.getSelectClause().getItems();
         final List<FromItem> fromItems = query.getFromClause().getItems();
         final List<FilterItem> whereItems = query.getWhereClause().getItems();
@@ -108,74 +113,16 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
         // subclasses
         final boolean singleFromItem = fromItems.size() == 1;
         final boolean noGrouping = groupByItems.isEmpty() && havingItems.isEmpty();
-        if (singleFromItem && noGrouping) {
+        if (trySingleTableQuery && singleFromItem && noGrouping) {
 
             final FromItem fromItem = query.getFromClause().getItem(0);
             final Table table = fromItem.getTable();
             if (table != null) {
-
-                // check for SELECT COUNT(*) queries
-                if (selectItems.size() == 1) {
-                    final SelectItem selectItem = query.getSelectClause().getItem(0);
-                    if (SelectItem.isCountAllItem(selectItem)) {
-                        final boolean functionApproximationAllowed = selectItem.isFunctionApproximationAllowed();
-                        if (isMainSchemaTable(table)) {
-                            logger.debug("Query is a COUNT query with {} where items. Trying executeCountQuery(...)",
-                                    whereItems.size());
-                            final Number count = executeCountQuery(table, whereItems, functionApproximationAllowed);
-                            if (count == null) {
-                                logger.debug(
-                                        "DataContext did not return any count query results. Proceeding with manual counting.");
-                            } else {
-                                List<Row> data = new ArrayList<Row>(1);
-                                final DataSetHeader header = new SimpleDataSetHeader(new SelectItem[] { selectItem });
-                                data.add(new DefaultRow(header, new Object[] { count }));
-                                return new InMemoryDataSet(header, data);
-                            }
-                        }
-                    }
-                }
-
                 final boolean isSimpleSelect = isSimpleSelect(query.getSelectClause());
-                if (isSimpleSelect) {
-                    // check for lookup query by primary key
-                    if (whereItems.size() == 1) {
-                        final FilterItem whereItem = whereItems.get(0);
-                        final SelectItem selectItem = whereItem.getSelectItem();
-                        if (!whereItem.isCompoundFilter() && selectItem != null && selectItem.getColumn() != null) {
-                            final Column column = selectItem.getColumn();
-                            if (column.isPrimaryKey() && OperatorType.EQUALS_TO.equals(whereItem.getOperator())) {
-                                logger.debug(
-                                        "Query is a primary key lookup query. Trying executePrimaryKeyLookupQuery(...)");
-                                if (table != null) {
-                                    if (isMainSchemaTable(table)) {
-                                        final Object operand = whereItem.getOperand();
-                                        final Row row = executePrimaryKeyLookupQuery(table, selectItems, column,
-                                                operand);
-                                        if (row == null) {
-                                            logger.debug(
-                                                    "DataContext did not return any GET query results. Proceeding with manual lookup.");
-                                        } else {
-                                            final DataSetHeader header = new SimpleDataSetHeader(selectItems);
-                                            return new InMemoryDataSet(header, row);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-
-                    // check for simple queries with or without simple criteria
-                    if (orderByItems.isEmpty()) {
-                        // no WHERE criteria set
-                        if (whereItems.isEmpty()) {
-                            final DataSet dataSet = materializeTable(table, selectItems, firstRow, maxRows);
-                            return dataSet;
-                        }
-
-                        final DataSet dataSet = materializeTable(table, selectItems, whereItems, firstRow, maxRows);
-                        return dataSet;
-                    }
+                final DataSet dataSet = executeSingleTableQuery(table, selectItems, whereItems, isSimpleSelect,
+                        orderByItems.isEmpty(), firstRow, maxRows);
+                if (dataSet != null) {
+                    return dataSet;
                 }
             }
         }
@@ -220,6 +167,134 @@ public abstract class QueryPostprocessDataContext extends AbstractDataContext im
         return dataSet;
     }
 
+    @Override
+    public CompiledQuery compileQuery(final Query query) throws MetaModelException {
+        return new QueryPostprocessCompiledQuery(query, isSimpleSelect(query.getSelectClause()));
+    }
+
+    @Override
+    public DataSet executeQuery(final CompiledQuery compiledQuery, final Object... values) {
+        if (compiledQuery instanceof QueryPostprocessCompiledQuery) {
+            final QueryPostprocessCompiledQuery plan = (QueryPostprocessCompiledQuery) compiledQuery;
+            if (plan.isPlanned() && isCompiledQueryPlanSupported()) {
+                if (plan.getMaxRows() == 0) {
+                    return new EmptyDataSet(plan.getSelectItems());
+                }
+
+                // only bind the parameter values, the query has already been
+                // analyzed when it was compiled
+                final List<SelectItem> selectItems = new ArrayList<SelectItem>(plan.getSelectItems());
+                final List<FilterItem> whereItems = plan.bindWhereItems(values);
+                final DataSet dataSet = executeSingleTableQuery(plan.getTable(), selectItems, whereItems,
+                        plan.isSimpleSelect(), plan.isNoOrderBy(), plan.getFirstRow(), plan.getMaxRows());
+                if (dataSet != null) {
+                    return dataSet;
+                }
+
+                // the single table query types have already been tried, go
+                // straight to post-processing
+                return executeQuery(plan.cloneWithParameterValues(values), false);
+            }
+            return executeQuery(plan.cloneWithParameterValues(values));
+        }
+        return super.executeQuery(compiledQuery, values);
+    }
+
+    /**
+     * Determines if compiled queries may be executed using their execution
+     * plan, which goes directly to
+     * {@link #executeSingleTableQuery(Table, List, List, boolean, boolean, int, int)}
+     * . Since that bypasses {@link #executeQuery(Query)}, subclasses that
+     * override {@link #executeQuery(Query)} to change how queries are executed
+     * (eg. to push queries down to an underlying system) should override this
+     * method and return false.
+     * 
+     * @return
+     */
+    protected boolean isCompiledQueryPlanSupported() {
+        return true;
+    }
+
+    /**
+     * Executes the common single-table query types that can often be optimized
+     * by subclasses: COUNT(*) queries, primary key lookups and simple scans
+     * with or without WHERE criteria.
+     * 
+     * @param table
+     * @param selectItems
+     * @param whereItems
+     * @param simpleSelect
+     * @param noOrderBy
+     * @param firstRow
+     * @param maxRows
+     * @return a {@link DataSet} with the result, or null if the query needs to
+     *         be fully planned and post-processed.
+     */
+    private DataSet executeSingleTableQuery(final Table table, final List<SelectItem> selectItems,
+            final List<FilterItem> whereItems, final boolean simpleSelect, final boolean noOrderBy,
+            final int firstRow, final int maxRows) {
+        // check for SELECT COUNT(*) queries
+        if (selectItems.size() == 1) {
+            final SelectItem selectItem = selectItems.get(0);
+            if (SelectItem.isCountAllItem(selectItem)) {
+                final boolean functionApproximationAllowed = selectItem.isFunctionApproximationAllowed();
+                if (isMainSchemaTable(table)) {
+                    logger.debug("Query is a COUNT query with {} where items. Trying executeCountQuery(...)",
+                            whereItems.size());
+                    final Number count = executeCountQuery(table, whereItems, functionApproximationAllowed);
+                    if (count == null) {
+                        logger.debug(
+                                "DataContext did not return any count query results. Proceeding with manual counting.");
+                    } else {
+                        List<Row> data = new ArrayList<Row>(1);
+                        final DataSetHeader header = new SimpleDataSetHeader(new SelectItem[] { selectItem });
+                        data.add(new DefaultRow(header, new Object[] { count }));
+                        return new InMemoryDataSet(header, data);
+                    }
+                }
+            }
+        }
+
+        if (simpleSelect) {
+            // check for lookup query by primary key
+            if (whereItems.size() == 1) {
+                final FilterItem whereItem = whereItems.get(0);
+                final SelectItem selectItem = whereItem.getSelectItem();
+                if (!whereItem.isCompoundFilter() && selectItem != null && selectItem.getColumn() != null) {
+                    final Column column = selectItem.getColumn();
+                    if (column.isPrimaryKey() && OperatorType.EQUALS_TO.equals(whereItem.getOperator())) {
+                        logger.debug("Query is a primary key lookup query. Trying executePrimaryKeyLookupQuery(...)");
+                        if (isMainSchemaTable(table)) {
+                            final Object operand = whereItem.getOperand();
+                            final Row row = executePrimaryKeyLookupQuery(table, selectItems, column, operand);
+                            if (row == null) {
+                                logger.debug(
+                                        "DataContext did not return any GET query results. Proceeding with manual lookup.");
+                            } else {
+                                final DataSetHeader header = new SimpleDataSetHeader(selectItems);
+                                return new InMemoryDataSet(header, row);
+                            }
+                        }
+                    }
+                }
+            }
+
+            // check for simple queries with or without simple criteria
+            if (noOrderBy) {
+                // no WHERE criteria set
+                if (whereItems.isEmpty()) {
+                    final DataSet dataSet = materializeTable(table, selectItems, firstRow, maxRows);
+                    return dataSet;
+                }
+
+                final DataSet dataSet = materializeTable(table, selectItems, whereItems, firstRow, maxRows);
+                return dataSet;
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Determines if all the select items are 'simple' meaning that they just
      * represent scans of values in columns.
@@ -34,11 +34,28 @@ public class ScalarFunctionDataSet extends AbstractDataSet implements WrappingDa
     private final DataSet _dataSet;
     private final List<SelectItem> _scalarFunctionSelectItemsToEvaluate;
 
+    // the functions, their parameters and operands are resolved once, when
+    // the data set is created, instead of for every evaluation
+    private final ScalarFunction[] _functions;
+    private final Object[][] _functionParameters;
+    private final SelectItem[] _operandItems;
+
     public ScalarFunctionDataSet(List<SelectItem> scalarFunctionSelectItemsToEvaluate, DataSet dataSet) {
         super(CollectionUtils.concat(false, scalarFunctionSelectItemsToEvaluate,
                 Arrays.<SelectItem> asList(dataSet.getSelectItems())));
         _scalarFunctionSelectItemsToEvaluate = scalarFunctionSelectItemsToEvaluate;
         _dataSet = dataSet;
+
+        final int count = scalarFunctionSelectItemsToEvaluate.size();
+        _functions = new ScalarFunction[count];
+        _functionParameters = new Object[count][];
+        _operandItems = new SelectItem[count];
+        for (int i = 0; i < count; i++) {
+            final SelectItem selectItem = scalarFunctionSelectItemsToEvaluate.get(i);
+            _functions[i] = selectItem.getScalarFunction();
+            _functionParameters[i] = selectItem.getFunctionParameters();
+            _operandItems[i] = selectItem.replaceFunction(null);
+        }
     }
 
     @Override
@@ -56,6 +73,30 @@ public class ScalarFunctionDataSet extends AbstractDataSet implements WrappingDa
         return _scalarFunctionSelectItemsToEvaluate;
     }
 
+    /**
+     * Gets the number of scalar functions that this {@link DataSet} evaluates.
+     * 
+     * @return
+     */
+    protected int getScalarFunctionCount() {
+        return _functions.length;
+    }
+
+    /**
+     * Evaluates one of the scalar functions on a row of the wrapped
+     * {@link DataSet}.
+     * 
+     * @param functionIndex
+     *            the index of the scalar function select item
+     * @param row
+     *            a row of the wrapped {@link DataSet}
+     * @return
+     */
+    protected Object evaluate(int functionIndex, Row row) {
+        return _functions[functionIndex].evaluate(row, _functionParameters[functionIndex],
+                _operandItems[functionIndex]);
+    }
+
     @Override
     public DataSet getWrappedDataSet() {
         return _dataSet;
@@ -18,22 +18,25 @@
  */
 package org.apache.metamodel.data;
 
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.metamodel.query.ScalarFunction;
-import org.apache.metamodel.query.SelectItem;
 
 /**
  * A {@link Row} implementation that applies {@link ScalarFunction}s when
  * requested. This class closely interacts with the
- * {@link ScalarFunctionDataSet}.
+ * {@link ScalarFunctionDataSet}. Evaluated values are cached, so that each
+ * function is evaluated at most once per row.
  */
 final class ScalarFunctionRow extends AbstractRow {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Object NOT_EVALUATED = new Object();
+
     private final ScalarFunctionDataSet _scalarFunctionDataSet;
     private final Row _row;
+    private transient Object[] _evaluatedValues;
 
     public ScalarFunctionRow(ScalarFunctionDataSet scalarFunctionDataSet, Row row) {
         _scalarFunctionDataSet = scalarFunctionDataSet;
@@ -42,22 +45,32 @@ final class ScalarFunctionRow extends AbstractRow {
 
     @Override
     public Object getValue(int index) throws IndexOutOfBoundsException {
-        final List<SelectItem> scalarFunctionSelectItems = _scalarFunctionDataSet
-                .getScalarFunctionSelectItemsToEvaluate();
-        final int scalarFunctionCount = scalarFunctionSelectItems.size();
+        final int scalarFunctionCount = _scalarFunctionDataSet.getScalarFunctionCount();
         if (index >= scalarFunctionCount) {
             return _row.getValue(index - scalarFunctionCount);
         }
-        final SelectItem selectItem = scalarFunctionSelectItems.get(index);
-        final SelectItem selectItemWithoutFunction = selectItem.replaceFunction(null);
-        return selectItem.getScalarFunction().evaluate(_row, selectItem.getFunctionParameters(), selectItemWithoutFunction);
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+
+        Object[] evaluatedValues = _evaluatedValues;
+        if (evaluatedValues == null) {
+            evaluatedValues = new Object[scalarFunctionCount];
+            Arrays.fill(evaluatedValues, NOT_EVALUATED);
+            _evaluatedValues = evaluatedValues;
+        }
+
+        Object value = evaluatedValues[index];
+        if (value == NOT_EVALUATED) {
+            value = _scalarFunctionDataSet.evaluate(index, _row);
+            evaluatedValues[index] = value;
+        }
+        return value;
     }
 
     @Override
     public Style getStyle(int index) throws IndexOutOfBoundsException {
-        final List<SelectItem> scalarFunctionSelectItems = _scalarFunctionDataSet
-                .getScalarFunctionSelectItemsToEvaluate();
-        final int scalarFunctionCount = scalarFunctionSelectItems.size();
+        final int scalarFunctionCount = _scalarFunctionDataSet.getScalarFunctionCount();
         if (index >= scalarFunctionCount) {
             _row.getStyle(index - scalarFunctionCount);
         }
@@ -0,0 +1,494 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.util.BooleanComparator;
+import org.apache.metamodel.util.CollectionUtils;
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Min/max statistics ("zone map") of a file based table, which is divided into
+ * blocks of a fixed number of records. For each block and each tracked column
+ * the minimum and maximum value and the number of null values are recorded,
+ * which makes it possible to skip blocks that cannot contain any records
+ * matching a set of {@link FilterItem}s, see {@link #canMatch(int, List)}.
+ *
+ * Only string values are tracked, compared by their natural order, which is
+ * also how {@link FilterItem#evaluate(Row)} compares them. A zone map is keyed
+ * to the size and last modification time of the file it was built from.
+ */
+public final class ZoneMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LoggerFactory.getLogger(ZoneMap.class);
+
+    /**
+     * The format version of zone map files. Must be incremented if the format
+     * is changed in an incompatible way.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String FILE_SUFFIX = ".zonemap";
+
+    /**
+     * Block offset used when the byte offset of blocks is not known.
+     */
+    public static final long UNKNOWN_OFFSET = -1;
+
+    private final int _blockSize;
+    private final int[] _columnNumbers;
+    private final long _fileSize;
+    private final long _lastModified;
+    private final long[] _blockOffsets;
+    private final int[] _blockRecordCounts;
+    private final String[][] _minValues;
+    private final String[][] _maxValues;
+    private final int[][] _nullCounts;
+
+    private ZoneMap(Builder builder) {
+        final int blocks = builder._blockOffsets.size();
+        _blockSize = builder._blockSize;
+        _columnNumbers = builder._columnNumbers;
+        _fileSize = builder._fileSize;
+        _lastModified = builder._lastModified;
+        _blockOffsets = new long[blocks];
+        _blockRecordCounts = new int[blocks];
+        _minValues = new String[blocks][];
+        _maxValues = new String[blocks][];
+        _nullCounts = new int[blocks][];
+        for (int i = 0; i < blocks; i++) {
+            _blockOffsets[i] = builder._blockOffsets.get(i);
+            _blockRecordCounts[i] = builder._blockRecordCounts.get(i);
+            _minValues[i] = builder._minValues.get(i);
+            _maxValues[i] = builder._maxValues.get(i);
+            _nullCounts[i] = builder._nullCounts.get(i);
+        }
+    }
+
+    /**
+     * Gets the file that the zone map of a data file is stored in.
+     *
+     * @param dataFile
+     * @return
+     */
+    public static File getZoneMapFile(File dataFile) {
+        return new File(dataFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the zone map of a data file, if it exists and is up to date.
+     *
+     * @param dataFile
+     *            the file that the zone map describes
+     * @param blockSize
+     *            the expected block size
+     * @param columnNumbers
+     *            the expected tracked column numbers
+     * @return the zone map, or null if no matching zone map exists
+     */
+    public static ZoneMap load(File dataFile, int blockSize, int[] columnNumbers) {
+        final File zoneMapFile = getZoneMapFile(dataFile);
+        if (!zoneMapFile.exists()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(zoneMapFile)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final ZoneMap zoneMap = (ZoneMap) in.readObject();
+            if (zoneMap._blockSize != blockSize || !Arrays.equals(zoneMap._columnNumbers, columnNumbers)
+                    || !zoneMap.isValidFor(dataFile)) {
+                logger.debug("Ignoring outdated zone map: {}", zoneMapFile);
+                return null;
+            }
+            return zoneMap;
+        } catch (Exception e) {
+            logger.warn("Failed to read zone map: " + zoneMapFile, e);
+            return null;
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    /**
+     * Deletes the zone map of a data file, if it exists.
+     *
+     * @param dataFile
+     */
+    public static void delete(File dataFile) {
+        final File zoneMapFile = getZoneMapFile(dataFile);
+        if (zoneMapFile.exists() && !zoneMapFile.delete()) {
+            logger.warn("Could not delete zone map: {}", zoneMapFile);
+        }
+    }
+
+    /**
+     * Saves the zone map next to the data file. The zone map is written to a
+     * temporary file first and then moved into place.
+     *
+     * @param dataFile
+     */
+    public void save(File dataFile) {
+        final File zoneMapFile = getZoneMapFile(dataFile);
+        final File tempFile = new File(zoneMapFile.getPath() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeObject(this);
+            out.close();
+            out = null;
+            Files.move(tempFile.toPath(), zoneMapFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write zone map: " + zoneMapFile, e);
+            tempFile.delete();
+        } finally {
+            FileHelper.safeClose(out);
+        }
+    }
+
+    /**
+     * Determines if the zone map is up to date with the file it describes.
+     *
+     * @param dataFile
+     * @return
+     */
+    public boolean isValidFor(File dataFile) {
+        return _fileSize == dataFile.length() && _lastModified == dataFile.lastModified();
+    }
+
+    public int getBlockSize() {
+        return _blockSize;
+    }
+
+    /**
+     * Gets the numbers of the tracked columns.
+     *
+     * @return
+     */
+    public int[] getColumnNumbers() {
+        return Arrays.copyOf(_columnNumbers, _columnNumbers.length);
+    }
+
+    public int getBlockCount() {
+        return _blockOffsets.length;
+    }
+
+    /**
+     * Gets the byte offset of the first record of a block.
+     *
+     * @param block
+     * @return the offset, or {@link #UNKNOWN_OFFSET}
+     */
+    public long getBlockOffset(int block) {
+        return _blockOffsets[block];
+    }
+
+    public int getBlockRecordCount(int block) {
+        return _blockRecordCounts[block];
+    }
+
+    /**
+     * Gets the size of the file that the zone map describes.
+     *
+     * @return
+     */
+    public long getFileSize() {
+        return _fileSize;
+    }
+
+    /**
+     * Determines which blocks can contain records that match all of a list of
+     * filter items.
+     *
+     * @param whereItems
+     * @return an array with one element per block
+     */
+    public boolean[] getMatchingBlocks(List<FilterItem> whereItems) {
+        final boolean[] result = new boolean[_blockOffsets.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = canMatch(i, whereItems);
+        }
+        return result;
+    }
+
+    /**
+     * Determines if a block can contain records that match all of a list of
+     * filter items. Filter items which cannot be evaluated using the zone map
+     * are assumed to match.
+     *
+     * @param block
+     * @param whereItems
+     * @return false if the block certainly contains no matching records
+     */
+    public boolean canMatch(int block, List<FilterItem> whereItems) {
+        for (FilterItem whereItem : whereItems) {
+            if (!canMatch(block, whereItem)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canMatch(int block, FilterItem filterItem) {
+        if (filterItem.isCompoundFilter()) {
+            final FilterItem[] childItems = filterItem.getChildItems();
+            if (filterItem.getLogicalOperator() == LogicalOperator.AND) {
+                return canMatch(block, Arrays.asList(childItems));
+            }
+            for (FilterItem childItem : childItems) {
+                if (canMatch(block, childItem)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final SelectItem selectItem = filterItem.getSelectItem();
+        if (filterItem.getExpression() != null || selectItem == null || selectItem.hasFunction()
+                || selectItem.getColumn() == null) {
+            return true;
+        }
+        final int columnIndex = getColumnIndex(selectItem.getColumn());
+        if (columnIndex == -1) {
+            return true;
+        }
+
+        final OperatorType operator = filterItem.getOperator();
+        final Object operand = filterItem.getOperand();
+        final String min = _minValues[block][columnIndex];
+        final String max = _maxValues[block][columnIndex];
+        final int nullCount = _nullCounts[block][columnIndex];
+        final boolean hasValues = nullCount < _blockRecordCounts[block];
+
+        if (operand instanceof SelectItem) {
+            return true;
+        }
+        if (operand == null) {
+            if (operator == OperatorType.EQUALS_TO) {
+                return nullCount > 0;
+            }
+            if (operator == OperatorType.DIFFERENT_FROM) {
+                return hasValues;
+            }
+            return false;
+        }
+        if (!hasValues) {
+            // only nulls, which only match "different from" a value
+            return operator == OperatorType.DIFFERENT_FROM;
+        }
+
+        if (operator == OperatorType.IN) {
+            for (Object inValue : CollectionUtils.toList(operand)) {
+                if (!(inValue instanceof String) || isInRange((String) inValue, min, max)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (operator == OperatorType.LIKE) {
+            final String pattern = operand.toString();
+            final int wildcardIndex = pattern.indexOf('%');
+            final String prefix = (wildcardIndex == -1 ? pattern : pattern.substring(0, wildcardIndex));
+            if (prefix.isEmpty()) {
+                return true;
+            }
+            if (max.compareTo(prefix) < 0) {
+                return false;
+            }
+            return min.compareTo(prefix) <= 0 || min.startsWith(prefix);
+        }
+
+        if (BooleanComparator.isBoolean(operand)) {
+            // values and operands that both look like booleans are compared as
+            // booleans, not by their natural order
+            return true;
+        }
+        final String value = operand.toString();
+        if (operator == OperatorType.EQUALS_TO) {
+            return isInRange(value, min, max);
+        } else if (operator == OperatorType.GREATER_THAN) {
+            return max.compareTo(value) > 0;
+        } else if (operator == OperatorType.GREATER_THAN_OR_EQUAL) {
+            return max.compareTo(value) >= 0;
+        } else if (operator == OperatorType.LESS_THAN) {
+            return min.compareTo(value) < 0;
+        } else if (operator == OperatorType.LESS_THAN_OR_EQUAL) {
+            return min.compareTo(value) <= 0;
+        }
+        return true;
+    }
+
+    private static boolean isInRange(String value, String min, String max) {
+        return min.compareTo(value) <= 0 && max.compareTo(value) >= 0;
+    }
+
+    private int getColumnIndex(Column column) {
+        final int columnNumber = column.getColumnNumber();
+        for (int i = 0; i < _columnNumbers.length; i++) {
+            if (_columnNumbers[i] == columnNumber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds a {@link ZoneMap} while a file is being read from the first record
+     * to the end.
+     */
+    public static final class Builder {
+
+        private final File _dataFile;
+        private final int _blockSize;
+        private final int[] _columnNumbers;
+        private final long _fileSize;
+        private final long _lastModified;
+        private final List<Long> _blockOffsets;
+        private final List<Integer> _blockRecordCounts;
+        private final List<String[]> _minValues;
+        private final List<String[]> _maxValues;
+        private final List<int[]> _nullCounts;
+        private boolean _failed;
+        private int _recordsInBlock;
+
+        /**
+         * Creates a builder. Must be created before the file is read.
+         *
+         * @param dataFile
+         *            the file to build the zone map of
+         * @param blockSize
+         *            the number of records per block
+         * @param columnNumbers
+         *            the numbers of the columns to track
+         */
+        public Builder(File dataFile, int blockSize, int[] columnNumbers) {
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("Block size must be a positive number");
+            }
+            _dataFile = dataFile;
+            _blockSize = blockSize;
+            _columnNumbers = columnNumbers;
+            _lastModified = dataFile.lastModified();
+            _fileSize = dataFile.length();
+            _blockOffsets = new ArrayList<>();
+            _blockRecordCounts = new ArrayList<>();
+            _minValues = new ArrayList<>();
+            _maxValues = new ArrayList<>();
+            _nullCounts = new ArrayList<>();
+            _recordsInBlock = blockSize;
+        }
+
+        public int[] getColumnNumbers() {
+            return _columnNumbers;
+        }
+
+        /**
+         * Registers the next record of the file.
+         *
+         * @param offset
+         *            the byte offset of the record, or {@link #UNKNOWN_OFFSET}
+         * @param values
+         *            the values of the tracked columns, in the order of
+         *            {@link #getColumnNumbers()}
+         */
+        public void addRecord(long offset, Object[] values) {
+            if (_recordsInBlock == _blockSize) {
+                _blockOffsets.add(offset);
+                _blockRecordCounts.add(0);
+                _minValues.add(new String[_columnNumbers.length]);
+                _maxValues.add(new String[_columnNumbers.length]);
+                _nullCounts.add(new int[_columnNumbers.length]);
+                _recordsInBlock = 0;
+            }
+            final int block = _blockOffsets.size() - 1;
+            final String[] minValues = _minValues.get(block);
+            final String[] maxValues = _maxValues.get(block);
+            for (int i = 0; i < _columnNumbers.length; i++) {
+                final Object value = values[i];
+                if (value == null) {
+                    _nullCounts.get(block)[i]++;
+                } else if (value instanceof String) {
+                    final String str = (String) value;
+                    if (minValues[i] == null || str.compareTo(minValues[i]) < 0) {
+                        minValues[i] = str;
+                    }
+                    if (maxValues[i] == null || str.compareTo(maxValues[i]) > 0) {
+                        maxValues[i] = str;
+                    }
+                } else {
+                    // only string values can be tracked
+                    _failed = true;
+                }
+            }
+            _recordsInBlock++;
+            _blockRecordCounts.set(block, _recordsInBlock);
+        }
+
+        /**
+         * Builds the zone map.
+         *
+         * @return the zone map, or null if the file was modified while the
+         *         zone map was being built, if the file has no records or if
+         *         non-string values were registered.
+         */
+        public ZoneMap build() {
+            if (_failed || _blockOffsets.isEmpty() || _fileSize != _dataFile.length()
+                    || _lastModified != _dataFile.lastModified()) {
+                return null;
+            }
+            return new ZoneMap(this);
+        }
+
+        /**
+         * Builds and saves the zone map.
+         */
+        public void buildAndSave() {
+            final ZoneMap zoneMap = build();
+            if (zoneMap != null) {
+                zoneMap.save(_dataFile);
+            }
+        }
+    }
+}
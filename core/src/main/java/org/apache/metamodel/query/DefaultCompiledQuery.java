@@ -92,7 +92,20 @@ public class DefaultCompiledQuery implements CompiledQuery {
         }
     }
 
-    private FilterItem copyFilterItem(FilterItem item, Object[] values, AtomicInteger parameterIndex) {
+    /**
+     * Creates a copy of a {@link FilterItem} (or returns the same instance if
+     * no parameters are contained) with {@link QueryParameter}s replaced by
+     * values.
+     * 
+     * @param item
+     *            the filter item to copy
+     * @param values
+     *            the parameter values
+     * @param parameterIndex
+     *            the index of the next parameter value to consume
+     * @return
+     */
+    protected final FilterItem copyFilterItem(FilterItem item, Object[] values, AtomicInteger parameterIndex) {
         if (item.isCompoundFilter()) {
             final FilterItem[] childItems = item.getChildItems();
             final FilterItem[] newChildItems = new FilterItem[childItems.length];
@@ -140,6 +153,15 @@ public class DefaultCompiledQuery implements CompiledQuery {
         }
     }
 
+    /**
+     * Gets the (parameterized) query that this compiled query represents.
+     * 
+     * @return
+     */
+    protected Query getQuery() {
+        return _query;
+    }
+
     @Override
     public List<QueryParameter> getParameters() {
         return _parameters;
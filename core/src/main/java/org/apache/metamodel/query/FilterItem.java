@@ -107,7 +107,8 @@ public class FilterItem extends BaseObject implements QueryItem, Cloneable, IRow
             ColumnType type = _selectItem.getColumn().getType();
             if (type != null) {
                 require("Can only use LIKE operator with strings", type.isLiteral()
-                        && (_operand instanceof String || _operand instanceof SelectItem));
+                        && (_operand instanceof String || _operand instanceof SelectItem
+                                || _operand instanceof QueryParameter));
             }
         }
         require("SelectItem cannot be null", _selectItem != null);
@@ -0,0 +1,335 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.query;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+
+/**
+ * An immutable fingerprint of the structure of a {@link Query}, suitable as a
+ * key for caching things derived from queries, such as the SQL that a query is
+ * rendered to.
+ *
+ * Two fingerprints are equal if the queries they were created from consist of
+ * the same items, referencing the same schema objects (compared by identity)
+ * with the same aliases, functions, operators and operands (compared by class
+ * and value). Since the fingerprint is a snapshot of the query, it does not
+ * change when the query is modified - a modified query will simply have a
+ * different fingerprint.
+ */
+public final class QueryFingerprint {
+
+    private static final Object NULL = new Marker("null");
+    private static final Object PARAMETER = new Marker("?");
+    private static final Object SELECT_CLAUSE = new Marker("SELECT");
+    private static final Object FROM_CLAUSE = new Marker("FROM");
+    private static final Object WHERE_CLAUSE = new Marker("WHERE");
+    private static final Object GROUP_BY_CLAUSE = new Marker("GROUP BY");
+    private static final Object HAVING_CLAUSE = new Marker("HAVING");
+    private static final Object ORDER_BY_CLAUSE = new Marker("ORDER BY");
+    private static final Object END = new Marker("END");
+
+    private final Object[] _components;
+    private final int _hashCode;
+
+    /**
+     * Creates the fingerprint of a query
+     *
+     * @param query
+     */
+    public QueryFingerprint(Query query) {
+        if (query == null) {
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+        final List<Object> components = new ArrayList<Object>();
+        addQuery(components, query);
+        _components = components.toArray();
+
+        int hashCode = 1;
+        for (Object component : _components) {
+            hashCode = 31 * hashCode + component.hashCode();
+        }
+        _hashCode = hashCode;
+    }
+
+    private static void addQuery(List<Object> components, Query query) {
+        add(components, query.getMaxRows());
+        add(components, query.getFirstRow());
+
+        final SelectClause selectClause = query.getSelectClause();
+        components.add(SELECT_CLAUSE);
+        components.add(selectClause.isDistinct());
+        for (SelectItem item : selectClause.getItems()) {
+            addSelectItem(components, item);
+        }
+
+        components.add(FROM_CLAUSE);
+        for (FromItem item : query.getFromClause().getItems()) {
+            addFromItem(components, item);
+        }
+
+        components.add(WHERE_CLAUSE);
+        for (FilterItem item : query.getWhereClause().getItems()) {
+            addFilterItem(components, item);
+        }
+
+        components.add(GROUP_BY_CLAUSE);
+        for (GroupByItem item : query.getGroupByClause().getItems()) {
+            addSelectItem(components, item.getSelectItem());
+        }
+
+        components.add(HAVING_CLAUSE);
+        for (FilterItem item : query.getHavingClause().getItems()) {
+            addFilterItem(components, item);
+        }
+
+        components.add(ORDER_BY_CLAUSE);
+        for (OrderByItem item : query.getOrderByClause().getItems()) {
+            add(components, item.getDirection());
+            addSelectItem(components, item.getSelectItem());
+        }
+        components.add(END);
+    }
+
+    private static void addSelectItem(List<Object> components, SelectItem item) {
+        if (item == null) {
+            components.add(NULL);
+            return;
+        }
+        final Column column = item.getColumn();
+        components.add(SelectItem.class);
+        add(components, item.getExpression());
+        add(components, item.getAlias());
+        addIdentity(components, column);
+        components.add(item.hasFunction());
+        add(components, item.getAggregateFunction());
+        add(components, item.getScalarFunction());
+        components.add(item.isFunctionApproximationAllowed());
+        addValues(components, item.getFunctionParameters());
+
+        final FromItem fromItem = item.getFromItem();
+        if (fromItem == null) {
+            components.add(NULL);
+        } else {
+            add(components, fromItem.getAlias());
+        }
+
+        // the label of the column's table is resolved through the query that
+        // the item belongs to
+        final Query query = item.getQuery();
+        if (column == null || query == null) {
+            components.add(NULL);
+        } else {
+            add(components, query.getFromClause().getAlias(column.getTable()));
+        }
+
+        addSelectItem(components, item.getSubQuerySelectItem());
+    }
+
+    private static void addFromItem(List<Object> components, FromItem item) {
+        if (item == null) {
+            components.add(NULL);
+            return;
+        }
+        components.add(FromItem.class);
+        addIdentity(components, item.getTable());
+        add(components, item.getAlias());
+        add(components, item.getExpression());
+        add(components, item.getJoin());
+
+        final Query subQuery = item.getSubQuery();
+        if (subQuery == null) {
+            components.add(NULL);
+        } else {
+            components.add(Query.class);
+            addQuery(components, subQuery);
+        }
+
+        addFromItem(components, item.getLeftSide());
+        addFromItem(components, item.getRightSide());
+        addSelectItems(components, item.getLeftOn());
+        addSelectItems(components, item.getRightOn());
+    }
+
+    private static void addSelectItems(List<Object> components, SelectItem[] items) {
+        if (items == null) {
+            components.add(NULL);
+            return;
+        }
+        components.add(items.length);
+        for (SelectItem item : items) {
+            addSelectItem(components, item);
+        }
+    }
+
+    private static void addFilterItem(List<Object> components, FilterItem item) {
+        components.add(FilterItem.class);
+        add(components, item.getExpression());
+        if (item.isCompoundFilter()) {
+            final FilterItem[] childItems = item.getChildItems();
+            add(components, item.getLogicalOperator());
+            components.add(childItems.length);
+            for (FilterItem childItem : childItems) {
+                addFilterItem(components, childItem);
+            }
+        } else {
+            components.add(NULL);
+            add(components, item.getOperator());
+            addSelectItem(components, item.getSelectItem());
+            addValue(components, item.getOperand());
+        }
+    }
+
+    private static void addValues(List<Object> components, Object[] values) {
+        if (values == null) {
+            components.add(NULL);
+            return;
+        }
+        components.add(values.length);
+        for (Object value : values) {
+            addValue(components, value);
+        }
+    }
+
+    /**
+     * Adds a value (such as the operand of a filter item). Values are added
+     * along with their class, since values of different classes may be equal
+     * but rendered differently (such as dates and timestamps).
+     */
+    private static void addValue(List<Object> components, Object value) {
+        if (value == null) {
+            components.add(NULL);
+        } else if (value instanceof QueryParameter) {
+            components.add(PARAMETER);
+        } else if (value instanceof SelectItem) {
+            addSelectItem(components, (SelectItem) value);
+        } else if (value instanceof Query) {
+            components.add(Query.class);
+            addQuery(components, (Query) value);
+        } else if (value.getClass().isArray()) {
+            components.add(value.getClass());
+            final int length = Array.getLength(value);
+            components.add(length);
+            for (int i = 0; i < length; i++) {
+                addValue(components, Array.get(value, i));
+            }
+        } else if (value instanceof Iterable) {
+            components.add(value.getClass());
+            final List<Object> elements = new ArrayList<Object>();
+            for (Object element : (Iterable<?>) value) {
+                elements.add(element);
+            }
+            components.add(elements.size());
+            for (Object element : elements) {
+                addValue(components, element);
+            }
+        } else if (value instanceof Date) {
+            // dates are mutable, so a copy is kept
+            components.add(value.getClass());
+            components.add(((Date) value).clone());
+        } else {
+            components.add(value.getClass());
+            components.add(value);
+        }
+    }
+
+    private static void add(List<Object> components, Object value) {
+        components.add(value == null ? NULL : value);
+    }
+
+    private static void addIdentity(List<Object> components, Object schemaObject) {
+        components.add(schemaObject == null ? NULL : new Identity(schemaObject));
+    }
+
+    @Override
+    public int hashCode() {
+        return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryFingerprint)) {
+            return false;
+        }
+        final QueryFingerprint that = (QueryFingerprint) obj;
+        if (_hashCode != that._hashCode || _components.length != that._components.length) {
+            return false;
+        }
+        for (int i = 0; i < _components.length; i++) {
+            if (!_components[i].equals(that._components[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryFingerprint[components=" + _components.length + ",hashCode=" + _hashCode + "]";
+    }
+
+    /**
+     * Marker for structural elements of the fingerprint, which are only equal
+     * to themselves.
+     */
+    private static final class Marker {
+
+        private final String _name;
+
+        public Marker(String name) {
+            _name = name;
+        }
+
+        @Override
+        public String toString() {
+            return _name;
+        }
+    }
+
+    /**
+     * Wrapper for schema objects ({@link Table}s and {@link Column}s), which
+     * are compared by identity.
+     */
+    private static final class Identity {
+
+        private final Object _object;
+
+        public Identity(Object object) {
+            _object = object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(_object);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity && ((Identity) obj)._object == _object;
+        }
+    }
+}
@@ -57,6 +57,18 @@ public class QueryParser {
     }
 
     public Query parse() throws QueryParserException {
+        return parse(true);
+    }
+
+    /**
+     * Parses the query, optionally leaving out the WHERE clause which may then
+     * be parsed separately using {@link #parseWhereClause(Query)}.
+     * 
+     * @param includeWhereClause
+     * @return
+     * @throws QueryParserException
+     */
+    Query parse(boolean includeWhereClause) throws QueryParserException {
         final Query query = new Query();
 
         // collect focal point query clauses
@@ -95,7 +107,7 @@ public class QueryParser {
             parseSelectClause(query, selectClause);
         }
 
-        if (whereIndices != null) {
+        if (includeWhereClause && whereIndices != null) {
             final String whereClause = getSubstring(getLastEndIndex(whereIndices),
                     getNextStartIndex(groupByIndices, havingIndices, orderByIndices, limitIndices, offsetIndices));
             if (whereClause != null) {
@@ -150,6 +162,54 @@ public class QueryParser {
         return query;
     }
 
+    /**
+     * Gets the start and end index of the WHERE clause contents in the
+     * (prepared) query string.
+     * 
+     * @return the indexes, or null if the query has no WHERE clause
+     */
+    int[] getWhereClauseIndices() {
+        final int[] selectIndices = indexesOf("SELECT ", null);
+        final int[] fromIndices = indexesOf(" FROM ", selectIndices);
+        final int[] whereIndices = indexesOf(" WHERE ", fromIndices);
+        if (whereIndices == null) {
+            return null;
+        }
+        final int[] groupByIndices = indexesOf(" GROUP BY ", whereIndices);
+        final int[] havingIndices = indexesOf(" HAVING ", groupByIndices);
+        final int[] orderByIndices = indexesOf(" ORDER BY", havingIndices);
+        final int[] limitIndices = indexesOf(" LIMIT ", orderByIndices);
+        final int[] offsetIndices = indexesOf(" OFFSET ", limitIndices);
+        return new int[] { whereIndices[1],
+                getNextStartIndex(groupByIndices, havingIndices, orderByIndices, limitIndices, offsetIndices) };
+    }
+
+    /**
+     * Gets the (prepared) query string
+     * 
+     * @return
+     */
+    String getQueryString() {
+        return _queryString;
+    }
+
+    /**
+     * Parses the WHERE clause of the query string into an existing query,
+     * which has been parsed without it.
+     * 
+     * @param query
+     * @see #parse(boolean)
+     */
+    void parseWhereClause(Query query) {
+        final int[] whereClauseIndices = getWhereClauseIndices();
+        if (whereClauseIndices != null) {
+            final String whereClause = getSubstring(whereClauseIndices[0], whereClauseIndices[1]);
+            if (whereClause != null) {
+                parseWhereClause(query, whereClause);
+            }
+        }
+    }
+
     private void parseFromClause(Query query, String fromClause) {
         QueryPartParser clauseParser = new QueryPartParser(new FromItemParser(_dataContext, query), fromClause, ",");
         clauseParser.parse();
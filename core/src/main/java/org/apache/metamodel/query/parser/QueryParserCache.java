@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.query.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.metamodel.DataContext;
+import org.apache.metamodel.query.Query;
+
+/**
+ * A bounded cache of parsed {@link Query} templates for a single
+ * {@link DataContext}.
+ *
+ * Templates are keyed by the query string without the contents of its WHERE
+ * clause, so that query strings which only differ in the constants of the
+ * WHERE clause share a single cache entry. A template holds everything but the
+ * WHERE clause, ie. the resolved FROM items, SELECT items etc. Every call to
+ * {@link #parse(String)} yields a new clone of the template, to which the WHERE
+ * clause of the query string is added by the {@link QueryParser} - callers are
+ * therefore free to modify the returned queries.
+ *
+ * Since parsed queries reference the schema objects of the {@link DataContext},
+ * the cache must be cleared using {@link #clear()} whenever schemas are
+ * refreshed. Entries that were parsed before the last invalidation are never
+ * stored.
+ */
+public final class QueryParserCache {
+
+    private final DataContext _dataContext;
+    private final Map<String, Query> _templates;
+    private final AtomicLong _schemaVersion;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+
+    /**
+     * Creates a new cache
+     *
+     * @param dataContext
+     *            the {@link DataContext} to parse queries for
+     * @param maxSize
+     *            the maximum number of query templates to keep
+     */
+    public QueryParserCache(DataContext dataContext, final int maxSize) {
+        if (dataContext == null) {
+            throw new IllegalArgumentException("DataContext cannot be null");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be a positive number");
+        }
+        _dataContext = dataContext;
+        _templates = new LinkedHashMap<String, Query>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+                return size() > maxSize;
+            }
+        };
+        _schemaVersion = new AtomicLong();
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+    }
+
+    /**
+     * Parses a query string, using a cached template if available.
+     *
+     * @param queryString
+     * @return a new {@link Query} object representing the query string
+     * @throws QueryParserException
+     */
+    public Query parse(final String queryString) throws QueryParserException {
+        if (queryString == null) {
+            throw new IllegalArgumentException("Query string cannot be null");
+        }
+
+        final QueryParser parser = new QueryParser(_dataContext, queryString);
+        final String templateString = createTemplateString(parser);
+
+        Query template;
+        synchronized (_templates) {
+            template = _templates.get(templateString);
+        }
+
+        if (template == null) {
+            _misses.incrementAndGet();
+            final long schemaVersion = _schemaVersion.get();
+            template = parser.parse(false);
+            synchronized (_templates) {
+                if (schemaVersion == _schemaVersion.get()) {
+                    _templates.put(templateString, template);
+                }
+            }
+        } else {
+            _hits.incrementAndGet();
+        }
+
+        final Query query = template.clone();
+        parser.parseWhereClause(query);
+        return query;
+    }
+
+    /**
+     * Clears the cache, e.g. because the schemas of the {@link DataContext}
+     * have been refreshed.
+     */
+    public void clear() {
+        synchronized (_templates) {
+            _schemaVersion.incrementAndGet();
+            _templates.clear();
+        }
+    }
+
+    /**
+     * Gets the number of query templates currently in the cache
+     *
+     * @return
+     */
+    public int size() {
+        synchronized (_templates) {
+            return _templates.size();
+        }
+    }
+
+    /**
+     * Gets the number of times a query string was served from a cached
+     * template
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    /**
+     * Gets the number of times a query string had to be parsed
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    /**
+     * Creates the template string of a query, replacing the contents of the
+     * WHERE clause, as found by the {@link QueryParser}, with a '?'.
+     *
+     * @param parser
+     *            the parser of the query string
+     * @return
+     */
+    static String createTemplateString(final QueryParser parser) {
+        final String queryString = parser.getQueryString();
+        final int[] whereClauseIndices = parser.getWhereClauseIndices();
+        if (whereClauseIndices == null) {
+            return queryString;
+        }
+        return queryString.substring(0, whereClauseIndices[0]) + '?' + queryString.substring(whereClauseIndices[1]);
+    }
+}
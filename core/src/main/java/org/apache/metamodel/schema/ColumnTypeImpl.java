@@ -18,6 +18,7 @@
  */
 package org.apache.metamodel.schema;
 
+import java.io.ObjectStreamException;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -162,6 +163,33 @@ public class ColumnTypeImpl implements ColumnType {
         return _name;
     }
 
+    /**
+     * Resolves deserialized instances to the corresponding {@link ColumnType}
+     * constant (if any), so that identity comparisons with the constants keep
+     * working for e.g. schemas that have been serialized and restored.
+     * 
+     * @return
+     * @throws ObjectStreamException
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        try {
+            final Field field = ColumnType.class.getField(_name);
+            final Object constant = field.get(null);
+            if (constant instanceof ColumnTypeImpl) {
+                final ColumnTypeImpl columnType = (ColumnTypeImpl) constant;
+                if (columnType._superColumnType == _superColumnType && columnType._javaType == _javaType
+                        && columnType._largeObject == _largeObject) {
+                    return columnType;
+                }
+            }
+        } catch (NoSuchFieldException e) {
+            // not one of the constants
+        } catch (Exception e) {
+            logger.debug("Failed to resolve ColumnType constant: {}", _name, e);
+        }
+        return this;
+    }
+
     /**
      * Finds the ColumnType enum corresponding to the incoming JDBC
      * type-constant
@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.schema;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SchemaSnapshotStore} which stores schema snapshots as (versioned)
+ * serialized files in a local directory.
+ *
+ * Each snapshot file contains a header with the snapshot format version, the
+ * key, the version token and the time of writing, followed by the serialized
+ * {@link Schema}. The header is validated before the schema is deserialized,
+ * and snapshots that are older than the configured time-to-live are ignored.
+ * Snapshots are written to a temporary file first and then moved into place,
+ * so that readers never observe a partially written snapshot.
+ *
+ * Since the snapshot files can be modified by anyone who can write to the
+ * directory, only MetaModel classes and a few basic JDK classes (see
+ * {@link #isClassAllowed(String)}) are deserialized from them.
+ */
+public class FileSchemaSnapshotStore implements SchemaSnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSchemaSnapshotStore.class);
+
+    /**
+     * The format version of the snapshot files. Must be incremented if the
+     * format is changed in an incompatible way.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String FILE_SUFFIX = ".schema";
+
+    private static final String ALLOWED_PACKAGE_PREFIX = "org.apache.metamodel.";
+    private static final Set<String> ALLOWED_JDK_CLASSES = new HashSet<String>(Arrays.asList(
+            "java.lang.Object", "java.lang.String", "java.lang.Boolean", "java.lang.Character", "java.lang.Number",
+            "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Float",
+            "java.lang.Double", "java.lang.Enum", "java.math.BigInteger", "java.math.BigDecimal", "java.util.Date",
+            "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap", "java.util.LinkedHashMap",
+            "java.util.HashSet", "java.util.LinkedHashSet", "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList", "java.util.Collections$EmptyMap", "java.util.Collections$EmptySet",
+            "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableSet",
+            "java.util.Collections$UnmodifiableMap", "java.util.concurrent.CopyOnWriteArrayList",
+            // the java types of column types
+            "java.util.List", "java.util.Map", "java.util.Set", "java.util.UUID", "java.net.InetAddress",
+            "java.sql.Blob", "java.sql.Clob", "java.sql.Date", "java.sql.Time", "java.sql.Timestamp"));
+
+    public static final long NO_TIME_TO_LIVE = -1;
+
+    private final File _directory;
+    private final long _timeToLiveMillis;
+
+    /**
+     * Creates a store without time-to-live, ie. snapshots are valid for as long
+     * as the version token matches.
+     *
+     * @param directory
+     *            the directory to store snapshots in
+     */
+    public FileSchemaSnapshotStore(File directory) {
+        this(directory, NO_TIME_TO_LIVE);
+    }
+
+    /**
+     * Creates a store
+     *
+     * @param directory
+     *            the directory to store snapshots in
+     * @param timeToLiveMillis
+     *            the maximum age of a snapshot in milliseconds, or
+     *            {@link #NO_TIME_TO_LIVE}
+     */
+    public FileSchemaSnapshotStore(File directory, long timeToLiveMillis) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        _directory = directory;
+        _timeToLiveMillis = timeToLiveMillis;
+    }
+
+    public File getDirectory() {
+        return _directory;
+    }
+
+    public long getTimeToLiveMillis() {
+        return _timeToLiveMillis;
+    }
+
+    @Override
+    public Schema read(String key, String version) {
+        final File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        ObjectInputStream in = null;
+        try {
+            in = new SnapshotObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                logger.debug("Ignoring schema snapshot {} with format version {}", file, formatVersion);
+                return null;
+            }
+            final String snapshotKey = in.readUTF();
+            final String snapshotVersion = in.readUTF();
+            final long timestamp = in.readLong();
+            if (!key.equals(snapshotKey) || !version.equals(snapshotVersion)) {
+                logger.debug("Ignoring outdated schema snapshot {} (version: {})", file, snapshotVersion);
+                return null;
+            }
+            if (_timeToLiveMillis != NO_TIME_TO_LIVE && System.currentTimeMillis() - timestamp > _timeToLiveMillis) {
+                logger.debug("Ignoring expired schema snapshot {}", file);
+                return null;
+            }
+            return (Schema) in.readObject();
+        } catch (Exception e) {
+            logger.warn("Failed to read schema snapshot " + file + ", ignoring it", e);
+            return null;
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    @Override
+    public void write(String key, String version, Schema schema) {
+        if (!_directory.exists() && !_directory.mkdirs()) {
+            logger.warn("Could not create schema snapshot directory: {}", _directory);
+            return;
+        }
+
+        final File file = getFile(key);
+        File tempFile = null;
+        ObjectOutputStream out = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), ".tmp", _directory);
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeUTF(version);
+            out.writeLong(System.currentTimeMillis());
+            out.writeObject(schema);
+            out.close();
+            out = null;
+
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // not all file systems support atomic moves
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+        } catch (Exception e) {
+            logger.warn("Failed to write schema snapshot " + file, e);
+        } finally {
+            FileHelper.safeClose(out);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        final File file = getFile(key);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete schema snapshot: {}", file);
+        }
+    }
+
+    /**
+     * Determines if a class may be deserialized from a snapshot file.
+     * Subclasses may override this method to allow the classes of custom
+     * schema implementations outside of the org.apache.metamodel packages.
+     *
+     * @param className
+     *            the name of the class (the component type, for arrays)
+     * @return
+     */
+    protected boolean isClassAllowed(String className) {
+        return className.startsWith(ALLOWED_PACKAGE_PREFIX) || ALLOWED_JDK_CLASSES.contains(className);
+    }
+
+    /**
+     * Gets the file of a snapshot. The file name is made from the key,
+     * stripped of special characters, and the hash code of the key.
+     *
+     * @param key
+     * @return
+     */
+    protected File getFile(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        String name = key.replaceAll("[^a-zA-Z0-9_\\-\\.]", "_");
+        if (name.length() > 100) {
+            name = name.substring(0, 100);
+        }
+        name = name + "-" + Integer.toHexString(key.hashCode()) + FILE_SUFFIX;
+        return new File(_directory, name);
+    }
+
+    /**
+     * {@link ObjectInputStream} which only resolves the classes allowed by
+     * {@link FileSchemaSnapshotStore#isClassAllowed(String)}.
+     */
+    private class SnapshotObjectInputStream extends ObjectInputStream {
+
+        public SnapshotObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String className = desc.getName();
+            // arrays are allowed if their component type is
+            while (className.startsWith("[")) {
+                className = className.substring(1);
+            }
+            if (className.startsWith("L") && className.endsWith(";")) {
+                className = className.substring(1, className.length() - 1);
+            } else if (className.length() == 1) {
+                // an array of a primitive type
+                className = "java.lang.Object";
+            }
+            if (!isClassAllowed(className)) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed in schema snapshots");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy classes are not allowed in schema snapshots");
+        }
+    }
+}
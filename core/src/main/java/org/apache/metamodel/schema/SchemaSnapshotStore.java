@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.schema;
+
+import org.apache.metamodel.AbstractDataContext;
+
+/**
+ * A persistent store of {@link Schema} snapshots, which allows a
+ * {@link AbstractDataContext} to skip (potentially expensive) schema discovery
+ * when it is started up.
+ * 
+ * Snapshots are identified by a key, which identifies the datastore and the
+ * schema, and validated by a version token which the datastore can produce
+ * cheaply (such as the last modified timestamp of a file, or the version of a
+ * database). A snapshot is only returned if its version matches the requested
+ * version.
+ * 
+ * Implementations should never fail because of a corrupt or unreadable
+ * snapshot, but rather return null to have the schema rebuilt.
+ * 
+ * @see AbstractDataContext#setSchemaSnapshotStore(SchemaSnapshotStore)
+ */
+public interface SchemaSnapshotStore {
+
+    /**
+     * Reads a schema snapshot.
+     * 
+     * @param key
+     *            the key of the snapshot
+     * @param version
+     *            the expected version of the snapshot
+     * @return the schema snapshot, or null if no valid snapshot is available
+     */
+    public Schema read(String key, String version);
+
+    /**
+     * Writes a schema snapshot, replacing any existing snapshot with the same
+     * key.
+     * 
+     * @param key
+     *            the key of the snapshot
+     * @param version
+     *            the version of the snapshot
+     * @param schema
+     *            the schema to write
+     */
+    public void write(String key, String version, Schema schema);
+
+    /**
+     * Removes a schema snapshot, if it exists.
+     * 
+     * @param key
+     *            the key of the snapshot
+     */
+    public void remove(String key);
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link Resource} decorator for gzip compressed resources, eg. a
+ * {@link FileResource} or an HDFS resource of a ".csv.gz" file. Reading
+ * returns the decompressed data, and writing compresses it. Appending adds a
+ * new gzip member to the resource, which is valid gzip.
+ *
+ * Decompression runs in the background with read-ahead, so that it overlaps
+ * with the parsing done by the reader. Block gzip (BGZF) resources, which
+ * consist of many small members with their sizes in the headers, are
+ * decompressed in parallel.
+ */
+public class CompressedResource extends AbstractResource implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] GZIP_EXTENSIONS = { ".gz", ".gzip", ".bgz" };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Resource _delegate;
+
+    public CompressedResource(Resource delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Resource cannot be null");
+        }
+        _delegate = delegate;
+    }
+
+    /**
+     * Determines if a resource is gzip compressed, judging by the extension of
+     * its name.
+     *
+     * @param resource
+     * @return
+     */
+    public static boolean isCompressed(Resource resource) {
+        if (resource == null || resource instanceof CompressedResource) {
+            return false;
+        }
+        final String name = resource.getName();
+        if (name == null) {
+            return false;
+        }
+        final String lowerCaseName = name.toLowerCase();
+        for (String extension : GZIP_EXTENSIONS) {
+            if (lowerCaseName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a resource in a {@link CompressedResource} if it is compressed,
+     * see {@link #isCompressed(Resource)}.
+     *
+     * @param resource
+     * @return the wrapped resource, or the resource itself if it is not
+     *         compressed
+     */
+    public static Resource wrapIfCompressed(Resource resource) {
+        if (isCompressed(resource)) {
+            return new CompressedResource(resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Gets the compressed resource that this resource decorates.
+     *
+     * @return
+     */
+    public Resource getDelegate() {
+        return _delegate;
+    }
+
+    @Override
+    public String getName() {
+        return _delegate.getName();
+    }
+
+    @Override
+    public String getQualifiedPath() {
+        return _delegate.getQualifiedPath();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return _delegate.isReadOnly();
+    }
+
+    @Override
+    public boolean isExists() {
+        return _delegate.isExists();
+    }
+
+    /**
+     * Returns -1, since the size of the decompressed data cannot be determined
+     * without reading it. The size of the compressed data can be obtained from
+     * the delegate, see {@link #getDelegate()}.
+     */
+    @Override
+    public long getSize() {
+        return -1;
+    }
+
+    @Override
+    public long getLastModified() {
+        return _delegate.getLastModified();
+    }
+
+    @Override
+    public OutputStream write() throws ResourceException {
+        return compress(_delegate.write());
+    }
+
+    @Override
+    public OutputStream append() throws ResourceException {
+        return compress(_delegate.append());
+    }
+
+    private OutputStream compress(OutputStream out) {
+        try {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    // some resources, eg. InMemoryResource, only store the
+                    // data when flushed
+                    finish();
+                    out.flush();
+                    super.close();
+                }
+            };
+        } catch (IOException e) {
+            FileHelper.safeClose(out);
+            throw new ResourceException(this, "Failed to open compressing OutputStream", e);
+        }
+    }
+
+    @Override
+    public InputStream read() throws ResourceException {
+        final InputStream in = _delegate.read();
+        try {
+            return new GzipReadAheadInputStream(in);
+        } catch (IOException e) {
+            FileHelper.safeClose(in);
+            throw new ResourceException(this, "Failed to open decompressing InputStream", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedResource[" + _delegate + "]";
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An {@link InputStream} which decompresses gzip data in the background and
+ * keeps a bounded number of decompressed chunks ready for the reader.
+ *
+ * Regular gzip data (including concatenated members) is decompressed by a
+ * single background task. Block gzip (BGZF) data, where every member is a
+ * small block with its compressed size in the header, is split into blocks
+ * which are decompressed in parallel and returned in order. Instances are not
+ * thread safe.
+ */
+final class GzipReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int SEQUENTIAL_READ_AHEAD_CHUNKS = 16;
+    private static final int BGZF_HEADER_SIZE = 18;
+    private static final int MAX_BGZF_BLOCK_DATA_SIZE = 1024 * 1024;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final InputStream _in;
+    private final int _parallelism;
+    private final BlockingQueue<Future<byte[]>> _queue;
+    private final Future<?> _producer;
+
+    private volatile boolean _closed;
+    private byte[] _chunk;
+    private int _position;
+    private boolean _endReached;
+
+    public GzipReadAheadInputStream(InputStream in) throws IOException {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a stream
+     *
+     * @param in
+     *            the compressed data
+     * @param parallelism
+     *            the number of block gzip blocks to decompress in parallel
+     * @throws IOException
+     *             if the data is not gzip compressed
+     */
+    public GzipReadAheadInputStream(InputStream in, int parallelism) throws IOException {
+        _in = new BufferedInputStream(in, CHUNK_SIZE);
+        _parallelism = Math.max(1, parallelism);
+
+        final byte[] header = new byte[BGZF_HEADER_SIZE];
+        _in.mark(BGZF_HEADER_SIZE);
+        final int headerLength = readFully(_in, header, 0, header.length);
+        _in.reset();
+        if (headerLength > 0 && (headerLength < 2 || header[0] != (byte) 0x1f || header[1] != (byte) 0x8b)) {
+            throw new ZipException("Not in GZIP format");
+        }
+
+        final boolean empty = headerLength == 0;
+        final boolean blockGzip = _parallelism > 1 && isBlockGzipHeader(header, headerLength);
+        _queue = new ArrayBlockingQueue<Future<byte[]>>(blockGzip ? 2 * _parallelism + 2
+                : SEQUENTIAL_READ_AHEAD_CHUNKS);
+        _producer = SharedExecutorService.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                produce(empty, blockGzip);
+            }
+        });
+    }
+
+    private void produce(boolean empty, boolean blockGzip) {
+        try {
+            if (empty) {
+                // nothing to decompress, eg. a newly created resource
+            } else if (blockGzip) {
+                produceBlocks();
+            } else {
+                produceSequentially();
+            }
+            offer(completed(null));
+        } catch (final Exception e) {
+            if (!_closed) {
+                offer(failed(e));
+            }
+        }
+    }
+
+    /**
+     * Splits block gzip data into its blocks and schedules them for
+     * decompression. Falls back to sequential decompression if a member turns
+     * out not to be a block.
+     */
+    private void produceBlocks() throws IOException {
+        final byte[] header = new byte[BGZF_HEADER_SIZE];
+        while (!_closed) {
+            _in.mark(BGZF_HEADER_SIZE);
+            final int headerLength = readFully(_in, header, 0, header.length);
+            if (headerLength == 0) {
+                return;
+            }
+            if (!isBlockGzipHeader(header, headerLength)) {
+                _in.reset();
+                produceSequentially();
+                return;
+            }
+
+            final int blockSize = ((header[16] & 0xff) | ((header[17] & 0xff) << 8)) + 1;
+            final byte[] block = new byte[blockSize];
+            System.arraycopy(header, 0, block, 0, BGZF_HEADER_SIZE);
+            if (readFully(_in, block, BGZF_HEADER_SIZE, blockSize - BGZF_HEADER_SIZE) != blockSize
+                    - BGZF_HEADER_SIZE) {
+                throw new EOFException("Unexpected end of block gzip data");
+            }
+
+            final Future<byte[]> future = SharedExecutorService.get().submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return inflateBlock(block);
+                }
+            });
+            if (!offer(future)) {
+                future.cancel(true);
+                return;
+            }
+        }
+    }
+
+    private void produceSequentially() throws IOException {
+        final GZIPInputStream in = new GZIPInputStream(_in, CHUNK_SIZE);
+        while (!_closed) {
+            final byte[] buffer = new byte[CHUNK_SIZE];
+            final int length = readFully(in, buffer, 0, buffer.length);
+            if (length == 0) {
+                return;
+            }
+            final byte[] chunk;
+            if (length == buffer.length) {
+                chunk = buffer;
+            } else {
+                chunk = new byte[length];
+                System.arraycopy(buffer, 0, chunk, 0, length);
+            }
+            if (!offer(completed(chunk))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Determines if a gzip member header is a block gzip header, ie. has only
+     * the FEXTRA flag set and a "BC" subfield with the block size as the first
+     * extra subfield.
+     */
+    private static boolean isBlockGzipHeader(byte[] header, int length) {
+        if (length < BGZF_HEADER_SIZE) {
+            return false;
+        }
+        final int extraLength = (header[10] & 0xff) | ((header[11] & 0xff) << 8);
+        return header[0] == (byte) 0x1f && header[1] == (byte) 0x8b && header[2] == 8 && header[3] == 4
+                && extraLength >= 6 && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+
+    private static byte[] inflateBlock(byte[] block) throws IOException {
+        final int extraLength = (block[10] & 0xff) | ((block[11] & 0xff) << 8);
+        final int dataStart = 12 + extraLength;
+        final int dataEnd = block.length - 8;
+        if (dataEnd < dataStart) {
+            throw new ZipException("Corrupt block gzip member");
+        }
+        final long expectedCrc = readUnsignedInt(block, dataEnd);
+        final long size = readUnsignedInt(block, dataEnd + 4);
+        if (size > MAX_BGZF_BLOCK_DATA_SIZE) {
+            throw new ZipException("Corrupt block gzip member, size: " + size);
+        }
+
+        final byte[] data = new byte[(int) size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, dataStart, dataEnd - dataStart);
+            int length = 0;
+            while (length < data.length) {
+                final int inflated = inflater.inflate(data, length, data.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != data.length) {
+                throw new ZipException("Corrupt block gzip member, expected " + size + " bytes but got " + length);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt block gzip member: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (crc.getValue() != expectedCrc) {
+            throw new ZipException("Corrupt block gzip member, CRC mismatch");
+        }
+        return data;
+    }
+
+    private static long readUnsignedInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xffL) | ((bytes[offset + 1] & 0xffL) << 8) | ((bytes[offset + 2] & 0xffL) << 16)
+                | ((bytes[offset + 3] & 0xffL) << 24);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            final int read = in.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Adds a chunk to the queue, waiting for the reader to make room.
+     *
+     * @return false if the stream was closed while waiting
+     */
+    private boolean offer(Future<byte[]> future) {
+        try {
+            while (!_queue.offer(future, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (_closed) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static Future<byte[]> completed(final byte[] chunk) {
+        final FutureTask<byte[]> future = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return chunk;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    private static Future<byte[]> failed(final Exception e) {
+        final FutureTask<byte[]> future = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                throw e;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * Makes sure that there is a chunk with unread data.
+     *
+     * @return false if the end of the data has been reached
+     */
+    private boolean nextChunk() throws IOException {
+        while (_chunk == null || _position >= _chunk.length) {
+            if (_endReached) {
+                return false;
+            }
+            if (_closed) {
+                throw new IOException("Stream closed");
+            }
+            final byte[] chunk;
+            try {
+                chunk = _queue.take().get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+            if (chunk == null) {
+                _endReached = true;
+                return false;
+            }
+            _chunk = chunk;
+            _position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return _chunk[_position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        final int length = Math.min(len, _chunk.length - _position);
+        System.arraycopy(_chunk, _position, b, off, length);
+        _position += length;
+        return length;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (_chunk == null) {
+            return 0;
+        }
+        return _chunk.length - _position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _producer.cancel(true);
+        Future<byte[]> future = _queue.poll();
+        while (future != null) {
+            future.cancel(true);
+            future = _queue.poll();
+        }
+        _chunk = null;
+        _in.close();
+    }
+}
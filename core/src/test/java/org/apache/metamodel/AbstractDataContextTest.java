@@ -19,8 +19,12 @@
 package org.apache.metamodel;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import org.apache.metamodel.data.DataSet;
@@ -30,6 +34,7 @@ import org.apache.metamodel.schema.MutableColumn;
 import org.apache.metamodel.schema.MutableSchema;
 import org.apache.metamodel.schema.MutableTable;
 import org.apache.metamodel.schema.Schema;
+import org.apache.metamodel.schema.SchemaSnapshotStore;
 import org.apache.metamodel.schema.Table;
 
 public class AbstractDataContextTest extends TestCase {
@@ -263,6 +268,184 @@ public class AbstractDataContextTest extends TestCase {
         assertEquals("col1", result.getName());
     }
 
+    /**
+     * Data context which creates a new schema instance every time a schema is
+     * loaded, optionally blocking until a latch is released.
+     */
+    private class LoadingDataContext extends AbstractDataContext {
+
+        private final AtomicInteger _loadCount = new AtomicInteger();
+        private volatile CountDownLatch _loadLatch;
+
+        @Override
+        public DataSet executeQuery(Query query) throws MetaModelException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected String[] getSchemaNamesInternal() {
+            return new String[] { "foo", "bar" };
+        }
+
+        @Override
+        protected String getDefaultSchemaName() {
+            return "foo";
+        }
+
+        @Override
+        protected Schema getSchemaByNameInternal(String name) {
+            _loadCount.incrementAndGet();
+            final CountDownLatch latch = _loadLatch;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return createSchema(name);
+        }
+    }
+
+    public void testConcurrentSchemaLoadingOnlyLoadsOnce() throws Exception {
+        final LoadingDataContext dc = new LoadingDataContext();
+        dc._loadLatch = new CountDownLatch(1);
+
+        final Schema[] results = new Schema[10];
+        final Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[index] = dc.getSchemaByName("foo");
+                }
+            };
+            threads[i].start();
+        }
+
+        Thread.sleep(100);
+        dc._loadLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, dc._loadCount.get());
+        for (Schema schema : results) {
+            assertSame(results[0], schema);
+        }
+    }
+
+    public void testRefreshSingleSchemaAndTable() throws Exception {
+        final LoadingDataContext dc = new LoadingDataContext();
+        final Schema foo1 = dc.getSchemaByName("foo");
+        final Schema bar1 = dc.getSchemaByName("bar");
+        assertEquals(2, dc._loadCount.get());
+
+        dc.refreshSchema("FOO");
+        final Schema foo2 = dc.getSchemaByName("foo");
+        assertNotSame(foo1, foo2);
+        assertSame(bar1, dc.getSchemaByName("bar"));
+        assertEquals(3, dc._loadCount.get());
+
+        // tables are refreshed through their schema by default
+        dc.refreshTable(bar1.getTableByName("table"));
+        assertNotSame(bar1, dc.getSchemaByName("bar"));
+        assertSame(foo2, dc.getSchemaByName("foo"));
+        assertEquals(4, dc._loadCount.get());
+    }
+
+    public void testRefreshSchemasInBackground() throws Exception {
+        final LoadingDataContext dc = new LoadingDataContext();
+        final Schema foo1 = dc.getSchemaByName("foo");
+
+        dc._loadLatch = new CountDownLatch(1);
+        final Future<DataContext> future = dc.refreshSchemasInBackground();
+
+        // the old schema remains available while the refresh is ongoing
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+        assertSame(foo1, dc.getSchemaByName("foo"));
+
+        dc._loadLatch.countDown();
+        assertSame(dc, future.get());
+
+        final Schema foo2 = dc.getSchemaByName("foo");
+        assertNotSame(foo1, foo2);
+        assertEquals("foo", foo2.getName());
+
+        // only the schema that was already loaded is reloaded
+        assertEquals(2, dc._loadCount.get());
+    }
+
+    public void testRefreshOverwritesSchemaSnapshot() throws Exception {
+        final Map<String, Schema> snapshots = new HashMap<String, Schema>();
+        final AtomicInteger removeCount = new AtomicInteger();
+        final SchemaSnapshotStore store = new SchemaSnapshotStore() {
+            @Override
+            public Schema read(String key, String version) {
+                return snapshots.get(key + "/" + version);
+            }
+
+            @Override
+            public void write(String key, String version, Schema schema) {
+                snapshots.put(key + "/" + version, schema);
+            }
+
+            @Override
+            public void remove(String key) {
+                removeCount.incrementAndGet();
+            }
+        };
+
+        final LoadingDataContext dc1 = new SnapshotDataContext();
+        dc1.setSchemaSnapshotStore(store);
+        final Schema foo1 = dc1.getSchemaByName("foo");
+        assertEquals(1, dc1._loadCount.get());
+        assertSame(foo1, snapshots.get("foo/1"));
+
+        final LoadingDataContext dc2 = new SnapshotDataContext();
+        dc2.setSchemaSnapshotStore(store);
+        assertSame(foo1, dc2.getSchemaByName("foo"));
+        assertEquals(0, dc2._loadCount.get());
+
+        // refreshing keeps the snapshot, but does not use it for reloading
+        dc2.refreshSchemas();
+        assertEquals(0, removeCount.get());
+        assertSame(foo1, snapshots.get("foo/1"));
+
+        final Schema foo2 = dc2.getSchemaByName("foo");
+        assertNotSame(foo1, foo2);
+        assertEquals(1, dc2._loadCount.get());
+        assertSame(foo2, snapshots.get("foo/1"));
+
+        // once overwritten, the snapshot is used again
+        dc2.refreshSchema("foo");
+        dc2.getSchemaByName("foo");
+        dc2.refreshTable(dc2.getSchemaByName("foo").getTableByName("table"));
+        dc2.getSchemaByName("foo");
+        assertEquals(3, dc2._loadCount.get());
+        assertEquals(0, removeCount.get());
+
+        final LoadingDataContext dc3 = new SnapshotDataContext();
+        dc3.setSchemaSnapshotStore(store);
+        assertSame(snapshots.get("foo/1"), dc3.getSchemaByName("foo"));
+        assertEquals(0, dc3._loadCount.get());
+    }
+
+    private class SnapshotDataContext extends LoadingDataContext {
+
+        @Override
+        protected String getSchemaSnapshotKey(String schemaName) {
+            return schemaName;
+        }
+
+        @Override
+        protected String getSchemaSnapshotVersion(String schemaName) {
+            return "1";
+        }
+    }
+
     private Schema createSchema(String name) {
         MutableSchema schema = new MutableSchema(name);
         MutableTable t1 = new MutableTable("table");
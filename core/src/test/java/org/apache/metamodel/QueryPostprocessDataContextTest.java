@@ -22,6 +22,7 @@ import java.nio.channels.UnsupportedAddressTypeException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.table.TableModel;
 
@@ -711,6 +712,105 @@ public class QueryPostprocessDataContextTest extends MetaModelTestCase {
         }
     }
 
+    public void testCompiledQueryPlanWithCompoundFilter() throws Exception {
+        final DataContext dc = getDataContext();
+
+        final Column countryColumn = table1.getColumnByName(COLUMN_CONTRIBUTOR_COUNTRY);
+        final Column idColumn = table1.getColumnByName(COLUMN_CONTRIBUTOR_CONTRIBUTOR_ID);
+        final Query query = new Query().from(table1).select(table1.getColumnByName(COLUMN_CONTRIBUTOR_NAME));
+        query.where(idColumn, OperatorType.GREATER_THAN, 1);
+        query.where(new FilterItem(new FilterItem(new SelectItem(countryColumn), OperatorType.EQUALS_TO,
+                new QueryParameter()), new FilterItem(new SelectItem(countryColumn), OperatorType.EQUALS_TO,
+                new QueryParameter())));
+
+        final CompiledQuery compiledQuery = dc.compileQuery(query);
+        try {
+            assertTrue(compiledQuery instanceof QueryPostprocessCompiledQuery);
+            assertTrue(((QueryPostprocessCompiledQuery) compiledQuery).isPlanned());
+            assertEquals(2, compiledQuery.getParameters().size());
+
+            DataSet ds = dc.executeQuery(compiledQuery, "denmark", "canada");
+            assertEquals("[[asbjorn], [daniel], [jesper]]", toString(ds.toObjectArrays()));
+
+            ds = dc.executeQuery(compiledQuery, "israel", "foo");
+            assertEquals("[[johny]]", toString(ds.toObjectArrays()));
+
+            // the compiled query itself is not modified by execution
+            assertEquals("SELECT contributor.name FROM MetaModelSchema.contributor "
+                    + "WHERE contributor.contributor_id > 1 AND (contributor.country = ? OR contributor.country = ?)",
+                    compiledQuery.toSql());
+        } finally {
+            compiledQuery.close();
+        }
+    }
+
+    public void testCompiledQueryDelegatesToOverriddenExecuteQuery() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        final MockDataContext dc = new MockDataContext("sch", "tab", "1") {
+            @Override
+            public DataSet executeQuery(Query query) {
+                executions.incrementAndGet();
+                return super.executeQuery(query);
+            }
+
+            @Override
+            protected boolean isCompiledQueryPlanSupported() {
+                return false;
+            }
+        };
+        final Table table = dc.getDefaultSchema().getTables()[0];
+        final CompiledQuery compiledQuery = dc.query().from(table).select("foo").where("foo")
+                .eq(new QueryParameter()).compile();
+        try {
+            assertTrue(((QueryPostprocessCompiledQuery) compiledQuery).isPlanned());
+            assertEquals("[[1]]", toString(dc.executeQuery(compiledQuery, "1").toObjectArrays()));
+            assertEquals(1, executions.get());
+        } finally {
+            compiledQuery.close();
+        }
+    }
+
+    public void testCompiledCountQuery() throws Exception {
+        final DataContext dc = getDataContext();
+        final CompiledQuery compiledQuery = dc.query().from(table1).selectCount().where(COLUMN_CONTRIBUTOR_COUNTRY)
+                .eq(new QueryParameter()).compile();
+        try {
+            assertEquals("[[3]]", toString(dc.executeQuery(compiledQuery, "denmark").toObjectArrays()));
+            assertEquals("[[1]]", toString(dc.executeQuery(compiledQuery, "canada").toObjectArrays()));
+        } finally {
+            compiledQuery.close();
+        }
+    }
+
+    public void testCompiledCountQueryWithoutCountSupport() throws Exception {
+        final AtomicInteger countQueries = new AtomicInteger();
+        final MockDataContext dc = new MockDataContext("sch", "tab", "1") {
+            @Override
+            protected Number executeCountQuery(Table table, List<FilterItem> whereItems,
+                    boolean functionApproximationAllowed) {
+                countQueries.incrementAndGet();
+                return null;
+            }
+        };
+        final Table table = dc.getDefaultSchema().getTables()[0];
+        final CompiledQuery compiledQuery = dc.query().from(table).selectCount().where("foo")
+                .eq(new QueryParameter()).compile();
+        try {
+            assertEquals("[[1]]", toString(dc.executeQuery(compiledQuery, "1").toObjectArrays()));
+            assertEquals(1, countQueries.get());
+        } finally {
+            compiledQuery.close();
+        }
+    }
+
+    private static String toString(List<Object[]> objectArrays) {
+        final List<String> result = new ArrayList<String>();
+        for (Object[] objects : objectArrays) {
+            result.add(Arrays.toString(objects));
+        }
+        return result.toString();
+    }
+
     public void testSelectCount() throws Exception {
         DataContext dc = getDataContext();
         Query q = new Query();
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.metamodel.query.DefaultScalarFunction;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+
+import junit.framework.TestCase;
+
+public class ScalarFunctionDataSetTest extends TestCase {
+
+    private static final AtomicInteger evaluationCount = new AtomicInteger();
+
+    private static final class CountingFunction extends DefaultScalarFunction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object evaluate(Row row, Object[] parameters, SelectItem operandItem) {
+            evaluationCount.incrementAndGet();
+            return parameters[0] + "" + row.getValue(operandItem);
+        }
+
+        @Override
+        public ColumnType getExpectedColumnType(ColumnType type) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "COUNTING";
+        }
+    }
+
+    public void testEvaluateOncePerRow() throws Exception {
+        evaluationCount.set(0);
+
+        final MutableColumn column = new MutableColumn("foo");
+        final SelectItem[] items = new SelectItem[] { new SelectItem(column) };
+        final DataSetHeader header = new SimpleDataSetHeader(items);
+        final List<Row> rows = new ArrayList<Row>();
+        rows.add(new DefaultRow(header, new Object[] { 1 }));
+        rows.add(new DefaultRow(header, new Object[] { 2 }));
+
+        final SelectItem functionItem = new SelectItem(new CountingFunction(), new Object[] { "x" }, column);
+        final ScalarFunctionDataSet dataSet = new ScalarFunctionDataSet(Arrays.asList(functionItem),
+                new InMemoryDataSet(header, rows));
+
+        assertTrue(dataSet.next());
+        Row row = dataSet.getRow();
+        assertEquals("x1", row.getValue(0));
+        assertEquals("x1", row.getValue(functionItem));
+        assertEquals(1, row.getValue(1));
+        assertEquals(1, evaluationCount.get());
+
+        assertTrue(dataSet.next());
+        row = dataSet.getRow();
+        assertEquals("Row[values=[x2, 2]]", row.toString());
+        assertEquals("x2", row.getValue(0));
+        assertEquals(2, evaluationCount.get());
+
+        assertFalse(dataSet.next());
+        dataSet.close();
+    }
+
+    public void testFunctionTypeIsResolvedFromSelectItem() throws Exception {
+        final MutableColumn column = new MutableColumn("foo");
+        final SelectItem functionItem = new SelectItem(FunctionType.TO_NUMBER, column);
+        final SelectItem[] items = new SelectItem[] { new SelectItem(column) };
+        final DataSetHeader header = new SimpleDataSetHeader(items);
+        final List<Row> rows = new ArrayList<Row>();
+        rows.add(new DefaultRow(header, new Object[] { "42" }));
+
+        final ScalarFunctionDataSet dataSet = new ScalarFunctionDataSet(Arrays.asList(functionItem),
+                new InMemoryDataSet(header, rows));
+        assertTrue(dataSet.next());
+        assertEquals(42, ((Number) dataSet.getRow().getValue(0)).intValue());
+        assertFalse(dataSet.next());
+        dataSet.close();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.data;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+
+import junit.framework.TestCase;
+
+public class ZoneMapTest extends TestCase {
+
+    private final MutableColumn dateColumn = new MutableColumn("date", ColumnType.VARCHAR, null, 0, true);
+    private final MutableColumn nameColumn = new MutableColumn("name", ColumnType.VARCHAR, null, 1, true);
+    private final MutableColumn otherColumn = new MutableColumn("other", ColumnType.VARCHAR, null, 2, true);
+
+    private final File dataFile = new File("target/ZoneMapTest.dat");
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Files.write(dataFile.toPath(), "data".getBytes());
+    }
+
+    private ZoneMap createZoneMap() {
+        final ZoneMap.Builder builder = new ZoneMap.Builder(dataFile, 2, new int[] { 0, 1 });
+        builder.addRecord(0, new Object[] { "2015-01-01", "foo" });
+        builder.addRecord(10, new Object[] { "2015-01-02", null });
+        builder.addRecord(20, new Object[] { "2015-02-01", "bar" });
+        builder.addRecord(30, new Object[] { "2015-02-15", "baz" });
+        builder.addRecord(40, new Object[] { null, null });
+        return builder.build();
+    }
+
+    private FilterItem filter(MutableColumn column, OperatorType operator, Object operand) {
+        return new FilterItem(new SelectItem(column), operator, operand);
+    }
+
+    private String matching(ZoneMap zoneMap, FilterItem... whereItems) {
+        return Arrays.toString(zoneMap.getMatchingBlocks(Arrays.asList(whereItems)));
+    }
+
+    public void testBlocks() throws Exception {
+        final ZoneMap zoneMap = createZoneMap();
+        assertEquals(3, zoneMap.getBlockCount());
+        assertEquals(20, zoneMap.getBlockOffset(1));
+        assertEquals(1, zoneMap.getBlockRecordCount(2));
+        assertTrue(zoneMap.isValidFor(dataFile));
+
+        final ZoneMap.Builder builder = new ZoneMap.Builder(dataFile, 2, new int[] { 0 });
+        builder.addRecord(0, new Object[] { 1 });
+        assertNull(builder.build());
+    }
+
+    public void testCanMatch() throws Exception {
+        final ZoneMap zoneMap = createZoneMap();
+
+        assertEquals("[false, true, false]", matching(zoneMap, filter(dateColumn, OperatorType.EQUALS_TO, "2015-02-01")));
+        assertEquals("[false, true, false]",
+                matching(zoneMap, filter(dateColumn, OperatorType.GREATER_THAN, "2015-01-02")));
+        assertEquals("[true, true, false]",
+                matching(zoneMap, filter(dateColumn, OperatorType.LESS_THAN_OR_EQUAL, "2015-02-01")));
+        assertEquals("[false, false, true]", matching(zoneMap, filter(dateColumn, OperatorType.EQUALS_TO, null)));
+        assertEquals("[true, true, false]", matching(zoneMap, filter(dateColumn, OperatorType.DIFFERENT_FROM, null)));
+        assertEquals("[true, true, true]",
+                matching(zoneMap, filter(dateColumn, OperatorType.DIFFERENT_FROM, "2015-01-01")));
+        assertEquals("[false, true, false]", matching(zoneMap, filter(dateColumn, OperatorType.LIKE, "2015-02%")));
+        assertEquals("[true, true, false]", matching(zoneMap, filter(dateColumn, OperatorType.LIKE, "2015%")));
+        assertEquals("[true, true, false]", matching(zoneMap, filter(dateColumn, OperatorType.NOT_LIKE, "2015%")));
+        assertEquals("[true, false, false]",
+                matching(zoneMap, filter(dateColumn, OperatorType.IN, new String[] { "2015-01-02", "2016" })));
+
+        // columns that are not tracked never exclude blocks
+        assertEquals("[true, true, true]", matching(zoneMap, filter(otherColumn, OperatorType.EQUALS_TO, "foo")));
+
+        // AND and OR combinations
+        assertEquals("[true, false, false]", matching(zoneMap, filter(nameColumn, OperatorType.EQUALS_TO, "foo"),
+                filter(dateColumn, OperatorType.LESS_THAN, "2015-02")));
+        assertEquals("[true, true, false]", matching(zoneMap, new FilterItem(LogicalOperator.OR,
+                filter(nameColumn, OperatorType.EQUALS_TO, "foo"), filter(nameColumn, OperatorType.EQUALS_TO, "bar"))));
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        final File zoneMapFile = ZoneMap.getZoneMapFile(dataFile);
+        createZoneMap().save(dataFile);
+        assertTrue(zoneMapFile.exists());
+
+        final ZoneMap loaded = ZoneMap.load(dataFile, 2, new int[] { 0, 1 });
+        assertNotNull(loaded);
+        assertEquals(3, loaded.getBlockCount());
+        assertEquals("[false, true, false]", matching(loaded, filter(nameColumn, OperatorType.EQUALS_TO, "baz")));
+
+        assertNull(ZoneMap.load(dataFile, 3, new int[] { 0, 1 }));
+        assertNull(ZoneMap.load(dataFile, 2, new int[] { 0 }));
+
+        // changing the data file makes the zone map invalid
+        Files.write(dataFile.toPath(), "more data".getBytes());
+        assertFalse(loaded.isValidFor(dataFile));
+        assertNull(ZoneMap.load(dataFile, 2, new int[] { 0, 1 }));
+
+        ZoneMap.delete(dataFile);
+        assertFalse(zoneMapFile.exists());
+    }
+}
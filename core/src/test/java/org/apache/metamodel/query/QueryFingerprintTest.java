@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.query;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.apache.metamodel.MetaModelTestCase;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Schema;
+import org.apache.metamodel.schema.Table;
+
+public class QueryFingerprintTest extends MetaModelTestCase {
+
+    private final Schema _schema = getExampleSchema();
+    private final Table _table = _schema.getTableByName(TABLE_CONTRIBUTOR);
+    private final Column _nameColumn = _table.getColumnByName(COLUMN_CONTRIBUTOR_NAME);
+    private final Column _idColumn = _table.getColumnByName(COLUMN_CONTRIBUTOR_CONTRIBUTOR_ID);
+
+    private Query createQuery(Object operand) {
+        return new Query().from(_table).select(_nameColumn).where(_idColumn, OperatorType.GREATER_THAN, operand)
+                .orderBy(_nameColumn);
+    }
+
+    public void testEqualsForIdenticallyStructuredQueries() throws Exception {
+        final QueryFingerprint fingerprint1 = new QueryFingerprint(createQuery(1));
+        final QueryFingerprint fingerprint2 = new QueryFingerprint(createQuery(1));
+        assertEquals(fingerprint1, fingerprint2);
+        assertEquals(fingerprint1.hashCode(), fingerprint2.hashCode());
+
+        final Query query = createQuery(1);
+        assertEquals(new QueryFingerprint(query), new QueryFingerprint(query.clone()));
+
+        assertEquals(new QueryFingerprint(createQuery(new QueryParameter())), new QueryFingerprint(
+                createQuery(new QueryParameter())));
+    }
+
+    public void testDifferentOperands() throws Exception {
+        final QueryFingerprint fingerprint = new QueryFingerprint(createQuery(1));
+        assertFalse(fingerprint.equals(new QueryFingerprint(createQuery(2))));
+        assertFalse(fingerprint.equals(new QueryFingerprint(createQuery(1L))));
+        assertFalse(fingerprint.equals(new QueryFingerprint(createQuery("1"))));
+        assertFalse(fingerprint.equals(new QueryFingerprint(createQuery(new QueryParameter()))));
+
+        // dates and timestamps may be equal, but are rendered differently
+        final long time = System.currentTimeMillis();
+        assertFalse(new QueryFingerprint(createQuery(new Date(time))).equals(new QueryFingerprint(
+                createQuery(new Timestamp(time)))));
+    }
+
+    public void testModifiedQuery() throws Exception {
+        final Query query = createQuery(1);
+        final QueryFingerprint fingerprint = new QueryFingerprint(query);
+
+        query.setMaxRows(10);
+        final QueryFingerprint maxRowsFingerprint = new QueryFingerprint(query);
+        assertFalse(fingerprint.equals(maxRowsFingerprint));
+
+        query.setFirstRow(5);
+        final QueryFingerprint firstRowFingerprint = new QueryFingerprint(query);
+        assertFalse(maxRowsFingerprint.equals(firstRowFingerprint));
+
+        query.getSelectClause().setDistinct(true);
+        final QueryFingerprint distinctFingerprint = new QueryFingerprint(query);
+        assertFalse(firstRowFingerprint.equals(distinctFingerprint));
+
+        query.getSelectClause().getItem(0).setAlias("n");
+        final QueryFingerprint selectAliasFingerprint = new QueryFingerprint(query);
+        assertFalse(distinctFingerprint.equals(selectAliasFingerprint));
+
+        query.getFromClause().getItem(0).setAlias("c");
+        final QueryFingerprint fromAliasFingerprint = new QueryFingerprint(query);
+        assertFalse(selectAliasFingerprint.equals(fromAliasFingerprint));
+
+        query.getOrderByClause().getItem(0).setDirection(OrderByItem.Direction.DESC);
+        final QueryFingerprint directionFingerprint = new QueryFingerprint(query);
+        assertFalse(fromAliasFingerprint.equals(directionFingerprint));
+
+        query.groupBy(_nameColumn);
+        assertFalse(directionFingerprint.equals(new QueryFingerprint(query)));
+
+        // the original fingerprint is not affected by the modifications
+        assertEquals(fingerprint, new QueryFingerprint(createQuery(1)));
+    }
+
+    public void testModifiedOperand() throws Exception {
+        final Date date = new Date(1000);
+        final QueryFingerprint fingerprint = new QueryFingerprint(createQuery(date));
+
+        date.setTime(2000);
+        assertFalse(fingerprint.equals(new QueryFingerprint(createQuery(date))));
+        assertEquals(fingerprint, new QueryFingerprint(createQuery(new Date(1000))));
+    }
+
+    public void testCompoundFilterAndSubQuery() throws Exception {
+        final Query subQuery = new Query().from(_table).select(_idColumn).where(
+                new FilterItem(LogicalOperator.OR, new FilterItem(new SelectItem(_nameColumn),
+                        OperatorType.EQUALS_TO, "foo"), new FilterItem(new SelectItem(_nameColumn),
+                        OperatorType.EQUALS_TO, null)));
+        final Query query1 = new Query().from(new FromItem(subQuery).setAlias("sub")).selectCount();
+        final Query query2 = query1.clone();
+        assertEquals(new QueryFingerprint(query1), new QueryFingerprint(query2));
+
+        query2.getFromClause().getItem(0).getSubQuery().where(_idColumn, OperatorType.EQUALS_TO, 1);
+        assertFalse(new QueryFingerprint(query1).equals(new QueryFingerprint(query2)));
+    }
+}
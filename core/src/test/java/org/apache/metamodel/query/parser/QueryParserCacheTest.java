@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.query.parser;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.MockDataContext;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+
+import junit.framework.TestCase;
+
+public class QueryParserCacheTest extends TestCase {
+
+    private MockDataContext dc;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dc = new MockDataContext("sch", "tbl", "foo");
+
+        MutableColumn col = (MutableColumn) dc.getColumnByQualifiedLabel("tbl.baz");
+        col.setType(ColumnType.INTEGER);
+    }
+
+    public void testCreateTemplateString() throws Exception {
+        assertEquals("SELECT foo FROM sch.tbl WHERE ? LIMIT 10", createTemplateString(
+                "SELECT foo FROM sch.tbl WHERE foo = 'hello world' AND baz > -42 LIMIT 10"));
+        assertEquals("SELECT foo FROM sch.tbl WHERE ?", createTemplateString(
+                "SELECT foo FROM sch.tbl WHERE (foo= 1) AND (foo LIKE 'w%' OR baz IN (1,2))"));
+        assertEquals("select foo from sch.tbl where ? group by foo order by foo", createTemplateString(
+                "select foo from sch.tbl where foo = 'a OR b' group by foo order by foo"));
+        assertEquals("SELECT foo FROM sch.tbl ORDER BY foo", createTemplateString(
+                "SELECT foo FROM sch.tbl ORDER BY foo"));
+    }
+
+    private String createTemplateString(String queryString) {
+        return QueryParserCache.createTemplateString(new QueryParser(dc, queryString));
+    }
+
+    public void testParseSameAsQueryParser() throws Exception {
+        final QueryParserCache cache = new QueryParserCache(dc, 10);
+        final String[] queryStrings = { "SELECT foo FROM sch.tbl WHERE foo = 'hello' AND baz > 42",
+                "select foo from sch.tbl where (foo= 1) and (foo=2)",
+                "SELECT foo FROM sch.tbl WHERE foo LIKE 'w%' OR baz < 3 ORDER BY foo DESC LIMIT 2 OFFSET 1",
+                "SELECT foo FROM sch.tbl WHERE baz IN (1,2,3) AND foo <> 'it\\'s'",
+                "SELECT COUNT(*) FROM sch.tbl WHERE baz = 1.5",
+                "SELECT foo FROM sch.tbl WHERE foo = 'a b' GROUP BY foo HAVING COUNT(*) > 1 ORDER BY foo" };
+
+        for (String queryString : queryStrings) {
+            final Query expected = new QueryParser(dc, queryString).parse();
+            for (int i = 0; i < 2; i++) {
+                final Query query = cache.parse(queryString);
+                assertEquals(expected.toSql(), query.toSql());
+                assertEquals(expected, query);
+                assertOperandTypes(expected.getWhereClause().getItems(), query.getWhereClause().getItems());
+            }
+        }
+    }
+
+    private void assertOperandTypes(List<FilterItem> expected, List<FilterItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final FilterItem expectedItem = expected.get(i);
+            final FilterItem actualItem = actual.get(i);
+            if (expectedItem.isCompoundFilter()) {
+                assertOperandTypes(Arrays.asList(expectedItem.getChildItems()),
+                        Arrays.asList(actualItem.getChildItems()));
+            } else if (expectedItem.getOperand() != null) {
+                assertEquals(expectedItem.getOperand().getClass(), actualItem.getOperand().getClass());
+            }
+        }
+    }
+
+    public void testLiteralVariantsShareTemplate() throws Exception {
+        final QueryParserCache cache = new QueryParserCache(dc, 10);
+
+        Query q1 = cache.parse("SELECT foo FROM sch.tbl WHERE foo = 'hello' AND baz > 1");
+        Query q2 = cache.parse("SELECT foo FROM sch.tbl WHERE foo = 'world' AND baz > 2");
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        assertEquals("SELECT tbl.foo FROM sch.tbl WHERE tbl.foo = 'hello' AND tbl.baz > 1", q1.toSql());
+        assertEquals("SELECT tbl.foo FROM sch.tbl WHERE tbl.foo = 'world' AND tbl.baz > 2", q2.toSql());
+    }
+
+    public void testWhereClausesThatAreNotLiteralVariants() throws Exception {
+        final QueryParserCache cache = new QueryParserCache(dc, 10);
+
+        final String[] queryStrings = { "SELECT foo FROM sch.tbl WHERE foo = 'a' = 'b'",
+                "SELECT foo FROM sch.tbl WHERE 1 = 1", "SELECT foo FROM sch.tbl WHERE foo = bar",
+                "SELECT foo FROM sch.tbl WHERE foo = 'a b' OR baz IS NULL" };
+        for (String queryString : queryStrings) {
+            final Query expected = new QueryParser(dc, queryString).parse();
+            for (int i = 0; i < 3; i++) {
+                final Query query = cache.parse(queryString);
+                assertEquals(expected.toSql(), query.toSql());
+                assertEquals(expected, query);
+            }
+        }
+
+        // the WHERE clause is parsed for every query, based on a shared
+        // template
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(11, cache.getHitCount());
+    }
+
+    public void testParameterMarkersAreNotParsed() throws Exception {
+        final QueryParserCache cache = new QueryParserCache(dc, 10);
+        try {
+            cache.parse("SELECT foo FROM sch.tbl WHERE baz = ?");
+            fail("Exception expected");
+        } catch (QueryParserException e) {
+            assertEquals("Could not parse operand: ?", e.getMessage());
+        }
+    }
+
+    public void testReturnedQueriesAreDefensiveCopies() throws Exception {
+        final QueryParserCache cache = new QueryParserCache(dc, 10);
+
+        Query q1 = cache.parse("SELECT foo FROM sch.tbl WHERE foo = 'hello'");
+        q1.setMaxRows(5);
+        q1.where("bar = 'x'");
+        q1.getSelectClause().getItem(0).setAlias("f");
+
+        Query q2 = cache.parse("SELECT foo FROM sch.tbl WHERE foo = 'hello'");
+        assertEquals("SELECT tbl.foo FROM sch.tbl WHERE tbl.foo = 'hello'", q2.toSql());
+    }
+
+    public void testMaxSize() throws Exception {
+        final QueryParserCache cache = new QueryParserCache(dc, 2);
+        cache.parse("SELECT foo FROM sch.tbl");
+        cache.parse("SELECT bar FROM sch.tbl");
+        cache.parse("SELECT baz FROM sch.tbl");
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    public void testDataContextIntegration() throws Exception {
+        assertNull(dc.getQueryParserCache());
+        dc.setQueryParserCacheSize(100);
+
+        final QueryParserCache cache = dc.getQueryParserCache();
+        assertNotNull(cache);
+
+        dc.parseQuery("SELECT foo FROM sch.tbl WHERE foo = 'hello'");
+        dc.parseQuery("SELECT foo FROM sch.tbl WHERE foo = 'world'");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+
+        dc.refreshSchemas();
+        assertEquals(0, cache.size());
+
+        dc.setQueryParserCacheSize(0);
+        assertNull(dc.getQueryParserCache());
+    }
+}
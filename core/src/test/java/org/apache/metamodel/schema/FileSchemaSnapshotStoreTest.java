@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.schema;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import org.apache.metamodel.util.FileHelper;
+
+import junit.framework.TestCase;
+
+public class FileSchemaSnapshotStoreTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File("target/tmp/FileSchemaSnapshotStoreTest." + getName());
+        if (directory.exists()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+        }
+    }
+
+    private Schema createSchema() {
+        MutableSchema schema = new MutableSchema("sch");
+        MutableTable table = new MutableTable("tbl", TableType.TABLE, schema);
+        schema.addTable(table);
+        table.addColumn(new MutableColumn("foo", ColumnType.VARCHAR, table, 0, true));
+        table.addColumn(new MutableColumn("bar", ColumnType.INTEGER, table, 1, false));
+        return schema;
+    }
+
+    public void testWriteAndRead() throws Exception {
+        FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+        assertNull(store.read("my:key/sch", "v1"));
+
+        store.write("my:key/sch", "v1", createSchema());
+
+        Schema schema = store.read("my:key/sch", "v1");
+        assertNotNull(schema);
+        assertEquals("sch", schema.getName());
+        assertEquals("[foo, bar]", Arrays.toString(schema.getTableByName("tbl").getColumnNames()));
+        assertEquals(ColumnType.INTEGER, schema.getTableByName("tbl").getColumnByName("bar").getType());
+
+        assertNull(store.read("my:key/sch", "v2"));
+        assertNull(store.read("other:key/sch", "v1"));
+    }
+
+    public void testRemove() throws Exception {
+        FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+        store.write("key", "v1", createSchema());
+        assertNotNull(store.read("key", "v1"));
+
+        store.remove("key");
+        assertNull(store.read("key", "v1"));
+        assertFalse(store.getFile("key").exists());
+    }
+
+    public void testTimeToLive() throws Exception {
+        FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory, 0);
+        store.write("key", "v1", createSchema());
+        Thread.sleep(10);
+        assertNull(store.read("key", "v1"));
+
+        store = new FileSchemaSnapshotStore(directory, 60000);
+        assertNotNull(store.read("key", "v1"));
+    }
+
+    public void testCorruptFileIsIgnored() throws Exception {
+        FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+        store.write("key", "v1", createSchema());
+
+        FileHelper.writeStringAsFile(store.getFile("key"), "this is not a snapshot");
+        assertNull(store.read("key", "v1"));
+
+        // a new snapshot replaces the corrupt one
+        store.write("key", "v1", createSchema());
+        assertNotNull(store.read("key", "v1"));
+    }
+
+    public void testAllColumnTypes() throws Exception {
+        final MutableSchema schema = new MutableSchema("sch");
+        final MutableTable table = new MutableTable("tbl", TableType.TABLE, schema);
+        schema.addTable(table);
+        for (Field field : ColumnType.class.getFields()) {
+            if (field.getType() == ColumnType.class) {
+                final ColumnType type = (ColumnType) field.get(null);
+                table.addColumn(new MutableColumn(field.getName(), type, table, table.getColumnCount(), true));
+            }
+        }
+
+        final FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+        store.write("key", "v1", schema);
+        final Schema snapshot = store.read("key", "v1");
+        assertNotNull(snapshot);
+        assertEquals(table.getColumnCount(), snapshot.getTableByName("tbl").getColumnCount());
+        assertEquals(ColumnType.MAP, snapshot.getTableByName("tbl").getColumnByName("MAP").getType());
+    }
+
+    public void testOtherClassesAreNotDeserialized() throws Exception {
+        final FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+        store.write("key", "v1", createSchema());
+
+        final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(store.getFile("key")));
+        out.writeInt(1);
+        out.writeUTF("key");
+        out.writeUTF("v1");
+        out.writeLong(System.currentTimeMillis());
+        out.writeObject(new File("not a schema"));
+        out.close();
+
+        assertNull(store.read("key", "v1"));
+        assertFalse(store.isClassAllowed(File.class.getName()));
+        assertTrue(store.isClassAllowed(MutableSchema.class.getName()));
+    }
+}
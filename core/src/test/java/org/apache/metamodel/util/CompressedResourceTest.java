@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class CompressedResourceTest extends TestCase {
+
+    private static byte[] createData(int size) {
+        final StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append("line ").append(i).append(',').append(i * 31 % 97).append('\n');
+            i++;
+        }
+        return sb.substring(0, size).getBytes();
+    }
+
+    private static byte[] gzip(byte[] data, int offset, int length) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data, offset, length);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        writeShort(out, (int) (value & 0xffff));
+        writeShort(out, (int) ((value >> 16) & 0xffff));
+    }
+
+    /**
+     * Creates block gzip (BGZF) data, including the empty end-of-file block.
+     */
+    private static byte[] blockGzip(byte[] data, int blockSize) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset <= data.length; offset += blockSize) {
+            final int length = Math.min(blockSize, data.length - offset);
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            final byte[] buffer = new byte[length + 1024];
+            final int compressedLength = deflater.deflate(buffer);
+            deflater.end();
+            final CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+
+            out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff }, 0, 10);
+            writeShort(out, 6);
+            out.write(new byte[] { 'B', 'C', 2, 0 }, 0, 4);
+            writeShort(out, 18 + compressedLength + 8 - 1);
+            out.write(buffer, 0, compressedLength);
+            writeInt(out, crc.getValue());
+            writeInt(out, length);
+            if (length == 0) {
+                break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[10000];
+        try {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    public void testIsCompressed() throws Exception {
+        assertTrue(CompressedResource.isCompressed(new InMemoryResource("/data/foo.csv.gz")));
+        assertTrue(CompressedResource.isCompressed(new InMemoryResource("/data/foo.JSON.GZIP")));
+        assertTrue(CompressedResource.isCompressed(new InMemoryResource("/data/foo.bgz")));
+        assertFalse(CompressedResource.isCompressed(new InMemoryResource("/data/foo.csv")));
+
+        final Resource resource = CompressedResource.wrapIfCompressed(new InMemoryResource("/data/foo.csv.gz"));
+        assertTrue(resource instanceof CompressedResource);
+        assertSame(resource, CompressedResource.wrapIfCompressed(resource));
+        assertEquals("foo.csv.gz", resource.getName());
+    }
+
+    public void testReadConcatenatedMembers() throws Exception {
+        final byte[] data = createData(300000);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(gzip(data, 0, 100000));
+        out.write(gzip(data, 100000, 200000));
+
+        final InMemoryResource delegate = new InMemoryResource("foo.csv.gz", out.toByteArray(), 0);
+        assertTrue(Arrays.equals(data, readAll(new CompressedResource(delegate).read())));
+    }
+
+    public void testReadBlockGzipInParallel() throws Exception {
+        final byte[] data = createData(1000000);
+        final byte[] compressed = blockGzip(data, 60000);
+
+        assertTrue(Arrays.equals(data, readAll(new GzipReadAheadInputStream(new ByteArrayInputStream(compressed),
+                4))));
+        assertTrue(Arrays.equals(data, readAll(new GzipReadAheadInputStream(new ByteArrayInputStream(compressed),
+                1))));
+
+        // a regular gzip member following the blocks
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(compressed, 0, compressed.length);
+        out.write(gzip(data, 0, 1000));
+        final byte[] expected = Arrays.copyOf(data, data.length + 1000);
+        System.arraycopy(data, 0, expected, data.length, 1000);
+        assertTrue(Arrays.equals(expected, readAll(new GzipReadAheadInputStream(new ByteArrayInputStream(out
+                .toByteArray()), 4))));
+    }
+
+    public void testCorruptData() throws Exception {
+        try {
+            new CompressedResource(new InMemoryResource("foo.gz", "hello".getBytes(), 0)).read();
+            fail("Exception expected");
+        } catch (ResourceException e) {
+            assertEquals("Not in GZIP format", e.getCause().getMessage());
+        }
+
+        final byte[] compressed = blockGzip(createData(100000), 60000);
+        compressed[100] = (byte) ~compressed[100];
+        try {
+            readAll(new GzipReadAheadInputStream(new ByteArrayInputStream(compressed), 4));
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt block gzip member"));
+        }
+    }
+
+    public void testWriteAndAppend() throws Exception {
+        final InMemoryResource delegate = new InMemoryResource("foo.csv.gz");
+        final CompressedResource resource = new CompressedResource(delegate);
+        assertEquals(0, readAll(resource.read()).length);
+
+        OutputStream out = resource.write();
+        out.write("hello\n".getBytes());
+        out.close();
+        out = resource.append();
+        out.write("world\n".getBytes());
+        out.close();
+
+        assertEquals("hello\nworld\n", new String(readAll(resource.read())));
+        // the decompressed size is unknown
+        assertEquals(-1, resource.getSize());
+        assertTrue(delegate.getSize() > 0);
+        // the delegate holds two gzip members
+        assertEquals("hello\nworld\n", new String(readAll(new GZIPInputStream(delegate.read()))));
+    }
+
+    public void testCloseBeforeEnd() throws Exception {
+        final byte[] data = createData(5000000);
+        final InputStream in = new GzipReadAheadInputStream(new ByteArrayInputStream(gzip(data, 0, data.length)), 4);
+        assertEquals('l', in.read());
+        in.close();
+        try {
+            in.read();
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertEquals("Stream closed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.SharedExecutorService;
+
+/**
+ * A {@link Writer} which collects characters in chunks and hands them to a
+ * background task, which writes them to a delegate writer. This moves the
+ * character encoding and I/O of large inserts out of the thread that produces
+ * the lines.
+ *
+ * Errors of the background task are rethrown by the next call to one of the
+ * write methods, {@link #flush()} or {@link #close()}. If the background task
+ * stops (eg. because it is interrupted), writers waiting for room in the queue
+ * fail instead of waiting forever. Instances are not thread safe.
+ */
+final class CsvBackgroundWriter extends Writer {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int QUEUED_CHUNKS = 16;
+    private static final long WAIT_TIMEOUT_MILLIS = 100;
+
+    private static final Object END = new Object();
+
+    private final Writer _delegate;
+    private final BlockingQueue<Object> _queue;
+    private final Future<?> _future;
+
+    private StringBuilder _chunk;
+    private volatile Exception _error;
+    private volatile boolean _stopped;
+    private boolean _closed;
+
+    public CsvBackgroundWriter(Writer delegate) {
+        _delegate = delegate;
+        _queue = new ArrayBlockingQueue<Object>(QUEUED_CHUNKS);
+        _chunk = new StringBuilder(CHUNK_SIZE);
+        _future = SharedExecutorService.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                final Object item;
+                try {
+                    item = _queue.take();
+                } catch (InterruptedException e) {
+                    if (_error == null) {
+                        _error = new InterruptedIOException("CSV background writer was interrupted");
+                    }
+                    return;
+                }
+                if (item == END) {
+                    return;
+                }
+                try {
+                    if (item instanceof CountDownLatch) {
+                        if (_error == null) {
+                            _delegate.flush();
+                        }
+                        ((CountDownLatch) item).countDown();
+                    } else if (_error == null) {
+                        // keep draining after an error, so that the producer
+                        // is never blocked
+                        _delegate.write(item.toString());
+                    }
+                } catch (Exception e) {
+                    _error = e;
+                }
+            }
+        } finally {
+            _stopped = true;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        checkState();
+        _chunk.append(cbuf, off, len);
+        if (_chunk.length() >= CHUNK_SIZE) {
+            enqueueChunk();
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        checkState();
+        _chunk.append(str, off, off + len);
+        if (_chunk.length() >= CHUNK_SIZE) {
+            enqueueChunk();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        checkState();
+        enqueueChunk();
+        final CountDownLatch latch = new CountDownLatch(1);
+        enqueue(latch);
+        try {
+            while (!latch.await(WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (_stopped) {
+                    checkError();
+                    throw new IOException("CSV background writer has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while flushing CSV writer");
+        }
+        checkError();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        try {
+            if (_error == null) {
+                enqueueChunk();
+            }
+            enqueue(END);
+            _closed = true;
+            _future.get();
+            checkError();
+            _delegate.close();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while closing CSV writer");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            _closed = true;
+            FileHelper.safeClose(_delegate);
+        }
+    }
+
+    private void enqueueChunk() throws IOException {
+        if (_chunk.length() > 0) {
+            enqueue(_chunk);
+            _chunk = new StringBuilder(CHUNK_SIZE);
+        }
+    }
+
+    private void enqueue(Object item) throws IOException {
+        try {
+            while (!_queue.offer(item, WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (_stopped) {
+                    // nobody is going to take the item
+                    checkError();
+                    throw new IOException("CSV background writer has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while writing CSV data");
+        }
+    }
+
+    private void checkState() throws IOException {
+        if (_closed) {
+            throw new IOException("Writer is closed");
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        final Exception error = _error;
+        if (error != null) {
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            throw new IOException(error);
+        }
+    }
+}
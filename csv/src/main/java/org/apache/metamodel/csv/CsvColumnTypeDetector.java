@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import org.apache.metamodel.schema.ColumnType;
+
+/**
+ * Infers the type of a CSV column from a sample of its values. Either:
+ * Boolean, Integer, BigInt, Double, Date, Timestamp or String. Empty values
+ * are ignored, and a column without any non-empty values is a String column.
+ */
+final class CsvColumnTypeDetector {
+
+    private boolean _valueRegistered = false;
+    private boolean _booleanPossible = true;
+    private boolean _integerPossible = true;
+    private boolean _bigIntPossible = true;
+    private boolean _doublePossible = true;
+    private boolean _datePossible = true;
+    private boolean _timestampPossible = true;
+
+    public void registerValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        _valueRegistered = true;
+
+        if (_booleanPossible && !CsvValueParser.isBooleanWord(value)) {
+            _booleanPossible = false;
+        }
+        if (_bigIntPossible) {
+            final long longValue = CsvValueParser.parseLong(value);
+            if (longValue == CsvValueParser.NOT_A_LONG) {
+                _bigIntPossible = false;
+                _integerPossible = false;
+            } else if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+                _integerPossible = false;
+            }
+        }
+        if (_doublePossible && !CsvValueParser.isDecimal(value)) {
+            _doublePossible = false;
+        }
+        if (_datePossible || _timestampPossible) {
+            final ColumnType dateType = CsvValueParser.getDateType(value);
+            if (dateType != ColumnType.DATE) {
+                _datePossible = false;
+            }
+            if (dateType == null) {
+                _timestampPossible = false;
+            }
+        }
+    }
+
+    public ColumnType getColumnType() {
+        if (!_valueRegistered) {
+            return ColumnType.STRING;
+        } else if (_booleanPossible) {
+            return ColumnType.BOOLEAN;
+        } else if (_integerPossible) {
+            return ColumnType.INTEGER;
+        } else if (_bigIntPossible) {
+            return ColumnType.BIGINT;
+        } else if (_doublePossible) {
+            return ColumnType.DOUBLE;
+        } else if (_datePossible) {
+            return ColumnType.DATE;
+        } else if (_timestampPossible) {
+            return ColumnType.TIMESTAMP;
+        }
+        return ColumnType.STRING;
+    }
+}
@@ -28,17 +28,29 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.QueryPostprocessDataContext;
 import org.apache.metamodel.UpdateScript;
 import org.apache.metamodel.UpdateableDataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.EmptyDataSet;
+import org.apache.metamodel.data.FirstRowDataSet;
+import org.apache.metamodel.data.ZoneMap;
+import org.apache.metamodel.query.CompiledQuery;
 import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.CollectionUtils;
+import org.apache.metamodel.util.CompressedResource;
 import org.apache.metamodel.util.FileHelper;
 import org.apache.metamodel.util.FileResource;
 import org.apache.metamodel.util.Func;
@@ -58,11 +70,35 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
 
     private static final Logger logger = LoggerFactory.getLogger(CsvDataContext.class);
 
+    /**
+     * The minimum number of bytes that each thread should scan in a parallel
+     * scan. Files smaller than twice this size are always scanned serially.
+     */
+    public static final long PARALLEL_SCAN_MIN_BYTES_PER_THREAD = 4 * 1024 * 1024;
+
+    /**
+     * The default size of the buffer used when writing to the CSV resource.
+     */
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 1024 * 1024;
+
     private final Object WRITE_LOCK = new Object();
 
     private final Resource _resource;
     private final CsvConfiguration _configuration;
     private final boolean _writable;
+    private volatile int _parallelScanThreads = 1;
+    private volatile boolean _parallelScanOrdered = true;
+    private volatile boolean _memoryMappedScanning = false;
+    private volatile boolean _byteLevelCounting = true;
+    private volatile int _rowIndexInterval = 0;
+    private volatile CsvRowIndex _rowIndex;
+    private volatile int _zoneMapBlockSize = 0;
+    private volatile String[] _zoneMapColumnNames = new String[0];
+    private volatile ZoneMap _zoneMap;
+    private volatile int _writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+    private volatile boolean _backgroundWriting = false;
+    private volatile int _typeInferenceSampleSize = 0;
+    private volatile CsvUpdateCallback _activeUpdateCallback;
 
     /**
      * Constructs a CSV DataContext based on a file
@@ -71,6 +107,10 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
      * case of non-existing files, a file will be automatically created
      * when a CREATE TABLE update is executed on the DataContext.
      * 
+     * Gzip compressed files (see
+     * {@link CompressedResource#isCompressed(Resource)}) are decompressed
+     * while reading, and are read-only.
+     * 
      * @param file
      * @param configuration
      */
@@ -81,11 +121,23 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         if (configuration == null) {
             throw new IllegalArgumentException("CsvConfiguration cannot be null");
         }
-        _resource = new FileResource(file);
+        _resource = CompressedResource.wrapIfCompressed(new FileResource(file));
         _configuration = configuration;
-        _writable = true;
+        _writable = !(_resource instanceof CompressedResource);
     }
 
+    /**
+     * Constructs a CSV DataContext based on a {@link Resource}.
+     * 
+     * Gzip compressed resources (see
+     * {@link CompressedResource#isCompressed(Resource)}) are decompressed
+     * while reading, and are read-only, since appending adds a gzip member
+     * per update and rewriting recompresses the entire resource. To update a
+     * compressed resource anyway, pass a {@link CompressedResource}.
+     * 
+     * @param resource
+     * @param configuration
+     */
     public CsvDataContext(Resource resource, CsvConfiguration configuration) {
         if (resource == null) {
             throw new IllegalArgumentException("File cannot be null");
@@ -93,9 +145,9 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         if (configuration == null) {
             throw new IllegalArgumentException("CsvConfiguration cannot be null");
         }
-        _resource = resource;
+        _resource = CompressedResource.wrapIfCompressed(resource);
         _configuration = configuration;
-        _writable = !resource.isReadOnly();
+        _writable = !resource.isReadOnly() && _resource == resource;
     }
 
     /**
@@ -213,12 +265,233 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
      */
     @Deprecated
     public File getFile() {
-        if (_resource instanceof FileResource) {
-            return ((FileResource) _resource).getFile();
+        Resource resource = _resource;
+        if (resource instanceof CompressedResource) {
+            resource = ((CompressedResource) resource).getDelegate();
+        }
+        if (resource instanceof FileResource) {
+            return ((FileResource) resource).getFile();
         }
         return null;
     }
 
+    /**
+     * Sets the number of threads to use for scanning the CSV file. If more
+     * than one thread is configured, large single-line CSV files (see
+     * {@link CsvConfiguration#isMultilineValues()}) on the local file system
+     * will be split into ranges that are parsed and filtered in parallel.
+     * 
+     * Parallel scanning requires an ASCII compatible encoding (eg. UTF-8 or
+     * ISO-8859-1) and is not used if
+     * {@link CsvConfiguration#isFailOnInconsistentRowLength()} is set.
+     * 
+     * @param parallelScanThreads
+     *            the number of threads, or 1 (default) to disable parallel
+     *            scanning
+     */
+    public void setParallelScanThreads(int parallelScanThreads) {
+        if (parallelScanThreads < 1) {
+            throw new IllegalArgumentException("Parallel scan threads must be a positive number");
+        }
+        _parallelScanThreads = parallelScanThreads;
+    }
+
+    public int getParallelScanThreads() {
+        return _parallelScanThreads;
+    }
+
+    /**
+     * Sets whether parallel scans should return rows in the same order as
+     * they appear in the file (default), or in the order they are produced by
+     * the scanning threads. Unordered scans use the threads more efficiently.
+     * 
+     * @param parallelScanOrdered
+     */
+    public void setParallelScanOrdered(boolean parallelScanOrdered) {
+        _parallelScanOrdered = parallelScanOrdered;
+    }
+
+    public boolean isParallelScanOrdered() {
+        return _parallelScanOrdered;
+    }
+
+    /**
+     * Sets whether single-line CSV files (see
+     * {@link CsvConfiguration#isMultilineValues()}) on the local file system
+     * should be read using memory mapping and parsed on byte level. This
+     * avoids decoding fields that are not requested by a query, which is
+     * especially beneficial for wide files. Byte level parsing requires an
+     * ASCII compatible encoding (eg. UTF-8 or ISO-8859-1).
+     * 
+     * Disabled by default, since mapped files cannot be renamed or deleted on
+     * some platforms (notably Windows) until the mapped buffers have been
+     * garbage collected. Row indexes, zone maps, parallel scans and filtering
+     * on raw fields also parse on byte level; unless memory mapped scanning is
+     * enabled, they read the file through its channel instead of mapping it.
+     * 
+     * @param memoryMappedScanning
+     */
+    public void setMemoryMappedScanning(boolean memoryMappedScanning) {
+        _memoryMappedScanning = memoryMappedScanning;
+    }
+
+    public boolean isMemoryMappedScanning() {
+        return _memoryMappedScanning;
+    }
+
+    /**
+     * Sets whether exact COUNT(*) queries without WHERE clause on CSV files on
+     * the local file system should count the records on byte level, instead
+     * of parsing every record (see {@link CsvRecordCounter}). Byte level
+     * counting requires an ASCII compatible encoding (eg. UTF-8 or
+     * ISO-8859-1). Enabled by default.
+     * 
+     * @param byteLevelCounting
+     */
+    public void setByteLevelCounting(boolean byteLevelCounting) {
+        _byteLevelCounting = byteLevelCounting;
+    }
+
+    public boolean isByteLevelCounting() {
+        return _byteLevelCounting;
+    }
+
+    /**
+     * Enables a sidecar row index for single-line CSV files on the local file
+     * system. The index records the byte offset of every Nth record and is
+     * stored next to the CSV file, with the suffix ".rowindex". It is built
+     * during the first full scan of the file and extended when rows are
+     * inserted. With an index, paged queries (see
+     * {@link org.apache.metamodel.query.Query#setFirstRow(Integer)}) seek
+     * directly to the requested page, COUNT(*) queries are answered from the
+     * index and parallel scans (see {@link #setParallelScanThreads(int)}) are
+     * split into ranges with the same number of records.
+     * 
+     * The index is only used as long as the size and last modification time of
+     * the file match those recorded in the index.
+     * 
+     * @param rowIndexInterval
+     *            the number of records between index entries, or 0 (default)
+     *            to disable the row index
+     */
+    public void setRowIndexInterval(int rowIndexInterval) {
+        if (rowIndexInterval < 0) {
+            throw new IllegalArgumentException("Row index interval cannot be negative");
+        }
+        _rowIndexInterval = rowIndexInterval;
+    }
+
+    public int getRowIndexInterval() {
+        return _rowIndexInterval;
+    }
+
+    /**
+     * Enables a sidecar zone map (see {@link ZoneMap}) for single-line CSV
+     * files on the local file system. The zone map records the minimum and
+     * maximum value and the number of nulls of a set of columns for each block
+     * of records, and is stored next to the CSV file with the suffix
+     * ".zonemap". It is built during the first full scan of the file, and is
+     * used by queries with WHERE clauses to skip the blocks that cannot
+     * contain matching records. This is particularly effective for columns
+     * which are sorted or clustered in the file, such as timestamps in an
+     * append-only log.
+     * 
+     * Values are compared as strings. The zone map is only used as long as
+     * the size and last modification time of the file match those recorded in
+     * the zone map. It is not used if
+     * {@link CsvConfiguration#isFailOnInconsistentRowLength()} is set.
+     * 
+     * @param blockSize
+     *            the number of records per block, or 0 (default) to disable
+     *            the zone map
+     * @param columnNames
+     *            the names of the columns to track
+     */
+    public void setZoneMap(int blockSize, String... columnNames) {
+        if (blockSize < 0) {
+            throw new IllegalArgumentException("Zone map block size cannot be negative");
+        }
+        _zoneMapBlockSize = blockSize;
+        _zoneMapColumnNames = columnNames;
+    }
+
+    public int getZoneMapBlockSize() {
+        return _zoneMapBlockSize;
+    }
+
+    public String[] getZoneMapColumnNames() {
+        return _zoneMapColumnNames;
+    }
+
+    /**
+     * Sets the size of the buffer used when writing to the CSV resource in an
+     * {@link UpdateScript}. Written lines are encoded and buffered until the
+     * buffer is full or the update script completes, so large buffers reduce
+     * the number of I/O operations of bulk inserts.
+     * 
+     * @param writeBufferSize
+     *            the buffer size in bytes, see
+     *            {@link #DEFAULT_WRITE_BUFFER_SIZE}
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        if (writeBufferSize < 1) {
+            throw new IllegalArgumentException("Write buffer size must be a positive number");
+        }
+        _writeBufferSize = writeBufferSize;
+    }
+
+    public int getWriteBufferSize() {
+        return _writeBufferSize;
+    }
+
+    /**
+     * Sets whether lines written in an {@link UpdateScript} should be encoded
+     * and written to the CSV resource by a background thread, so that the
+     * thread running the update script only has to build the lines. This is
+     * beneficial for bulk inserts of many rows. Disabled by default.
+     * 
+     * @param backgroundWriting
+     */
+    public void setBackgroundWriting(boolean backgroundWriting) {
+        _backgroundWriting = backgroundWriting;
+    }
+
+    public boolean isBackgroundWriting() {
+        return _backgroundWriting;
+    }
+
+    /**
+     * Enables typed reading. The types of the columns (boolean, integer,
+     * bigint, double, date, timestamp or string) are inferred from a sample of
+     * the records, and the values of typed columns are parsed while the file
+     * is scanned, so that comparisons and aggregations like SUM and AVG work
+     * on numbers instead of converting strings over and over again. Empty
+     * values are read as nulls. Values which do not match the inferred type,
+     * eg. because they did not occur in the sample, are read as strings.
+     * 
+     * Only plain numbers (without leading zeros or grouping), the words
+     * true/false/yes/no/y/n and ISO dates and timestamps (eg. "2016-01-31" and
+     * "2016-01-31 23:59:59.999") are recognized. Changing the sample size
+     * refreshes the schema.
+     * 
+     * @param typeInferenceSampleSize
+     *            the number of records to infer the column types from, or 0
+     *            (default) to read all columns as strings
+     */
+    public void setTypeInferenceSampleSize(int typeInferenceSampleSize) {
+        if (typeInferenceSampleSize < 0) {
+            throw new IllegalArgumentException("Type inference sample size cannot be negative");
+        }
+        if (_typeInferenceSampleSize != typeInferenceSampleSize) {
+            _typeInferenceSampleSize = typeInferenceSampleSize;
+            refreshSchemas();
+        }
+    }
+
+    public int getTypeInferenceSampleSize() {
+        return _typeInferenceSampleSize;
+    }
+
     /**
      * Gets the resource that is being read from.
      * 
@@ -271,14 +544,14 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
 
     @Override
     protected Number executeCountQuery(Table table, List<FilterItem> whereItems, boolean functionApproximationAllowed) {
-        if (!functionApproximationAllowed) {
-            return null;
-        }
-        
         if (whereItems != null && !whereItems.isEmpty()) {
             return null;
         }
-        
+
+        if (!functionApproximationAllowed) {
+            return executeExactCountQuery();
+        }
+
         final long length = _resource.getSize();
         if (length < 0) {
             // METAMODEL-30: Sometimes the size of the resource is not known
@@ -334,6 +607,42 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         });
     }
 
+    /**
+     * Counts the records of the file using the row index, or on byte level
+     * (see {@link CsvRecordCounter}).
+     * 
+     * @return the exact number of records, or null if the file cannot be
+     *         counted this way
+     */
+    private Number executeExactCountQuery() {
+        if (_configuration.isFailOnInconsistentRowLength() || !isByteLevelReadable()) {
+            // inconsistent rows should fail the query, so the rows need to
+            // be parsed
+            return null;
+        }
+
+        final CsvRowIndex rowIndex = getRowIndex();
+        if (rowIndex != null) {
+            return rowIndex.getRecordCount();
+        }
+
+        if (!_byteLevelCounting) {
+            return null;
+        }
+
+        final File file = ((FileResource) _resource).getFile();
+        final long start = CsvFileRanges.getDataStartOffset(file, _configuration.getEncoding(),
+                _configuration.getColumnNameLineNumber());
+        if (start == -1) {
+            return 0;
+        }
+
+        final CsvRecordCounter counter = new CsvRecordCounter(file, _configuration);
+        final long count = counter.count(start, file.length(), _parallelScanThreads);
+        logger.debug("Counted {} records in {}", count, _resource);
+        return count;
+    }
+
     private Reader getReader(byte[] byteBuffer, String encoding) throws UnsupportedEncodingException {
         try {
             return new InputStreamReader(new ByteArrayInputStream(byteBuffer), encoding);
@@ -348,10 +657,509 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         }
     }
 
+    @Override
+    protected DataSet materializeMainSchemaTable(Table table, List<SelectItem> selectItems,
+            List<FilterItem> whereItems, int firstRow, int maxRows) {
+        final List<FilterItem> typedWhereItems = getTypedWhereItems(whereItems);
+        if (!typedWhereItems.isEmpty()) {
+            // the WHERE items on typed columns are evaluated on the parsed
+            // values, only the ones on string columns can be evaluated while
+            // scanning
+            final List<FilterItem> stringWhereItems = new ArrayList<FilterItem>();
+            for (FilterItem whereItem : whereItems) {
+                if (!typedWhereItems.contains(whereItem)) {
+                    stringWhereItems.add(whereItem);
+                }
+            }
+            final List<SelectItem> workingSelectItems = CollectionUtils.concat(true, selectItems,
+                    MetaModelHelper.getEvaluatedSelectItems(typedWhereItems));
+            DataSet dataSet = materializeMainSchemaTable(table, workingSelectItems, stringWhereItems, 1, -1);
+            dataSet = MetaModelHelper.getFiltered(dataSet, typedWhereItems);
+            dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+            dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+            return dataSet;
+        }
+
+        if (whereItems.isEmpty() && (maxRows > 0 || (firstRow > 1 && getRowIndex() != null))) {
+            // a limited scan is cheap enough as it is, and the row index
+            // makes it possible to seek to the first row
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        final List<SelectItem> workingSelectItems = CollectionUtils.concat(true, selectItems,
+                MetaModelHelper.getEvaluatedSelectItems(whereItems));
+        final CsvFieldFilter fieldFilter = createFieldFilter(table, whereItems);
+        final List<FilterItem> remainingWhereItems = (fieldFilter == null ? whereItems
+                : fieldFilter.getRemainingItems());
+        final DataSet zoneMapDataSet = materializeUsingZoneMap(table, workingSelectItems, whereItems, fieldFilter);
+        if (zoneMapDataSet != null) {
+            DataSet dataSet = MetaModelHelper.getFiltered(zoneMapDataSet, remainingWhereItems);
+            dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+            dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+            return dataSet;
+        }
+
+        final long[] boundaries = getParallelScanBoundaries(workingSelectItems);
+        if (boundaries == null) {
+            if (fieldFilter != null && createZoneMapBuilder(table) == null
+                    && (_rowIndexInterval <= 0 || getRowIndex() != null)) {
+                // evaluate the filters on the fields of each line, before
+                // rows are built (unless a full scan should build the zone
+                // map or row index)
+                DataSet dataSet = createMappedDataSet(table, workingSelectItems, fieldFilter);
+                if (dataSet != null) {
+                    dataSet = MetaModelHelper.getFiltered(dataSet, remainingWhereItems);
+                    dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+                    dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+                    return dataSet;
+                }
+            }
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        logger.debug("Scanning {} in {} parallel ranges", _resource, boundaries.length - 1);
+
+        final File file = ((FileResource) _resource).getFile();
+        DataSet dataSet = new ParallelCsvDataSet(file, _configuration, boundaries, workingSelectItems, whereItems,
+                table.getColumnCount(), _parallelScanOrdered, _memoryMappedScanning);
+        dataSet = TypedCsvDataSet.wrapIfTyped(dataSet);
+        dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+        return dataSet;
+    }
+
+    /**
+     * Determines the byte ranges to use for a parallel scan, if a parallel
+     * scan is possible and worthwhile.
+     * 
+     * @param selectItems
+     * @return the range boundaries, or null if the file should be scanned
+     *         serially
+     */
+    private long[] getParallelScanBoundaries(List<SelectItem> selectItems) {
+        final int threads = _parallelScanThreads;
+        if (threads < 2 || !(_resource instanceof FileResource)) {
+            return null;
+        }
+        if (_configuration.isMultilineValues() || _configuration.isFailOnInconsistentRowLength()
+                || !isByteLevelReadable()) {
+            return null;
+        }
+        for (SelectItem selectItem : selectItems) {
+            if (selectItem.getColumn() == null || selectItem.hasFunction()) {
+                return null;
+            }
+        }
+
+        final File file = ((FileResource) _resource).getFile();
+        final long length = file.length();
+        final int ranges = (int) Math.min(threads, length / PARALLEL_SCAN_MIN_BYTES_PER_THREAD);
+        if (ranges < 2) {
+            return null;
+        }
+
+        final CsvRowIndex rowIndex = getRowIndex();
+        if (rowIndex != null) {
+            final long[] boundaries = rowIndex.split(ranges);
+            return (boundaries.length < 3 ? null : boundaries);
+        }
+
+        final long start = CsvFileRanges.getDataStartOffset(file, _configuration.getEncoding(),
+                _configuration.getColumnNameLineNumber());
+        if (start == -1) {
+            return null;
+        }
+        final long[] boundaries = CsvFileRanges.split(file, start, length, ranges);
+        if (boundaries.length < 3) {
+            return null;
+        }
+        return boundaries;
+    }
+
+    /**
+     * Reads the blocks of the file that may contain records matching the
+     * where items, according to the zone map.
+     * 
+     * @param table
+     * @param workingSelectItems
+     * @param whereItems
+     * @return a data set of the working select items, which still needs to be
+     *         filtered, or null if the zone map is not available or would not
+     *         make it possible to skip any blocks
+     */
+    private DataSet materializeUsingZoneMap(Table table, List<SelectItem> workingSelectItems,
+            List<FilterItem> whereItems, CsvFieldFilter fieldFilter) {
+        final ZoneMap zoneMap = getZoneMap(table);
+        if (zoneMap == null) {
+            return null;
+        }
+        final Column[] columns = new Column[workingSelectItems.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = workingSelectItems.get(i).getColumn();
+            if (columns[i] == null) {
+                return null;
+            }
+        }
+
+        final boolean[] matchingBlocks = zoneMap.getMatchingBlocks(whereItems);
+        final int blockCount = matchingBlocks.length;
+        final List<Long> starts = new ArrayList<Long>();
+        final List<Long> ends = new ArrayList<Long>();
+        int skippedBlocks = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (!matchingBlocks[i]) {
+                skippedBlocks++;
+                continue;
+            }
+            final long start = zoneMap.getBlockOffset(i);
+            final long end = (i + 1 < blockCount ? zoneMap.getBlockOffset(i + 1) : zoneMap.getFileSize());
+            if (!ends.isEmpty() && ends.get(ends.size() - 1) == start) {
+                // adjacent to the previous range
+                ends.set(ends.size() - 1, end);
+            } else {
+                starts.add(start);
+                ends.add(end);
+            }
+        }
+        if (skippedBlocks == 0) {
+            return null;
+        }
+
+        logger.debug("Skipping {} of {} blocks of {} using zone map", skippedBlocks, blockCount, _resource);
+
+        if (starts.isEmpty()) {
+            return new EmptyDataSet(workingSelectItems);
+        }
+
+        final File file = ((FileResource) _resource).getFile();
+        final MappedCsvReader reader;
+        try {
+            reader = new MappedCsvReader(file, toArray(starts), toArray(ends), _memoryMappedScanning);
+        } catch (IOException e) {
+            throw new MetaModelException("IOException occurred while reading from CSV resource: " + _resource, e);
+        }
+        final MappedCsvLineParser parser = (fieldFilter == null ? new MappedCsvLineParser(_configuration,
+                table.getColumnCount()) : fieldFilter.getParser());
+        final DataSet dataSet = new MappedCsvDataSet(reader, parser, columns, null, fieldFilter);
+        return MetaModelHelper.getSelection(workingSelectItems, TypedCsvDataSet.wrapIfTyped(dataSet));
+    }
+
+    /**
+     * Gets the WHERE items which involve typed columns, see
+     * {@link #setTypeInferenceSampleSize(int)}.
+     * 
+     * @param whereItems
+     * @return
+     */
+    private List<FilterItem> getTypedWhereItems(List<FilterItem> whereItems) {
+        if (_typeInferenceSampleSize <= 0 || whereItems.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<FilterItem> result = new ArrayList<FilterItem>();
+        for (FilterItem whereItem : whereItems) {
+            if (isTyped(whereItem)) {
+                result.add(whereItem);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isTyped(FilterItem filterItem) {
+        if (filterItem.isCompoundFilter()) {
+            for (FilterItem childItem : filterItem.getChildItems()) {
+                if (isTyped(childItem)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (isTyped(filterItem.getSelectItem())) {
+            return true;
+        }
+        final Object operand = filterItem.getOperand();
+        return operand instanceof SelectItem && isTyped((SelectItem) operand);
+    }
+
+    private static boolean isTyped(SelectItem selectItem) {
+        if (selectItem == null || selectItem.getColumn() == null) {
+            return false;
+        }
+        final ColumnType type = selectItem.getColumn().getType();
+        return type != null && type != ColumnType.STRING;
+    }
+
+    /**
+     * Creates a filter which evaluates (some of) the WHERE items on the fields
+     * of each line, before rows are built.
+     * 
+     * @param table
+     * @param whereItems
+     * @return the filter, or null if the file is not read on byte level or
+     *         none of the WHERE items can be evaluated on fields
+     */
+    private CsvFieldFilter createFieldFilter(Table table, List<FilterItem> whereItems) {
+        if (whereItems.isEmpty() || _configuration.isMultilineValues()
+                || _configuration.isFailOnInconsistentRowLength() || !isByteLevelReadable()) {
+            return null;
+        }
+        final MappedCsvLineParser parser = new MappedCsvLineParser(_configuration, table.getColumnCount());
+        final CsvFieldFilter fieldFilter = new CsvFieldFilter(parser, _configuration, whereItems);
+        if (fieldFilter.isEmpty()) {
+            return null;
+        }
+        return fieldFilter;
+    }
+
+    /**
+     * Creates a data set of the working select items, which only contains the
+     * lines accepted by a {@link CsvFieldFilter}.
+     * 
+     * @param table
+     * @param workingSelectItems
+     * @param fieldFilter
+     * @return the data set, or null if some of the select items are not plain
+     *         columns
+     */
+    private DataSet createMappedDataSet(Table table, List<SelectItem> workingSelectItems,
+            CsvFieldFilter fieldFilter) {
+        final Column[] columns = new Column[workingSelectItems.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = workingSelectItems.get(i).getColumn();
+            if (columns[i] == null) {
+                return null;
+            }
+        }
+        final File file = ((FileResource) _resource).getFile();
+        final long start = CsvFileRanges.getDataStartOffset(file, _configuration.getEncoding(),
+                _configuration.getColumnNameLineNumber());
+        if (start == -1) {
+            return new EmptyDataSet(workingSelectItems);
+        }
+        final MappedCsvReader reader;
+        try {
+            reader = new MappedCsvReader(file, start, file.length(), _memoryMappedScanning);
+        } catch (IOException e) {
+            throw new MetaModelException("IOException occurred while reading from CSV resource: " + _resource, e);
+        }
+        final DataSet dataSet = new MappedCsvDataSet(reader, fieldFilter.getParser(), columns, null, fieldFilter);
+        return MetaModelHelper.getSelection(workingSelectItems, TypedCsvDataSet.wrapIfTyped(dataSet));
+    }
+
+    private static long[] toArray(List<Long> list) {
+        final long[] result = new long[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Determines if the resource is a CSV file which can be read on byte
+     * level, see {@link MappedCsvLineParser}.
+     * 
+     * @return
+     */
+    private boolean isByteLevelReadable() {
+        if (!(_resource instanceof FileResource)) {
+            return false;
+        }
+        if (!MappedCsvLineParser.isSupported(_configuration)) {
+            return false;
+        }
+        final File file = ((FileResource) _resource).getFile();
+        return !CsvFileRanges.hasWideByteOrderMark(file, _configuration.getEncoding());
+    }
+
+    /**
+     * Gets the row index of the file, if enabled and up to date.
+     * 
+     * @return the row index, or null if not available
+     */
+    private CsvRowIndex getRowIndex() {
+        final int interval = _rowIndexInterval;
+        if (interval <= 0 || _configuration.isMultilineValues() || !isByteLevelReadable()) {
+            return null;
+        }
+
+        final File file = ((FileResource) _resource).getFile();
+        final CsvRowIndex cachedRowIndex = _rowIndex;
+        if (cachedRowIndex != null && cachedRowIndex.getInterval() == interval && cachedRowIndex.isValidFor(file)) {
+            return cachedRowIndex;
+        }
+
+        final long start = CsvFileRanges.getDataStartOffset(file, _configuration.getEncoding(),
+                _configuration.getColumnNameLineNumber());
+        final CsvRowIndex rowIndex = (start == -1 ? null : CsvRowIndex.load(file, interval, start));
+        _rowIndex = rowIndex;
+        return rowIndex;
+    }
+
+    /**
+     * Gets the numbers of the columns to track in the zone map.
+     * 
+     * @param table
+     * @return the column numbers, or null if the zone map is not enabled or
+     *         not possible for the file
+     */
+    private int[] getZoneMapColumnNumbers(Table table) {
+        final String[] columnNames = _zoneMapColumnNames;
+        if (_zoneMapBlockSize <= 0 || columnNames.length == 0 || _configuration.isMultilineValues()
+                || _configuration.isFailOnInconsistentRowLength() || !isByteLevelReadable()) {
+            return null;
+        }
+        final int[] columnNumbers = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            final Column column = table.getColumnByName(columnNames[i]);
+            if (column == null) {
+                logger.warn("Zone map column '{}' does not exist in table: {}", columnNames[i], table.getName());
+                return null;
+            }
+            columnNumbers[i] = column.getColumnNumber();
+        }
+        return columnNumbers;
+    }
+
+    /**
+     * Gets the zone map of the file, if enabled and up to date.
+     * 
+     * @param table
+     * @return the zone map, or null if not available
+     */
+    private ZoneMap getZoneMap(Table table) {
+        final int[] columnNumbers = getZoneMapColumnNumbers(table);
+        if (columnNumbers == null) {
+            return null;
+        }
+
+        final int blockSize = _zoneMapBlockSize;
+        final File file = ((FileResource) _resource).getFile();
+        final ZoneMap cachedZoneMap = _zoneMap;
+        if (cachedZoneMap != null && cachedZoneMap.getBlockSize() == blockSize
+                && Arrays.equals(cachedZoneMap.getColumnNumbers(), columnNumbers) && cachedZoneMap.isValidFor(file)) {
+            return cachedZoneMap;
+        }
+
+        final ZoneMap zoneMap = ZoneMap.load(file, blockSize, columnNumbers);
+        _zoneMap = zoneMap;
+        return zoneMap;
+    }
+
+    /**
+     * Creates a builder for the zone map of the file, if enabled and the
+     * existing zone map is missing or outdated.
+     * 
+     * @param table
+     * @return the builder, or null
+     */
+    private ZoneMap.Builder createZoneMapBuilder(Table table) {
+        final int[] columnNumbers = getZoneMapColumnNumbers(table);
+        if (columnNumbers == null || getZoneMap(table) != null) {
+            return null;
+        }
+        final File file = ((FileResource) _resource).getFile();
+        return new ZoneMap.Builder(file, _zoneMapBlockSize, columnNumbers);
+    }
+
+    /**
+     * Brings the row index up to date after an update, and discards the zone
+     * map if the file has been rewritten.
+     * 
+     * @param rowIndexBeforeUpdate
+     *            the row index as it was before the update
+     * @param callback
+     *            the callback that performed the update
+     */
+    private void updateRowIndex(CsvRowIndex rowIndexBeforeUpdate, CsvUpdateCallback callback) {
+        if (!(_resource instanceof FileResource)) {
+            return;
+        }
+        final File file = ((FileResource) _resource).getFile();
+        if (callback.isRewritten()) {
+            // the size and modification time may not reveal that the file has
+            // been rewritten, so make sure the index and zone map are not
+            // used again
+            _rowIndex = null;
+            CsvRowIndex.delete(file);
+            _zoneMap = null;
+            ZoneMap.delete(file);
+            return;
+        }
+        if (rowIndexBeforeUpdate == null || rowIndexBeforeUpdate.isValidFor(file)) {
+            return;
+        }
+        final CsvRowIndex rowIndex = rowIndexBeforeUpdate.extend(file);
+        if (rowIndex != null) {
+            rowIndex.save(file);
+            _rowIndex = rowIndex;
+        }
+    }
+
+    @Override
+    protected DataSet materializeMainSchemaTable(Table table, Column[] columns, int firstRow, int maxRows) {
+        if (firstRow > 1) {
+            final CsvRowIndex rowIndex = getRowIndex();
+            if (rowIndex != null) {
+                final long indexedRecord = rowIndex.getIndexedRecord(firstRow - 1);
+                if (indexedRecord > 0) {
+                    logger.debug("Seeking to record {} of {} using row index", indexedRecord, _resource);
+                    final int rowsToSkip = (int) (firstRow - 1 - indexedRecord);
+                    final Integer maxRowsOrNull = (maxRows > 0 ? maxRows + rowsToSkip : null);
+                    DataSet dataSet = createMappedDataSet(table, columns, rowIndex.getOffset(indexedRecord),
+                            maxRowsOrNull, (int) indexedRecord, null, null);
+                    dataSet = TypedCsvDataSet.wrapIfTyped(dataSet);
+                    if (rowsToSkip > 0) {
+                        dataSet = new FirstRowDataSet(dataSet, rowsToSkip + 1);
+                    }
+                    return dataSet;
+                }
+            }
+        }
+        return super.materializeMainSchemaTable(table, columns, firstRow, maxRows);
+    }
+
+    private DataSet createMappedDataSet(Table table, Column[] columns, long start, Integer maxRows,
+            int skippedRows, CsvRowIndex.Builder indexBuilder, ZoneMap.Builder zoneMapBuilder) {
+        final File file = ((FileResource) _resource).getFile();
+        final MappedCsvReader reader;
+        try {
+            reader = new MappedCsvReader(file, start, file.length(), _memoryMappedScanning);
+        } catch (IOException e) {
+            throw new MetaModelException("IOException occurred while reading from CSV resource: " + _resource, e);
+        }
+        final MappedCsvLineParser parser = new MappedCsvLineParser(_configuration, table.getColumnCount());
+        return new MappedCsvDataSet(reader, parser, columns, maxRows, skippedRows, indexBuilder, zoneMapBuilder);
+    }
+
     @Override
     public DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows) {
+        return TypedCsvDataSet.wrapIfTyped(materializeStringValues(table, columns, maxRows));
+    }
+
+    private DataSet materializeStringValues(Table table, Column[] columns, int maxRows) {
         final int lineNumber = _configuration.getColumnNameLineNumber();
         final int columnCount = table.getColumnCount();
+        final Integer maxRowsOrNull = (maxRows > 0 ? maxRows : null);
+
+        if (!_configuration.isMultilineValues() && isByteLevelReadable()) {
+            final File file = ((FileResource) _resource).getFile();
+            CsvRowIndex.Builder indexBuilder = null;
+            ZoneMap.Builder zoneMapBuilder = null;
+            if (maxRowsOrNull == null) {
+                if (_rowIndexInterval > 0 && getRowIndex() == null) {
+                    indexBuilder = new CsvRowIndex.Builder(file, _rowIndexInterval);
+                }
+                zoneMapBuilder = createZoneMapBuilder(table);
+            }
+            // full scans which build a row index or zone map need the byte
+            // offsets of the records
+            if (_memoryMappedScanning || indexBuilder != null || zoneMapBuilder != null) {
+                final long start = CsvFileRanges.getDataStartOffset(file, _configuration.getEncoding(), lineNumber);
+                if (start == -1) {
+                    return new EmptyDataSet(columns);
+                }
+                return createMappedDataSet(table, columns, start, maxRowsOrNull, 0, indexBuilder, zoneMapBuilder);
+            }
+        }
 
         final BufferedReader reader = FileHelper.getBufferedReader(_resource.read(), _configuration.getEncoding());
 
@@ -371,8 +1179,6 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
 
         final boolean failOnInconsistentRowLength = _configuration.isFailOnInconsistentRowLength();
 
-        final Integer maxRowsOrNull = (maxRows > 0 ? maxRows : null);
-
         if (_configuration.isMultilineValues()) {
             final CSVReader csvReader = createCsvReader(reader);
             return new CsvDataSet(csvReader, columns, maxRowsOrNull, columnCount, failOnInconsistentRowLength);
@@ -427,11 +1233,42 @@ public final class CsvDataContext extends QueryPostprocessDataContext implements
         checkWritable();
         CsvUpdateCallback callback = new CsvUpdateCallback(this);
         synchronized (WRITE_LOCK) {
+            final CsvRowIndex rowIndex = getRowIndex();
+            _activeUpdateCallback = callback;
             try {
                 update.run(callback);
             } finally {
-                callback.close();
+                _activeUpdateCallback = null;
+                try {
+                    callback.close();
+                } finally {
+                    updateRowIndex(rowIndex, callback);
+                }
             }
         }
     }
+
+    @Override
+    public DataSet executeQuery(Query query) {
+        flushActiveUpdate();
+        return super.executeQuery(query);
+    }
+
+    @Override
+    public DataSet executeQuery(CompiledQuery compiledQuery, Object... values) {
+        flushActiveUpdate();
+        return super.executeQuery(compiledQuery, values);
+    }
+
+    /**
+     * Makes sure that queries issued from within an {@link UpdateScript} see
+     * the changes made so far by the script, since inserts are buffered and
+     * deletes and updates are applied in batches.
+     */
+    private void flushActiveUpdate() {
+        final CsvUpdateCallback callback = _activeUpdateCallback;
+        if (callback != null) {
+            callback.flushForRead();
+        }
+    }
 }
\ No newline at end of file
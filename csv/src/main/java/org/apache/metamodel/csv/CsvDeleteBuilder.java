@@ -28,6 +28,8 @@ import org.apache.metamodel.UpdateScript;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.delete.AbstractRowDeletionBuilder;
+import org.apache.metamodel.insert.RowInsertionBuilder;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.util.Action;
 import org.apache.metamodel.util.FileHelper;
@@ -47,6 +49,15 @@ final class CsvDeleteBuilder extends AbstractRowDeletionBuilder {
 
     @Override
     public void execute() throws MetaModelException {
+        if (_updateCallback.isRewriteSupported()) {
+            // applied in a single pass together with other deletes and updates
+            _updateCallback.addRewriteOperation(getTable(), CsvRewriter.Operation.delete(getWhereItems()));
+            return;
+        }
+
+        // make sure that rows inserted earlier in the same update are written
+        _updateCallback.close();
+
         final File tempFile = FileHelper.createTempFile("metamodel_deletion", "csv");
 
         final CsvConfiguration configuration = _updateCallback.getConfiguration();
@@ -66,13 +77,20 @@ final class CsvDeleteBuilder extends AbstractRowDeletionBuilder {
                     return;
                 }
 
+                final Column[] columns = originalTable.getColumns();
                 final DataSet dataSet = _updateCallback.getDataContext().query().from(originalTable)
-                        .select(originalTable.getColumns()).execute();
+                        .select(columns).execute();
                 try {
                     while (dataSet.next()) {
                         final Row row = dataSet.getRow();
                         if (!deleteRow(row)) {
-                            callback.insertInto(copyTable).like(row).execute();
+                            // the copy has no column types, so typed values
+                            // are formatted according to the original columns
+                            final RowInsertionBuilder insert = callback.insertInto(copyTable);
+                            for (int i = 0; i < columns.length; i++) {
+                                insert.value(i, CsvValueParser.format(columns[i].getType(), row.getValue(i)));
+                            }
+                            insert.execute();
                         }
                     }
                 } finally {
@@ -83,6 +101,7 @@ final class CsvDeleteBuilder extends AbstractRowDeletionBuilder {
 
         // copy the copy (which does not have deleted records) to overwrite the
         // original
+        _updateCallback.markRewritten();
         final InputStream in = FileHelper.getInputStream(tempFile);
         try {
             _updateCallback.getResource().write(new Action<OutputStream>() {
@@ -0,0 +1,460 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.util.BooleanComparator;
+import org.apache.metamodel.util.CollectionUtils;
+import org.apache.metamodel.util.ObjectComparator;
+import org.apache.metamodel.util.WildcardPattern;
+
+/**
+ * Evaluates WHERE items on the fields of a line read by
+ * {@link MappedCsvReader}, before a row is built for it. Only the fields that
+ * the filters refer to are decoded, and equality and LIKE-prefix filters with
+ * string operands are evaluated directly on the bytes of unquoted fields.
+ *
+ * Filters are evaluated with the same semantics as
+ * {@link FilterItem#evaluate(org.apache.metamodel.data.Row)}. Filters that
+ * cannot be evaluated on single fields (eg. expressions, functions or
+ * comparisons between columns) are left for regular row-based filtering, see
+ * {@link #getRemainingItems()}. Instances are not thread safe.
+ */
+final class CsvFieldFilter {
+
+    private final MappedCsvLineParser _parser;
+    private final Charset _charset;
+    private final List<Condition> _conditions;
+    private final List<FilterItem> _remainingItems;
+
+    // the line that is currently being evaluated
+    private byte[] _line;
+    private int[] _boundaries;
+    private String[] _parsedValues;
+    private int _fieldCount;
+
+    public CsvFieldFilter(MappedCsvLineParser parser, CsvConfiguration configuration, List<FilterItem> whereItems) {
+        _parser = parser;
+        _charset = Charset.forName(configuration.getEncoding());
+        _conditions = new ArrayList<Condition>();
+        _remainingItems = new ArrayList<FilterItem>();
+        for (FilterItem whereItem : whereItems) {
+            final Condition condition = createCondition(whereItem);
+            if (condition == null) {
+                _remainingItems.add(whereItem);
+            } else {
+                _conditions.add(condition);
+            }
+        }
+    }
+
+    public MappedCsvLineParser getParser() {
+        return _parser;
+    }
+
+    /**
+     * Determines if any of the WHERE items are evaluated by this filter.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return _conditions.isEmpty();
+    }
+
+    /**
+     * Gets the WHERE items that are not evaluated by this filter, and which
+     * must therefore be applied to the rows that it accepts.
+     *
+     * @return
+     */
+    public List<FilterItem> getRemainingItems() {
+        return Collections.unmodifiableList(_remainingItems);
+    }
+
+    /**
+     * Evaluates the filter on a line. After this call, the tokenization of the
+     * line is available via {@link #getBoundaries()} and
+     * {@link #getParsedValues()}.
+     *
+     * @param line
+     * @param rowNumber
+     * @return true if the line satisfies all the conditions of the filter
+     */
+    public boolean accept(byte[] line, int rowNumber) {
+        _line = line;
+        _boundaries = _parser.tokenize(line);
+        if (_boundaries == null) {
+            _parsedValues = _parser.parse(line, rowNumber);
+            _fieldCount = _parsedValues.length;
+        } else {
+            _parsedValues = null;
+            _fieldCount = _boundaries.length - 1;
+        }
+
+        for (Condition condition : _conditions) {
+            if (!condition.evaluate()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the field boundaries of the latest line passed to
+     * {@link #accept(byte[], int)}, see
+     * {@link MappedCsvLineParser#tokenize(byte[])}.
+     *
+     * @return
+     */
+    public int[] getBoundaries() {
+        return _boundaries;
+    }
+
+    /**
+     * Gets the parsed values of the latest line passed to
+     * {@link #accept(byte[], int)}, if it could not be tokenized on byte
+     * level.
+     *
+     * @return
+     */
+    public String[] getParsedValues() {
+        return _parsedValues;
+    }
+
+    private String getValue(int columnNumber) {
+        if (columnNumber >= _fieldCount) {
+            // Ticket #125: Missing values should be interpreted as null.
+            return null;
+        }
+        if (_parsedValues != null) {
+            return _parsedValues[columnNumber];
+        }
+        return _parser.decode(_line, _boundaries, columnNumber);
+    }
+
+    private boolean fieldEquals(int columnNumber, byte[] bytes) {
+        final int start = _boundaries[columnNumber];
+        final int length = _boundaries[columnNumber + 1] - 1 - start;
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (_line[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fieldStartsWith(int columnNumber, byte[] bytes) {
+        final int start = _boundaries[columnNumber];
+        final int length = _boundaries[columnNumber + 1] - 1 - start;
+        if (length < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (_line[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Condition createCondition(FilterItem filterItem) {
+        if (filterItem.isCompoundFilter()) {
+            final FilterItem[] childItems = filterItem.getChildItems();
+            final Condition[] children = new Condition[childItems.length];
+            for (int i = 0; i < childItems.length; i++) {
+                children[i] = createCondition(childItems[i]);
+                if (children[i] == null) {
+                    return null;
+                }
+            }
+            return new CompoundCondition(filterItem.getLogicalOperator(), children);
+        }
+
+        final SelectItem selectItem = filterItem.getSelectItem();
+        if (filterItem.getExpression() != null || selectItem == null || selectItem.hasFunction()
+                || selectItem.getColumn() == null || filterItem.getOperand() instanceof SelectItem) {
+            return null;
+        }
+        final int columnNumber = selectItem.getColumn().getColumnNumber();
+        final OperatorType operator = filterItem.getOperator();
+        final Object operand = filterItem.getOperand();
+
+        if (operand == null) {
+            // IS NULL and IS NOT NULL
+            return new NullCondition(columnNumber, operator);
+        }
+        if (operator == OperatorType.EQUALS_TO || operator == OperatorType.DIFFERENT_FROM) {
+            if (isPlainString(operand)) {
+                return new EqualsCondition(columnNumber, (String) operand, operator == OperatorType.DIFFERENT_FROM);
+            }
+            return new CompareCondition(columnNumber, operator, operand);
+        }
+        if (operator == OperatorType.GREATER_THAN || operator == OperatorType.GREATER_THAN_OR_EQUAL
+                || operator == OperatorType.LESS_THAN || operator == OperatorType.LESS_THAN_OR_EQUAL) {
+            return new CompareCondition(columnNumber, operator, operand);
+        }
+        if (operator == OperatorType.LIKE || operator == OperatorType.NOT_LIKE) {
+            if (!(operand instanceof String)) {
+                return null;
+            }
+            final String pattern = (String) operand;
+            final int wildcardIndex = pattern.indexOf('%');
+            if (wildcardIndex == pattern.length() - 1 && isPlainString(pattern)) {
+                return new PrefixCondition(columnNumber, pattern.substring(0, wildcardIndex),
+                        operator == OperatorType.NOT_LIKE);
+            }
+            return new LikeCondition(columnNumber, pattern, operator == OperatorType.NOT_LIKE);
+        }
+        if (operator == OperatorType.IN || operator == OperatorType.NOT_IN) {
+            final Set<?> inValues;
+            if (operand instanceof Set) {
+                inValues = (Set<?>) operand;
+            } else {
+                inValues = new HashSet<Object>(CollectionUtils.toList(operand));
+            }
+            return new InCondition(columnNumber, inValues, operator == OperatorType.NOT_IN);
+        }
+        return null;
+    }
+
+    /**
+     * Determines if a string operand is compared to field values by plain
+     * string equality, so that it can be compared on byte level. Boolean
+     * literals are compared case insensitively by {@link ObjectComparator},
+     * the replacement character could be the result of decoding malformed
+     * bytes and characters that cannot be encoded would be replaced.
+     *
+     * @param operand
+     * @return
+     */
+    private boolean isPlainString(Object operand) {
+        return operand instanceof String && !BooleanComparator.isBoolean(operand)
+                && ((String) operand).indexOf('\ufffd') == -1 && _charset.newEncoder().canEncode((String) operand);
+    }
+
+    private static abstract class Condition {
+
+        public abstract boolean evaluate();
+    }
+
+    private final class CompoundCondition extends Condition {
+
+        private final boolean _and;
+        private final Condition[] _children;
+
+        public CompoundCondition(LogicalOperator logicalOperator, Condition[] children) {
+            _and = (logicalOperator == LogicalOperator.AND);
+            _children = children;
+        }
+
+        @Override
+        public boolean evaluate() {
+            for (Condition child : _children) {
+                if (child.evaluate() != _and) {
+                    return !_and;
+                }
+            }
+            return _and;
+        }
+    }
+
+    private final class NullCondition extends Condition {
+
+        private final int _columnNumber;
+        private final OperatorType _operator;
+
+        public NullCondition(int columnNumber, OperatorType operator) {
+            _columnNumber = columnNumber;
+            _operator = operator;
+        }
+
+        @Override
+        public boolean evaluate() {
+            final boolean isNull = _columnNumber >= _fieldCount
+                    || (_parsedValues != null && _parsedValues[_columnNumber] == null);
+            if (_operator == OperatorType.EQUALS_TO) {
+                return isNull;
+            } else if (_operator == OperatorType.DIFFERENT_FROM) {
+                return !isNull;
+            }
+            return false;
+        }
+    }
+
+    private final class EqualsCondition extends Condition {
+
+        private final int _columnNumber;
+        private final String _operand;
+        private final byte[] _bytes;
+        private final boolean _negated;
+
+        public EqualsCondition(int columnNumber, String operand, boolean negated) {
+            _columnNumber = columnNumber;
+            _operand = operand;
+            _bytes = operand.getBytes(_charset);
+            _negated = negated;
+        }
+
+        @Override
+        public boolean evaluate() {
+            if (_columnNumber >= _fieldCount) {
+                return _negated;
+            }
+            final boolean equals;
+            if (_parsedValues == null) {
+                equals = fieldEquals(_columnNumber, _bytes);
+            } else {
+                final String value = _parsedValues[_columnNumber];
+                if (value == null) {
+                    return _negated;
+                }
+                equals = value.equals(_operand);
+            }
+            return equals != _negated;
+        }
+    }
+
+    private final class CompareCondition extends Condition {
+
+        private final int _columnNumber;
+        private final OperatorType _operator;
+        private final Object _operand;
+        private final Comparator<Object> _comparator;
+
+        public CompareCondition(int columnNumber, OperatorType operator, Object operand) {
+            _columnNumber = columnNumber;
+            _operator = operator;
+            _operand = operand;
+            _comparator = ObjectComparator.getComparator();
+        }
+
+        @Override
+        public boolean evaluate() {
+            final String value = getValue(_columnNumber);
+            if (value == null) {
+                return _operator == OperatorType.DIFFERENT_FROM;
+            }
+            final int comparison = _comparator.compare(value, _operand);
+            if (_operator == OperatorType.EQUALS_TO) {
+                return comparison == 0;
+            } else if (_operator == OperatorType.DIFFERENT_FROM) {
+                return comparison != 0;
+            } else if (_operator == OperatorType.GREATER_THAN) {
+                return comparison > 0;
+            } else if (_operator == OperatorType.GREATER_THAN_OR_EQUAL) {
+                return comparison >= 0;
+            } else if (_operator == OperatorType.LESS_THAN) {
+                return comparison < 0;
+            } else {
+                return comparison <= 0;
+            }
+        }
+    }
+
+    private final class PrefixCondition extends Condition {
+
+        private final int _columnNumber;
+        private final String _prefix;
+        private final byte[] _prefixBytes;
+        private final boolean _negated;
+
+        public PrefixCondition(int columnNumber, String prefix, boolean negated) {
+            _columnNumber = columnNumber;
+            _prefix = prefix;
+            _prefixBytes = prefix.getBytes(_charset);
+            _negated = negated;
+        }
+
+        @Override
+        public boolean evaluate() {
+            if (_columnNumber >= _fieldCount) {
+                return false;
+            }
+            final boolean matches;
+            if (_parsedValues == null) {
+                matches = fieldStartsWith(_columnNumber, _prefixBytes);
+            } else {
+                final String value = _parsedValues[_columnNumber];
+                if (value == null) {
+                    return false;
+                }
+                matches = value.startsWith(_prefix);
+            }
+            return matches != _negated;
+        }
+    }
+
+    private final class LikeCondition extends Condition {
+
+        private final int _columnNumber;
+        private final WildcardPattern _pattern;
+        private final boolean _negated;
+
+        public LikeCondition(int columnNumber, String pattern, boolean negated) {
+            _columnNumber = columnNumber;
+            _pattern = new WildcardPattern(pattern, '%');
+            _negated = negated;
+        }
+
+        @Override
+        public boolean evaluate() {
+            final String value = getValue(_columnNumber);
+            if (value == null) {
+                return false;
+            }
+            return _pattern.matches(value) != _negated;
+        }
+    }
+
+    private final class InCondition extends Condition {
+
+        private final int _columnNumber;
+        private final Set<?> _values;
+        private final boolean _negated;
+
+        public InCondition(int columnNumber, Set<?> values, boolean negated) {
+            _columnNumber = columnNumber;
+            _values = values;
+            _negated = negated;
+        }
+
+        @Override
+        public boolean evaluate() {
+            final String value = getValue(_columnNumber);
+            if (value == null) {
+                return false;
+            }
+            return _values.contains(value) != _negated;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.FileHelper;
+
+/**
+ * Helper class for working with byte ranges of single-line CSV files, ie. CSV
+ * files where every record is terminated by a line break. Byte ranges are
+ * always aligned to line boundaries, so they can be read independently of each
+ * other.
+ *
+ * Byte level processing requires an ASCII compatible encoding, see
+ * {@link #isAsciiCompatible(String)}.
+ */
+final class CsvFileRanges {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CsvFileRanges() {
+        // prevent instantiation
+    }
+
+    /**
+     * Determines if an encoding is ASCII compatible, meaning that line breaks,
+     * separators and quotes are encoded as single bytes which never occur as
+     * part of a multi-byte character. This is the case for eg. UTF-8 and the
+     * ISO-8859 family, but not for UTF-16.
+     *
+     * @param encoding
+     * @return
+     */
+    public static boolean isAsciiCompatible(String encoding) {
+        if (encoding == null) {
+            return false;
+        }
+        final Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (Exception e) {
+            return false;
+        }
+        if (!charset.canEncode()) {
+            return false;
+        }
+        final String ascii = "\r\n\t ,;|\"'\\azAZ09";
+        return Arrays.equals(ascii.getBytes(charset), ascii.getBytes(Charset.forName("US-ASCII")));
+    }
+
+    /**
+     * Determines if a char can be represented as a single byte in an ASCII
+     * compatible encoding.
+     *
+     * @param c
+     * @return
+     */
+    public static boolean isAsciiChar(char c) {
+        return c < 128;
+    }
+
+    /**
+     * Determines if a file starts with a UTF-16 or UTF-32 byte order mark,
+     * which (like in {@link FileHelper#getReader(java.io.InputStream, String)})
+     * overrides any UTF encoding that has been configured.
+     *
+     * @param file
+     * @param encoding
+     * @return
+     */
+    public static boolean hasWideByteOrderMark(File file, String encoding) {
+        if (encoding != null && encoding.toLowerCase().indexOf("utf") == -1) {
+            return false;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            final byte[] bom = new byte[2];
+            if (raf.read(bom) != 2) {
+                return false;
+            }
+            return (bom[0] == (byte) 0xFE && bom[1] == (byte) 0xFF) || (bom[0] == (byte) 0xFF && bom[1] == (byte) 0xFE)
+                    || (bom[0] == 0x00 && bom[1] == 0x00 && raf.read() == 0xFE && raf.read() == 0xFF);
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read CSV file: " + file, e);
+        } finally {
+            FileHelper.safeClose(raf);
+        }
+    }
+
+    /**
+     * Finds the byte offset of the first data line of a CSV file, ie. the
+     * offset after any byte order mark and the configured number of column
+     * name lines. Line breaks are interpreted like
+     * {@link java.io.BufferedReader#readLine()} does.
+     *
+     * @param file
+     * @param encoding
+     * @param headerLines
+     * @return the offset, or -1 if the file has no data lines
+     */
+    public static long getDataStartOffset(File file, String encoding, int headerLines) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            final long length = raf.length();
+            long offset = 0;
+            if (encoding == null || encoding.toLowerCase().indexOf("utf") != -1) {
+                final byte[] bom = new byte[3];
+                if (raf.read(bom) == 3 && bom[0] == (byte) 0xEF && bom[1] == (byte) 0xBB && bom[2] == (byte) 0xBF) {
+                    offset = 3;
+                }
+            }
+
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int linesToSkip = headerLines;
+            boolean previousWasCarriageReturn = false;
+            while (linesToSkip > 0 || previousWasCarriageReturn) {
+                raf.seek(offset);
+                final int read = raf.read(buffer);
+                if (read == -1) {
+                    break;
+                }
+                int i = 0;
+                for (; i < read; i++) {
+                    final byte b = buffer[i];
+                    if (previousWasCarriageReturn) {
+                        previousWasCarriageReturn = false;
+                        if (b == '\n') {
+                            // second half of a CRLF line break
+                            continue;
+                        }
+                        if (linesToSkip == 0) {
+                            break;
+                        }
+                    }
+                    if (linesToSkip == 0) {
+                        break;
+                    }
+                    if (b == '\n') {
+                        linesToSkip--;
+                    } else if (b == '\r') {
+                        linesToSkip--;
+                        previousWasCarriageReturn = true;
+                    }
+                }
+                offset += i;
+                if (i < read) {
+                    break;
+                }
+            }
+            return (offset >= length ? -1 : offset);
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read CSV file: " + file, e);
+        } finally {
+            FileHelper.safeClose(raf);
+        }
+    }
+
+    /**
+     * Splits the byte range [start, end) of a file into a number of ranges of
+     * approximately equal size. Each range (except the first one) begins right
+     * after a line feed.
+     *
+     * @param file
+     * @param start
+     * @param end
+     * @param count
+     *            the desired number of ranges
+     * @return the boundaries of the ranges: range i is [boundaries[i],
+     *         boundaries[i+1]). The result may contain fewer ranges than
+     *         requested if the file has few line breaks.
+     */
+    public static long[] split(File file, long start, long end, int count) {
+        final long[] boundaries = new long[count + 1];
+        boundaries[0] = start;
+        int size = 1;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            final long rangeLength = (end - start) / count;
+            for (int i = 1; i < count; i++) {
+                final long candidate = Math.max(start + i * rangeLength, boundaries[size - 1]);
+                final long boundary = findLineStart(raf, candidate, end);
+                if (boundary > boundaries[size - 1] && boundary < end) {
+                    boundaries[size] = boundary;
+                    size++;
+                }
+            }
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read CSV file: " + file, e);
+        } finally {
+            FileHelper.safeClose(raf);
+        }
+        boundaries[size] = end;
+        return Arrays.copyOf(boundaries, size + 1);
+    }
+
+    /**
+     * Finds the offset right after the first line feed at or after a
+     * particular offset.
+     *
+     * @param raf
+     * @param offset
+     * @param end
+     * @return the offset of the next line start, or end if none was found.
+     * @throws IOException
+     */
+    private static long findLineStart(RandomAccessFile raf, long offset, long end) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long position = offset;
+        while (position < end) {
+            raf.seek(position);
+            final int read = raf.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+            if (read == -1) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.metamodel.csv;
 
 import org.apache.metamodel.insert.AbstractRowInsertionBuilder;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Table;
 
 final class CsvInsertBuilder extends AbstractRowInsertionBuilder<CsvUpdateCallback> {
@@ -30,9 +31,10 @@ final class CsvInsertBuilder extends AbstractRowInsertionBuilder<CsvUpdateCallba
 	@Override
 	public void execute() {
 		Object[] values = getValues();
+		Column[] columns = getColumns();
 		String[] stringValues = new String[values.length];
 		for (int i = 0; i < stringValues.length; i++) {
-			stringValues[i] = values[i] == null ? "" : values[i].toString();
+			stringValues[i] = CsvValueParser.format(columns[i].getType(), values[i]);
 		}
 		getUpdateCallback().writeRow(stringValues, true);
 	}
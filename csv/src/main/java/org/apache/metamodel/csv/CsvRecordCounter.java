@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.SharedExecutorService;
+
+/**
+ * Counts the records of a CSV file on byte level, giving the same result as
+ * scanning the file with {@link CsvDataSet}, {@link SingleLineCsvDataSet} or
+ * {@link MappedCsvDataSet}, ie. blank lines are not counted.
+ *
+ * For single-line files, and for multiline files that contain no quote
+ * characters, every non-blank line is a record, so the file can simply be
+ * searched for line breaks, optionally in parallel. Only multiline files with
+ * quote characters are scanned using a (serial) quote aware state machine.
+ *
+ * Requires an ASCII compatible encoding, see
+ * {@link CsvFileRanges#isAsciiCompatible(String)}.
+ */
+final class CsvRecordCounter {
+
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final int NO_BYTE = 0x100;
+
+    private final File _file;
+    private final boolean _multilineValues;
+    private final int _quote;
+    private final int _escape;
+
+    public CsvRecordCounter(File file, CsvConfiguration configuration) {
+        _file = file;
+        _multilineValues = configuration.isMultilineValues();
+        _quote = toByte(configuration.getQuoteChar());
+        _escape = toByte(configuration.getEscapeChar());
+    }
+
+    private static int toByte(char c) {
+        if (c == CsvConfiguration.NOT_A_CHAR) {
+            return NO_BYTE;
+        }
+        return c;
+    }
+
+    /**
+     * Counts the records in a byte range of the file.
+     *
+     * @param start
+     *            the offset of the first data line
+     * @param end
+     * @param threads
+     *            the number of threads to use for counting, if the file
+     *            allows it
+     * @return
+     */
+    public long count(long start, long end, int threads) {
+        final int ranges = (int) Math.min(threads, (end - start) / CsvDataContext.PARALLEL_SCAN_MIN_BYTES_PER_THREAD);
+        final long[] boundaries;
+        if (ranges < 2) {
+            boundaries = new long[] { start, end };
+        } else {
+            boundaries = CsvFileRanges.split(_file, start, end, ranges);
+        }
+
+        final LineCount lineCount = countLines(boundaries);
+        if (_multilineValues && lineCount.quoteFound) {
+            return countRecords(start, end);
+        }
+        return lineCount.lines;
+    }
+
+    private LineCount countLines(long[] boundaries) {
+        if (boundaries.length == 2) {
+            return countLines(boundaries[0], boundaries[1]);
+        }
+
+        final List<Future<LineCount>> futures = new ArrayList<Future<LineCount>>();
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            final long start = boundaries[i];
+            final long end = boundaries[i + 1];
+            futures.add(SharedExecutorService.get().submit(new Callable<LineCount>() {
+                @Override
+                public LineCount call() {
+                    return countLines(start, end);
+                }
+            }));
+        }
+
+        final LineCount result = new LineCount();
+        for (Future<LineCount> future : futures) {
+            final LineCount rangeCount;
+            try {
+                rangeCount = future.get();
+            } catch (InterruptedException e) {
+                throw new MetaModelException("Interrupted while counting lines of CSV file: " + _file, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new MetaModelException("Failed to count lines of CSV file: " + _file, e);
+            }
+            result.lines += rangeCount.lines;
+            result.quoteFound = result.quoteFound || rangeCount.quoteFound;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the non-blank lines in a byte range. Line breaks are interpreted
+     * like {@link java.io.BufferedReader#readLine()} does.
+     *
+     * @param start
+     * @param end
+     * @return
+     */
+    private LineCount countLines(long start, long end) {
+        final LineCount result = new LineCount();
+        final byte quote = (byte) _quote;
+        final boolean lookForQuotes = _multilineValues && _quote != NO_BYTE;
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(_file, "r");
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, end - start));
+
+            long lines = 0;
+            boolean lineHasContent = false;
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                final int read = channel.read(buffer, position);
+                if (read == -1) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+
+                for (int i = 0; i < read; i++) {
+                    final byte b = buffer.get(i);
+                    if (b == '\n' || b == '\r') {
+                        if (lineHasContent) {
+                            lines++;
+                            lineHasContent = false;
+                        }
+                    } else {
+                        lineHasContent = true;
+                        if (lookForQuotes && b == quote) {
+                            result.quoteFound = true;
+                        }
+                    }
+                }
+            }
+            if (lineHasContent) {
+                lines++;
+            }
+            result.lines = lines;
+            return result;
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read CSV file: " + _file, e);
+        } finally {
+            FileHelper.safeClose(raf);
+        }
+    }
+
+    /**
+     * Counts the records in a byte range of a file with multiline values,
+     * following the quoting and escaping rules of the CSV parser: line breaks
+     * within quoted values do not end a record, and records which consist of
+     * a single empty value are not counted.
+     *
+     * @param start
+     * @param end
+     * @return
+     */
+    private long countRecords(long start, long end) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(_file, "r");
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(BUFFER_SIZE, end - start));
+
+            long records = 0;
+            boolean inQuotes = false;
+            boolean pendingEscape = false;
+            boolean pendingQuote = false;
+            boolean previousWasCarriageReturn = false;
+            boolean recordHasContent = false;
+
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                final int read = channel.read(buffer, position);
+                if (read == -1) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+
+                for (int i = 0; i < read; i++) {
+                    final byte b = buffer.get(i);
+
+                    if (previousWasCarriageReturn) {
+                        previousWasCarriageReturn = false;
+                        if (b == '\n') {
+                            // second half of a CRLF line break
+                            continue;
+                        }
+                    }
+
+                    // resolve escapes and quotes that depend on this byte
+                    if (pendingEscape) {
+                        pendingEscape = false;
+                        if (b == _quote || b == _escape) {
+                            // escaped character
+                            recordHasContent = true;
+                            continue;
+                        }
+                    } else if (pendingQuote) {
+                        pendingQuote = false;
+                        if (b == _quote) {
+                            // doubled quote within quotes
+                            recordHasContent = true;
+                            continue;
+                        }
+                        inQuotes = false;
+                    }
+
+                    if (b == '\n' || b == '\r') {
+                        previousWasCarriageReturn = (b == '\r');
+                        if (inQuotes) {
+                            // line break within a value
+                            recordHasContent = true;
+                        } else {
+                            if (recordHasContent) {
+                                records++;
+                            }
+                            recordHasContent = false;
+                        }
+                    } else if (b == _escape) {
+                        // like CSVParser, only honour escapes within quotes.
+                        // Outside of quotes the escape character is dropped,
+                        // and a quote that follows it starts a quoted value.
+                        if (inQuotes) {
+                            pendingEscape = true;
+                        }
+                    } else if (b == _quote) {
+                        if (inQuotes) {
+                            pendingQuote = true;
+                        } else {
+                            inQuotes = true;
+                        }
+                    } else {
+                        // separators also make a record non-blank
+                        recordHasContent = true;
+                    }
+                }
+            }
+            if (recordHasContent) {
+                records++;
+            }
+            return records;
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read CSV file: " + _file, e);
+        } finally {
+            FileHelper.safeClose(raf);
+        }
+    }
+
+    /**
+     * The result of counting the lines of a byte range.
+     */
+    private static final class LineCount {
+        long lines;
+        boolean quoteFound;
+    }
+}
@@ -0,0 +1,492 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.DataSetHeader;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.SimpleDataSetHeader;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.Action;
+import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.FileResource;
+import org.apache.metamodel.util.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+/**
+ * Applies a sequence of delete and update operations to a CSV resource in a
+ * single pass. Records that are not affected by any of the operations (as well
+ * as the column name lines) are copied as raw bytes, so only the records that
+ * are deleted or updated are re-written. The result is written to a temporary
+ * file, which replaces a local file by an atomic rename when the file system
+ * supports it.
+ *
+ * Requires a CSV configuration that can be read on byte level, see
+ * {@link #isSupported(Resource, CsvConfiguration)}.
+ */
+final class CsvRewriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvRewriter.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Returned by the record reader for blank lines, which are kept as they
+     * are.
+     */
+    private static final Row BLANK = new DefaultRow(new SimpleDataSetHeader(new Column[0]), new Object[0]);
+
+    /**
+     * A delete or update operation to apply while rewriting.
+     */
+    public static final class Operation {
+
+        private final List<FilterItem> _whereItems;
+        private final Object[] _values;
+        private final boolean[] _set;
+
+        private Operation(List<FilterItem> whereItems, Object[] values, boolean[] set) {
+            _whereItems = new ArrayList<FilterItem>(whereItems);
+            _values = values;
+            _set = set;
+        }
+
+        /**
+         * Creates an operation which deletes the matching records.
+         *
+         * @param whereItems
+         * @return
+         */
+        public static Operation delete(List<FilterItem> whereItems) {
+            return new Operation(whereItems, null, null);
+        }
+
+        /**
+         * Creates an operation which updates the matching records.
+         *
+         * @param whereItems
+         * @param values
+         *            the new values, indexed by column number
+         * @param set
+         *            which of the values have been set
+         * @return
+         */
+        public static Operation update(List<FilterItem> whereItems, Object[] values, boolean[] set) {
+            return new Operation(whereItems, values.clone(), set.clone());
+        }
+
+        public boolean isDelete() {
+            return _values == null;
+        }
+
+        public boolean isTruncate() {
+            return isDelete() && _whereItems.isEmpty();
+        }
+
+        public boolean matches(Row row) {
+            for (FilterItem whereItem : _whereItems) {
+                if (!whereItem.evaluate(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public void apply(Object[] values) {
+            for (int i = 0; i < values.length && i < _values.length; i++) {
+                if (_set[i]) {
+                    values[i] = _values[i];
+                }
+            }
+        }
+    }
+
+    private final CsvConfiguration _configuration;
+    private final Table _table;
+
+    public CsvRewriter(CsvConfiguration configuration, Table table) {
+        _configuration = configuration;
+        _table = table;
+    }
+
+    /**
+     * Determines if a resource can be rewritten with a {@link CsvRewriter}.
+     *
+     * @param resource
+     * @param configuration
+     * @return
+     */
+    public static boolean isSupported(Resource resource, CsvConfiguration configuration) {
+        if (!MappedCsvLineParser.isSupported(configuration)) {
+            return false;
+        }
+        if (resource instanceof FileResource) {
+            final File file = ((FileResource) resource).getFile();
+            return !CsvFileRanges.hasWideByteOrderMark(file, configuration.getEncoding());
+        }
+        return !hasWideByteOrderMark(resource, configuration.getEncoding());
+    }
+
+    private static boolean hasWideByteOrderMark(Resource resource, String encoding) {
+        if (!resource.isExists() || (encoding != null && encoding.toLowerCase().indexOf("utf") == -1)) {
+            return false;
+        }
+        final InputStream in = resource.read();
+        try {
+            final int b1 = in.read();
+            final int b2 = in.read();
+            return (b1 == 0xFE && b2 == 0xFF) || (b1 == 0xFF && b2 == 0xFE)
+                    || (b1 == 0x00 && b2 == 0x00 && in.read() == 0xFE && in.read() == 0xFF);
+        } catch (IOException e) {
+            throw new MetaModelException("Could not read CSV resource: " + resource, e);
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    /**
+     * Applies a sequence of operations to a resource.
+     *
+     * @param resource
+     * @param operations
+     *            the operations, in the order they should be applied
+     * @return true if the resource was rewritten, false if there was nothing
+     *         to rewrite
+     */
+    public boolean rewrite(Resource resource, List<Operation> operations) {
+        if (!resource.isExists() || operations.isEmpty()) {
+            return false;
+        }
+        if (resource instanceof FileResource) {
+            final File file = ((FileResource) resource).getFile();
+            final File tempFile = createTempFile(file);
+            try {
+                if (!rewrite(file, tempFile, operations)) {
+                    return false;
+                }
+                replace(tempFile, file);
+                return true;
+            } finally {
+                deleteIfExists(tempFile);
+            }
+        }
+
+        // other resources are copied to and from local files, the swap is only
+        // as atomic as the resource's write operation
+        final File sourceFile = FileHelper.createTempFile("metamodel_rewrite", "csv");
+        final File targetFile = FileHelper.createTempFile("metamodel_rewrite", "csv");
+        try {
+            copy(resource, sourceFile);
+            if (!rewrite(sourceFile, targetFile, operations)) {
+                return false;
+            }
+            final InputStream in = FileHelper.getInputStream(targetFile);
+            try {
+                resource.write(new Action<OutputStream>() {
+                    @Override
+                    public void run(OutputStream out) throws Exception {
+                        FileHelper.copy(in, out);
+                    }
+                });
+            } finally {
+                FileHelper.safeClose(in);
+            }
+            return true;
+        } finally {
+            deleteIfExists(sourceFile);
+            deleteIfExists(targetFile);
+        }
+    }
+
+    private boolean rewrite(File file, File tempFile, List<Operation> operations) {
+        final long dataStart = CsvFileRanges.getDataStartOffset(file, _configuration.getEncoding(),
+                _configuration.getColumnNameLineNumber());
+        if (dataStart == -1) {
+            // no records, nothing to delete or update
+            return false;
+        }
+
+        int firstOperation = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            if (operations.get(i).isTruncate()) {
+                // everything before a truncation is irrelevant
+                firstOperation = i + 1;
+            }
+        }
+        final boolean truncate = firstOperation > 0;
+        final List<Operation> effectiveOperations = operations.subList(firstOperation, operations.size());
+
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        MappedCsvReader reader = null;
+        try {
+            in = new FileInputStream(file);
+            out = new FileOutputStream(tempFile);
+            final FileChannel inChannel = in.getChannel();
+            final FileChannel outChannel = out.getChannel();
+            final BufferedOutputStream bufferedOut = new BufferedOutputStream(out, BUFFER_SIZE);
+
+            if (truncate) {
+                // keep only the column name lines (and byte order mark)
+                transfer(inChannel, 0, dataStart, outChannel);
+                return true;
+            }
+
+            // the file is renamed afterwards, which a mapping could prevent
+            reader = new MappedCsvReader(file, dataStart, file.length(), false);
+            final RecordReader recordReader = new RecordReader(reader);
+            final CsvWriter csvWriter = new CsvWriter(_configuration);
+            // typed columns are matched on the parsed values, but written
+            // back as they were read
+            final Column[] columns = _table.getColumns();
+            final ColumnType[] types = TypedCsvDataSet.getTypes(recordReader.getHeader().getSelectItems());
+            final CsvValueParser valueParser = (types == null ? null : new CsvValueParser());
+            final StringBuilder sb = new StringBuilder(CsvWriter.INITIAL_STRING_SIZE);
+            final Charset charset = Charset.forName(_configuration.getEncoding());
+
+            boolean changed = false;
+            long copyFrom = 0;
+            while (true) {
+                final long recordStart = reader.getPosition();
+                final Row originalRow = recordReader.next();
+                if (originalRow == null) {
+                    break;
+                }
+                if (originalRow == BLANK) {
+                    continue;
+                }
+
+                Row row = originalRow;
+                Row typedRow = null;
+                Object[] values = null;
+                boolean deleted = false;
+                for (Operation operation : effectiveOperations) {
+                    if (types != null && typedRow == null) {
+                        typedRow = valueParser.parseRow(recordReader.getHeader(), types, row);
+                    }
+                    if (!operation.matches(types == null ? row : typedRow)) {
+                        continue;
+                    }
+                    if (operation.isDelete()) {
+                        deleted = true;
+                        break;
+                    }
+                    if (values == null) {
+                        values = row.getValues();
+                    }
+                    operation.apply(values);
+                    row = new DefaultRow(recordReader.getHeader(), values);
+                    typedRow = null;
+                }
+
+                if (!deleted && values == null) {
+                    // unaffected, will be copied along with the following
+                    // records
+                    continue;
+                }
+
+                changed = true;
+                bufferedOut.flush();
+                transfer(inChannel, copyFrom, recordStart, outChannel);
+                copyFrom = reader.getPosition();
+
+                if (!deleted) {
+                    final String[] stringValues = new String[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        stringValues[i] = CsvValueParser.format(columns[i].getType(), values[i]);
+                    }
+                    sb.setLength(0);
+                    csvWriter.appendLine(sb, stringValues);
+                    bufferedOut.write(sb.toString().getBytes(charset));
+                }
+            }
+
+            if (!changed) {
+                return false;
+            }
+            bufferedOut.flush();
+            transfer(inChannel, copyFrom, inChannel.size(), outChannel);
+            return true;
+        } catch (IOException e) {
+            throw new MetaModelException("Failed to rewrite CSV file: " + file, e);
+        } finally {
+            FileHelper.safeClose(reader, in, out);
+        }
+    }
+
+    private static void transfer(FileChannel in, long from, long to, FileChannel out) throws IOException {
+        long position = from;
+        while (position < to) {
+            position += in.transferTo(position, to - position, out);
+        }
+    }
+
+    /**
+     * Reads records, either single lines or (if multiline values are allowed)
+     * as many lines as needed to close quoted values.
+     */
+    private final class RecordReader {
+
+        private final MappedCsvReader _reader;
+        private final MappedCsvLineParser _lineParser;
+        private final CSVParser _csvParser;
+        private final DataSetHeader _header;
+        private final int[] _columnNumbers;
+        private final int _columnCount;
+        private int _rowNumber;
+
+        public RecordReader(MappedCsvReader reader) {
+            _reader = reader;
+            _columnCount = _table.getColumnCount();
+            _lineParser = new MappedCsvLineParser(_configuration, _columnCount);
+            _header = new SimpleDataSetHeader(_table.getColumns());
+            _columnNumbers = new int[_columnCount];
+            for (int i = 0; i < _columnCount; i++) {
+                _columnNumbers[i] = i;
+            }
+            if (_configuration.isMultilineValues()) {
+                _csvParser = new CSVParser(_configuration.getSeparatorChar(), _configuration.getQuoteChar(),
+                        _configuration.getEscapeChar());
+            } else {
+                _csvParser = null;
+            }
+        }
+
+        public DataSetHeader getHeader() {
+            return _header;
+        }
+
+        public Row next() throws IOException {
+            final byte[] line = _reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            if (_csvParser == null) {
+                if (line.length == 0) {
+                    return BLANK;
+                }
+                _rowNumber++;
+                return new MappedCsvRow(_lineParser, _header, _columnNumbers, line, _rowNumber);
+            }
+
+            // like CSVReader.readNext()
+            String[] csvValues = _csvParser.parseLineMulti(_lineParser.decodeLine(line));
+            while (_csvParser.isPending()) {
+                final byte[] nextLine = _reader.readLine();
+                if (nextLine == null) {
+                    break;
+                }
+                final String[] moreValues = _csvParser.parseLineMulti(_lineParser.decodeLine(nextLine));
+                final String[] concatenated = new String[csvValues.length + moreValues.length];
+                System.arraycopy(csvValues, 0, concatenated, 0, csvValues.length);
+                System.arraycopy(moreValues, 0, concatenated, csvValues.length, moreValues.length);
+                csvValues = concatenated;
+            }
+
+            if (csvValues.length == 1 && "".equals(csvValues[0])) {
+                return BLANK;
+            }
+            _rowNumber++;
+
+            final Object[] values = new Object[_columnCount];
+            System.arraycopy(csvValues, 0, values, 0, Math.min(csvValues.length, _columnCount));
+            final Row row = new DefaultRow(_header, values);
+            if (_configuration.isFailOnInconsistentRowLength() && csvValues.length != _columnCount) {
+                throw new InconsistentRowLengthException(_columnCount, row, csvValues, _rowNumber);
+            }
+            return row;
+        }
+    }
+
+    private static File createTempFile(File file) {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        try {
+            return File.createTempFile(file.getName() + ".", ".tmp", directory);
+        } catch (IOException e) {
+            throw new MetaModelException("Could not create temporary file in directory: " + directory, e);
+        }
+    }
+
+    /**
+     * Replaces a file with a rewritten version of it, using an atomic rename
+     * if possible.
+     *
+     * @param tempFile
+     * @param file
+     */
+    private static void replace(File tempFile, File file) {
+        final Path source = tempFile.toPath();
+        final Path target = file.toPath();
+        try {
+            Files.setPosixFilePermissions(source, Files.getPosixFilePermissions(target));
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("Could not copy file permissions of {}", file, e);
+        }
+        try {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                logger.debug("Atomic move not supported, replacing {} non-atomically", file);
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new MetaModelException("Could not replace file with rewritten copy: " + file, e);
+        }
+    }
+
+    private static void copy(Resource resource, File file) {
+        final InputStream in = resource.read();
+        try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new MetaModelException("Could not copy CSV resource to temporary file: " + resource, e);
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete temporary file: {}", file);
+        }
+    }
+}
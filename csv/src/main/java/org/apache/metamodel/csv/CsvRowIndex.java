@@ -0,0 +1,328 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.apache.metamodel.util.FileHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sidecar index of a single-line CSV file, which records the byte offset of
+ * every Nth record (non-blank line) after the column name lines. The index is
+ * stored next to the CSV file (see {@link #getIndexFile(File)}) and is keyed to
+ * the size and last modification time of the CSV file, so that it is ignored
+ * once the file is changed by other means than appending through MetaModel.
+ *
+ * Instances are immutable.
+ */
+final class CsvRowIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvRowIndex.class);
+
+    /**
+     * The format version of the index files. Must be incremented if the format
+     * is changed in an incompatible way.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String FILE_SUFFIX = ".rowindex";
+
+    private final int _interval;
+    private final long _fileSize;
+    private final long _lastModified;
+    private final long _recordCount;
+    private final long[] _offsets;
+
+    private CsvRowIndex(int interval, long fileSize, long lastModified, long recordCount, long[] offsets) {
+        _interval = interval;
+        _fileSize = fileSize;
+        _lastModified = lastModified;
+        _recordCount = recordCount;
+        _offsets = offsets;
+    }
+
+    public static File getIndexFile(File csvFile) {
+        return new File(csvFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the index of a CSV file, if it exists and is up to date.
+     *
+     * @param csvFile
+     * @param interval
+     *            the expected record interval of the index
+     * @param dataStart
+     *            the expected offset of the first record
+     * @return the index, or null if no valid index exists
+     */
+    public static CsvRowIndex load(File csvFile, int interval, long dataStart) {
+        final File indexFile = getIndexFile(csvFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final int fileInterval = in.readInt();
+            final long fileSize = in.readLong();
+            final long lastModified = in.readLong();
+            final long recordCount = in.readLong();
+            final int offsetCount = in.readInt();
+            if (fileInterval != interval || offsetCount < 1) {
+                return null;
+            }
+            final long[] offsets = new long[offsetCount];
+            for (int i = 0; i < offsetCount; i++) {
+                offsets[i] = in.readLong();
+            }
+
+            final CsvRowIndex index = new CsvRowIndex(fileInterval, fileSize, lastModified, recordCount, offsets);
+            if (!index.isValidFor(csvFile) || offsets[0] != dataStart) {
+                logger.debug("Ignoring outdated row index: {}", indexFile);
+                return null;
+            }
+            return index;
+        } catch (IOException e) {
+            logger.warn("Failed to read row index: " + indexFile, e);
+            return null;
+        } finally {
+            FileHelper.safeClose(in);
+        }
+    }
+
+    /**
+     * Deletes the index of a CSV file, if it exists.
+     *
+     * @param csvFile
+     */
+    public static void delete(File csvFile) {
+        final File indexFile = getIndexFile(csvFile);
+        if (indexFile.exists() && !indexFile.delete()) {
+            logger.warn("Could not delete row index: {}", indexFile);
+        }
+    }
+
+    /**
+     * Saves the index next to the CSV file. The index is written to a
+     * temporary file first and then moved into place.
+     *
+     * @param csvFile
+     */
+    public void save(File csvFile) {
+        final File indexFile = getIndexFile(csvFile);
+        final File tempFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(_interval);
+            out.writeLong(_fileSize);
+            out.writeLong(_lastModified);
+            out.writeLong(_recordCount);
+            out.writeInt(_offsets.length);
+            for (long offset : _offsets) {
+                out.writeLong(offset);
+            }
+            out.close();
+            out = null;
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write row index: " + indexFile, e);
+            tempFile.delete();
+        } finally {
+            FileHelper.safeClose(out);
+        }
+    }
+
+    /**
+     * Determines if the index is up to date with a CSV file.
+     *
+     * @param csvFile
+     * @return
+     */
+    public boolean isValidFor(File csvFile) {
+        return _fileSize == csvFile.length() && _lastModified == csvFile.lastModified();
+    }
+
+    public int getInterval() {
+        return _interval;
+    }
+
+    public long getRecordCount() {
+        return _recordCount;
+    }
+
+    /**
+     * Gets the number of the latest indexed record at or before a particular
+     * record.
+     *
+     * @param record
+     *            the 0-based record number
+     * @return the 0-based number of the indexed record, see
+     *         {@link #getOffset(long)}.
+     */
+    public long getIndexedRecord(long record) {
+        final long entry = Math.min(record / _interval, _offsets.length - 1);
+        return entry * _interval;
+    }
+
+    /**
+     * Gets the byte offset of an indexed record.
+     *
+     * @param indexedRecord
+     *            the 0-based record number, which must be a multiple of the
+     *            interval, see {@link #getIndexedRecord(long)}.
+     * @return
+     */
+    public long getOffset(long indexedRecord) {
+        return _offsets[(int) (indexedRecord / _interval)];
+    }
+
+    /**
+     * Splits the indexed file into a number of ranges with approximately the
+     * same number of records.
+     *
+     * @param count
+     *            the desired number of ranges
+     * @return the range boundaries, like
+     *         {@link CsvFileRanges#split(File, long, long, int)}
+     */
+    public long[] split(int count) {
+        final int ranges = Math.min(count, _offsets.length);
+        final long[] boundaries = new long[ranges + 1];
+        for (int i = 0; i < ranges; i++) {
+            boundaries[i] = _offsets[(int) ((long) i * _offsets.length / ranges)];
+        }
+        boundaries[ranges] = _fileSize;
+        return boundaries;
+    }
+
+    /**
+     * Creates an index which also covers records that have been appended to
+     * the CSV file since this index was built.
+     *
+     * @param csvFile
+     * @return the extended index, or null if the file could not be read
+     */
+    public CsvRowIndex extend(File csvFile) {
+        final Builder builder = new Builder(csvFile, _interval, _recordCount, _offsets);
+        MappedCsvReader reader = null;
+        try {
+            // the appended records are read once, so they are not mapped
+            reader = new MappedCsvReader(csvFile, _fileSize, builder._fileSize, false);
+            for (byte[] line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.length != 0) {
+                    builder.addRecord(reader.getLineOffset());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to extend row index of: " + csvFile, e);
+            return null;
+        } finally {
+            FileHelper.safeClose(reader);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a {@link CsvRowIndex} while a CSV file is being read from the
+     * first record to the end.
+     */
+    static final class Builder {
+
+        private final File _csvFile;
+        private final int _interval;
+        private final long _fileSize;
+        private final long _lastModified;
+        private long _recordCount;
+        private long[] _offsets;
+        private int _offsetCount;
+
+        public Builder(File csvFile, int interval) {
+            this(csvFile, interval, 0, new long[0]);
+        }
+
+        private Builder(File csvFile, int interval, long recordCount, long[] offsets) {
+            _csvFile = csvFile;
+            _interval = interval;
+            _lastModified = csvFile.lastModified();
+            _fileSize = csvFile.length();
+            _recordCount = recordCount;
+            _offsets = Arrays.copyOf(offsets, Math.max(16, offsets.length));
+            _offsetCount = offsets.length;
+        }
+
+        /**
+         * Registers the next record.
+         *
+         * @param offset
+         *            the byte offset of the record
+         */
+        public void addRecord(long offset) {
+            if (_recordCount % _interval == 0) {
+                if (_offsetCount == _offsets.length) {
+                    _offsets = Arrays.copyOf(_offsets, _offsets.length * 2);
+                }
+                _offsets[_offsetCount] = offset;
+                _offsetCount++;
+            }
+            _recordCount++;
+        }
+
+        /**
+         * Builds the index.
+         *
+         * @return the index, or null if the file was modified while the index
+         *         was being built, or if the file has no records.
+         */
+        public CsvRowIndex build() {
+            if (_offsetCount == 0 || _fileSize != _csvFile.length() || _lastModified != _csvFile.lastModified()) {
+                return null;
+            }
+            return new CsvRowIndex(_interval, _fileSize, _lastModified, _recordCount,
+                    Arrays.copyOf(_offsets, _offsetCount));
+        }
+
+        /**
+         * Builds and saves the index.
+         */
+        public void buildAndSave() {
+            final CsvRowIndex index = build();
+            if (index != null) {
+                index.save(_csvFile);
+            }
+        }
+    }
+}
@@ -97,8 +97,33 @@ final class CsvTable extends AbstractTable {
             }
             final String[] columnHeaders = reader.readNext();
 
+            final int sampleSize = _schema.getDataContext().getTypeInferenceSampleSize();
+            if (columnHeaders == null || sampleSize <= 0) {
+                reader.close();
+                return buildColumns(columnHeaders);
+            }
+
+            final CsvColumnTypeDetector[] detectors = new CsvColumnTypeDetector[columnHeaders.length];
+            for (int i = 0; i < detectors.length; i++) {
+                detectors[i] = new CsvColumnTypeDetector();
+            }
+            if (columnNameLineNumber == CsvConfiguration.NO_COLUMN_NAME_LINE) {
+                registerValues(detectors, columnHeaders);
+            }
+            for (int i = 0; i < sampleSize; i++) {
+                final String[] values = reader.readNext();
+                if (values == null) {
+                    break;
+                }
+                registerValues(detectors, values);
+            }
             reader.close();
-            return buildColumns(columnHeaders);
+
+            final ColumnType[] columnTypes = new ColumnType[detectors.length];
+            for (int i = 0; i < detectors.length; i++) {
+                columnTypes[i] = detectors[i].getColumnType();
+            }
+            return buildColumns(columnHeaders, columnTypes);
         } catch (IOException e) {
             throw new IllegalStateException("Exception reading from resource: "
                     + _schema.getDataContext().getResource().getName(), e);
@@ -107,11 +132,21 @@ final class CsvTable extends AbstractTable {
         }
     }
 
+    private static void registerValues(CsvColumnTypeDetector[] detectors, String[] values) {
+        for (int i = 0; i < detectors.length && i < values.length; i++) {
+            detectors[i].registerValue(values[i]);
+        }
+    }
+
     private Column[] buildColumns(final String[] columnNames) {
         if (columnNames == null) {
             return new Column[0];
         }
-        
+        return buildColumns(columnNames, null);
+    }
+
+    private Column[] buildColumns(final String[] columnNames, final ColumnType[] columnTypes) {
+
         final CsvConfiguration configuration = _schema.getDataContext().getConfiguration();
         final int columnNameLineNumber = configuration.getColumnNameLineNumber();
         final boolean nullable = !configuration.isFailOnInconsistentRowLength();
@@ -124,8 +159,10 @@ final class CsvTable extends AbstractTable {
                         : columnNames[i];
                 final String columnName = namingSession.getNextColumnName(new ColumnNamingContextImpl(this,
                         intrinsicColumnName, i));
-                final Column column = new MutableColumn(columnName, ColumnType.STRING, this, i, null, null, nullable,
-                        null, false, null);
+                final ColumnType columnType = (columnTypes == null ? ColumnType.STRING : columnTypes[i]);
+                // empty values of typed columns are read as nulls
+                final Column column = new MutableColumn(columnName, columnType, this, i, null, null, nullable
+                        || columnType != ColumnType.STRING, null, false, null);
                 columns[i] = column;
             }
         }
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.update.AbstractRowUpdationBuilder;
+
+/**
+ * {@link AbstractRowUpdationBuilder} for CSV files that can be rewritten by
+ * {@link CsvRewriter}. Updated records keep their position in the file.
+ */
+final class CsvUpdateBuilder extends AbstractRowUpdationBuilder {
+
+    private final CsvUpdateCallback _updateCallback;
+
+    public CsvUpdateBuilder(CsvUpdateCallback updateCallback, Table table) {
+        super(table);
+        _updateCallback = updateCallback;
+    }
+
+    @Override
+    public void execute() throws MetaModelException {
+        final Column[] columns = getColumns();
+        final boolean[] set = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            set[i] = isSet(columns[i]);
+        }
+        _updateCallback.addRewriteOperation(getTable(), CsvRewriter.Operation.update(getWhereItems(), getValues(), set));
+    }
+}
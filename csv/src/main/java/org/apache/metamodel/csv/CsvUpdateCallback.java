@@ -18,14 +18,19 @@
  */
 package org.apache.metamodel.csv;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.metamodel.AbstractUpdateCallback;
 import org.apache.metamodel.MetaModelException;
@@ -38,6 +43,7 @@ import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.update.RowUpdationBuilder;
 import org.apache.metamodel.util.Action;
+import org.apache.metamodel.util.CompressedResource;
 import org.apache.metamodel.util.EqualsBuilder;
 import org.apache.metamodel.util.FileHelper;
 import org.apache.metamodel.util.FileResource;
@@ -51,12 +57,29 @@ final class CsvUpdateCallback extends AbstractUpdateCallback implements UpdateCa
 
     private final CsvConfiguration _configuration;
     private final Resource _resource;
+    private final CsvWriter _csvWriter;
+    private final StringBuilder _lineBuilder;
+    private final int _writeBufferSize;
+    private final boolean _backgroundWriting;
+    private final Thread _updateThread;
+    private final List<CsvRewriter.Operation> _pendingRewriteOperations;
+    private Table _pendingRewriteTable;
+    private char[] _lineChars;
     private Writer _writer;
+    private boolean _lineBreakChecked;
+    private boolean _rewritten;
 
     public CsvUpdateCallback(CsvDataContext dataContext) {
         super(dataContext);
         _resource = dataContext.getResource();
         _configuration = dataContext.getConfiguration();
+        _writeBufferSize = dataContext.getWriteBufferSize();
+        _backgroundWriting = dataContext.isBackgroundWriting();
+        _csvWriter = new CsvWriter(_configuration);
+        _lineBuilder = new StringBuilder(CsvWriter.INITIAL_STRING_SIZE);
+        _lineChars = new char[CsvWriter.INITIAL_STRING_SIZE];
+        _updateThread = Thread.currentThread();
+        _pendingRewriteOperations = new ArrayList<CsvRewriter.Operation>();
     }
 
     @Override
@@ -86,30 +109,55 @@ final class CsvUpdateCallback extends AbstractUpdateCallback implements UpdateCa
     }
 
     protected synchronized void writeRow(final String[] stringValues, final boolean append) {
-        final CsvWriter csvWriter = new CsvWriter(_configuration);
-        final String line = csvWriter.buildLine(stringValues);
+        executePendingRewrites();
+
+        // the line builder and character buffer are reused for all rows
+        final StringBuilder sb = _lineBuilder;
+        sb.setLength(0);
+        _csvWriter.appendLine(sb, stringValues);
+
+        final int length = sb.length();
+        if (_lineChars.length < length) {
+            _lineChars = new char[Math.max(length, _lineChars.length * 2)];
+        }
+        sb.getChars(0, length, _lineChars, 0);
+
         final Writer writer = getWriter(append);
         try {
-            writer.write(line);
+            writer.write(_lineChars, 0, length);
         } catch (IOException e) {
-            throw new MetaModelException("Failed to write line: " + line, e);
+            throw new MetaModelException("Failed to write line: " + sb, e);
         }
     }
 
     private Writer getWriter(boolean append) {
         if (_writer == null || !append) {
-            final boolean needsLineBreak = needsLineBreak(_resource, _configuration);
+            if (_writer != null) {
+                closeWriter();
+            }
+
+            // all lines written by this callback end with a line break, so
+            // the check is only needed once
+            final boolean needsLineBreak = !_lineBreakChecked && needsLineBreak(_resource, _configuration);
+            _lineBreakChecked = true;
 
             final OutputStream out;
             if (append) {
                 out = _resource.append();
             } else {
+                markRewritten();
                 out = _resource.write();
             }
 
             final boolean insertBom = !append;
 
-            final Writer writer = FileHelper.getWriter(out, _configuration.getEncoding(), insertBom);
+            // the encoded bytes are buffered, the writer itself only has the
+            // small buffer of its encoder
+            Writer writer = FileHelper.getWriter(new BufferedOutputStream(out, _writeBufferSize),
+                    _configuration.getEncoding(), insertBom);
+            if (_backgroundWriting) {
+                writer = new CsvBackgroundWriter(writer);
+            }
 
             if (needsLineBreak) {
                 try {
@@ -133,13 +181,7 @@ final class CsvUpdateCallback extends AbstractUpdateCallback implements UpdateCa
             final File file = ((FileResource) resource).getFile();
 
             try {
-                // find the bytes a newline would match under the encoding
-                final byte[] bytesInLineBreak;
-                {
-                    ByteBuffer encodedLineBreak = Charset.forName(configuration.getEncoding()).encode("\n");
-                    bytesInLineBreak = new byte[encodedLineBreak.capacity()];
-                    encodedLineBreak.get(bytesInLineBreak);
-                }
+                final byte[] bytesInLineBreak = getBytesInLineBreak(configuration);
 
                 // find the last bytes of the file
                 final byte[] bytesFromFile = new byte[bytesInLineBreak.length];
@@ -168,33 +210,199 @@ final class CsvUpdateCallback extends AbstractUpdateCallback implements UpdateCa
             } catch (Exception e) {
                 logger.error("Error occurred while checking if file needs linebreak, omitting check", e);
             }
+        } else if (resource instanceof CompressedResource) {
+            try {
+                final byte[] bytesInLineBreak = getBytesInLineBreak(configuration);
+
+                // the end of the decompressed data can only be found by
+                // reading through all of it
+                final byte[] bytesFromResource = readLastBytes(resource, bytesInLineBreak.length);
+                if (bytesFromResource == null) {
+                    // no data
+                    return false;
+                }
+                return !EqualsBuilder.equals(bytesInLineBreak, bytesFromResource);
+            } catch (Exception e) {
+                logger.error("Error occurred while checking if resource needs linebreak, omitting check", e);
+            }
         }
 
         return false;
     }
 
     /**
-     * Closes all open handles
+     * Finds the bytes a newline would match under the encoding of the
+     * configuration.
+     * 
+     * @param configuration
+     * @return
      */
-    protected void close() {
-        if (_writer != null) {
-            try {
-                _writer.flush();
-            } catch (IOException e) {
-                logger.warn("Failed to flush CSV writer", e);
+    private static byte[] getBytesInLineBreak(CsvConfiguration configuration) {
+        final ByteBuffer encodedLineBreak = Charset.forName(configuration.getEncoding()).encode("\n");
+        final byte[] bytesInLineBreak = new byte[encodedLineBreak.capacity()];
+        encodedLineBreak.get(bytesInLineBreak);
+        return bytesInLineBreak;
+    }
+
+    /**
+     * Reads the last bytes of a resource.
+     * 
+     * @param resource
+     * @param count
+     *            the number of bytes to get
+     * @return the last bytes (less than the requested number if the resource
+     *         is shorter), or null if the resource has no data
+     * @throws IOException
+     */
+    private static byte[] readLastBytes(Resource resource, int count) throws IOException {
+        final byte[] lastBytes = new byte[count];
+        final byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        final InputStream in = resource.read();
+        try {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                if (read >= count) {
+                    System.arraycopy(buffer, read - count, lastBytes, 0, count);
+                } else {
+                    System.arraycopy(lastBytes, read, lastBytes, 0, count - read);
+                    System.arraycopy(buffer, 0, lastBytes, count - read, read);
+                }
+                total += read;
             }
-            try {
-                _writer.close();
-            } catch (IOException e) {
-                logger.error("Failed to close CSV writer", e);
-            } finally {
-                _writer = null;
+        } finally {
+            FileHelper.safeClose(in);
+        }
+        if (total == 0) {
+            return null;
+        }
+        if (total < count) {
+            return Arrays.copyOfRange(lastBytes, count - (int) total, count);
+        }
+        return lastBytes;
+    }
+
+    /**
+     * Marks that the resource has been (or will be) rewritten as a whole, as
+     * opposed to only appended to.
+     */
+    protected void markRewritten() {
+        _rewritten = true;
+    }
+
+    /**
+     * Determines if the resource has been rewritten as a whole during this
+     * update.
+     * 
+     * @return
+     */
+    protected boolean isRewritten() {
+        return _rewritten;
+    }
+
+    /**
+     * Determines if deletes and updates can be applied by a {@link CsvRewriter}
+     * instead of copying the surviving records to a new file through the
+     * regular insert path.
+     * 
+     * @return
+     */
+    protected boolean isRewriteSupported() {
+        return CsvRewriter.isSupported(_resource, _configuration);
+    }
+
+    /**
+     * Adds a delete or update operation, which will be applied together with
+     * any following operations, in a single pass over the file. Pending
+     * operations are applied before rows are written, before the file is
+     * queried by the thread running the update and when the update ends.
+     * 
+     * @param table
+     * @param operation
+     */
+    protected synchronized void addRewriteOperation(Table table, CsvRewriter.Operation operation) {
+        // make sure that rows inserted earlier in the same update are written
+        closeWriter();
+        _pendingRewriteTable = table;
+        _pendingRewriteOperations.add(operation);
+    }
+
+    /**
+     * Applies all pending delete and update operations.
+     */
+    protected synchronized void executePendingRewrites() {
+        if (_pendingRewriteOperations.isEmpty()) {
+            return;
+        }
+        final List<CsvRewriter.Operation> operations = new ArrayList<CsvRewriter.Operation>(
+                _pendingRewriteOperations);
+        _pendingRewriteOperations.clear();
+
+        final CsvRewriter rewriter = new CsvRewriter(_configuration, _pendingRewriteTable);
+        markRewritten();
+        rewriter.rewrite(_resource, operations);
+        _lineBreakChecked = false;
+    }
+
+    /**
+     * Makes all changes of the update so far visible to queries, if called
+     * from the thread that runs the update.
+     */
+    protected void flushForRead() {
+        if (Thread.currentThread() != _updateThread) {
+            return;
+        }
+        synchronized (this) {
+            executePendingRewrites();
+            if (_writer != null) {
+                try {
+                    _writer.flush();
+                } catch (IOException e) {
+                    throw new MetaModelException("Failed to flush CSV writer", e);
+                }
             }
         }
     }
 
+    /**
+     * Closes all open handles, after applying any pending delete and update
+     * operations
+     */
+    protected void close() {
+        try {
+            executePendingRewrites();
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        final Writer writer = _writer;
+        if (writer == null) {
+            return;
+        }
+        _writer = null;
+
+        // most of the written lines are still buffered, so failing to write
+        // them must fail the update
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            FileHelper.safeClose(writer);
+            throw new MetaModelException("Failed to flush CSV writer", e);
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new MetaModelException("Failed to close CSV writer", e);
+        }
+    }
+
     @Override
     public RowUpdationBuilder update(Table table) throws IllegalArgumentException, IllegalStateException {
+        if (isRewriteSupported()) {
+            validateTable(table);
+            return new CsvUpdateBuilder(this, table);
+        }
         close();
         return super.update(table);
     }
@@ -215,7 +423,10 @@ final class CsvUpdateCallback extends AbstractUpdateCallback implements UpdateCa
      * called
      */
     protected void dropTable() {
-        close();
+        // deletes and updates are pointless when the file is dropped anyway
+        _pendingRewriteOperations.clear();
+        closeWriter();
+        markRewritten();
         if (_resource instanceof FileResource) {
             final File file = ((FileResource) _resource).getFile();
             final boolean success = file.delete();
@@ -0,0 +1,445 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.metamodel.data.DataSetHeader;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.schema.ColumnType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses CSV field values into values of the column types inferred by
+ * {@link CsvColumnTypeDetector}. The parsers work directly on the characters of
+ * the field, without intermediate objects, and only accept the formats that the
+ * detector accepts: plain decimal numbers without leading zeros, the boolean
+ * words true/false/yes/no/y/n and ISO dates and timestamps.
+ *
+ * Instances are not thread safe, since a calendar is reused for parsing dates.
+ */
+final class CsvValueParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvValueParser.class);
+
+    /**
+     * Returned by {@link #parseLong(String)} if the value is not a long.
+     */
+    static final long NOT_A_LONG = Long.MIN_VALUE;
+
+    private static final String LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE);
+    private static final int MAX_EXACT_LONG_DIGITS = 18;
+    private static final int MAX_LONG_DIGITS = 19;
+    private static final int MAX_EXACT_DOUBLE_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Calendar _calendar;
+    private boolean _unparseableLogged;
+
+    public CsvValueParser() {
+        _calendar = Calendar.getInstance();
+        _calendar.setLenient(false);
+    }
+
+    /**
+     * Converts the string values of a row into the given types.
+     *
+     * @param header
+     *            the header of the converted row
+     * @param types
+     *            the type of each value of the row, or null for values that
+     *            should not be converted
+     * @param row
+     * @return
+     */
+    public Row parseRow(DataSetHeader header, ColumnType[] types, Row row) {
+        final Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            final Object value = row.getValue(i);
+            values[i] = (types[i] == null ? value : parse(types[i], value));
+        }
+        return new DefaultRow(header, values);
+    }
+
+    /**
+     * Parses a field value.
+     *
+     * @param type
+     * @param value
+     * @return the parsed value, or null if the value is empty. Values which
+     *         cannot be parsed as the type, and values which are not strings,
+     *         are returned as-is.
+     */
+    public Object parse(ColumnType type, Object value) {
+        if (!(value instanceof String)) {
+            return value;
+        }
+        final String str = (String) value;
+        if (str.isEmpty()) {
+            return null;
+        }
+
+        final Object result;
+        if (type == ColumnType.INTEGER || type == ColumnType.BIGINT) {
+            final long longValue = parseLong(str);
+            if (longValue == NOT_A_LONG && !LONG_MIN_VALUE.equals(str)) {
+                result = null;
+            } else if (type == ColumnType.INTEGER && longValue >= Integer.MIN_VALUE
+                    && longValue <= Integer.MAX_VALUE) {
+                result = Integer.valueOf((int) longValue);
+            } else {
+                result = Long.valueOf(longValue);
+            }
+        } else if (type == ColumnType.DOUBLE) {
+            result = parseDouble(str);
+        } else if (type == ColumnType.BOOLEAN) {
+            result = parseBoolean(str);
+        } else if (type == ColumnType.DATE || type == ColumnType.TIMESTAMP) {
+            result = parseDate(str);
+        } else {
+            result = str;
+        }
+
+        if (result == null) {
+            if (!_unparseableLogged) {
+                _unparseableLogged = true;
+                logger.warn(
+                        "Could not parse value '{}' as {}, returning it as a string (further occurrences are not logged)",
+                        str, type);
+            }
+            return str;
+        }
+        return result;
+    }
+
+    /**
+     * Parses an integer without leading zeros. Integers of at most 18 digits
+     * are computed directly, longer ones using {@link Long#parseLong(String)}.
+     *
+     * @param str
+     * @return the value, or {@link #NOT_A_LONG} if the string is not an integer
+     *         or does not fit in a long
+     */
+    static long parseLong(String str) {
+        final int length = str.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (str.charAt(0) == '-' || str.charAt(0) == '+')) {
+            negative = str.charAt(0) == '-';
+            i++;
+        }
+        final int digits = length - i;
+        if (digits == 0 || digits > MAX_LONG_DIGITS || (digits > 1 && str.charAt(i) == '0')) {
+            return NOT_A_LONG;
+        }
+        long result = 0;
+        for (; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_A_LONG;
+            }
+            result = result * 10 + (c - '0');
+        }
+        if (digits > MAX_EXACT_LONG_DIGITS) {
+            // may overflow, let the JDK check the range
+            try {
+                return Long.parseLong(str);
+            } catch (NumberFormatException e) {
+                return NOT_A_LONG;
+            }
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Determines if a string is a plain decimal number, ie. an optional sign,
+     * digits without leading zeros, an optional fraction and an optional
+     * exponent.
+     *
+     * @param str
+     * @return
+     */
+    static boolean isDecimal(String str) {
+        final int length = str.length();
+        int i = 0;
+        if (i < length && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+            i++;
+        }
+        final int integerStart = i;
+        while (i < length && isDigit(str.charAt(i))) {
+            i++;
+        }
+        final int integerDigits = i - integerStart;
+        if (integerDigits > 1 && str.charAt(integerStart) == '0') {
+            return false;
+        }
+        int fractionDigits = 0;
+        if (i < length && str.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(str.charAt(i))) {
+                i++;
+                fractionDigits++;
+            }
+        }
+        if (integerDigits == 0 && fractionDigits == 0) {
+            return false;
+        }
+        if (i < length && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+                i++;
+            }
+            final int exponentStart = i;
+            while (i < length && isDigit(str.charAt(i))) {
+                i++;
+            }
+            if (i == exponentStart) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    /**
+     * Parses a decimal number, as accepted by {@link #isDecimal(String)}.
+     * Numbers with at most 15 digits and no exponent are computed directly,
+     * which gives the same (correctly rounded) result as
+     * {@link Double#parseDouble(String)}.
+     *
+     * @param str
+     * @return the value, or null if the string is not a decimal number
+     */
+    static Double parseDouble(String str) {
+        final int length = str.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (str.charAt(0) == '-' || str.charAt(0) == '+')) {
+            negative = str.charAt(0) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < length; i++) {
+            final char c = str.charAt(i);
+            if (isDigit(c)) {
+                if (!fraction && digits == 1 && mantissa == 0) {
+                    // leading zero
+                    return null;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+                if (digits > MAX_EXACT_DOUBLE_DIGITS) {
+                    break;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i == length && digits > 0) {
+            final double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        // exponents, many digits or not a number at all
+        if (!isDecimal(str)) {
+            return null;
+        }
+        return Double.parseDouble(str);
+    }
+
+    /**
+     * Parses the boolean words accepted by {@link #isBooleanWord(String)}, as
+     * well as 1 and 0.
+     *
+     * @param str
+     * @return the value, or null if the string is not a boolean
+     */
+    static Boolean parseBoolean(String str) {
+        if ("true".equalsIgnoreCase(str) || "yes".equalsIgnoreCase(str) || "y".equalsIgnoreCase(str)
+                || "1".equals(str)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(str) || "no".equalsIgnoreCase(str) || "n".equalsIgnoreCase(str)
+                || "0".equals(str)) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Determines if a string is one of the words true/false/yes/no/y/n,
+     * ignoring case. Unlike {@link #parseBoolean(String)}, 1 and 0 are not
+     * accepted, since such columns are more likely to be numbers.
+     *
+     * @param str
+     * @return
+     */
+    static boolean isBooleanWord(String str) {
+        return str.length() <= 5 && parseBoolean(str) != null && !"1".equals(str) && !"0".equals(str);
+    }
+
+    /**
+     * Determines the type of an ISO date or timestamp string.
+     *
+     * @param str
+     * @return {@link ColumnType#DATE} for "yyyy-MM-dd",
+     *         {@link ColumnType#TIMESTAMP} for "yyyy-MM-dd HH:mm:ss" with an
+     *         optional 'T' separator and up to three fraction digits, or null
+     *         if the string is neither
+     */
+    static ColumnType getDateType(String str) {
+        final int length = str.length();
+        if (length != 10 && (length < 19 || length > 23 || length == 20)) {
+            return null;
+        }
+        if (!isDigits(str, 0, 4) || str.charAt(4) != '-' || !isDigits(str, 5, 7) || str.charAt(7) != '-'
+                || !isDigits(str, 8, 10)) {
+            return null;
+        }
+        if (length == 10) {
+            return ColumnType.DATE;
+        }
+        final char separator = str.charAt(10);
+        if ((separator != ' ' && separator != 'T') || !isDigits(str, 11, 13) || str.charAt(13) != ':'
+                || !isDigits(str, 14, 16) || str.charAt(16) != ':' || !isDigits(str, 17, 19)) {
+            return null;
+        }
+        if (length > 19 && (str.charAt(19) != '.' || !isDigits(str, 20, length))) {
+            return null;
+        }
+        return ColumnType.TIMESTAMP;
+    }
+
+    /**
+     * Parses an ISO date or timestamp, see {@link #getDateType(String)}, in
+     * the default time zone.
+     *
+     * @param str
+     * @return the date, or null if the string is not a valid date
+     */
+    Date parseDate(String str) {
+        final ColumnType dateType = getDateType(str);
+        if (dateType == null) {
+            return null;
+        }
+        _calendar.clear();
+        _calendar.set(Calendar.YEAR, toInt(str, 0, 4));
+        _calendar.set(Calendar.MONTH, toInt(str, 5, 7) - 1);
+        _calendar.set(Calendar.DAY_OF_MONTH, toInt(str, 8, 10));
+        if (dateType == ColumnType.TIMESTAMP) {
+            _calendar.set(Calendar.HOUR_OF_DAY, toInt(str, 11, 13));
+            _calendar.set(Calendar.MINUTE, toInt(str, 14, 16));
+            _calendar.set(Calendar.SECOND, toInt(str, 17, 19));
+            if (str.length() > 19) {
+                int millis = toInt(str, 20, str.length());
+                for (int i = str.length() - 20; i < 3; i++) {
+                    millis *= 10;
+                }
+                _calendar.set(Calendar.MILLISECOND, millis);
+            }
+        }
+        try {
+            return _calendar.getTime();
+        } catch (IllegalArgumentException e) {
+            // eg. February 30th
+            return null;
+        }
+    }
+
+    /**
+     * Formats a value to be written to a field of a column. Dates and
+     * calendars written to {@link ColumnType#DATE} and
+     * {@link ColumnType#TIMESTAMP} columns are formatted as ISO dates and
+     * timestamps in the default time zone, so that they can be parsed by
+     * {@link #parseDate(String)}. Other values are written using toString().
+     *
+     * @param type
+     *            the type of the column, or null
+     * @param value
+     * @return the string value, or an empty string if the value is null
+     */
+    static String format(ColumnType type, Object value) {
+        if (value == null) {
+            return "";
+        }
+        if ((type == ColumnType.DATE || type == ColumnType.TIMESTAMP)
+                && (value instanceof Date || value instanceof Calendar)) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTime(value instanceof Calendar ? ((Calendar) value).getTime() : (Date) value);
+
+            final StringBuilder sb = new StringBuilder(23);
+            appendDigits(sb, calendar.get(Calendar.YEAR), 4).append('-');
+            appendDigits(sb, calendar.get(Calendar.MONTH) + 1, 2).append('-');
+            appendDigits(sb, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            if (type == ColumnType.TIMESTAMP) {
+                sb.append(' ');
+                appendDigits(sb, calendar.get(Calendar.HOUR_OF_DAY), 2).append(':');
+                appendDigits(sb, calendar.get(Calendar.MINUTE), 2).append(':');
+                appendDigits(sb, calendar.get(Calendar.SECOND), 2);
+                final int millis = calendar.get(Calendar.MILLISECOND);
+                if (millis != 0) {
+                    sb.append('.');
+                    appendDigits(sb, millis, 3);
+                }
+            }
+            return sb.toString();
+        }
+        return value.toString();
+    }
+
+    private static StringBuilder appendDigits(StringBuilder sb, int value, int digits) {
+        final String str = Integer.toString(value);
+        for (int i = str.length(); i < digits; i++) {
+            sb.append('0');
+        }
+        return sb.append(str);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDigits(String str, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isDigit(str.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toInt(String str, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + (str.charAt(i) - '0');
+        }
+        return result;
+    }
+}
@@ -44,6 +44,21 @@ public final class CsvWriter {
      */
     public String buildLine(String[] nextLine) {
         final StringBuilder sb = new StringBuilder(INITIAL_STRING_SIZE);
+        appendLine(sb, nextLine);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a line for the CSV file output to a {@link StringBuilder}, which
+     * makes it possible to reuse the same builder for many lines.
+     * 
+     * @param sb
+     *            the builder to append to
+     * @param nextLine
+     *            a string array with each comma-separated element as a separate
+     *            entry.
+     */
+    public void appendLine(StringBuilder sb, String[] nextLine) {
         for (int i = 0; i < nextLine.length; i++) {
 
             if (i != 0) {
@@ -59,7 +74,11 @@ public final class CsvWriter {
                 sb.append(quoteChar);
             }
 
-            sb.append(valueNeedsEscaping(nextElement) ? processValue(nextElement) : nextElement);
+            if (valueNeedsEscaping(nextElement)) {
+                appendProcessedValue(sb, nextElement);
+            } else {
+                sb.append(nextElement);
+            }
 
             if (quoteChar != CsvConfiguration.NOT_A_CHAR) {
                 sb.append(quoteChar);
@@ -67,8 +86,6 @@ public final class CsvWriter {
         }
 
         sb.append('\n');
-        return sb.toString();
-
     }
 
     private boolean valueNeedsEscaping(String line) {
@@ -81,16 +98,16 @@ public final class CsvWriter {
         return result;
     }
 
-    private String processValue(String value) {
+    private void appendProcessedValue(StringBuilder sb, String value) {
         final char escapeChar = _configuration.getEscapeChar();
         if (escapeChar == CsvConfiguration.NOT_A_CHAR) {
-            return value;
+            sb.append(value);
+            return;
         }
 
         final char quoteChar = _configuration.getQuoteChar();
         final char separatorChar = _configuration.getSeparatorChar();
 
-        final StringBuilder sb = new StringBuilder(value.length() + 10);
         for (int j = 0; j < value.length(); j++) {
             final char nextChar = value.charAt(j);
             if (nextChar == quoteChar) {
@@ -103,7 +120,5 @@ public final class CsvWriter {
                 sb.append(nextChar);
             }
         }
-
-        return sb.toString();
     }
 }
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.IOException;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.ZoneMap;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.util.FileHelper;
+
+/**
+ * A DataSet implementation for single-line CSV files which reads the file
+ * using memory mapping and parses lines on byte level, see
+ * {@link MappedCsvReader} and {@link MappedCsvLineParser}. Only the fields of
+ * the requested columns are decoded.
+ */
+final class MappedCsvDataSet extends AbstractDataSet {
+
+    private final MappedCsvReader _reader;
+    private final MappedCsvLineParser _parser;
+    private final int[] _columnNumbers;
+    private final CsvRowIndex.Builder _indexBuilder;
+    private final ZoneMap.Builder _zoneMapBuilder;
+    private final CsvFieldFilter _fieldFilter;
+
+    private volatile int _rowNumber;
+    private volatile Integer _rowsRemaining;
+    private volatile Row _row;
+    private volatile boolean _closed;
+
+    public MappedCsvDataSet(MappedCsvReader reader, MappedCsvLineParser parser, Column[] columns,
+            Integer maxRows) {
+        this(reader, parser, columns, maxRows, 0, null, null);
+    }
+
+    /**
+     * Creates a data set
+     * 
+     * @param reader
+     * @param parser
+     * @param columns
+     * @param maxRows
+     * @param skippedRows
+     *            the number of rows before the position of the reader, used
+     *            for row numbering
+     * @param indexBuilder
+     *            an optional {@link CsvRowIndex.Builder} to build and save a
+     *            row index with, if the data set is read until the end. Must
+     *            only be set if the reader is positioned at the first row.
+     * @param zoneMapBuilder
+     *            an optional {@link ZoneMap.Builder} to build and save a zone
+     *            map with, if the data set is read until the end. Must only be
+     *            set if the reader is positioned at the first row.
+     */
+    public MappedCsvDataSet(MappedCsvReader reader, MappedCsvLineParser parser, Column[] columns,
+            Integer maxRows, int skippedRows, CsvRowIndex.Builder indexBuilder, ZoneMap.Builder zoneMapBuilder) {
+        this(reader, parser, columns, maxRows, skippedRows, indexBuilder, zoneMapBuilder, null);
+    }
+
+    /**
+     * Creates a data set which only returns the lines accepted by a
+     * {@link CsvFieldFilter}. Rejected lines do not count towards maxRows.
+     * 
+     * @param reader
+     * @param parser
+     * @param columns
+     * @param maxRows
+     * @param fieldFilter
+     */
+    public MappedCsvDataSet(MappedCsvReader reader, MappedCsvLineParser parser, Column[] columns,
+            Integer maxRows, CsvFieldFilter fieldFilter) {
+        this(reader, parser, columns, maxRows, 0, null, null, fieldFilter);
+    }
+
+    private MappedCsvDataSet(MappedCsvReader reader, MappedCsvLineParser parser, Column[] columns,
+            Integer maxRows, int skippedRows, CsvRowIndex.Builder indexBuilder, ZoneMap.Builder zoneMapBuilder,
+            CsvFieldFilter fieldFilter) {
+        super(columns);
+        _reader = reader;
+        _parser = parser;
+        _rowNumber = skippedRows;
+        _rowsRemaining = maxRows;
+        _indexBuilder = indexBuilder;
+        _zoneMapBuilder = zoneMapBuilder;
+        _fieldFilter = fieldFilter;
+
+        _columnNumbers = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            _columnNumbers[i] = columns[i].getColumnNumber();
+        }
+    }
+
+    @Override
+    public void close() {
+        _closed = true;
+        FileHelper.safeClose(_reader);
+        _row = null;
+        _rowsRemaining = null;
+    }
+
+    @Override
+    public boolean next() {
+        if (_rowsRemaining != null && _rowsRemaining > 0) {
+            _rowsRemaining--;
+            return nextInternal();
+        } else if (_rowsRemaining == null) {
+            return nextInternal();
+        } else {
+            return false;
+        }
+    }
+
+    private boolean nextInternal() {
+        if (_closed) {
+            return false;
+        }
+
+        try {
+            byte[] line = _reader.readLine();
+            while (line != null && (line.length == 0 || !accept(line))) {
+                // blank or rejected line - move to next line
+                line = _reader.readLine();
+            }
+            if (line == null) {
+                close();
+                if (_indexBuilder != null) {
+                    _indexBuilder.buildAndSave();
+                }
+                if (_zoneMapBuilder != null) {
+                    _zoneMapBuilder.buildAndSave();
+                }
+                return false;
+            }
+
+            if (_indexBuilder != null) {
+                _indexBuilder.addRecord(_reader.getLineOffset());
+            }
+            final MappedCsvRow row;
+            if (_fieldFilter == null) {
+                _rowNumber++;
+                row = new MappedCsvRow(_parser, getHeader(), _columnNumbers, line, _rowNumber);
+            } else {
+                row = new MappedCsvRow(_parser, getHeader(), _columnNumbers, line, _rowNumber,
+                        _fieldFilter.getBoundaries(), _fieldFilter.getParsedValues());
+            }
+            if (_zoneMapBuilder != null) {
+                final int[] trackedColumnNumbers = _zoneMapBuilder.getColumnNumbers();
+                final Object[] trackedValues = new Object[trackedColumnNumbers.length];
+                for (int i = 0; i < trackedValues.length; i++) {
+                    trackedValues[i] = row.getFieldValue(trackedColumnNumbers[i]);
+                }
+                _zoneMapBuilder.addRecord(_reader.getLineOffset(), trackedValues);
+            }
+            _row = row;
+            return true;
+        } catch (IOException e) {
+            close();
+            throw new MetaModelException("IOException occurred while reading next line of CSV resource", e);
+        }
+    }
+
+    private boolean accept(byte[] line) {
+        if (_fieldFilter == null) {
+            return true;
+        }
+        // rows are numbered before filtering, so the numbers match the lines
+        _rowNumber++;
+        return _fieldFilter.accept(line, _rowNumber);
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.metamodel.MetaModelException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+/**
+ * Byte level parser for lines read by {@link MappedCsvReader}. Lines without
+ * quote and escape characters are tokenized directly on their bytes, recording
+ * only the offsets of the fields, so that fields can be decoded individually
+ * and only when requested. Other lines are decoded in full and parsed using
+ * the regular {@link CSVParser}.
+ *
+ * Instances are not thread safe.
+ */
+final class MappedCsvLineParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedCsvLineParser.class);
+
+    private static final int NO_BYTE = 0x100;
+
+    private final Charset _charset;
+    private final byte _separator;
+    private final int _quote;
+    private final int _escape;
+    private final CSVParser _csvParser;
+    private final int _columnsInTable;
+    private final boolean _failOnInconsistentRowLength;
+
+    public MappedCsvLineParser(CsvConfiguration configuration, int columnsInTable) {
+        _charset = Charset.forName(configuration.getEncoding());
+        _separator = (byte) configuration.getSeparatorChar();
+        _quote = toByte(configuration.getQuoteChar());
+        _escape = toByte(configuration.getEscapeChar());
+        _csvParser = new CSVParser(configuration.getSeparatorChar(), configuration.getQuoteChar(),
+                configuration.getEscapeChar());
+        _columnsInTable = columnsInTable;
+        _failOnInconsistentRowLength = configuration.isFailOnInconsistentRowLength();
+    }
+
+    /**
+     * Determines if a CSV configuration can be parsed on byte level, ie. if
+     * the encoding is ASCII compatible and the separator, quote and escape
+     * characters are all single byte characters.
+     *
+     * @param configuration
+     * @return
+     */
+    public static boolean isSupported(CsvConfiguration configuration) {
+        if (!CsvFileRanges.isAsciiCompatible(configuration.getEncoding())) {
+            return false;
+        }
+        if (!CsvFileRanges.isAsciiChar(configuration.getSeparatorChar())) {
+            return false;
+        }
+        final char quoteChar = configuration.getQuoteChar();
+        if (quoteChar != CsvConfiguration.NOT_A_CHAR && !CsvFileRanges.isAsciiChar(quoteChar)) {
+            return false;
+        }
+        final char escapeChar = configuration.getEscapeChar();
+        if (escapeChar != CsvConfiguration.NOT_A_CHAR && !CsvFileRanges.isAsciiChar(escapeChar)) {
+            return false;
+        }
+        return true;
+    }
+
+    private static int toByte(char c) {
+        if (c == CsvConfiguration.NOT_A_CHAR) {
+            return NO_BYTE;
+        }
+        return c;
+    }
+
+    public int getColumnsInTable() {
+        return _columnsInTable;
+    }
+
+    public boolean isFailOnInconsistentRowLength() {
+        return _failOnInconsistentRowLength;
+    }
+
+    /**
+     * Tokenizes a line on byte level.
+     *
+     * @param line
+     * @return the field boundaries: field i spans the bytes from
+     *         boundaries[i] (inclusive) to boundaries[i+1] - 1 (exclusive).
+     *         Null is returned if the line contains quote or escape
+     *         characters, in which case {@link #parse(byte[], int)} must be
+     *         used instead.
+     */
+    public int[] tokenize(byte[] line) {
+        int fields = 1;
+        for (int i = 0; i < line.length; i++) {
+            final byte b = line[i];
+            if (b == _separator) {
+                fields++;
+            } else if (b == _quote || b == _escape) {
+                return null;
+            }
+        }
+
+        final int[] boundaries = new int[fields + 1];
+        int field = 1;
+        for (int i = 0; i < line.length; i++) {
+            if (line[i] == _separator) {
+                boundaries[field] = i + 1;
+                field++;
+            }
+        }
+        boundaries[fields] = line.length + 1;
+        return boundaries;
+    }
+
+    /**
+     * Decodes a single field of a tokenized line.
+     *
+     * @param line
+     * @param boundaries
+     *            the boundaries returned by {@link #tokenize(byte[])}
+     * @param field
+     * @return
+     */
+    public String decode(byte[] line, int[] boundaries, int field) {
+        final int start = boundaries[field];
+        return new String(line, start, boundaries[field + 1] - 1 - start, _charset);
+    }
+
+    /**
+     * Decodes all fields of a tokenized line.
+     *
+     * @param line
+     * @param boundaries
+     *            the boundaries returned by {@link #tokenize(byte[])}
+     * @return
+     */
+    public String[] decodeAll(byte[] line, int[] boundaries) {
+        final String[] values = new String[boundaries.length - 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = decode(line, boundaries, i);
+        }
+        return values;
+    }
+
+    /**
+     * Decodes and parses a full line using the regular {@link CSVParser}.
+     * Unparseable lines are returned as a single value with trailing nulls,
+     * unless the configuration is set to fail on inconsistent row lengths.
+     *
+     * @param line
+     * @param rowNumber
+     * @return
+     */
+    public String[] parse(byte[] line, int rowNumber) {
+        final String str = decodeLine(line);
+        try {
+            return _csvParser.parseLine(str);
+        } catch (IOException e) {
+            if (_failOnInconsistentRowLength) {
+                throw new MetaModelException("Failed to parse CSV line no. " + rowNumber + ": " + str, e);
+            } else {
+                logger.warn(
+                        "Encountered unparseable line no. {}, returning line as a single value with trailing nulls: {}",
+                        rowNumber, str);
+                final String[] csvValues = new String[_columnsInTable];
+                csvValues[0] = str;
+                return csvValues;
+            }
+        }
+    }
+
+    public String decodeLine(byte[] line) {
+        return new String(line, _charset);
+    }
+}
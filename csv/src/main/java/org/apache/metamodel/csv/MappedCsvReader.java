@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Reads the lines of a byte range of a file, either using memory mapping or
+ * using positional reads of the file channel into a heap buffer. The file is
+ * mapped (or read) in windows, so that arbitrarily large files can be read.
+ * Lines are returned as byte arrays without the line break, which may be
+ * either LF, CRLF or CR (like {@link java.io.BufferedReader#readLine()}).
+ *
+ * Mapped files cannot be renamed or deleted on some platforms (notably
+ * Windows) until the mapped buffers have been garbage collected, so memory
+ * mapping should only be used when asked for.
+ *
+ * A reader may also read a sequence of ranges, which makes it possible to skip
+ * parts of a file. Ranges must start at the beginning of a line. Instances are
+ * not thread safe.
+ */
+final class MappedCsvReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+
+    public static final int DEFAULT_READ_WINDOW_SIZE = 256 * 1024;
+
+    private static final byte[] EMPTY_LINE = new byte[0];
+
+    private final RandomAccessFile _file;
+    private final FileChannel _channel;
+    private final long[] _starts;
+    private final long[] _ends;
+    private final int _windowSize;
+    private final boolean _memoryMapped;
+
+    private int _range;
+    private long _end;
+    private ByteBuffer _window;
+    private ByteBuffer _readBuffer;
+    private long _windowStart;
+    private long _position;
+    private long _lineOffset;
+
+    public MappedCsvReader(File file, long start, long end, boolean memoryMapped) throws IOException {
+        this(file, new long[] { start }, new long[] { end }, memoryMapped);
+    }
+
+    public MappedCsvReader(File file, long start, long end, int windowSize, boolean memoryMapped)
+            throws IOException {
+        this(file, new long[] { start }, new long[] { end }, windowSize, memoryMapped);
+    }
+
+    public MappedCsvReader(File file, long[] starts, long[] ends, boolean memoryMapped) throws IOException {
+        this(file, starts, ends, (memoryMapped ? DEFAULT_WINDOW_SIZE : DEFAULT_READ_WINDOW_SIZE), memoryMapped);
+    }
+
+    /**
+     * Creates a reader which reads a sequence of ranges.
+     * 
+     * @param file
+     * @param starts
+     *            the start offsets of the ranges, in ascending order
+     * @param ends
+     *            the end offsets of the ranges
+     * @param windowSize
+     *            the initial number of bytes to map or read at a time
+     * @param memoryMapped
+     *            whether to map the file, rather than read it
+     * @throws IOException
+     */
+    public MappedCsvReader(File file, long[] starts, long[] ends, int windowSize, boolean memoryMapped)
+            throws IOException {
+        _file = new RandomAccessFile(file, "r");
+        _channel = _file.getChannel();
+        _starts = starts;
+        _ends = ends;
+        _windowSize = windowSize;
+        _memoryMapped = memoryMapped;
+        _range = 0;
+        _end = ends[0];
+        _position = starts[0];
+        _lineOffset = starts[0];
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return the bytes of the line, or null if the end of the range has been
+     *         reached.
+     * @throws IOException
+     */
+    public byte[] readLine() throws IOException {
+        while (_position >= _end) {
+            if (_range + 1 == _starts.length) {
+                return null;
+            }
+            _range++;
+            _end = _ends[_range];
+            _position = _starts[_range];
+            // the current window may extend beyond the end of the new range
+            _window = null;
+        }
+
+        int windowSize = _windowSize;
+        while (true) {
+            if (_window == null || _position < _windowStart || _position >= _windowStart + _window.limit()) {
+                map(_position, windowSize);
+            }
+
+            final int from = (int) (_position - _windowStart);
+            final int limit = _window.limit();
+            final boolean lastWindow = _windowStart + limit >= _end;
+
+            for (int i = from; i < limit; i++) {
+                final byte b = _window.get(i);
+                if (b == '\n' || b == '\r') {
+                    int next = i + 1;
+                    if (b == '\r') {
+                        if (next == limit && !lastWindow) {
+                            // need to see the next byte to tell CR from CRLF
+                            break;
+                        }
+                        if (next < limit && _window.get(next) == '\n') {
+                            next++;
+                        }
+                    }
+                    final byte[] line = copy(from, i);
+                    _lineOffset = _position;
+                    _position = _windowStart + next;
+                    return line;
+                }
+            }
+
+            if (lastWindow) {
+                // last line, without line break
+                final byte[] line = copy(from, limit);
+                _lineOffset = _position;
+                _position = _end;
+                return line;
+            }
+
+            // the line continues beyond the window, remap it from the start of
+            // the line and make sure the window grows for very long lines
+            if (from == 0) {
+                windowSize = windowSize * 2;
+            }
+            map(_position, windowSize);
+        }
+    }
+
+    /**
+     * Gets the file offset of the line returned by the latest call to
+     * {@link #readLine()}.
+     *
+     * @return
+     */
+    public long getLineOffset() {
+        return _lineOffset;
+    }
+
+    /**
+     * Gets the file offset of the next line to read.
+     *
+     * @return
+     */
+    public long getPosition() {
+        return _position;
+    }
+
+    private byte[] copy(int from, int to) {
+        final int length = to - from;
+        if (length == 0) {
+            return EMPTY_LINE;
+        }
+        final byte[] line = new byte[length];
+        _window.position(from);
+        _window.get(line);
+        return line;
+    }
+
+    private void map(long position, int windowSize) throws IOException {
+        final int size = (int) Math.min(windowSize, _end - position);
+        _windowStart = position;
+        if (_memoryMapped) {
+            _window = _channel.map(MapMode.READ_ONLY, position, size);
+            return;
+        }
+
+        ByteBuffer buffer = _readBuffer;
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size);
+            _readBuffer = buffer;
+        }
+        buffer.clear();
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            if (_channel.read(buffer, position + buffer.position()) == -1) {
+                // the file is shorter than expected
+                _end = position + buffer.position();
+                break;
+            }
+        }
+        buffer.flip();
+        _window = buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _window = null;
+        _file.close();
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.ObjectStreamException;
+
+import org.apache.metamodel.data.AbstractRow;
+import org.apache.metamodel.data.DataSetHeader;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Style;
+
+/**
+ * Row implementation for lines read by {@link MappedCsvReader}. The line is
+ * kept as bytes and only the fields that are actually requested are decoded
+ * into strings.
+ */
+final class MappedCsvRow extends AbstractRow {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Object NOT_DECODED = new Object();
+
+    private final transient MappedCsvLineParser _parser;
+    private final transient DataSetHeader _header;
+    private final transient int[] _columnNumbers;
+    private final transient byte[] _line;
+    private final transient int _rowNumber;
+
+    private transient int _fieldCount;
+    private transient int[] _boundaries;
+    private transient String[] _parsedValues;
+    private transient Object[] _values;
+
+    public MappedCsvRow(MappedCsvLineParser parser, DataSetHeader header, int[] columnNumbers, byte[] line,
+            int rowNumber) {
+        _parser = parser;
+        _header = header;
+        _columnNumbers = columnNumbers;
+        _line = line;
+        _rowNumber = rowNumber;
+    }
+
+    /**
+     * Creates a row for a line which has already been tokenized, eg. by a
+     * {@link CsvFieldFilter}.
+     * 
+     * @param parser
+     * @param header
+     * @param columnNumbers
+     * @param line
+     * @param rowNumber
+     * @param boundaries
+     *            the boundaries returned by
+     *            {@link MappedCsvLineParser#tokenize(byte[])}, or null if the
+     *            line has been parsed instead
+     * @param parsedValues
+     *            the values returned by
+     *            {@link MappedCsvLineParser#parse(byte[], int)}, or null if
+     *            the line has been tokenized
+     */
+    public MappedCsvRow(MappedCsvLineParser parser, DataSetHeader header, int[] columnNumbers, byte[] line,
+            int rowNumber, int[] boundaries, String[] parsedValues) {
+        this(parser, header, columnNumbers, line, rowNumber);
+        _boundaries = boundaries;
+        _parsedValues = parsedValues;
+    }
+
+    /**
+     * Tokenizes the line, unless it has already been done. This is normally
+     * deferred until a value is requested, but can be triggered explicitly eg.
+     * to do the work in a particular thread.
+     */
+    public void tokenize() {
+        if (_values != null) {
+            return;
+        }
+
+        if (_boundaries == null && _parsedValues == null) {
+            _boundaries = _parser.tokenize(_line);
+            if (_boundaries == null) {
+                _parsedValues = _parser.parse(_line, _rowNumber);
+            }
+        }
+        final int fieldCount = (_parsedValues == null ? _boundaries.length - 1 : _parsedValues.length);
+
+        if (_parser.isFailOnInconsistentRowLength()) {
+            final int columnsInTable = _parser.getColumnsInTable();
+            if (columnsInTable != fieldCount) {
+                final String[] csvValues = (_parsedValues == null ? _parser.decodeAll(_line, _boundaries)
+                        : _parsedValues);
+                throw new InconsistentRowLengthException(columnsInTable, this, csvValues, _rowNumber);
+            }
+        }
+
+        final Object[] values = new Object[_columnNumbers.length];
+        for (int i = 0; i < values.length; i++) {
+            final int columnNumber = _columnNumbers[i];
+            if (columnNumber >= fieldCount) {
+                // Ticket #125: Missing values should be interpreted as null.
+                values[i] = null;
+            } else if (_parsedValues != null) {
+                values[i] = _parsedValues[columnNumber];
+            } else {
+                values[i] = NOT_DECODED;
+            }
+        }
+        _fieldCount = fieldCount;
+        _values = values;
+    }
+
+    /**
+     * Gets the value of a field of the line, which does not have to be one of
+     * the columns of the row.
+     * 
+     * @param columnNumber
+     * @return
+     */
+    public String getFieldValue(int columnNumber) {
+        tokenize();
+        if (columnNumber >= _fieldCount) {
+            return null;
+        } else if (_parsedValues != null) {
+            return _parsedValues[columnNumber];
+        }
+        return _parser.decode(_line, _boundaries, columnNumber);
+    }
+
+    @Override
+    public Object getValue(int index) throws IndexOutOfBoundsException {
+        tokenize();
+        Object value = _values[index];
+        if (value == NOT_DECODED) {
+            value = _parser.decode(_line, _boundaries, _columnNumbers[index]);
+            _values[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public Style getStyle(int index) throws IndexOutOfBoundsException {
+        return Style.NO_STYLE;
+    }
+
+    @Override
+    protected DataSetHeader getHeader() {
+        return _header;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new DefaultRow(_header, getValues());
+    }
+}
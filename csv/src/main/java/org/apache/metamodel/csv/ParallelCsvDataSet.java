@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DataSetHeader;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.SharedExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A DataSet implementation which scans a single-line CSV file in parallel. The
+ * file is split into byte ranges which are aligned to line boundaries (see
+ * {@link CsvFileRanges}) and each range is parsed and filtered by a separate
+ * task on the {@link SharedExecutorService}, using {@link MappedCsvReader} and
+ * {@link MappedCsvLineParser}. The resulting rows are either returned in file
+ * order, or in the order they become available.
+ *
+ * The scanning tasks only offer rows to the queues with a timeout, and stop
+ * when the data set is closed. The tasks do not reference the data set itself,
+ * so a data set which is abandoned without being closed is eventually closed
+ * when it is garbage collected.
+ */
+final class ParallelCsvDataSet extends AbstractDataSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelCsvDataSet.class);
+
+    private static final int BATCH_SIZE = 512;
+    private static final int QUEUE_CAPACITY = 8;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final List<Row> END_OF_RANGE = Collections.emptyList();
+
+    private final boolean _ordered;
+    private final List<BlockingQueue<List<Row>>> _queues;
+    private final List<Future<?>> _futures;
+    private final ScanState _state;
+
+    private int _currentQueue;
+    private int _rangesRemaining;
+    private List<Row> _batch;
+    private int _batchIndex;
+    private Row _row;
+
+    /**
+     * Creates and starts a parallel scan.
+     *
+     * @param file
+     *            the CSV file
+     * @param configuration
+     *            the CSV configuration. The file must contain no multiline
+     *            values.
+     * @param boundaries
+     *            the range boundaries, see
+     *            {@link CsvFileRanges#split(File, long, long, int)}
+     * @param selectItems
+     *            the select items, all of which must refer directly to
+     *            columns
+     * @param whereItems
+     *            WHERE items to evaluate while scanning
+     * @param columnsInTable
+     * @param ordered
+     *            whether rows should be returned in the order of the file
+     * @param memoryMapped
+     *            whether to read the ranges using memory mapping, see
+     *            {@link MappedCsvReader}
+     */
+    public ParallelCsvDataSet(File file, CsvConfiguration configuration, long[] boundaries,
+            List<SelectItem> selectItems, List<FilterItem> whereItems, int columnsInTable, boolean ordered,
+            boolean memoryMapped) {
+        super(selectItems);
+        _ordered = ordered;
+        _state = new ScanState();
+
+        final int[] columnNumbers = new int[selectItems.size()];
+        for (int i = 0; i < columnNumbers.length; i++) {
+            columnNumbers[i] = selectItems.get(i).getColumn().getColumnNumber();
+        }
+
+        final int rangeCount = boundaries.length - 1;
+        _rangesRemaining = rangeCount;
+        _queues = new ArrayList<BlockingQueue<List<Row>>>();
+        if (ordered) {
+            for (int i = 0; i < rangeCount; i++) {
+                _queues.add(new ArrayBlockingQueue<List<Row>>(QUEUE_CAPACITY));
+            }
+        } else {
+            _queues.add(new ArrayBlockingQueue<List<Row>>(QUEUE_CAPACITY * rangeCount));
+        }
+
+        _futures = new ArrayList<Future<?>>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            final BlockingQueue<List<Row>> queue = _queues.get(ordered ? i : 0);
+            final RangeScanner scanner = new RangeScanner(file, boundaries[i], boundaries[i + 1], queue,
+                    configuration, columnsInTable, getHeader(), columnNumbers, whereItems, memoryMapped, _state);
+            _futures.add(SharedExecutorService.get().submit(scanner));
+        }
+    }
+
+    public boolean isOrdered() {
+        return _ordered;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            if (_batch != null && _batchIndex < _batch.size()) {
+                _row = _batch.get(_batchIndex);
+                _batchIndex++;
+                return true;
+            }
+            if (_state.isClosed() || _rangesRemaining == 0) {
+                _row = null;
+                return false;
+            }
+
+            final List<Row> batch;
+            try {
+                batch = _queues.get(_ordered ? _currentQueue : 0).take();
+            } catch (InterruptedException e) {
+                close();
+                throw new MetaModelException("Interrupted while waiting for CSV rows", e);
+            }
+
+            final Throwable error = _state.getError();
+            if (error != null) {
+                close();
+                if (error instanceof RuntimeException) {
+                    throw (RuntimeException) error;
+                }
+                if (error instanceof Error) {
+                    throw (Error) error;
+                }
+                throw new MetaModelException("Failed to read CSV file", (Exception) error);
+            }
+
+            if (batch == END_OF_RANGE) {
+                _rangesRemaining--;
+                if (_ordered) {
+                    _currentQueue++;
+                }
+                _batch = null;
+            } else {
+                _batch = batch;
+                _batchIndex = 0;
+            }
+        }
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        if (_state.isClosed()) {
+            return;
+        }
+        _state.close();
+        for (Future<?> future : _futures) {
+            // scanners which have not started are cancelled, running scanners
+            // stop by themselves since the state is closed
+            future.cancel(false);
+        }
+        for (BlockingQueue<List<Row>> queue : _queues) {
+            queue.clear();
+        }
+        _batch = null;
+        _row = null;
+    }
+
+    /**
+     * Determines if all scanning tasks have finished (or have been cancelled).
+     *
+     * @return
+     */
+    boolean isScanDone() {
+        for (Future<?> future : _futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        super.finalize();
+        if (!_state.isClosed()) {
+            logger.warn("finalize() invoked, but DataSet is not closed. Invoking close() on {}", this);
+            close();
+        }
+    }
+
+    /**
+     * The state shared between the data set and its scanning tasks.
+     */
+    private static final class ScanState {
+
+        private final AtomicReference<Throwable> _error = new AtomicReference<Throwable>();
+        private volatile boolean _closed;
+
+        public boolean isClosed() {
+            return _closed;
+        }
+
+        public void close() {
+            _closed = true;
+        }
+
+        public Throwable getError() {
+            return _error.get();
+        }
+
+        public void setError(Throwable error) {
+            _error.compareAndSet(null, error);
+        }
+
+        /**
+         * Offers a batch of rows to a queue, waiting as long as the queue is
+         * full and the scan is not closed.
+         *
+         * @return true if the batch was added, false if the scan was closed
+         */
+        public boolean offer(BlockingQueue<List<Row>> queue, List<Row> batch) throws InterruptedException {
+            while (!_closed) {
+                if (queue.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Scans a single byte range of the file.
+     */
+    private static final class RangeScanner implements Runnable {
+
+        private final File _file;
+        private final long _start;
+        private final long _end;
+        private final BlockingQueue<List<Row>> _queue;
+        private final CsvConfiguration _configuration;
+        private final int _columnsInTable;
+        private final DataSetHeader _header;
+        private final int[] _columnNumbers;
+        private final List<FilterItem> _whereItems;
+        private final boolean _memoryMapped;
+        private final ScanState _state;
+
+        public RangeScanner(File file, long start, long end, BlockingQueue<List<Row>> queue,
+                CsvConfiguration configuration, int columnsInTable, DataSetHeader header, int[] columnNumbers,
+                List<FilterItem> whereItems, boolean memoryMapped, ScanState state) {
+            _file = file;
+            _start = start;
+            _end = end;
+            _queue = queue;
+            _configuration = configuration;
+            _columnsInTable = columnsInTable;
+            _header = header;
+            _columnNumbers = columnNumbers;
+            _whereItems = whereItems;
+            _memoryMapped = memoryMapped;
+            _state = state;
+        }
+
+        @Override
+        public void run() {
+            MappedCsvReader reader = null;
+            try {
+                reader = new MappedCsvReader(_file, _start, _end, _memoryMapped);
+                final MappedCsvLineParser parser = new MappedCsvLineParser(_configuration, _columnsInTable);
+
+                List<Row> batch = new ArrayList<Row>(BATCH_SIZE);
+                for (byte[] line = reader.readLine(); line != null && !_state.isClosed(); line = reader.readLine()) {
+                    if (line.length == 0) {
+                        continue;
+                    }
+                    final MappedCsvRow row = new MappedCsvRow(parser, _header, _columnNumbers, line, -1);
+                    row.tokenize();
+                    if (accept(row)) {
+                        batch.add(row);
+                        if (batch.size() == BATCH_SIZE) {
+                            if (!_state.offer(_queue, batch)) {
+                                return;
+                            }
+                            batch = new ArrayList<Row>(BATCH_SIZE);
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    _state.offer(_queue, batch);
+                }
+            } catch (InterruptedException e) {
+                // interrupted while scanning
+                _state.setError(e);
+            } catch (Throwable e) {
+                if (!_state.isClosed()) {
+                    _state.setError(e);
+                }
+            } finally {
+                FileHelper.safeClose(reader);
+                // the end of the range must reach the consumer, also if this
+                // task was interrupted
+                final boolean interrupted = Thread.interrupted();
+                try {
+                    _state.offer(_queue, END_OF_RANGE);
+                } catch (InterruptedException e) {
+                    // only happens if interrupted again - give up
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        private boolean accept(Row row) {
+            for (FilterItem whereItem : _whereItems) {
+                if (!whereItem.evaluate(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+
+/**
+ * A {@link DataSet} wrapper which parses the string values of typed CSV
+ * columns (see {@link CsvDataContext#setTypeInferenceSampleSize(int)}) while
+ * iterating, so that each value is parsed once, as it is read.
+ */
+final class TypedCsvDataSet extends AbstractDataSet {
+
+    private final DataSet _dataSet;
+    private final ColumnType[] _types;
+    private final CsvValueParser _parser;
+    private volatile Row _row;
+
+    /**
+     * Wraps a data set if any of its select items are typed columns.
+     *
+     * @param dataSet
+     *            a data set of string values
+     * @return
+     */
+    public static DataSet wrapIfTyped(DataSet dataSet) {
+        final ColumnType[] types = getTypes(dataSet.getSelectItems());
+        if (types == null) {
+            return dataSet;
+        }
+        return new TypedCsvDataSet(dataSet, types);
+    }
+
+    /**
+     * Gets the types to parse the values of a row into.
+     *
+     * @param selectItems
+     * @return the type of each select item, or null for select items which
+     *         are not typed CSV columns. If none of the select items are typed
+     *         columns, null is returned.
+     */
+    static ColumnType[] getTypes(SelectItem[] selectItems) {
+        final ColumnType[] types = new ColumnType[selectItems.length];
+        boolean typed = false;
+        for (int i = 0; i < selectItems.length; i++) {
+            final Column column = selectItems[i].getColumn();
+            if (column != null && column.getTable() instanceof CsvTable && !selectItems[i].hasFunction()
+                    && column.getType() != null && column.getType() != ColumnType.STRING) {
+                types[i] = column.getType();
+                typed = true;
+            }
+        }
+        return typed ? types : null;
+    }
+
+    private TypedCsvDataSet(DataSet dataSet, ColumnType[] types) {
+        super(dataSet.getSelectItems());
+        _dataSet = dataSet;
+        _types = types;
+        _parser = new CsvValueParser();
+    }
+
+    @Override
+    public boolean next() {
+        if (!_dataSet.next()) {
+            _row = null;
+            return false;
+        }
+        _row = _parser.parseRow(getHeader(), _types, _dataSet.getRow());
+        return true;
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        _dataSet.close();
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+public class CsvBackgroundWriterTest extends TestCase {
+
+    public void testWriteAndFlush() throws Exception {
+        final StringWriter delegate = new StringWriter();
+        final CsvBackgroundWriter writer = new CsvBackgroundWriter(delegate);
+        writer.write("foo,bar\n");
+        writer.flush();
+        assertEquals("foo,bar\n", delegate.toString());
+        writer.write("baz\n");
+        writer.close();
+        assertEquals("foo,bar\nbaz\n", delegate.toString());
+    }
+
+    public void testProducerFailsWhenBackgroundTaskIsInterrupted() throws Exception {
+        final Writer delegate = new StringWriter() {
+            @Override
+            public void write(String str) {
+                super.write(str);
+                try {
+                    // give the producer time to fill the queue
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                // stops the background task when it takes the next chunk,
+                // while the producer is waiting for room in the queue
+                Thread.currentThread().interrupt();
+            }
+        };
+        final CsvBackgroundWriter writer = new CsvBackgroundWriter(delegate);
+
+        final char[] line = new char[1024];
+        try {
+            // far more chunks than fit in the queue
+            for (int i = 0; i < 10000; i++) {
+                writer.write(line);
+            }
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertEquals("CSV background writer was interrupted", e.getMessage());
+        }
+
+        try {
+            writer.close();
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertEquals("CSV background writer was interrupted", e.getMessage());
+        }
+    }
+}
@@ -20,15 +20,21 @@ package org.apache.metamodel.csv;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.table.TableModel;
 
 import junit.framework.TestCase;
 
 import org.apache.metamodel.DataContext;
+import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.QueryPostprocessDataContext;
 import org.apache.metamodel.UpdateCallback;
 import org.apache.metamodel.UpdateScript;
@@ -49,7 +55,10 @@ import org.apache.metamodel.schema.MutableColumn;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.schema.naming.CustomColumnNamingStrategy;
+import org.apache.metamodel.util.CompressedResource;
 import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.FileResource;
+import org.apache.metamodel.util.InMemoryResource;
 import org.apache.metamodel.util.MutableRef;
 
 public class CsvDataContextTest extends TestCase {
@@ -152,6 +161,99 @@ public class CsvDataContextTest extends TestCase {
                 .readFileAsString(targetFile).replaceAll("\n", "!LINEBREAK!"));
     }
 
+    public void testMemoryMappedScanningIsOptIn() throws Exception {
+        final File file = new File("target/csv_memory_mapped.csv");
+        FileHelper.copy(new File("src/test/resources/csv_people.csv"), file);
+
+        final CsvDataContext dc = new CsvDataContext(file, new CsvConfiguration(1, false, false));
+        assertFalse(dc.isMemoryMappedScanning());
+        dc.setRowIndexInterval(2);
+
+        // byte level features work without memory mapping
+        final Table table = dc.getDefaultSchema().getTables()[0];
+        final DataSet dataSet = dc.query().from(table).select("id").where("name").eq("barbara, barb").execute();
+        assertTrue(dataSet.next());
+        assertEquals("Row[values=[5]]", dataSet.getRow().toString());
+        assertFalse(dataSet.next());
+        dataSet.close();
+
+        dc.query().from(table).select("id").execute().toRows();
+        assertTrue(new File("target/csv_memory_mapped.csv.rowindex").exists());
+        final Number count = (Number) dc.query().from(table).selectCount().execute().toRows().get(0).getValue(0);
+        assertEquals(9, count.intValue());
+    }
+
+    public void testInsertFailsWhenBufferedLinesCannotBeWritten() throws Exception {
+        final InMemoryResource resource = new InMemoryResource("data.csv", "id,name\n1,a\n".getBytes(),
+                System.currentTimeMillis()) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public OutputStream append() {
+                return new FilterOutputStream(super.append()) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        throw new IOException("No space left on device");
+                    }
+                };
+            }
+        };
+        final CsvDataContext dc = new CsvDataContext(resource, new CsvConfiguration(1, false, false));
+        final Table table = dc.getDefaultSchema().getTables()[0];
+
+        try {
+            dc.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    callback.insertInto(table).value("id", 2).value("name", "b").execute();
+                }
+            });
+            fail("Exception expected");
+        } catch (MetaModelException e) {
+            assertEquals("Failed to flush CSV writer", e.getMessage());
+            assertEquals("No space left on device", e.getCause().getMessage());
+        }
+    }
+
+    public void testBulkInsertWithBackgroundWriting() throws Exception {
+        final File targetFile = new File("target/csv_bulk_insert.csv");
+        FileHelper.copy(new File("src/test/resources/csv_no_linebreak.csv"), targetFile);
+
+        final CsvDataContext dc = new CsvDataContext(targetFile);
+        dc.setBackgroundWriting(true);
+        dc.setWriteBufferSize(1000);
+        final Table table = dc.getDefaultSchema().getTables()[0];
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                for (int i = 0; i < 50000; i++) {
+                    callback.insertInto(table).value(0, "foo" + i).value(1, "bar \"" + i + "\"").execute();
+                }
+            }
+        });
+
+        // rows inserted before a delete in the same script must be deleted too
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value(0, "baz").value(1, "1").execute();
+                callback.deleteFrom(table).where("foo").like("foo1%").execute();
+                callback.insertInto(table).value(0, "baz").value(1, "2").execute();
+            }
+        });
+
+        final DataSet ds = dc.query().from(table).selectCount().execute();
+        assertTrue(ds.next());
+        assertEquals(2 + 50000 - 11111 + 2, ((Number) ds.getRow().getValue(0)).intValue());
+        ds.close();
+
+        final String content = FileHelper.readFileAsString(targetFile);
+        // lines that survive the delete are kept as they were
+        assertTrue(content.startsWith("foo,bar\nhello,world\nhi,there\n\"foo0\",\"bar \\\"0\\\"\"\n\"foo2\",\"bar \\\"2\\\"\"\n"));
+        assertTrue(content.endsWith("\n\"baz\",\"1\"\n\"baz\",\"2\""));
+    }
+
     public void testHandlingOfEmptyLinesMultipleLinesSupport() throws Exception {
         // test with multiline values
         DataContext dc = new CsvDataContext(new File("src/test/resources/csv_with_empty_lines.csv"),
@@ -701,11 +803,12 @@ public class CsvDataContextTest extends TestCase {
             }
         });
 
+        // updated rows keep their position in the file
         ds = dc.executeQuery(query);
         assertTrue(ds.next());
-        assertEquals("Row[values=[world, universe]]", ds.getRow().toString());
-        assertTrue(ds.next());
         assertEquals("Row[values=[c, universe]]", ds.getRow().toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[world, universe]]", ds.getRow().toString());
         assertFalse(ds.next());
         ds.close();
 
@@ -851,4 +954,85 @@ public class CsvDataContextTest extends TestCase {
         assertNotNull(table.getColumnByName(thirdColumnName));
         assertNotNull(table.getColumnByName(fourthColumnName));
     }
-}
\ No newline at end of file
+
+    public void testReadAndAppendCompressedFile() throws Exception {
+        final File file = new File("target/csv_compressed.csv.gz");
+        final OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        out.write("id,name\n1,foo\n2,bar\n".getBytes("UTF-8"));
+        out.close();
+
+        final CsvDataContext readOnlyDataContext = new CsvDataContext(file, new CsvConfiguration());
+        assertEquals(file, readOnlyDataContext.getFile());
+        final Table readOnlyTable = readOnlyDataContext.getDefaultSchema().getTable(0);
+        assertEquals("csv_compressed.csv.gz", readOnlyTable.getName());
+        assertEquals("[id, name]", Arrays.toString(readOnlyTable.getColumnNames()));
+        try {
+            readOnlyDataContext.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    callback.insertInto(readOnlyTable).value("id", "3").value("name", "baz").execute();
+                }
+            });
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("This CSV DataContext is not writable, as it based on a read-only resource.", e.getMessage());
+        }
+
+        // compressed resources can be updated explicitly
+        final CsvDataContext dc = new CsvDataContext(new CompressedResource(new FileResource(file)),
+                new CsvConfiguration());
+        assertEquals(file, dc.getFile());
+        final Table table = dc.getDefaultSchema().getTable(0);
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value("id", "3").value("name", "baz").execute();
+            }
+        });
+
+        final DataSet ds = dc.query().from(table).select("name").where("id").ne("1").execute();
+        assertTrue(ds.next());
+        assertEquals("Row[values=[bar]]", ds.getRow().toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[baz]]", ds.getRow().toString());
+        assertFalse(ds.next());
+        ds.close();
+    }
+
+    public void testAppendAndCountCompressedFileWithoutTrailingLineBreak() throws Exception {
+        final File file = new File("target/csv_compressed_no_linebreak.csv.gz");
+        final OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        out.write("id,name\n1,foo\n2,bar".getBytes("UTF-8"));
+        out.close();
+
+        final CsvDataContext dc = new CsvDataContext(new CompressedResource(new FileResource(file)),
+                new CsvConfiguration());
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value("id", "3").value("name", "baz").execute();
+            }
+        });
+
+        final DataSet ds = dc.query().from(table).select("id", "name").execute();
+        assertTrue(ds.next());
+        assertEquals("Row[values=[1, foo]]", ds.getRow().toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[2, bar]]", ds.getRow().toString());
+        assertTrue(ds.next());
+        assertEquals("Row[values=[3, baz]]", ds.getRow().toString());
+        assertFalse(ds.next());
+        ds.close();
+
+        // the size of the decompressed data is unknown, so the approximated
+        // count is not based on the compressed size
+        final Query q = dc.query().from(table).selectCount().toQuery();
+        q.getSelectClause().getItem(0).setFunctionApproximationAllowed(true);
+        final DataSet countDataSet = dc.executeQuery(q);
+        assertTrue(countDataSet.next());
+        assertEquals(3, ((Number) countDataSet.getRow().getValue(0)).intValue());
+        countDataSet.close();
+    }
+}
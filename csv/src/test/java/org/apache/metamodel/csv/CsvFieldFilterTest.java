@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readAll;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelHelper;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Table;
+
+import junit.framework.TestCase;
+
+public class CsvFieldFilterTest extends TestCase {
+
+    private final CsvConfiguration configuration = createSingleLineConfiguration(',');
+
+    private File createTestFile() throws Exception {
+        final StringBuilder sb = new StringBuilder("id,name,flag,amount\n");
+        for (int i = 0; i < 300; i++) {
+            if (i % 50 == 0) {
+                // a short row and a blank line
+                sb.append(i).append(",short\n\n");
+            } else if (i % 7 == 0) {
+                sb.append(i).append(",\"quoted, näme ").append(i % 5).append("\",TRUE,").append(i).append('\n');
+            } else {
+                sb.append(i).append(",näme ").append(i % 5).append(',').append(i % 2 == 0).append(',')
+                        .append(i * 3).append('\n');
+            }
+        }
+        return createFile("CsvFieldFilterTest.csv", sb.toString());
+    }
+
+    private FilterItem filter(Table table, String columnName, OperatorType operator, Object operand) {
+        return new FilterItem(new SelectItem(table.getColumnByName(columnName)), operator, operand);
+    }
+
+    private DataSet query(CsvDataContext dc, Table table, FilterItem... whereItems) {
+        return dc.query().from(table).select("id", "name", "flag").where(whereItems).execute();
+    }
+
+    /**
+     * Evaluates the WHERE items on complete rows, like queries do when the
+     * items cannot be evaluated on fields.
+     */
+    private DataSet queryWithoutPushdown(CsvDataContext dc, Table table, FilterItem... whereItems) {
+        final List<SelectItem> selectItems = Arrays.asList(new SelectItem(table.getColumnByName("id")),
+                new SelectItem(table.getColumnByName("name")), new SelectItem(table.getColumnByName("flag")));
+        final DataSet dataSet = dc.query().from(table).select(table.getColumns()).execute();
+        return MetaModelHelper.getSelection(selectItems, MetaModelHelper.getFiltered(dataSet, whereItems));
+    }
+
+    public void testSameResultsAsRowFiltering() throws Exception {
+        final File file = createTestFile();
+        final CsvDataContext dc = new CsvDataContext(file, configuration);
+        final Table t = dc.getDefaultSchema().getTable(0);
+
+        final FilterItem[][] whereClauses = { { filter(t, "name", OperatorType.EQUALS_TO, "näme 3") },
+                { filter(t, "name", OperatorType.DIFFERENT_FROM, "näme 3") },
+                { filter(t, "flag", OperatorType.EQUALS_TO, "true") },
+                { filter(t, "flag", OperatorType.EQUALS_TO, "TRUE") },
+                { filter(t, "flag", OperatorType.DIFFERENT_FROM, "false") },
+                { filter(t, "name", OperatorType.EQUALS_TO, "quoted, näme 2") },
+                { filter(t, "name", OperatorType.LIKE, "quoted%") },
+                { filter(t, "name", OperatorType.NOT_LIKE, "n%") },
+                { filter(t, "name", OperatorType.LIKE, "%me 4") },
+                { filter(t, "flag", OperatorType.EQUALS_TO, null) },
+                { filter(t, "amount", OperatorType.DIFFERENT_FROM, null) },
+                { filter(t, "amount", OperatorType.GREATER_THAN, "600") },
+                { filter(t, "amount", OperatorType.LESS_THAN_OR_EQUAL, 12) },
+                { filter(t, "amount", OperatorType.LESS_THAN, "12"), filter(t, "id", OperatorType.GREATER_THAN, "200") },
+                { filter(t, "id", OperatorType.IN, new String[] { "3", "49", "50", "700" }) },
+                { filter(t, "id", OperatorType.NOT_IN, new String[] { "1", "2" }) },
+                { new FilterItem(LogicalOperator.OR, filter(t, "amount", OperatorType.EQUALS_TO, "99"),
+                        filter(t, "name", OperatorType.EQUALS_TO, "short")) } };
+        for (FilterItem[] whereItems : whereClauses) {
+            final List<String> expected = readAll(queryWithoutPushdown(dc, t, whereItems));
+            assertEquals(Arrays.toString(whereItems), expected, readAll(query(dc, t, whereItems)));
+        }
+        assertEquals(6, readAll(query(dc, t, filter(t, "flag", OperatorType.EQUALS_TO, null))).size());
+
+        final DataSet dataSet = dc.query().from(t).select("id").where("name").like("näme 1%").firstRow(3).maxRows(2)
+                .execute();
+        assertEquals("[[11], [16]]", readAll(dataSet).toString());
+    }
+
+    public void testRemainingItems() throws Exception {
+        final File file = createTestFile();
+        final CsvDataContext dc = new CsvDataContext(file, configuration);
+        final Table table = dc.getDefaultSchema().getTable(0);
+        final FilterItem pushedDown = new FilterItem(new SelectItem(table.getColumnByName("name")),
+                OperatorType.EQUALS_TO, "foo");
+        final FilterItem columnComparison = new FilterItem(new SelectItem(table.getColumnByName("name")),
+                OperatorType.EQUALS_TO, new SelectItem(table.getColumnByName("id")));
+
+        final CsvFieldFilter fieldFilter = new CsvFieldFilter(new MappedCsvLineParser(configuration, 4),
+                configuration, Arrays.asList(pushedDown, columnComparison));
+        assertFalse(fieldFilter.isEmpty());
+        assertEquals(Arrays.asList(columnComparison), fieldFilter.getRemainingItems());
+
+        assertTrue(fieldFilter.accept("1,foo,true".getBytes("UTF-8"), 1));
+        assertFalse(fieldFilter.accept("2,\"foo\\\"\",true".getBytes("UTF-8"), 2));
+        assertTrue(fieldFilter.accept("3,\"foo\",true".getBytes("UTF-8"), 3));
+        assertFalse(fieldFilter.accept("4".getBytes("UTF-8"), 4));
+    }
+}
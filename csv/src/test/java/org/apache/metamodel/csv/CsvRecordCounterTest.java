@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createMultilineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+
+import java.io.File;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.schema.Table;
+
+import junit.framework.TestCase;
+
+public class CsvRecordCounterTest extends TestCase {
+
+    private static final String CONTENT = "id,name\r\n" + "1,foo\r\n" + "\r\n" + "2,\"multi\nline\"\n"
+            + "3,\"quoted \"\" quote\"\r" + "4,\"escaped \\\" quote\n\"\n" + "\"\"\n" + "5,\"\"\n" + " \n"
+            + "6,\"line\r\n\r\nbreaks\"\n" + "7,\"unterminated";
+
+    private void assertCountSameAsScan(File file, CsvConfiguration configuration) {
+        final CsvDataContext dc = new CsvDataContext(file, configuration);
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        int scanned = 0;
+        final DataSet dataSet = dc.query().from(table).select(table.getColumns()).execute();
+        while (dataSet.next()) {
+            scanned++;
+        }
+        dataSet.close();
+
+        assertTrue(dc.isByteLevelCounting());
+        assertEquals(scanned, count(dc, table));
+
+        dc.setByteLevelCounting(false);
+        assertEquals(scanned, count(dc, table));
+    }
+
+    private int count(CsvDataContext dc, Table table) {
+        final Number count = (Number) dc.query().from(table).selectCount().execute().toRows().get(0).getValue(0);
+        return count.intValue();
+    }
+
+    public void testCountMultilineValues() throws Exception {
+        final File file = createFile("CsvRecordCounterTest_multiline.csv", CONTENT);
+        final CsvConfiguration configuration = createMultilineConfiguration(',');
+        assertCountSameAsScan(file, configuration);
+
+        final CsvRecordCounter counter = new CsvRecordCounter(file, configuration);
+        final long start = CsvFileRanges.getDataStartOffset(file, "UTF-8", 1);
+        assertEquals(8, counter.count(start, file.length(), 1));
+    }
+
+    public void testCountSingleLineValues() throws Exception {
+        final File file = createFile("CsvRecordCounterTest_singleline.csv", CONTENT);
+        final CsvConfiguration configuration = createSingleLineConfiguration(',');
+        assertCountSameAsScan(file, configuration);
+        assertCountSameAsScan(file, new CsvConfiguration(CsvConfiguration.NO_COLUMN_NAME_LINE, "UTF-8", ',', '"',
+                '\\', false, false));
+
+        final CsvRecordCounter counter = new CsvRecordCounter(file, configuration);
+        final long start = CsvFileRanges.getDataStartOffset(file, "UTF-8", 1);
+        assertEquals(12, counter.count(start, file.length(), 1));
+    }
+
+    public void testCountEscapesOutsideQuotes() throws Exception {
+        // the CSV parser drops escape characters outside of quotes, so the
+        // quote that follows still starts a quoted value
+        final String content = "id,name\n1,a\\\"b\n2,c\"\n3,d\\\\\"e\n4,f\"\n5,\\\n6,\"g\\\"\"\\\n7,h\n";
+        final File file = createFile("CsvRecordCounterTest_escapes.csv", content);
+        final CsvConfiguration configuration = createMultilineConfiguration(',');
+        assertCountSameAsScan(file, configuration);
+
+        final CsvRecordCounter counter = new CsvRecordCounter(file, configuration);
+        final long start = CsvFileRanges.getDataStartOffset(file, "UTF-8", 1);
+        assertEquals(5, counter.count(start, file.length(), 1));
+    }
+
+    public void testCountWithoutQuotes() throws Exception {
+        final File file = createFile("CsvRecordCounterTest_noquotes.csv", "a;b\n1;2\r\n\n3;4\r\r5;6");
+        assertCountSameAsScan(file, createMultilineConfiguration(';'));
+        assertCountSameAsScan(file, new CsvConfiguration(1, "UTF-8", ';', CsvConfiguration.NOT_A_CHAR,
+                CsvConfiguration.NOT_A_CHAR, false, false));
+
+        final File emptyFile = createFile("CsvRecordCounterTest_empty.csv", "a;b\n");
+        assertCountSameAsScan(emptyFile, createMultilineConfiguration(';'));
+    }
+}
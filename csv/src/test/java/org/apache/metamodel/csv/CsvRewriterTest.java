@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createMultilineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readFile;
+import static org.apache.metamodel.csv.CsvTestHelper.readFirstValues;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.InMemoryResource;
+
+import junit.framework.TestCase;
+
+public class CsvRewriterTest extends TestCase {
+
+    private List<Object> queryIds(CsvDataContext dc, Table table) {
+        return readFirstValues(dc.query().from(table).select("id").execute());
+    }
+
+    public void testSinglePassKeepsUnaffectedLines() throws Exception {
+        final File file = createFile("CsvRewriterTest_single.csv",
+                "﻿id;name\r\n1;a\r\n2;b\r\n\r\n3;\"c;c\"\r\n4;d\r\n5;e");
+        final CsvConfiguration configuration = createSingleLineConfiguration(';');
+        final CsvDataContext dc = new CsvDataContext(file, configuration);
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.deleteFrom(table).where("id").eq("2").execute();
+                callback.update(table).value("name", "x").where("name").eq("c;c").execute();
+                // sees the result of the previous update
+                callback.deleteFrom(table).where("name").eq("x").execute();
+                callback.update(table).value("name", "y").where("id").eq("5").execute();
+                callback.deleteFrom(table).where("id").eq("42").execute();
+            }
+        });
+
+        assertEquals("﻿id;name\r\n1;a\r\n\r\n4;d\r\n\"5\";\"y\"\n", readFile(file));
+        assertEquals("[1, 4, 5]", queryIds(dc, table).toString());
+
+        // deleting all records keeps the column names
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.update(table).value("name", "z").execute();
+                callback.deleteFrom(table).execute();
+            }
+        });
+        assertEquals("﻿id;name\r\n", readFile(file));
+    }
+
+    public void testMultilineValues() throws Exception {
+        final File file = createFile("CsvRewriterTest_multiline.csv",
+                "id,name\n1,\"first\nline\"\n2,\"second\nline\"\n3,third\n");
+        final CsvDataContext dc = new CsvDataContext(file, createMultilineConfiguration(','));
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.deleteFrom(table).where("name").eq("second\nline").execute();
+                callback.update(table).value("name", "3rd\nline").where("id").eq("3").execute();
+            }
+        });
+
+        assertEquals("id,name\n1,\"first\nline\"\n\"3\",\"3rd\nline\"\n", readFile(file));
+    }
+
+    public void testQueriesWithinUpdateSeeChanges() throws Exception {
+        final File file = createFile("CsvRewriterTest_query.csv", "id,name\n1,a\n2,b\n");
+        final CsvDataContext dc = new CsvDataContext(file, createSingleLineConfiguration(','));
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        final List<Object> idsWithinUpdate = new ArrayList<Object>();
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value("id", "3").value("name", "c").execute();
+                callback.deleteFrom(table).where("id").eq("1").execute();
+                idsWithinUpdate.addAll(queryIds(dc, table));
+            }
+        });
+
+        assertEquals("[2, 3]", idsWithinUpdate.toString());
+        assertEquals("[2, 3]", queryIds(dc, table).toString());
+    }
+
+    public void testNonFileResource() throws Exception {
+        final InMemoryResource resource = new InMemoryResource("data.csv", "id,name\n1,a\n2,b\n3,c\n".getBytes(),
+                System.currentTimeMillis());
+        final CsvDataContext dc = new CsvDataContext(resource, createSingleLineConfiguration(','));
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.deleteFrom(table).where("id").eq("2").execute();
+            }
+        });
+
+        assertEquals("[1, 3]", queryIds(dc, table).toString());
+    }
+}
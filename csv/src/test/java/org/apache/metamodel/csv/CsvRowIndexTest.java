@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readAll;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.FirstRowDataSet;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.schema.Table;
+
+import junit.framework.TestCase;
+
+public class CsvRowIndexTest extends TestCase {
+
+    private static final int ROWS = 1000;
+
+    private final CsvConfiguration configuration = createSingleLineConfiguration(',');
+
+    private File createTestFile(String name) throws Exception {
+        final StringBuilder sb = new StringBuilder("id,name\n");
+        for (int i = 0; i < ROWS; i++) {
+            sb.append(i).append(",name ").append(i).append('\n');
+            if (i % 99 == 0) {
+                sb.append("\r\n");
+            }
+        }
+        final File file = createFile(name, sb.toString());
+        CsvRowIndex.delete(file);
+        return file;
+    }
+
+    private CsvDataContext createDataContext(File file) {
+        final CsvDataContext dc = new CsvDataContext(file, configuration);
+        dc.setRowIndexInterval(100);
+        return dc;
+    }
+
+    private List<String> readPage(CsvDataContext dc, int firstRow, int maxRows) {
+        final Table table = dc.getDefaultSchema().getTable(0);
+        final Query query = dc.query().from(table).select(table.getColumns()).firstRow(firstRow).toQuery();
+        if (maxRows > 0) {
+            query.setMaxRows(maxRows);
+        }
+        return readAll(dc.executeQuery(query));
+    }
+
+    private long count(CsvDataContext dc) {
+        final DataSet dataSet = dc.query().from(dc.getDefaultSchema().getTable(0)).selectCount().execute();
+        assertTrue(dataSet.next());
+        final long count = ((Number) dataSet.getRow().getValue(0)).longValue();
+        dataSet.close();
+        return count;
+    }
+
+    public void testBuildAndSeek() throws Exception {
+        final File file = createTestFile("CsvRowIndexTest_seek.csv");
+        final CsvDataContext dc = createDataContext(file);
+        final File indexFile = CsvRowIndex.getIndexFile(file);
+
+        // paging without an index does not build one
+        assertEquals("[[554, name 554], [555, name 555]]", readPage(dc, 555, 2).toString());
+        assertFalse(indexFile.exists());
+
+        // a full scan builds the index
+        assertEquals(ROWS, readPage(dc, 1, -1).size());
+        assertTrue(indexFile.exists());
+
+        final CsvRowIndex index = CsvRowIndex.load(file, 100, CsvFileRanges.getDataStartOffset(file, "UTF-8", 1));
+        assertNotNull(index);
+        assertEquals(ROWS, index.getRecordCount());
+        assertEquals(500, index.getIndexedRecord(554));
+
+        final Table table = dc.getDefaultSchema().getTable(0);
+        final DataSet dataSet = dc.query().from(table).select(table.getColumns()).firstRow(555).maxRows(2)
+                .execute();
+        assertTrue(dataSet.toString(), dataSet instanceof FirstRowDataSet);
+        dataSet.close();
+
+        assertEquals("[[554, name 554], [555, name 555]]", readPage(dc, 555, 2).toString());
+        assertEquals("[[600, name 600]]", readPage(dc, 601, 1).toString());
+        assertEquals("[[998, name 998], [999, name 999]]", readPage(dc, 999, 5).toString());
+        assertEquals("[]", readPage(dc, 2000, 5).toString());
+        assertEquals(ROWS, count(dc));
+
+        final CsvDataContext withoutIndex = new CsvDataContext(file, configuration);
+        assertEquals(readPage(withoutIndex, 301, ROWS), readPage(dc, 301, ROWS));
+        assertEquals(ROWS - 300, readPage(dc, 301, -1).size());
+    }
+
+    public void testExtendOnInsertAndInvalidate() throws Exception {
+        final File file = createTestFile("CsvRowIndexTest_insert.csv");
+        final CsvDataContext dc = createDataContext(file);
+        assertEquals(ROWS, readPage(dc, 1, -1).size());
+
+        final Table table = dc.getDefaultSchema().getTable(0);
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                for (int i = ROWS; i < ROWS + 150; i++) {
+                    callback.insertInto(table).value("id", i).value("name", "name " + i).execute();
+                }
+            }
+        });
+
+        final long start = CsvFileRanges.getDataStartOffset(file, "UTF-8", 1);
+        final CsvRowIndex index = CsvRowIndex.load(file, 100, start);
+        assertNotNull(index);
+        assertEquals(ROWS + 150, index.getRecordCount());
+        assertEquals(ROWS + 150, count(dc));
+        assertEquals("[[1100, name 1100], [1101, name 1101]]", readPage(dc, 1101, 2).toString());
+
+        // changes made outside of MetaModel make the index invalid
+        final FileOutputStream out = new FileOutputStream(file, true);
+        out.write("extra,row\n".getBytes("UTF-8"));
+        out.close();
+        assertNull(CsvRowIndex.load(file, 100, start));
+        assertEquals(ROWS + 151, count(dc));
+        assertEquals("[[extra, row]]", readPage(dc, ROWS + 151, 2).toString());
+
+        // a full scan rebuilds it, and deletions remove it
+        assertEquals(ROWS + 151, readPage(dc, 1, -1).size());
+        assertNotNull(CsvRowIndex.load(file, 100, start));
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.deleteFrom(table).where("id").eq("extra").execute();
+            }
+        });
+        assertFalse(CsvRowIndex.getIndexFile(file).exists());
+        assertEquals(ROWS + 150, count(dc));
+    }
+}
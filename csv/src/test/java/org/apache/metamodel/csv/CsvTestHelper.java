@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.data.DataSet;
+
+/**
+ * Helper methods for tests that work on generated CSV files.
+ */
+final class CsvTestHelper {
+
+    private CsvTestHelper() {
+        // prevent instantiation
+    }
+
+    /**
+     * Writes a UTF-8 encoded file to the target folder.
+     * 
+     * @param name
+     * @param content
+     * @return
+     * @throws IOException
+     */
+    public static File createFile(String name, String content) throws IOException {
+        final File file = new File("target/" + name);
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    /**
+     * Reads the content of a UTF-8 encoded file.
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+
+    /**
+     * Reads all rows of a {@link DataSet} and closes it.
+     * 
+     * @param dataSet
+     * @return the values of each row, formatted like "[a, b, c]"
+     */
+    public static List<String> readAll(DataSet dataSet) {
+        final List<String> result = new ArrayList<String>();
+        while (dataSet.next()) {
+            result.add(Arrays.toString(dataSet.getRow().getValues()));
+        }
+        dataSet.close();
+        return result;
+    }
+
+    /**
+     * Reads the first value of all rows of a {@link DataSet} and closes it.
+     * 
+     * @param dataSet
+     * @return
+     */
+    public static List<Object> readFirstValues(DataSet dataSet) {
+        final List<Object> result = new ArrayList<Object>();
+        while (dataSet.next()) {
+            result.add(dataSet.getRow().getValue(0));
+        }
+        dataSet.close();
+        return result;
+    }
+
+    /**
+     * Creates a UTF-8 configuration, with column names on the first line,
+     * where values cannot span multiple lines.
+     * 
+     * @param separatorChar
+     * @return
+     */
+    public static CsvConfiguration createSingleLineConfiguration(char separatorChar) {
+        return createConfiguration(separatorChar, false);
+    }
+
+    /**
+     * Creates a UTF-8 configuration, with column names on the first line,
+     * where quoted values may span multiple lines.
+     * 
+     * @param separatorChar
+     * @return
+     */
+    public static CsvConfiguration createMultilineConfiguration(char separatorChar) {
+        return createConfiguration(separatorChar, true);
+    }
+
+    private static CsvConfiguration createConfiguration(char separatorChar, boolean multilineValues) {
+        final boolean failOnInconsistentRowLength = false;
+        return new CsvConfiguration(CsvConfiguration.DEFAULT_COLUMN_NAME_LINE, "UTF-8", separatorChar,
+                CsvConfiguration.DEFAULT_QUOTE_CHAR, CsvConfiguration.DEFAULT_ESCAPE_CHAR, failOnInconsistentRowLength,
+                multilineValues);
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readFile;
+import static org.apache.metamodel.csv.CsvTestHelper.readFirstValues;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.Table;
+
+import junit.framework.TestCase;
+
+public class CsvTypeInferenceTest extends TestCase {
+
+    private File createTestFile() throws Exception {
+        final StringBuilder sb = new StringBuilder("id,name,active,amount,price,created,zip,big\n");
+        for (int i = 1; i <= 100; i++) {
+            sb.append(i).append(",name ").append(i).append(',').append(i % 3 == 0 ? "yes" : "no").append(',');
+            sb.append(i % 10 == 0 ? "" : String.valueOf(i * 11)).append(',').append(i).append(".25,");
+            sb.append("2016-01-").append(i % 28 + 1 < 10 ? "0" : "").append(i % 28 + 1).append(',');
+            sb.append(i % 2 == 0 ? "0" : "").append(1000 + i).append(',').append(10000000000L + i).append('\n');
+        }
+        return createFile("CsvTypeInferenceTest.csv", sb.toString());
+    }
+
+    private CsvDataContext createDataContext(File file) {
+        final CsvDataContext dc = new CsvDataContext(file, createSingleLineConfiguration(','));
+        dc.setMemoryMappedScanning(true);
+        dc.setTypeInferenceSampleSize(50);
+        return dc;
+    }
+
+    public void testInferredTypes() throws Exception {
+        final CsvDataContext dc = createDataContext(createTestFile());
+        final Table table = dc.getDefaultSchema().getTable(0);
+        final List<ColumnType> types = new ArrayList<ColumnType>();
+        for (Column column : table.getColumns()) {
+            types.add(column.getType());
+        }
+        assertEquals("[INTEGER, STRING, BOOLEAN, INTEGER, DOUBLE, DATE, STRING, BIGINT]", types.toString());
+        assertTrue(table.getColumnByName("amount").isNullable());
+
+        dc.setTypeInferenceSampleSize(0);
+        assertEquals(ColumnType.STRING, dc.getDefaultSchema().getTable(0).getColumnByName("id").getType());
+    }
+
+    public void testTypedValues() throws Exception {
+        final CsvDataContext dc = createDataContext(createTestFile());
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        final DataSet dataSet = dc.query().from(table).select(table.getColumns()).where("id").eq(10).execute();
+        assertTrue(dataSet.next());
+        final Row row = dataSet.getRow();
+        assertEquals(Integer.valueOf(10), row.getValue(0));
+        assertEquals("name 10", row.getValue(1));
+        assertEquals(Boolean.FALSE, row.getValue(2));
+        assertNull(row.getValue(3));
+        assertEquals(Double.valueOf(10.25), row.getValue(4));
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime((Date) row.getValue(5));
+        assertEquals(2016, calendar.get(Calendar.YEAR));
+        assertEquals(11, calendar.get(Calendar.DAY_OF_MONTH));
+        assertEquals("01010", row.getValue(6));
+        assertEquals(Long.valueOf(10000000010L), row.getValue(7));
+        assertFalse(dataSet.next());
+        dataSet.close();
+
+        // numeric comparison, not string comparison
+        assertEquals(Arrays.<Object> asList(98, 99, 100),
+                readFirstValues(dc.query().from(table).select("id").where("id").greaterThan(97).execute()));
+        assertEquals(Arrays.<Object> asList(3, 6, 9),
+                readFirstValues(dc.query().from(table).select("id").where("active").eq(true).and("id").lessThan(10)
+                        .execute()));
+
+        // aggregates on the typed values, empty values are nulls
+        final DataSet sum = dc.query().from(table).select(FunctionType.SUM, "amount")
+                .select(FunctionType.COUNT, "amount").execute();
+        assertTrue(sum.next());
+        assertEquals(55550 - 6050, ((Number) sum.getRow().getValue(0)).intValue());
+        assertEquals(90, ((Number) sum.getRow().getValue(1)).intValue());
+        sum.close();
+    }
+
+    public void testSameResultsForAllScanPaths() throws Exception {
+        final File file = createTestFile();
+        final CsvDataContext mapped = createDataContext(file);
+        final CsvDataContext unmapped = createDataContext(file);
+        unmapped.setMemoryMappedScanning(false);
+        final CsvDataContext parallel = createDataContext(file);
+        parallel.setParallelScanThreads(3);
+        final Table table = mapped.getDefaultSchema().getTable(0);
+
+        // a pushed down string filter and a typed filter
+        final FilterItem[] whereItems = {
+                new FilterItem(new SelectItem(table.getColumnByName("name")), OperatorType.LIKE, "name 1%"),
+                new FilterItem(new SelectItem(table.getColumnByName("price")), OperatorType.GREATER_THAN, 12.5) };
+        final List<Object> expected = Arrays.<Object> asList(13, 14, 15, 16, 17, 18, 19, 100);
+        for (CsvDataContext dc : Arrays.asList(mapped, unmapped, parallel)) {
+            final Table t = dc.getDefaultSchema().getTable(0);
+            assertEquals(expected, readFirstValues(dc.query().from(t).select("id").where(whereItems).execute()));
+        }
+    }
+
+    public void testUpdateWithTypedWhereItems() throws Exception {
+        final File file = createTestFile();
+        final CsvDataContext dc = createDataContext(file);
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.deleteFrom(table).where("id").greaterThan(9).execute();
+                callback.update(table).value("name", "updated").where("amount").lessThan(30).execute();
+            }
+        });
+
+        assertEquals(Arrays.<Object> asList("updated", "updated", "name 3", "name 4", "name 5", "name 6", "name 7",
+                "name 8", "name 9"), readFirstValues(dc.query().from(table).select("name").execute()));
+        // unaffected values are written back as they were read
+        assertTrue(readFile(file).contains(
+                "\"2\",\"updated\",\"no\",\"22\",\"2.25\",\"2016-01-03\",\"01002\",\"10000000002\""));
+    }
+
+    public void testDateRoundTrip() throws Exception {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2017, Calendar.MARCH, 4);
+        final Date day = calendar.getTime();
+        calendar.set(2017, Calendar.MARCH, 4, 5, 6, 7);
+        final Date time = calendar.getTime();
+        calendar.set(Calendar.MILLISECOND, 89);
+
+        // with and without the in-place rewriter
+        for (boolean memoryMappedScanning : new boolean[] { true, false }) {
+            final File file = createFile("CsvTypeInferenceTest_dates.csv", "id,day,time\n"
+                    + "1,2016-01-02,2016-01-02 10:11:12\n2,2016-01-03,2016-01-03 10:11:12.5\n");
+            final CsvDataContext dc = createDataContext(file);
+            dc.setMemoryMappedScanning(memoryMappedScanning);
+            final Table table = dc.getDefaultSchema().getTable(0);
+            assertEquals(ColumnType.DATE, table.getColumnByName("day").getType());
+            assertEquals(ColumnType.TIMESTAMP, table.getColumnByName("time").getType());
+
+            dc.executeUpdate(new UpdateScript() {
+                @Override
+                public void run(UpdateCallback callback) {
+                    callback.insertInto(table).value("id", 3).value("day", time).value("time", calendar).execute();
+                    callback.update(table).value("time", time).where("id").eq(1).execute();
+                    callback.deleteFrom(table).where("id").eq(2).execute();
+                }
+            });
+
+            final DataSet dataSet = dc.query().from(table).select("id", "day", "time").orderBy("id").execute();
+            assertTrue(dataSet.next());
+            assertEquals(1, dataSet.getRow().getValue(0));
+            assertEquals(new CsvValueParser().parseDate("2016-01-02"), dataSet.getRow().getValue(1));
+            assertEquals(time, dataSet.getRow().getValue(2));
+            assertTrue(dataSet.next());
+            assertEquals(3, dataSet.getRow().getValue(0));
+            assertEquals(day, dataSet.getRow().getValue(1));
+            assertEquals(calendar.getTime(), dataSet.getRow().getValue(2));
+            assertFalse(dataSet.next());
+            dataSet.close();
+
+            final String content = readFile(file);
+            assertTrue(content, content.contains("\"3\",\"2017-03-04\",\"2017-03-04 05:06:07.089\""));
+        }
+    }
+
+    public void testValueParser() throws Exception {
+        assertEquals(-123L, CsvValueParser.parseLong("-123"));
+        assertEquals(CsvValueParser.NOT_A_LONG, CsvValueParser.parseLong("0123"));
+        assertEquals(CsvValueParser.NOT_A_LONG, CsvValueParser.parseLong("12a"));
+        assertEquals(1234567890123456789L, CsvValueParser.parseLong("1234567890123456789"));
+        assertEquals(Long.MAX_VALUE, CsvValueParser.parseLong(Long.toString(Long.MAX_VALUE)));
+        assertEquals(CsvValueParser.NOT_A_LONG, CsvValueParser.parseLong("9223372036854775808"));
+        assertEquals(CsvValueParser.NOT_A_LONG, CsvValueParser.parseLong("12345678901234567890"));
+
+        for (String str : new String[] { "0.1", "-2.5", "123456789.123456", "1e10", "3.14159265358979323846",
+                ".5", "1." }) {
+            assertTrue(str, CsvValueParser.isDecimal(str));
+            assertEquals(str, Double.parseDouble(str), CsvValueParser.parseDouble(str).doubleValue(), 0d);
+        }
+        for (String str : new String[] { "", "-", ".", "1e", "00.5", "NaN", "1d", "1,5" }) {
+            assertFalse(str, CsvValueParser.isDecimal(str));
+            assertNull(str, CsvValueParser.parseDouble(str));
+        }
+
+        assertEquals(ColumnType.DATE, CsvValueParser.getDateType("2016-02-29"));
+        assertEquals(ColumnType.TIMESTAMP, CsvValueParser.getDateType("2016-02-29T23:59:59.5"));
+        assertNull(CsvValueParser.getDateType("2016-2-29"));
+
+        final CsvValueParser parser = new CsvValueParser();
+        assertNull(parser.parseDate("2015-02-29"));
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTime(parser.parseDate("2016-02-29 23:59:59.5"));
+        assertEquals(500, calendar.get(Calendar.MILLISECOND));
+        assertEquals(59, calendar.get(Calendar.SECOND));
+
+        assertEquals("foo", parser.parse(ColumnType.INTEGER, "foo"));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), parser.parse(ColumnType.BIGINT, Long.toString(Long.MIN_VALUE)));
+        assertEquals("0123", parser.parse(ColumnType.BIGINT, "0123"));
+        assertEquals("n/a", parser.parse(ColumnType.DOUBLE, "n/a"));
+        assertNull(parser.parse(ColumnType.DOUBLE, ""));
+        assertEquals(Boolean.TRUE, parser.parse(ColumnType.BOOLEAN, "1"));
+        assertFalse(CsvValueParser.isBooleanWord("1"));
+    }
+}
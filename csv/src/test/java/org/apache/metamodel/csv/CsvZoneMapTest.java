@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readAll;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.ZoneMap;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Table;
+
+import junit.framework.TestCase;
+
+public class CsvZoneMapTest extends TestCase {
+
+    private static final int ROWS = 1000;
+
+    private final CsvConfiguration configuration = createSingleLineConfiguration(',');
+
+    private File createTestFile(String name) throws Exception {
+        final StringBuilder sb = new StringBuilder("day,id,name\n");
+        for (int i = 0; i < ROWS; i++) {
+            final String day = String.format("2015-%02d-%02d", i / 100 + 1, i % 28 + 1);
+            if (i % 250 == 0) {
+                // a short row, with a missing name
+                sb.append(day).append(',').append(i).append('\n');
+            } else {
+                sb.append(day).append(',').append(i).append(",\"name ").append(i % 7).append("\"\n");
+            }
+            if (i % 99 == 0) {
+                sb.append('\n');
+            }
+        }
+        final File file = createFile(name, sb.toString());
+        ZoneMap.delete(file);
+        return file;
+    }
+
+    private CsvDataContext createDataContext(File file) {
+        final CsvDataContext dc = new CsvDataContext(file, configuration);
+        dc.setZoneMap(100, "day", "name");
+        return dc;
+    }
+
+    private List<String> query(CsvDataContext dc, String where) {
+        final String tableName = dc.getDefaultSchema().getTable(0).getName();
+        return readAll(dc.executeQuery("SELECT id, name FROM \"" + tableName + "\" WHERE " + where));
+    }
+
+    public void testSkipBlocks() throws Exception {
+        final File file = createTestFile("CsvZoneMapTest.csv");
+        final CsvDataContext dc = createDataContext(file);
+        final CsvDataContext withoutZoneMap = new CsvDataContext(file, configuration);
+        final Table table = dc.getDefaultSchema().getTable(0);
+
+        // the first full scan builds the zone map
+        assertEquals(4, query(dc, "day = '2015-03-05'").size());
+        final ZoneMap zoneMap = ZoneMap.load(file, 100, new int[] { 0, 2 });
+        assertNotNull(zoneMap);
+        assertEquals(10, zoneMap.getBlockCount());
+        assertEquals("[false, false, true, false, false, false, false, false, false, false]", Arrays.toString(
+                zoneMap.getMatchingBlocks(Arrays.asList(new FilterItem(new SelectItem(table.getColumnByName("day")),
+                        OperatorType.EQUALS_TO, "2015-03-05")))));
+
+        final String[] whereClauses = { "day = '2015-03-05'", "day > '2015-09-27'", "day < '2015-01-03'",
+                "day IN ('2015-04-01', '2015-07-02')", "day LIKE '2015-10%' AND id > '950'", "name IS NULL",
+                "name = 'name 3' AND day < '2015-02'", "day = '2015-01-01' OR day = '2015-10-01'",
+                "day = '2016-01-01'" };
+        for (String where : whereClauses) {
+            final List<String> expected = query(withoutZoneMap, where);
+            assertEquals(where, expected, query(dc, where));
+        }
+        assertEquals("[[0, null], [250, null], [500, null], [750, null]]", query(dc, "name IS NULL").toString());
+
+        final DataSet dataSet = dc.query().from(table).select("id").where("day").gt("2015-05").firstRow(3)
+                .maxRows(2).execute();
+        assertEquals("[[402], [403]]", readAll(dataSet).toString());
+    }
+
+    public void testInvalidatedByUpdates() throws Exception {
+        final File file = createTestFile("CsvZoneMapTest_update.csv");
+        final CsvDataContext dc = createDataContext(file);
+        final Table table = dc.getDefaultSchema().getTable(0);
+        assertEquals(ROWS, readAll(dc.query().from(table).select("id").execute()).size());
+        assertTrue(ZoneMap.getZoneMapFile(file).exists());
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.insertInto(table).value("day", "2015-01-01").value("id", "new").execute();
+            }
+        });
+        assertNull(ZoneMap.load(file, 100, new int[] { 0, 2 }));
+        assertEquals(1, query(dc, "day = '2015-01-01' AND id = 'new'").size());
+
+        dc.executeUpdate(new UpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                callback.deleteFrom(table).where("id").eq("new").execute();
+            }
+        });
+        assertFalse(ZoneMap.getZoneMapFile(file).exists());
+        assertEquals(0, query(dc, "day = '2015-01-01' AND id = 'new'").size());
+    }
+}
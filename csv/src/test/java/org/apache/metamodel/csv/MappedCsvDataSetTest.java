@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createFile;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readAll;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.util.FileHelper;
+
+import junit.framework.TestCase;
+
+public class MappedCsvDataSetTest extends TestCase {
+
+    public void testSameResultAsSingleLineDataSet() throws Exception {
+        final File file = createFile("MappedCsvDataSetTest_lines.csv",
+                "id,name,city\r\n1,foo,bar\r\n2,\"b,az\",\r\r\n3\n4,héllo,wörld,extra\r5,a\"b,c");
+        final CsvConfiguration configuration = createSingleLineConfiguration(',');
+
+        final CsvDataContext mapped = new CsvDataContext(file, configuration);
+        mapped.setMemoryMappedScanning(true);
+        final CsvDataContext unmapped = new CsvDataContext(file, configuration);
+        unmapped.setMemoryMappedScanning(false);
+
+        final String query = "SELECT city, id, name FROM MappedCsvDataSetTest_lines.csv";
+        final DataSet dataSet = mapped.executeQuery(query);
+        final List<String> expected = readAll(unmapped.executeQuery(query));
+        assertEquals("[[bar, 1, foo], [, 2, b,az], [null, 3, null], [wörld, 4, héllo], "
+                + "[null, 5,a\"b,c, null]]", expected.toString());
+        assertEquals(expected, readAll(dataSet));
+
+        final List<String> limited = readAll(mapped.query().from("MappedCsvDataSetTest_lines.csv").select("name")
+                .firstRow(2).maxRows(2).execute());
+        assertEquals("[[b,az], [null]]", limited.toString());
+    }
+
+    public void testDecodeRequestedFieldsOnly() throws Exception {
+        final CsvConfiguration configuration = new CsvConfiguration(1, "UTF-8", ';', '\'',
+                CsvConfiguration.NOT_A_CHAR, false, false);
+        final MappedCsvLineParser parser = new MappedCsvLineParser(configuration, 4);
+
+        final byte[] line = "a;;bæ;c".getBytes("UTF-8");
+        final int[] boundaries = parser.tokenize(line);
+        assertEquals(5, boundaries.length);
+        assertEquals("[a, , bæ, c]", Arrays.toString(parser.decodeAll(line, boundaries)));
+
+        assertNull(parser.tokenize("a;'b;c'".getBytes("UTF-8")));
+        assertEquals("[a, b;c]", Arrays.toString(parser.parse("a;'b;c'".getBytes("UTF-8"), 1)));
+
+        final CsvDataContext dc = new CsvDataContext(createFile("MappedCsvDataSetTest_wide.csv",
+                "a;b;c;d\n1;2;3;4\n"), configuration);
+        dc.setMemoryMappedScanning(true);
+        final DataSet dataSet = dc.query().from("MappedCsvDataSetTest_wide.csv").select("d", "b").execute();
+        assertTrue(dataSet.next());
+        final Row row = dataSet.getRow();
+        assertTrue(row instanceof MappedCsvRow);
+        assertEquals("[4, 2]", Arrays.toString(row.getValues()));
+        assertFalse(dataSet.next());
+        dataSet.close();
+    }
+
+    public void testReadLinesAcrossWindows() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("line").append(i).append(i % 2 == 0 ? "\r\n" : "\r");
+        }
+        final File file = createFile("MappedCsvDataSetTest_windows.csv", sb.toString());
+
+        for (boolean memoryMapped : new boolean[] { true, false }) {
+            // a tiny window forces remapping (or rereading) for almost every
+            // line
+            final MappedCsvReader reader = new MappedCsvReader(file, 0, file.length(), 4, memoryMapped);
+            try {
+                for (int i = 0; i < 100; i++) {
+                    final byte[] line = reader.readLine();
+                    assertEquals("line" + i, new String(line, "UTF-8"));
+                }
+                assertNull(reader.readLine());
+            } finally {
+                FileHelper.safeClose(reader);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.csv;
+
+import static org.apache.metamodel.csv.CsvTestHelper.createMultilineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.createSingleLineConfiguration;
+import static org.apache.metamodel.csv.CsvTestHelper.readAll;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.WrappingDataSet;
+import org.apache.metamodel.util.FileHelper;
+
+import junit.framework.TestCase;
+
+public class ParallelCsvDataSetTest extends TestCase {
+
+    private static final int ROWS = 250000;
+
+    private static File file;
+
+    private static File getFile() throws Exception {
+        if (file == null) {
+            file = new File("target/ParallelCsvDataSetTest.csv");
+            final BufferedWriter writer = FileHelper.getBufferedWriter(file, "UTF-8");
+            try {
+                writer.write("id,name,city,amount\n");
+                for (int i = 0; i < ROWS; i++) {
+                    writer.write(i + ",name number " + i + ",\"city " + (i % 17) + "\"," + (i % 1000) + "\n");
+                    if (i % 10000 == 0) {
+                        // blank lines should be skipped
+                        writer.write("\n");
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            assertTrue(file.length() > 2 * CsvDataContext.PARALLEL_SCAN_MIN_BYTES_PER_THREAD);
+        }
+        return file;
+    }
+
+    private CsvDataContext createDataContext(int threads, boolean ordered) throws Exception {
+        final CsvDataContext dc = new CsvDataContext(getFile(), createSingleLineConfiguration(','));
+        dc.setParallelScanThreads(threads);
+        dc.setParallelScanOrdered(ordered);
+        return dc;
+    }
+
+    public void testOrderedScanSameAsSerialScan() throws Exception {
+        final CsvDataContext serial = createDataContext(1, true);
+        final CsvDataContext parallel = createDataContext(4, true);
+
+        final String query = "SELECT name, city FROM ParallelCsvDataSetTest.csv WHERE amount = '999'";
+        final List<String> expected = readAll(serial.executeQuery(query));
+        assertEquals(ROWS / 1000, expected.size());
+        assertEquals("[name number 999, city 13]", expected.get(0));
+
+        final DataSet dataSet = parallel.executeQuery(query);
+        assertTrue(containsParallelDataSet(dataSet));
+        assertEquals(expected, readAll(dataSet));
+
+        assertFalse(containsParallelDataSet(serial.executeQuery(query)));
+    }
+
+    private boolean containsParallelDataSet(DataSet dataSet) {
+        return getParallelDataSet(dataSet) != null;
+    }
+
+    private ParallelCsvDataSet getParallelDataSet(DataSet dataSet) {
+        DataSet ds = dataSet;
+        while (ds instanceof WrappingDataSet) {
+            ds = ((WrappingDataSet) ds).getWrappedDataSet();
+        }
+        return ds instanceof ParallelCsvDataSet ? (ParallelCsvDataSet) ds : null;
+    }
+
+    public void testUnorderedScan() throws Exception {
+        final CsvDataContext serial = createDataContext(1, true);
+        final CsvDataContext parallel = createDataContext(3, false);
+
+        final String query = "SELECT id, amount FROM ParallelCsvDataSetTest.csv WHERE city = 'city 3'";
+        final List<String> expected = readAll(serial.executeQuery(query));
+        final List<String> actual = readAll(parallel.executeQuery(query));
+        assertEquals(expected.size(), actual.size());
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    public void testFullScanWithPaging() throws Exception {
+        final CsvDataContext parallel = createDataContext(4, true);
+        final List<String> rows = readAll(parallel.query().from("ParallelCsvDataSetTest.csv").select("id")
+                .firstRow(ROWS - 1).execute());
+        assertEquals("[[" + (ROWS - 2) + "], [" + (ROWS - 1) + "]]", rows.toString());
+    }
+
+    public void testCloseBeforeEnd() throws Exception {
+        final CsvDataContext parallel = createDataContext(4, true);
+        final DataSet dataSet = parallel.executeQuery("SELECT id FROM ParallelCsvDataSetTest.csv WHERE amount > '5'");
+        assertTrue(dataSet.next());
+        assertEquals("6", dataSet.getRow().getValue(0));
+        dataSet.close();
+        assertFalse(dataSet.next());
+    }
+
+    public void testScannersStopWhenClosed() throws Exception {
+        final CsvDataContext parallel = createDataContext(4, true);
+        final ParallelCsvDataSet dataSet = getParallelDataSet(parallel.query().from("ParallelCsvDataSetTest.csv")
+                .select("id").execute());
+        assertNotNull(dataSet);
+        assertTrue(dataSet.next());
+
+        // give the scanners time to fill up their queues
+        Thread.sleep(200);
+        dataSet.close();
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!dataSet.isScanDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(dataSet.isScanDone());
+    }
+
+    public void testAbandonedDataSetCanBeCollected() throws Exception {
+        final CsvDataContext parallel = createDataContext(4, true);
+        DataSet dataSet = parallel.query().from("ParallelCsvDataSetTest.csv").select("id").execute();
+        assertTrue(dataSet.next());
+        final WeakReference<DataSet> reference = new WeakReference<DataSet>(getParallelDataSet(dataSet));
+        dataSet = null;
+
+        // the scanners do not reference the data set, so it is collected (and
+        // closed by its finalizer) even though it was never closed
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (reference.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(reference.get());
+    }
+
+    public void testScanWithRowIndex() throws Exception {
+        final CsvDataContext serial = createDataContext(1, true);
+        final CsvDataContext parallel = createDataContext(3, true);
+        parallel.setRowIndexInterval(10000);
+        CsvRowIndex.delete(getFile());
+
+        final String query = "SELECT id FROM ParallelCsvDataSetTest.csv WHERE amount = '123'";
+        final List<String> expected = readAll(serial.executeQuery(query));
+
+        // first scan builds the index, second scan uses it for splitting
+        serial.setRowIndexInterval(10000);
+        readAll(serial.query().from("ParallelCsvDataSetTest.csv").select("id").execute());
+        assertTrue(CsvRowIndex.getIndexFile(getFile()).exists());
+        assertEquals(expected, readAll(parallel.executeQuery(query)));
+
+        CsvRowIndex.delete(getFile());
+    }
+
+    public void testParallelCount() throws Exception {
+        final CsvDataContext parallel = createDataContext(4, true);
+        final DataSet dataSet = parallel.query().from("ParallelCsvDataSetTest.csv").selectCount().execute();
+        assertTrue(dataSet.next());
+        assertEquals(ROWS, ((Number) dataSet.getRow().getValue(0)).intValue());
+        dataSet.close();
+
+        final CsvRecordCounter counter = new CsvRecordCounter(getFile(), createMultilineConfiguration(','));
+        final long start = CsvFileRanges.getDataStartOffset(getFile(), "UTF-8", 1);
+        assertEquals(ROWS, counter.count(start, getFile().length(), 4));
+    }
+
+    public void testGetDataStartOffsetAndSplit() throws Exception {
+        final File smallFile = new File("target/ParallelCsvDataSetTest_small.csv");
+        final byte[] bom = new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+        final String content = "a,b\r\n1,2\r\n3,4\n5,6\n";
+        final byte[] contentBytes = content.getBytes("UTF-8");
+        final byte[] bytes = new byte[bom.length + contentBytes.length];
+        System.arraycopy(bom, 0, bytes, 0, bom.length);
+        System.arraycopy(contentBytes, 0, bytes, bom.length, contentBytes.length);
+        Files.write(smallFile.toPath(), bytes);
+
+        assertEquals(3, CsvFileRanges.getDataStartOffset(smallFile, "UTF-8", 0));
+        assertEquals(8, CsvFileRanges.getDataStartOffset(smallFile, "UTF-8", 1));
+        assertEquals(13, CsvFileRanges.getDataStartOffset(smallFile, "UTF-8", 2));
+        assertEquals(-1, CsvFileRanges.getDataStartOffset(smallFile, "UTF-8", 4));
+
+        final long[] boundaries = CsvFileRanges.split(smallFile, 8, bytes.length, 3);
+        assertEquals(8, boundaries[0]);
+        assertEquals(bytes.length, boundaries[boundaries.length - 1]);
+        for (int i = 1; i < boundaries.length - 1; i++) {
+            assertEquals('\n', bytes[(int) boundaries[i] - 1]);
+        }
+
+        assertTrue(CsvFileRanges.isAsciiCompatible("UTF-8"));
+        assertTrue(CsvFileRanges.isAsciiCompatible("ISO-8859-1"));
+        assertFalse(CsvFileRanges.isAsciiCompatible("UTF-16"));
+    }
+}
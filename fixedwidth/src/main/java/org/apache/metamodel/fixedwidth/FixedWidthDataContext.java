@@ -21,10 +21,16 @@ package org.apache.metamodel.fixedwidth;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.MetaModelHelper;
 import org.apache.metamodel.QueryPostprocessDataContext;
 import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.ZoneMap;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.MutableColumn;
@@ -36,18 +42,27 @@ import org.apache.metamodel.schema.TableType;
 import org.apache.metamodel.schema.naming.ColumnNamingContextImpl;
 import org.apache.metamodel.schema.naming.ColumnNamingSession;
 import org.apache.metamodel.schema.naming.ColumnNamingStrategy;
+import org.apache.metamodel.util.CollectionUtils;
+import org.apache.metamodel.util.CompressedResource;
 import org.apache.metamodel.util.FileHelper;
 import org.apache.metamodel.util.FileResource;
 import org.apache.metamodel.util.Resource;
 import org.apache.metamodel.util.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * DataContext implementation for fixed width value files.
  */
 public class FixedWidthDataContext extends QueryPostprocessDataContext {
 
+    private static final Logger logger = LoggerFactory.getLogger(FixedWidthDataContext.class);
+
     private final Resource _resource;
     private final FixedWidthConfiguration _configuration;
+    private volatile int _zoneMapBlockSize = 0;
+    private volatile String[] _zoneMapColumnNames = new String[0];
+    private volatile ZoneMap _zoneMap;
 
     /**
      * @deprecated use
@@ -70,12 +85,12 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
     }
 
     public FixedWidthDataContext(File file, FixedWidthConfiguration configuration) {
-        _resource = new FileResource(file);
+        _resource = CompressedResource.wrapIfCompressed(new FileResource(file));
         _configuration = configuration;
     }
 
     public FixedWidthDataContext(Resource resource, FixedWidthConfiguration configuration) {
-        _resource = resource;
+        _resource = CompressedResource.wrapIfCompressed(resource);
         _configuration = configuration;
     }
 
@@ -97,8 +112,12 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
      */
     @Deprecated
     public File getFile() {
-        if (_resource instanceof FileResource) {
-            return ((FileResource) _resource).getFile();
+        Resource resource = _resource;
+        if (resource instanceof CompressedResource) {
+            resource = ((CompressedResource) resource).getDelegate();
+        }
+        if (resource instanceof FileResource) {
+            return ((FileResource) resource).getFile();
         }
         return null;
     }
@@ -112,6 +131,41 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
         return _resource;
     }
 
+    /**
+     * Enables a sidecar zone map (see {@link ZoneMap}) for files on the local
+     * file system. The zone map records the minimum and maximum value and the
+     * number of nulls of a set of columns for each block of records, and is
+     * stored next to the file with the suffix ".zonemap". It is built during
+     * the first full scan of the file, and is used by queries with WHERE
+     * clauses to skip parsing the records of blocks that cannot contain
+     * matching records.
+     * 
+     * The zone map is only used as long as the size and last modification time
+     * of the file match those recorded in the zone map, and is not used if
+     * {@link FixedWidthConfiguration#isFailOnInconsistentLineWidth()} is set.
+     * 
+     * @param blockSize
+     *            the number of records per block, or 0 (default) to disable
+     *            the zone map
+     * @param columnNames
+     *            the names of the columns to track
+     */
+    public void setZoneMap(int blockSize, String... columnNames) {
+        if (blockSize < 0) {
+            throw new IllegalArgumentException("Zone map block size cannot be negative");
+        }
+        _zoneMapBlockSize = blockSize;
+        _zoneMapColumnNames = columnNames;
+    }
+
+    public int getZoneMapBlockSize() {
+        return _zoneMapBlockSize;
+    }
+
+    public String[] getZoneMapColumnNames() {
+        return _zoneMapColumnNames;
+    }
+
     @Override
     protected Schema getMainSchema() throws MetaModelException {
         final String schemaName = getDefaultSchemaName();
@@ -164,8 +218,129 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
         return ResourceUtils.getParentName(_resource);
     }
 
+    @Override
+    protected DataSet materializeMainSchemaTable(Table table, List<SelectItem> selectItems,
+            List<FilterItem> whereItems, int firstRow, int maxRows) {
+        if (whereItems.isEmpty()) {
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        final ZoneMap zoneMap = getZoneMap(table);
+        if (zoneMap == null) {
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        final List<SelectItem> workingSelectItems = CollectionUtils.concat(true, selectItems,
+                MetaModelHelper.getEvaluatedSelectItems(whereItems));
+        final Column[] columns = new Column[workingSelectItems.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = workingSelectItems.get(i).getColumn();
+            if (columns[i] == null) {
+                return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+            }
+        }
+
+        final boolean[] matchingBlocks = zoneMap.getMatchingBlocks(whereItems);
+        int skippedBlocks = 0;
+        for (boolean matchingBlock : matchingBlocks) {
+            if (!matchingBlock) {
+                skippedBlocks++;
+            }
+        }
+        if (skippedBlocks == 0) {
+            return super.materializeMainSchemaTable(table, selectItems, whereItems, firstRow, maxRows);
+        }
+
+        logger.debug("Skipping {} of {} blocks of {} using zone map", skippedBlocks, matchingBlocks.length,
+                _resource);
+
+        final FixedWidthReader reader = createReaderAtFirstRecord();
+        DataSet dataSet = new FixedWidthDataSet(reader, columns, null, null, matchingBlocks,
+                zoneMap.getBlockSize());
+        dataSet = MetaModelHelper.getSelection(workingSelectItems, dataSet);
+        dataSet = MetaModelHelper.getFiltered(dataSet, whereItems);
+        dataSet = MetaModelHelper.getPaged(dataSet, firstRow, maxRows);
+        dataSet = MetaModelHelper.getSelection(selectItems, dataSet);
+        return dataSet;
+    }
+
     @Override
     public DataSet materializeMainSchemaTable(Table table, Column[] columns, int maxRows) {
+        final FixedWidthReader reader = createReaderAtFirstRecord();
+        if (maxRows > 0) {
+            return new FixedWidthDataSet(reader, columns, maxRows);
+        } else {
+            return new FixedWidthDataSet(reader, columns, null, createZoneMapBuilder(table), null, 0);
+        }
+    }
+
+    /**
+     * Gets the numbers of the columns to track in the zone map.
+     * 
+     * @param table
+     * @return the column numbers, or null if the zone map is not enabled or
+     *         not possible for the file
+     */
+    private int[] getZoneMapColumnNumbers(Table table) {
+        final String[] columnNames = _zoneMapColumnNames;
+        if (_zoneMapBlockSize <= 0 || columnNames.length == 0 || !(_resource instanceof FileResource)
+                || _configuration.isFailOnInconsistentLineWidth()) {
+            return null;
+        }
+        final int[] columnNumbers = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            final Column column = table.getColumnByName(columnNames[i]);
+            if (column == null) {
+                logger.warn("Zone map column '{}' does not exist in table: {}", columnNames[i], table.getName());
+                return null;
+            }
+            columnNumbers[i] = column.getColumnNumber();
+        }
+        return columnNumbers;
+    }
+
+    /**
+     * Gets the zone map of the file, if enabled and up to date.
+     * 
+     * @param table
+     * @return the zone map, or null if not available
+     */
+    private ZoneMap getZoneMap(Table table) {
+        final int[] columnNumbers = getZoneMapColumnNumbers(table);
+        if (columnNumbers == null) {
+            return null;
+        }
+
+        final int blockSize = _zoneMapBlockSize;
+        final File file = ((FileResource) _resource).getFile();
+        final ZoneMap cachedZoneMap = _zoneMap;
+        if (cachedZoneMap != null && cachedZoneMap.getBlockSize() == blockSize
+                && Arrays.equals(cachedZoneMap.getColumnNumbers(), columnNumbers) && cachedZoneMap.isValidFor(file)) {
+            return cachedZoneMap;
+        }
+
+        final ZoneMap zoneMap = ZoneMap.load(file, blockSize, columnNumbers);
+        _zoneMap = zoneMap;
+        return zoneMap;
+    }
+
+    /**
+     * Creates a builder for the zone map of the file, if enabled and the
+     * existing zone map is missing or outdated.
+     * 
+     * @param table
+     * @return the builder, or null
+     */
+    private ZoneMap.Builder createZoneMapBuilder(Table table) {
+        final int[] columnNumbers = getZoneMapColumnNumbers(table);
+        if (columnNumbers == null || getZoneMap(table) != null) {
+            return null;
+        }
+        final File file = ((FileResource) _resource).getFile();
+        return new ZoneMap.Builder(file, _zoneMapBlockSize, columnNumbers);
+    }
+
+    private FixedWidthReader createReaderAtFirstRecord() {
         final FixedWidthReader reader = createReader();
         try {
             for (int i = 1; i <= _configuration.getColumnNameLineNumber(); i++) {
@@ -175,11 +350,7 @@ public class FixedWidthDataContext extends QueryPostprocessDataContext {
             FileHelper.safeClose(reader);
             throw e;
         }
-        if (maxRows > 0) {
-            return new FixedWidthDataSet(reader, columns, maxRows);
-        } else {
-            return new FixedWidthDataSet(reader, columns, null);
-        }
+        return reader;
     }
 
     private FixedWidthReader createReader() {
@@ -21,6 +21,7 @@ package org.apache.metamodel.fixedwidth;
 import org.apache.metamodel.data.AbstractDataSet;
 import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.ZoneMap;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.util.FileHelper;
 
@@ -30,14 +31,44 @@ import org.apache.metamodel.util.FileHelper;
 class FixedWidthDataSet extends AbstractDataSet {
 
 	private final FixedWidthReader _reader;
+	private final ZoneMap.Builder _zoneMapBuilder;
+	private final boolean[] _matchingBlocks;
+	private final int _blockSize;
 	private volatile Integer _rowsRemaining;
 	private volatile Row _row;
+	private volatile long _recordNumber;
 
 	public FixedWidthDataSet(FixedWidthReader reader, Column[] columns,
 			Integer maxRows) {
+		this(reader, columns, maxRows, null, null, 0);
+	}
+
+	/**
+	 * Creates a data set
+	 * 
+	 * @param reader
+	 *            the reader, positioned at the first record
+	 * @param columns
+	 * @param maxRows
+	 * @param zoneMapBuilder
+	 *            an optional {@link ZoneMap.Builder} to build and save a zone
+	 *            map with, if the data set is read until the end
+	 * @param matchingBlocks
+	 *            an optional array of the zone map blocks to read, see
+	 *            {@link ZoneMap#getMatchingBlocks(java.util.List)}. The records
+	 *            of other blocks are skipped without being parsed.
+	 * @param blockSize
+	 *            the block size of the zone map
+	 */
+	public FixedWidthDataSet(FixedWidthReader reader, Column[] columns,
+			Integer maxRows, ZoneMap.Builder zoneMapBuilder,
+			boolean[] matchingBlocks, int blockSize) {
 		super(columns);
 		_reader = reader;
 		_rowsRemaining = maxRows;
+		_zoneMapBuilder = zoneMapBuilder;
+		_matchingBlocks = matchingBlocks;
+		_blockSize = blockSize;
 	}
 
 	@Override
@@ -76,6 +107,11 @@ class FixedWidthDataSet extends AbstractDataSet {
 			return false;
 		}
 
+		if (_matchingBlocks != null && !skipBlocks()) {
+			close();
+			return false;
+		}
+
 		InconsistentValueWidthException exception;
 		String[] stringValues;
 		try {
@@ -87,8 +123,24 @@ class FixedWidthDataSet extends AbstractDataSet {
 		}
 		if (stringValues == null) {
 			close();
+			if (_zoneMapBuilder != null) {
+				_zoneMapBuilder.buildAndSave();
+			}
 			return false;
 		}
+		_recordNumber++;
+
+		if (_zoneMapBuilder != null) {
+			final int[] trackedColumnNumbers = _zoneMapBuilder.getColumnNumbers();
+			final Object[] trackedValues = new Object[trackedColumnNumbers.length];
+			for (int i = 0; i < trackedValues.length; i++) {
+				final int columnNumber = trackedColumnNumbers[i];
+				if (columnNumber < stringValues.length) {
+					trackedValues[i] = stringValues[columnNumber];
+				}
+			}
+			_zoneMapBuilder.addRecord(ZoneMap.UNKNOWN_OFFSET, trackedValues);
+		}
 		
 		final int size = getHeader().size();
         Object[] rowValues = new Object[size];
@@ -109,4 +161,22 @@ class FixedWidthDataSet extends AbstractDataSet {
 		}
 		return true;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Skips the records of blocks that cannot contain matching records.
+	 * 
+	 * @return false if the end of the file was reached
+	 */
+	private boolean skipBlocks() {
+		while (true) {
+			final long block = _recordNumber / _blockSize;
+			if (block >= _matchingBlocks.length || _matchingBlocks[(int) block]) {
+				return true;
+			}
+			if (!_reader.skipRecord()) {
+				return false;
+			}
+			_recordNumber++;
+		}
+	}
+}
@@ -112,6 +112,22 @@ class FixedWidthReader implements Closeable {
         }
     }
 
+    /**
+     * Skips the next record from the file, without separating it into values.
+     *
+     * @return true if a record was skipped, or false if the end of the file has been reached.
+     * @throws IllegalStateException if an exception occurs while reading the file.
+     */
+    public boolean skipRecord() throws IllegalStateException {
+        try {
+            beforeReadLine();
+            _rowNumber++;
+            return readSingleRecordData() != null;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Empty hook that enables special behavior in sub-classed readers (by overriding this method). 
      */
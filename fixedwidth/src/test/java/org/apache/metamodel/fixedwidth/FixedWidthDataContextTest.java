@@ -19,12 +19,16 @@
 package org.apache.metamodel.fixedwidth;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.apache.metamodel.DataContext;
 import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.ZoneMap;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
@@ -238,4 +242,54 @@ public class FixedWidthDataContextTest extends TestCase {
         assertNotNull(table.getColumnByName(firstColumnName));
         assertNotNull(table.getColumnByName(secondColumnName));
     }
+
+    public void testZoneMap() throws Exception {
+        final File file = new File("target/FixedWidthDataContextTest_zonemap.txt");
+        final StringBuilder sb = new StringBuilder("day       id   name      \n");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(String.format("2015-%02d-%02d%-5d", i / 100 + 1, i % 28 + 1, i));
+            if (i % 250 != 0) {
+                // every 250th record has no name
+                sb.append(String.format("%-10s", "name " + (i % 7)));
+            }
+            sb.append('\n');
+        }
+        Files.write(file.toPath(), sb.toString().getBytes("UTF-8"));
+        ZoneMap.delete(file);
+
+        final FixedWidthConfiguration configuration = new FixedWidthConfiguration(1, "UTF-8", new int[] { 10, 5,
+                10 }, false);
+        final FixedWidthDataContext withoutZoneMap = new FixedWidthDataContext(file, configuration);
+        final FixedWidthDataContext dc = new FixedWidthDataContext(file, configuration);
+        dc.setZoneMap(100, "day", "name");
+
+        // the first full scan builds the zone map
+        final String query = "SELECT id, name FROM \"" + file.getName() + "\" WHERE ";
+        assertEquals(4, readAll(dc.executeQuery(query + "day = '2015-03-05'")).size());
+        final ZoneMap zoneMap = ZoneMap.load(file, 100, new int[] { 0, 2 });
+        assertNotNull(zoneMap);
+        assertEquals(10, zoneMap.getBlockCount());
+
+        final String[] whereClauses = { "day = '2015-03-05'", "day > '2015-09-27'", "name IS NULL",
+                "day LIKE '2015-10%' AND id > '950'", "day = '2015-01-01' OR day = '2015-10-01'" };
+        for (String where : whereClauses) {
+            final List<String> expected = readAll(withoutZoneMap.executeQuery(query + where));
+            assertEquals(where, expected, readAll(dc.executeQuery(query + where)));
+        }
+        assertEquals("[[250, null], [500, null], [750, null]]", readAll(
+                dc.executeQuery(query + "name IS NULL AND day > '2015-02'")).toString());
+
+        // changing the file makes the zone map invalid
+        Files.write(file.toPath(), "day       id   name      \n2015-05-05x    y\n".getBytes("UTF-8"));
+        assertEquals("[[x, y]]", readAll(dc.executeQuery(query + "day = '2015-05-05'")).toString());
+    }
+
+    private List<String> readAll(DataSet dataSet) {
+        final List<String> result = new ArrayList<>();
+        while (dataSet.next()) {
+            result.add(Arrays.toString(dataSet.getRow().getValues()));
+        }
+        dataSet.close();
+        return result;
+    }
 }
@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Abstract {@link JdbcBulkLoader} for databases which can load CSV formatted
+ * data. The rows are formatted lazily while the database reads the data, so
+ * that rows are streamed to the database without being held in memory.
+ *
+ * Rows are loaded with {@link InsertBulkLoader} if the native mechanism is not
+ * available or if any of the columns cannot be represented in CSV (ie. binary
+ * columns).
+ */
+abstract class CsvBulkLoader extends JdbcBulkLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvBulkLoader.class);
+
+    protected static final Charset CHARSET = Charset.forName("UTF-8");
+
+    public CsvBulkLoader(JdbcDataContext dataContext) {
+        super(dataContext);
+    }
+
+    @Override
+    public final long load(Table table, Column[] columns, Iterator<Object[]> rows) {
+        if (!isCsvCompatible(columns)) {
+            return new InsertBulkLoader(getDataContext()).load(table, columns, rows);
+        }
+
+        final JdbcDataContext dataContext = getDataContext();
+        final Connection connection = dataContext.getConnection();
+        try {
+            if (isAvailable(connection)) {
+                final InputStream csv = new CsvInputStream(columns, rows);
+                final long count = load(connection, table, columns, csv);
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+                return count;
+            }
+        } catch (SQLException e) {
+            rollback(connection);
+            throw JdbcUtils.wrapException(e, "bulk load rows into " + table.getName());
+        } catch (IOException e) {
+            rollback(connection);
+            throw new MetaModelException("Failed to stream rows into " + table.getName(), e);
+        } finally {
+            dataContext.close(connection);
+        }
+
+        logger.debug("Native bulk load not available, inserting rows into {}", table.getName());
+        return new InsertBulkLoader(dataContext).load(table, columns, rows);
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not rollback bulk load", e);
+        }
+    }
+
+    private boolean isCsvCompatible(Column[] columns) {
+        for (Column column : columns) {
+            final ColumnType type = column.getType();
+            if (type != null && type.isBinary()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the native bulk load mechanism is available for a
+     * connection. Invoked before any rows are consumed.
+     *
+     * @param connection
+     * @return
+     * @throws SQLException
+     */
+    protected abstract boolean isAvailable(Connection connection) throws SQLException;
+
+    /**
+     * Loads CSV formatted data (as formatted by
+     * {@link #appendValue(StringBuilder, Column, Object)}) into a table.
+     *
+     * @return the number of loaded rows
+     */
+    protected abstract long load(Connection connection, Table table, Column[] columns, InputStream csv)
+            throws SQLException, IOException;
+
+    /**
+     * Appends a CSV field. The default implementation writes nulls as empty
+     * fields and all other values as quoted fields, with quotes escaped by
+     * doubling them.
+     *
+     * @param sb
+     * @param column
+     * @param value
+     */
+    protected void appendValue(StringBuilder sb, Column column, Object value) {
+        if (value == null) {
+            return;
+        }
+        final String str = toString(column, value);
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Converts a (non-null) value into the string representation which the
+     * database parses.
+     */
+    protected String toString(Column column, Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Date) {
+            final long time = ((Date) value).getTime();
+            final ColumnType type = column.getType();
+            if (type == ColumnType.DATE) {
+                return new java.sql.Date(time).toString();
+            }
+            if (type == ColumnType.TIME) {
+                return new java.sql.Time(time).toString();
+            }
+            if (value instanceof java.sql.Timestamp) {
+                return value.toString();
+            }
+            return new java.sql.Timestamp(time).toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Stream of CSV lines, formatted from the rows as they are read.
+     */
+    private final class CsvInputStream extends InputStream {
+
+        private static final int ROWS_PER_CHUNK = 64;
+
+        private final Column[] _columns;
+        private final Iterator<Object[]> _rows;
+        private final StringBuilder _sb;
+        private byte[] _chunk;
+        private int _position;
+
+        public CsvInputStream(Column[] columns, Iterator<Object[]> rows) {
+            _columns = columns;
+            _rows = rows;
+            _sb = new StringBuilder();
+            _chunk = new byte[0];
+            _position = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            return _chunk[_position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            final int count = Math.min(len, _chunk.length - _position);
+            System.arraycopy(_chunk, _position, b, off, count);
+            _position += count;
+            return count;
+        }
+
+        private boolean ensureAvailable() {
+            while (_position == _chunk.length) {
+                if (!_rows.hasNext()) {
+                    return false;
+                }
+                _sb.setLength(0);
+                for (int i = 0; i < ROWS_PER_CHUNK && _rows.hasNext(); i++) {
+                    final Object[] values = _rows.next();
+                    for (int j = 0; j < _columns.length; j++) {
+                        if (j != 0) {
+                            _sb.append(',');
+                        }
+                        appendValue(_sb, _columns[j], values[j]);
+                    }
+                    _sb.append('\n');
+                }
+                _chunk = _sb.toString().getBytes(CHARSET);
+                _position = 0;
+            }
+            return true;
+        }
+    }
+}
@@ -18,7 +18,11 @@
  */
 package org.apache.metamodel.jdbc;
 
+import java.sql.Blob;
+import java.sql.Clob;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
@@ -34,6 +38,12 @@ import org.slf4j.LoggerFactory;
  * Oracle's caching size, see <a href=
  * "http://www.oracle.com/technetwork/database/enterprise-edition/memory.pdf"
  * >JDBC Memory Management</a>, section "Where does it all go?".
+ * 
+ * Since declared column sizes are often far from the actual size of the values
+ * (eg. for CLOBs or wide VARCHAR columns), the calculator also keeps statistics
+ * of value sizes observed while reading rows, per table and column, see
+ * {@link #registerObservedValueSizes(List, long[], int)}. Observed sizes take
+ * precedence over the declared sizes when calculating later fetch sizes.
  */
 final class FetchSizeCalculator {
 
@@ -53,10 +63,91 @@ final class FetchSizeCalculator {
 
 	private static final int MIN_FETCH_SIZE = 1;
 	private static final int MAX_FETCH_SIZE = 25000;
+	/**
+	 * The weight of a new observation in the (exponentially smoothed) average
+	 * of observed value sizes, in percent.
+	 */
+	private static final int OBSERVATION_WEIGHT_PERCENT = 50;
+
 	private final int _bytesInMemory;
+	private final ConcurrentMap<String, ConcurrentMap<String, Integer>> _observedValueSizes;
 
 	public FetchSizeCalculator(int bytesInMemory) {
 		_bytesInMemory = bytesInMemory;
+		_observedValueSizes = new ConcurrentHashMap<String, ConcurrentMap<String, Integer>>();
+	}
+
+	/**
+	 * Registers the sizes of values that have been read by a query, so that
+	 * the fetch size of later queries on the same columns can be based on the
+	 * actual size of the values rather than the declared size.
+	 * 
+	 * @param selectItems
+	 *            the select items of the query
+	 * @param totalValueSizes
+	 *            the total size (in bytes) of the values read for each select
+	 *            item
+	 * @param rows
+	 *            the number of rows that the sizes were summed up from
+	 */
+	public void registerObservedValueSizes(List<SelectItem> selectItems,
+			long[] totalValueSizes, int rows) {
+		if (rows <= 0) {
+			return;
+		}
+		for (int i = 0; i < totalValueSizes.length; i++) {
+			final SelectItem selectItem = selectItems.get(i);
+			final Column column = selectItem.getColumn();
+			if (column == null || column.getTable() == null
+					|| selectItem.getAggregateFunction() != null
+					|| selectItem.getScalarFunction() != null) {
+				continue;
+			}
+			final int observedSize = (int) Math.min(Integer.MAX_VALUE,
+					totalValueSizes[i] / rows);
+
+			final String tableKey = column.getTable().getQualifiedLabel();
+			ConcurrentMap<String, Integer> tableSizes = _observedValueSizes
+					.get(tableKey);
+			if (tableSizes == null) {
+				tableSizes = new ConcurrentHashMap<String, Integer>();
+				final ConcurrentMap<String, Integer> existing = _observedValueSizes
+						.putIfAbsent(tableKey, tableSizes);
+				if (existing != null) {
+					tableSizes = existing;
+				}
+			}
+
+			final Integer previousSize = tableSizes.get(column.getName());
+			final int size;
+			if (previousSize == null) {
+				size = observedSize;
+			} else {
+				size = (int) ((previousSize.longValue()
+						* (100 - OBSERVATION_WEIGHT_PERCENT) + (long) observedSize
+						* OBSERVATION_WEIGHT_PERCENT) / 100);
+			}
+			tableSizes.put(column.getName(), size);
+		}
+	}
+
+	/**
+	 * Gets the observed (average) size of the values of a column, if any
+	 * values have been observed.
+	 * 
+	 * @param column
+	 * @return the size (in bytes), or null if no values have been observed
+	 */
+	public Integer getObservedValueSize(Column column) {
+		if (column.getTable() == null) {
+			return null;
+		}
+		final ConcurrentMap<String, Integer> tableSizes = _observedValueSizes
+				.get(column.getTable().getQualifiedLabel());
+		if (tableSizes == null) {
+			return null;
+		}
+		return tableSizes.get(column.getName());
 	}
 
 	/**
@@ -193,6 +284,10 @@ final class FetchSizeCalculator {
 	 * Gets the size (in bytes) of a single {@link Column}
 	 */
 	protected int getValueSize(Column column) {
+		final Integer observedSize = getObservedValueSize(column);
+		if (observedSize != null) {
+			return observedSize.intValue();
+		}
 		ColumnType type = column.getType();
 		if (type == null) {
 			return DEFAULT_COLUMN_SIZE;
@@ -212,6 +307,28 @@ final class FetchSizeCalculator {
 		}
 	}
 
+	/**
+	 * Estimates the size (in bytes) of a value read from a result set, in the
+	 * same terms as the sizes estimated for declared column types.
+	 */
+	static int estimateValueSize(Object value) {
+		if (value == null) {
+			return 1;
+		} else if (value instanceof String) {
+			return 2 * ((String) value).length();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		} else if (value instanceof Boolean) {
+			return 2;
+		} else if (value instanceof Number) {
+			return 16;
+		} else if (value instanceof Blob || value instanceof Clob) {
+			return 4 * KB;
+		} else {
+			return DEFAULT_COLUMN_SIZE;
+		}
+	}
+
 	/**
 	 * Gets the size (in bytes) of a column with a specific {@link ColumnType}
 	 * and size
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
+
+/**
+ * {@link JdbcBulkLoader} for H2, which stages the rows in a temporary CSV file
+ * and loads it with <code>INSERT INTO ... SELECT * FROM CSVREAD(...)</code>.
+ * Only available for embedded databases, since the file is read by the
+ * database engine.
+ */
+final class H2BulkLoader extends CsvBulkLoader {
+
+    private static final String URL_PREFIX = "jdbc:h2:";
+
+    public H2BulkLoader(JdbcDataContext dataContext) {
+        super(dataContext);
+    }
+
+    @Override
+    protected boolean isAvailable(Connection connection) throws SQLException {
+        final String url = connection.getMetaData().getURL();
+        if (url == null || !url.startsWith(URL_PREFIX)) {
+            return false;
+        }
+        final String location = url.substring(URL_PREFIX.length());
+        return !location.startsWith("tcp:") && !location.startsWith("ssl:");
+    }
+
+    @Override
+    protected long load(Connection connection, Table table, Column[] columns, InputStream csv) throws SQLException,
+            IOException {
+        final File file = File.createTempFile("metamodel_bulk_load", ".csv");
+        try {
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                final byte[] buffer = new byte[8 * 1024];
+                for (int read = csv.read(buffer); read != -1; read = csv.read(buffer)) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                FileHelper.safeClose(out);
+            }
+
+            final StringBuilder csvColumnNames = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i != 0) {
+                    csvColumnNames.append(',');
+                }
+                csvColumnNames.append('C').append(i + 1);
+            }
+
+            // CSVREAD does not accept parameters, so the arguments are inlined
+            final String sql = "INSERT INTO " + getTableName(table) + " (" + getColumnNames(columns)
+                    + ") SELECT * FROM CSVREAD(" + toStringLiteral(file.getAbsolutePath()) + ", "
+                    + toStringLiteral(csvColumnNames.toString()) + ", " + toStringLiteral("charset=" + CHARSET.name())
+                    + ")";
+            final Statement st = connection.createStatement();
+            try {
+                return st.executeUpdate(sql);
+            } finally {
+                FileHelper.safeClose(st);
+            }
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static String toStringLiteral(String str) {
+        return "'" + str.replace("'", "''") + "'";
+    }
+}
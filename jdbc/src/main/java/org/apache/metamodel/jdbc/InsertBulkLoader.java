@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.Iterator;
+
+import org.apache.metamodel.BatchUpdateScript;
+import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.insert.RowInsertionBuilder;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+
+/**
+ * {@link JdbcBulkLoader} which inserts the rows with a
+ * {@link BatchUpdateScript}, ie. with batched (and where supported, multi-row)
+ * INSERT statements. Used for databases without a native bulk load mechanism.
+ */
+final class InsertBulkLoader extends JdbcBulkLoader {
+
+    public InsertBulkLoader(JdbcDataContext dataContext) {
+        super(dataContext);
+    }
+
+    @Override
+    public long load(final Table table, final Column[] columns, final Iterator<Object[]> rows) {
+        final long[] count = new long[1];
+        getDataContext().executeUpdate(new BatchUpdateScript() {
+            @Override
+            public void run(UpdateCallback callback) {
+                while (rows.hasNext()) {
+                    final Object[] values = rows.next();
+                    final RowInsertionBuilder insert = callback.insertInto(table);
+                    for (int i = 0; i < columns.length; i++) {
+                        insert.value(columns[i], values[i]);
+                    }
+                    insert.execute();
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+}
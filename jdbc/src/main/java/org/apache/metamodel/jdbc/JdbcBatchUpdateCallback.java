@@ -21,26 +21,321 @@ package org.apache.metamodel.jdbc;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.UpdateCallback;
+import org.apache.metamodel.jdbc.dialects.AbstractQueryRewriter;
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.util.FileHelper;
+import org.apache.metamodel.util.SharedExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Jdbc {@link UpdateCallback} for databases that support the JDBC Batch
  * features.
+ * 
+ * Batches are kept per prepared statement, so updates of several tables can be
+ * interleaved while staying batched. Each table can only have pending work of
+ * a single statement: if a table is modified by a statement of a different
+ * shape than the one with pending work on it (eg. a delete following inserts),
+ * all pending work is executed first, so that the statements on each table
+ * are executed in order. When the number of pending rows reaches the flush
+ * size, all pending batches are executed, in the order the statements were
+ * first used since the last flush (so that eg. parent rows are inserted before
+ * child rows). Optionally the batches are executed in the background, while
+ * the next rows are prepared. At most one flush is executed at a time and the
+ * connection is not used by the callback until it has finished.
+ * 
+ * If the dialect supports it (see
+ * {@link AbstractQueryRewriter#getMultiRowInsertParameterLimit()}), inserted
+ * rows are buffered and executed as multi-row INSERT statements, since many
+ * drivers send a separate statement per row of a JDBC batch.
  */
 final class JdbcBatchUpdateCallback extends JdbcUpdateCallback {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcBatchUpdateCallback.class);
 
+    private static final int DEFAULT_FLUSH_SIZE = 1000;
+
+    private final int _flushSize;
+    private final boolean _backgroundFlush;
+    private final int _multiRowInsertParameterLimit;
+    private final Map<String, JdbcMultiRowInsert> _multiRowInserts;
+    private final Map<String, PreparedStatement> _multiRowStatements;
+
+    /**
+     * The prepared statements with pending batches and the multi-row inserts
+     * with pending rows, in the order they were first used since the last
+     * flush.
+     */
+    private final Set<Object> _pendingWork;
+
+    /**
+     * The prepared statement or multi-row insert with pending work on each
+     * table.
+     */
+    private final Map<Table, Object> _pendingWorkByTable;
+    private int _pendingRows;
+    private Future<?> _backgroundFlushFuture;
+
     public JdbcBatchUpdateCallback(JdbcDataContext dataContext) {
-        super(dataContext);
+        this(dataContext, getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_UPDATE_STATEMENT_CACHE_SIZE,
+                DEFAULT_STATEMENT_CACHE_SIZE), getSystemPropertyValue(
+                JdbcDataContext.SYSTEM_PROPERTY_BATCH_UPDATES_FLUSH_SIZE, DEFAULT_FLUSH_SIZE), "true".equals(System
+                .getProperty(JdbcDataContext.SYSTEM_PROPERTY_BATCH_UPDATES_BACKGROUND_FLUSH)));
+    }
+
+    /**
+     * Creates the update callback.
+     * 
+     * @param dataContext
+     * @param statementCacheSize
+     *            the number of prepared statements to keep open at the same
+     *            time
+     * @param flushSize
+     *            the number of pending rows (of all statements) at which the
+     *            batches are executed, or 0 to only execute batches when the
+     *            update script has finished
+     * @param backgroundFlush
+     *            whether to execute the batches in the background
+     */
+    public JdbcBatchUpdateCallback(JdbcDataContext dataContext, int statementCacheSize, int flushSize,
+            boolean backgroundFlush) {
+        super(dataContext, statementCacheSize);
+        _flushSize = flushSize;
+        _backgroundFlush = backgroundFlush;
+        final IQueryRewriter queryRewriter = dataContext.getQueryRewriter();
+        if ("false".equals(System.getProperty(JdbcDataContext.SYSTEM_PROPERTY_BATCH_UPDATES_MULTI_ROW_INSERTS))) {
+            _multiRowInsertParameterLimit = 0;
+        } else if (queryRewriter instanceof AbstractQueryRewriter) {
+            _multiRowInsertParameterLimit = ((AbstractQueryRewriter) queryRewriter).getMultiRowInsertParameterLimit();
+        } else {
+            _multiRowInsertParameterLimit = 0;
+        }
+        _multiRowInserts = new HashMap<String, JdbcMultiRowInsert>();
+        _multiRowStatements = new HashMap<String, PreparedStatement>();
+        _pendingWork = new LinkedHashSet<Object>();
+        _pendingWorkByTable = new HashMap<Table, Object>();
     }
 
     @Override
     protected void closePreparedStatement(PreparedStatement preparedStatement) {
+        try {
+            awaitBackgroundWork();
+            if (_pendingWork.remove(preparedStatement)) {
+                _pendingWorkByTable.values().remove(preparedStatement);
+                executeBatch(preparedStatement);
+            }
+        } finally {
+            FileHelper.safeClose(preparedStatement);
+        }
+    }
+
+    @Override
+    protected void closePreparedStatements(boolean success) {
+        try {
+            super.closePreparedStatements(success);
+        } finally {
+            for (PreparedStatement statement : _multiRowStatements.values()) {
+                FileHelper.safeClose(statement);
+            }
+            _multiRowStatements.clear();
+            _multiRowInserts.clear();
+            _pendingWork.clear();
+            _pendingWorkByTable.clear();
+        }
+    }
+
+    @Override
+    protected void executePreparedStatement(Table table, PreparedStatement st) throws SQLException {
+        addPendingWork(table, st);
+        st.addBatch();
+        rowAdded();
+    }
+
+    @Override
+    public boolean addMultiRowInsert(Table table, String sql, Column[] columns, Object[] values) {
+        if (_multiRowInsertParameterLimit < 2 * columns.length) {
+            return false;
+        }
+        JdbcMultiRowInsert multiRowInsert = _multiRowInserts.get(sql);
+        if (multiRowInsert == null) {
+            // make sure that the connection is there to be committed when the
+            // callback is closed
+            getConnection();
+            multiRowInsert = new JdbcMultiRowInsert(sql, columns, _multiRowInsertParameterLimit);
+            _multiRowInserts.put(sql, multiRowInsert);
+        }
+        addPendingWork(table, multiRowInsert);
+        multiRowInsert.addRow(values);
+        rowAdded();
+        return true;
+    }
+
+    /**
+     * Registers pending work of a statement or multi-row insert on a table.
+     * If the table has pending work of another statement, all pending work is
+     * executed first.
+     * 
+     * @param table
+     * @param work
+     */
+    private void addPendingWork(Table table, Object work) {
+        final Object pendingWork = _pendingWorkByTable.get(table);
+        if (pendingWork != null && pendingWork != work) {
+            awaitBackgroundWork();
+            flushPreparedStatements();
+        }
+        _pendingWork.add(work);
+        _pendingWorkByTable.put(table, work);
+    }
+
+    private void rowAdded() {
+        _pendingRows++;
+        if (_flushSize > 0 && _pendingRows >= _flushSize) {
+            if (_backgroundFlush) {
+                flushInBackground();
+            } else {
+                flushPreparedStatements();
+            }
+        }
+    }
+
+    @Override
+    protected void flushPreparedStatements() {
+        final List<PreparedStatement> transientStatements = new ArrayList<PreparedStatement>();
+        final List<PreparedStatement> statements = preparePendingBatches(transientStatements);
+        executeBatches(statements, transientStatements);
+    }
+
+    private void flushInBackground() {
+        // the statements are prepared on the connection, so any previous
+        // flush must have finished
+        awaitBackgroundWork();
+        final List<PreparedStatement> transientStatements = new ArrayList<PreparedStatement>();
+        final List<PreparedStatement> statements = preparePendingBatches(transientStatements);
+        _backgroundFlushFuture = SharedExecutorService.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                executeBatches(statements, transientStatements);
+            }
+        });
+    }
+
+    /**
+     * Gets the statements with pending batches, in the order they should be
+     * executed, and resets the pending work. Rows of multi-row inserts are
+     * added to batches of multi-row INSERT statements.
+     * 
+     * @param transientStatements
+     *            a list to add statements to which should be closed after
+     *            execution
+     * @return
+     */
+    private List<PreparedStatement> preparePendingBatches(List<PreparedStatement> transientStatements) {
+        final List<Object> pendingWork = new ArrayList<Object>(_pendingWork);
+        _pendingWork.clear();
+        _pendingWorkByTable.clear();
+        _pendingRows = 0;
+
+        final List<PreparedStatement> statements = new ArrayList<PreparedStatement>(pendingWork.size());
+        for (Object work : pendingWork) {
+            if (work instanceof JdbcMultiRowInsert) {
+                final JdbcMultiRowInsert multiRowInsert = (JdbcMultiRowInsert) work;
+                try {
+                    addMultiRowBatches(multiRowInsert, statements, transientStatements);
+                } finally {
+                    multiRowInsert.clear();
+                }
+            } else {
+                statements.add((PreparedStatement) work);
+            }
+        }
+        return statements;
+    }
+
+    private void addMultiRowBatches(JdbcMultiRowInsert multiRowInsert, List<PreparedStatement> statements,
+            List<PreparedStatement> transientStatements) {
+        final IQueryRewriter queryRewriter = getDataContext().getQueryRewriter();
+        final int rowCount = multiRowInsert.getRowCount();
+        final int rowsPerStatement = multiRowInsert.getRowsPerStatement();
+        final int fullStatements = rowCount / rowsPerStatement;
+        final int remainingRows = rowCount % rowsPerStatement;
+
+        String sql = null;
+        try {
+            if (fullStatements > 0) {
+                sql = multiRowInsert.getSql(rowsPerStatement);
+                PreparedStatement st = _multiRowStatements.get(sql);
+                if (st == null) {
+                    st = createPreparedStatement(sql);
+                    _multiRowStatements.put(sql, st);
+                }
+                for (int i = 0; i < fullStatements; i++) {
+                    multiRowInsert.setParameters(st, queryRewriter, i * rowsPerStatement, rowsPerStatement);
+                    st.addBatch();
+                }
+                statements.add(st);
+            }
+            if (remainingRows > 0) {
+                // the number of remaining rows varies, so the statement is not
+                // kept for reuse
+                sql = multiRowInsert.getSql(remainingRows);
+                final PreparedStatement st = createPreparedStatement(sql);
+                transientStatements.add(st);
+                multiRowInsert.setParameters(st, queryRewriter, fullStatements * rowsPerStatement, remainingRows);
+                st.addBatch();
+                statements.add(st);
+            }
+        } catch (SQLException e) {
+            throw JdbcUtils.wrapException(e, "prepare multi-row insert statement: " + sql);
+        }
+    }
+
+    private void executeBatches(List<PreparedStatement> statements, List<PreparedStatement> transientStatements) {
+        try {
+            for (PreparedStatement statement : statements) {
+                executeBatch(statement);
+            }
+        } finally {
+            for (PreparedStatement statement : transientStatements) {
+                FileHelper.safeClose(statement);
+            }
+        }
+    }
+
+    @Override
+    protected void awaitBackgroundWork() {
+        final Future<?> future = _backgroundFlushFuture;
+        if (future == null) {
+            return;
+        }
+        _backgroundFlushFuture = null;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            throw new MetaModelException("Interrupted while waiting for batch execution", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new MetaModelException("Failed to execute batch", e);
+        }
+    }
+
+    private void executeBatch(PreparedStatement preparedStatement) {
         try {
             int[] results = preparedStatement.executeBatch();
             if (logger.isDebugEnabled()) {
@@ -62,13 +357,6 @@ final class JdbcBatchUpdateCallback extends JdbcUpdateCallback {
             }
         } catch (SQLException e) {
             throw JdbcUtils.wrapException(e, "execute batch: " + preparedStatement);
-        } finally {
-            FileHelper.safeClose(preparedStatement);
         }
     }
-
-    @Override
-    protected void executePreparedStatement(PreparedStatement st) throws SQLException {
-        st.addBatch();
-    }
 }
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.Iterator;
+
+import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+
+/**
+ * Loads rows into a table using the most efficient mechanism of the database
+ * at hand.
+ *
+ * @see JdbcDataContext#bulkLoad(Table, Column[], Iterator)
+ */
+abstract class JdbcBulkLoader {
+
+    private final JdbcDataContext _dataContext;
+
+    public JdbcBulkLoader(JdbcDataContext dataContext) {
+        _dataContext = dataContext;
+    }
+
+    /**
+     * Creates the bulk loader for the database of a {@link JdbcDataContext}.
+     *
+     * @param dataContext
+     * @return
+     */
+    public static JdbcBulkLoader create(JdbcDataContext dataContext) {
+        final String databaseProductName = dataContext.getDatabaseProductName();
+        if (JdbcDataContext.DATABASE_PRODUCT_POSTGRESQL.equals(databaseProductName)) {
+            return new PostgresqlBulkLoader(dataContext);
+        } else if (JdbcDataContext.DATABASE_PRODUCT_MYSQL.equals(databaseProductName)) {
+            return new MysqlBulkLoader(dataContext);
+        } else if (JdbcDataContext.DATABASE_PRODUCT_H2.equals(databaseProductName)) {
+            return new H2BulkLoader(dataContext);
+        }
+        return new InsertBulkLoader(dataContext);
+    }
+
+    public JdbcDataContext getDataContext() {
+        return _dataContext;
+    }
+
+    /**
+     * Loads rows into a table.
+     *
+     * @param table
+     *            the table to load into
+     * @param columns
+     *            the columns of the values of the rows
+     * @param rows
+     *            the rows to load, each row having a value per column
+     * @return the number of loaded rows
+     */
+    public abstract long load(Table table, Column[] columns, Iterator<Object[]> rows);
+
+    protected String getTableName(Table table) {
+        return _dataContext.getQueryRewriter().rewriteFromItem(new FromItem(table));
+    }
+
+    /**
+     * Gets a comma separated list of the (quoted if necesary) column names.
+     */
+    protected String getColumnNames(Column[] columns) {
+        final String quote = _dataContext.getIdentifierQuoteString();
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            final String columnName = columns[i].getName();
+            if (quote != null
+                    && (columnName.indexOf(' ') != -1 || columnName.indexOf('-') != -1 || SqlKeywords
+                            .isKeyword(columnName))) {
+                sb.append(quote).append(columnName).append(quote);
+            } else {
+                sb.append(columnName);
+            }
+        }
+        return sb.toString();
+    }
+}
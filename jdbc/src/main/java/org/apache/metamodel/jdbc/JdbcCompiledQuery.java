@@ -22,8 +22,6 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 
-import org.apache.commons.pool.impl.GenericObjectPool;
-import org.apache.commons.pool.impl.GenericObjectPool.Config;
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.query.CompiledQuery;
 import org.apache.metamodel.query.DefaultCompiledQuery;
@@ -40,24 +38,38 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcCompiledQuery.class);
 
+    private final JdbcDataContext _dataContext;
     private final String _sql;
     private final Query _query;
-    private final GenericObjectPool<JdbcCompiledQueryLease> _pool;
+    private final JdbcCompiledQueryLeasePool _pool;
     private boolean _closed;
 
     public JdbcCompiledQuery(JdbcDataContext dc, Query query) {
+        this(dc, query, dc.rewriteQuery(query));
+    }
+
+    /**
+     * Creates a compiled query for which the SQL has already been rewritten.
+     * 
+     * @param dc
+     * @param query
+     * @param sql
+     *            the SQL of the query, as rewritten by the query rewriter of
+     *            the {@link JdbcDataContext}
+     */
+    JdbcCompiledQuery(JdbcDataContext dc, Query query, String sql) {
         super(query);
+        _dataContext = dc;
         _query = query;
-        _sql = dc.getQueryRewriter().rewriteQuery(query);
+        _sql = sql;
 
-        final Config config = new Config();
-        config.maxActive = getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE, -1);
-        config.minEvictableIdleTimeMillis = getSystemPropertyValue(
+        final int maxSize = getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE, -1);
+        final int idleTimeoutMillis = getSystemPropertyValue(
                 JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS, 500);
-        config.timeBetweenEvictionRunsMillis = getSystemPropertyValue(
+        final int evictionPeriodMillis = getSystemPropertyValue(
                 JdbcDataContext.SYSTEM_PROPERTY_COMPILED_QUERY_POOL_TIME_BETWEEN_EVICTION_RUNS_MILLIS, 1000);
 
-        _pool = new GenericObjectPool<JdbcCompiledQueryLease>(new JdbcCompiledQueryLeaseFactory(dc, _sql), config);
+        _pool = new JdbcCompiledQueryLeasePool(dc, _sql, maxSize, idleTimeoutMillis, evictionPeriodMillis);
         _closed = false;
 
         logger.debug("Created compiled JDBC query: {}", _sql);
@@ -76,12 +88,16 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
         }
     }
 
+    public JdbcDataContext getDataContext() {
+        return _dataContext;
+    }
+
     public JdbcCompiledQueryLease borrowLease() {
         if (logger.isDebugEnabled()) {
             logger.debug("Borrowing lease. Leases (before): Active={}, Idle={}", getActiveLeases(), getIdleLeases());
         }
         try {
-            return _pool.borrowObject();
+            return _pool.borrowLease();
         } catch (Exception e) {
             throw handleError(e, "borrow lease");
         }
@@ -92,7 +108,7 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
             logger.debug("Returning lease. Leases (before): Active={}, Idle={}", getActiveLeases(), getIdleLeases());
         }
         try {
-            _pool.returnObject(lease);
+            _pool.returnLease(lease);
         } catch (Exception e) {
             throw handleError(e, "return lease");
         }
@@ -113,11 +129,23 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
     }
 
     protected int getActiveLeases() {
-        return _pool.getNumActive();
+        return _pool.getActiveCount();
     }
 
     protected int getIdleLeases() {
-        return _pool.getNumIdle();
+        return _pool.getIdleCount();
+    }
+
+    protected long getLeaseHits() {
+        return _pool.getHits();
+    }
+
+    protected long getLeaseMisses() {
+        return _pool.getMisses();
+    }
+
+    protected long getLeaseWaits() {
+        return _pool.getWaits();
     }
 
     protected Query getQuery() {
@@ -131,7 +159,10 @@ final class JdbcCompiledQuery extends DefaultCompiledQuery implements CompiledQu
 
     @Override
     public void close() {
-        logger.debug("Closing compiled JDBC query: {}", _sql);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Closing compiled JDBC query: {}. Leases: Hits={}, Misses={}, Waits={}", new Object[] {
+                    _sql, getLeaseHits(), getLeaseMisses(), getLeaseWaits() });
+        }
         try {
             _pool.close();
         } catch (Exception e) {
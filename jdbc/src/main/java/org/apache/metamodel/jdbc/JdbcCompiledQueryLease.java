@@ -32,6 +32,7 @@ final class JdbcCompiledQueryLease {
 
     private final Connection _connection;
     private final PreparedStatement _statement;
+    private long _idleSinceMillis;
 
     public JdbcCompiledQueryLease(Connection connection, PreparedStatement statement) {
         _connection = connection;
@@ -45,4 +46,12 @@ final class JdbcCompiledQueryLease {
     public PreparedStatement getStatement() {
         return _statement;
     }
+
+    public long getIdleSinceMillis() {
+        return _idleSinceMillis;
+    }
+
+    public void setIdleSinceMillis(long idleSinceMillis) {
+        _idleSinceMillis = idleSinceMillis;
+    }
 }
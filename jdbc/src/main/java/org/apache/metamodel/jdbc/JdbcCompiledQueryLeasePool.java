@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.util.FileHelper;
+
+/**
+ * Pool of {@link JdbcCompiledQueryLease}s for a compiled query. Idle leases
+ * keep their connection and the statement prepared on it, so that borrowing an
+ * idle lease (a "hit") does not prepare the statement again.
+ *
+ * Borrowing and returning leases does not involve any locks: idle leases are
+ * kept in a lock-free LIFO deque (so that the most recently used statements are
+ * reused) and the number of leases is bounded with a semaphore, which is only
+ * blocked on (a "wait") when the pool is exhausted. Leases that have been idle
+ * for too long are evicted by the threads borrowing and returning leases, at
+ * most once per eviction period, in stead of by a dedicated thread. Returned
+ * leases are kept until they are evicted, or until the pool is closed. Since
+ * idle leases hold on to connections, the idle leases are closed if the last
+ * active lease is returned while other threads are still creating leases, so
+ * that their connections are available to those threads (eg. when a
+ * connection pool is exhausted). Otherwise nothing would release them, since
+ * no lease is borrowed or returned until those threads have a connection.
+ */
+final class JdbcCompiledQueryLeasePool {
+
+    private final JdbcDataContext _dataContext;
+    private final String _sql;
+    private final Semaphore _permits;
+    private final long _idleTimeoutMillis;
+    private final long _evictionPeriodMillis;
+    private final ConcurrentLinkedDeque<JdbcCompiledQueryLease> _idleLeases;
+    private final AtomicInteger _idleCount;
+    private final AtomicInteger _activeCount;
+    private final AtomicInteger _creatingCount;
+    private final AtomicLong _nextEvictionMillis;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+    private final AtomicLong _waits;
+    private volatile boolean _closed;
+
+    /**
+     * Creates the pool.
+     *
+     * @param dataContext
+     * @param sql
+     *            the SQL of the prepared statements
+     * @param maxSize
+     *            the maximum number of leases (idle and active), or a
+     *            non-positive number for no limit
+     * @param idleTimeoutMillis
+     *            the time that a lease may be idle before it is evicted, or a
+     *            non-positive number for no eviction
+     * @param evictionPeriodMillis
+     *            the minimum time between checks for leases to evict, or a
+     *            non-positive number for no eviction
+     */
+    public JdbcCompiledQueryLeasePool(JdbcDataContext dataContext, String sql, int maxSize, long idleTimeoutMillis,
+            long evictionPeriodMillis) {
+        _dataContext = dataContext;
+        _sql = sql;
+        _permits = (maxSize > 0 ? new Semaphore(maxSize) : null);
+        _idleTimeoutMillis = idleTimeoutMillis;
+        _evictionPeriodMillis = evictionPeriodMillis;
+        _idleLeases = new ConcurrentLinkedDeque<JdbcCompiledQueryLease>();
+        _idleCount = new AtomicInteger();
+        _activeCount = new AtomicInteger();
+        _creatingCount = new AtomicInteger();
+        _nextEvictionMillis = new AtomicLong(System.currentTimeMillis() + evictionPeriodMillis);
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+        _waits = new AtomicLong();
+        _closed = false;
+    }
+
+    public JdbcCompiledQueryLease borrowLease() {
+        if (_closed) {
+            throw new IllegalStateException("Pool of compiled query is closed");
+        }
+
+        if (_permits != null && !_permits.tryAcquire()) {
+            _waits.incrementAndGet();
+            try {
+                _permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MetaModelException("Interrupted while waiting for lease of compiled query", e);
+            }
+        }
+
+        evictIdleLeases();
+
+        JdbcCompiledQueryLease lease = _idleLeases.pollFirst();
+        if (lease == null) {
+            try {
+                lease = createLease();
+            } catch (RuntimeException e) {
+                if (_permits != null) {
+                    _permits.release();
+                }
+                throw e;
+            }
+            _misses.incrementAndGet();
+        } else {
+            _idleCount.decrementAndGet();
+            _hits.incrementAndGet();
+        }
+        _activeCount.incrementAndGet();
+        return lease;
+    }
+
+    public void returnLease(JdbcCompiledQueryLease lease) {
+        final int activeCount = _activeCount.decrementAndGet();
+        if (_closed) {
+            destroyLease(lease);
+        } else {
+            lease.setIdleSinceMillis(System.currentTimeMillis());
+            _idleCount.incrementAndGet();
+            _idleLeases.offerFirst(lease);
+            if (_closed) {
+                // the pool was closed while returning the lease
+                destroyIdleLeases();
+            } else if (activeCount == 0 && _creatingCount.get() > 0 && !_dataContext.isSingleConnection()) {
+                // the creating threads may be waiting for the connections of
+                // the idle leases
+                destroyIdleLeases();
+            }
+        }
+        if (_permits != null) {
+            _permits.release();
+        }
+
+        evictIdleLeases();
+    }
+
+    /**
+     * Closes the pool and the idle leases. Active leases are closed when they
+     * are returned.
+     */
+    public void close() {
+        _closed = true;
+        destroyIdleLeases();
+    }
+
+    private void destroyIdleLeases() {
+        for (JdbcCompiledQueryLease lease = _idleLeases.pollFirst(); lease != null; lease = _idleLeases.pollFirst()) {
+            _idleCount.decrementAndGet();
+            destroyLease(lease);
+        }
+    }
+
+    /**
+     * Evicts the leases which have been idle for too long, if the eviction
+     * period has passed. Only one thread evicts leases at a time.
+     */
+    private void evictIdleLeases() {
+        if (_idleTimeoutMillis <= 0 || _evictionPeriodMillis <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long nextEvictionMillis = _nextEvictionMillis.get();
+        if (now < nextEvictionMillis || !_nextEvictionMillis.compareAndSet(nextEvictionMillis, now
+                + _evictionPeriodMillis)) {
+            return;
+        }
+
+        // the least recently used leases are at the end of the deque
+        final Iterator<JdbcCompiledQueryLease> it = _idleLeases.descendingIterator();
+        while (it.hasNext()) {
+            final JdbcCompiledQueryLease lease = it.next();
+            if (now - lease.getIdleSinceMillis() < _idleTimeoutMillis) {
+                break;
+            }
+            // removal fails if the lease was borrowed in the meantime
+            if (_idleLeases.removeLastOccurrence(lease)) {
+                _idleCount.decrementAndGet();
+                destroyLease(lease);
+            }
+        }
+    }
+
+    private JdbcCompiledQueryLease createLease() {
+        final Connection connection;
+        _creatingCount.incrementAndGet();
+        try {
+            connection = _dataContext.getConnection();
+        } finally {
+            _creatingCount.decrementAndGet();
+        }
+        try {
+            final PreparedStatement statement = connection.prepareStatement(_sql);
+            return new JdbcCompiledQueryLease(connection, statement);
+        } catch (SQLException e) {
+            _dataContext.close(connection);
+            throw JdbcUtils.wrapException(e, "preparing statement");
+        }
+    }
+
+    private void destroyLease(JdbcCompiledQueryLease lease) {
+        FileHelper.safeClose(lease.getStatement());
+        _dataContext.close(lease.getConnection());
+    }
+
+    public int getActiveCount() {
+        return _activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return _idleCount.get();
+    }
+
+    /**
+     * Gets the number of borrowed leases that were idle, ie. which did not
+     * require preparing a statement.
+     */
+    public long getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * Gets the number of borrowed leases that had to be created.
+     */
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * Gets the number of times that borrowing a lease had to wait for another
+     * lease to be returned, because the pool was exhausted.
+     */
+    public long getWaits() {
+        return _waits.get();
+    }
+}
@@ -66,6 +66,7 @@ final class JdbcCreateTableBuilder extends AbstractTableCreationBuilder<JdbcUpda
 
         final JdbcSchema schema = (JdbcSchema) getSchema();
         schema.refreshTables(connection);
+        getUpdateCallback().getDataContext().onSchemaModified(schema);
         return schema.getTableByName(getTable().getName());
     }
 
@@ -25,6 +25,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -43,6 +44,7 @@ import org.apache.metamodel.UpdateableDataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.data.EmptyDataSet;
 import org.apache.metamodel.data.MaxRowsDataSet;
+import org.apache.metamodel.data.Row;
 import org.apache.metamodel.data.ScalarFunctionDataSet;
 import org.apache.metamodel.jdbc.dialects.DB2QueryRewriter;
 import org.apache.metamodel.jdbc.dialects.DefaultQueryRewriter;
@@ -59,10 +61,13 @@ import org.apache.metamodel.query.AggregateFunction;
 import org.apache.metamodel.query.CompiledQuery;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.ColumnTypeImpl;
 import org.apache.metamodel.schema.Schema;
+import org.apache.metamodel.schema.SchemaSnapshotStore;
 import org.apache.metamodel.schema.SuperColumnType;
+import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.schema.TableType;
 import org.apache.metamodel.util.FileHelper;
 import org.slf4j.Logger;
@@ -74,7 +79,14 @@ import org.slf4j.LoggerFactory;
 public class JdbcDataContext extends AbstractDataContext implements UpdateableDataContext {
 
     public static final String SYSTEM_PROPERTY_BATCH_UPDATES = "metamodel.jdbc.batch.updates";
+    public static final String SYSTEM_PROPERTY_BATCH_UPDATES_FLUSH_SIZE = "metamodel.jdbc.batch.updates.flush.size";
+    public static final String SYSTEM_PROPERTY_BATCH_UPDATES_BACKGROUND_FLUSH = "metamodel.jdbc.batch.updates.background.flush";
+    public static final String SYSTEM_PROPERTY_BATCH_UPDATES_MULTI_ROW_INSERTS = "metamodel.jdbc.batch.updates.multirow.inserts";
+    public static final String SYSTEM_PROPERTY_UPDATE_STATEMENT_CACHE_SIZE = "metamodel.jdbc.update.statement.cache.size";
     public static final String SYSTEM_PROPERTY_CONVERT_LOBS = "metamodel.jdbc.convert.lobs";
+    public static final String SYSTEM_PROPERTY_AUTO_PARAMETERIZE_QUERIES = "metamodel.jdbc.query.auto.parameterize";
+    public static final String SYSTEM_PROPERTY_AUTO_PARAMETERIZE_QUERIES_CACHE_SIZE = "metamodel.jdbc.query.auto.parameterize.cache.size";
+    public static final String SYSTEM_PROPERTY_REWRITTEN_QUERY_CACHE_SIZE = "metamodel.jdbc.query.rewrite.cache.size";
 
     public static final String SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MAX_SIZE = "metamodel.jdbc.compiledquery.pool.max.size";
     public static final String SYSTEM_PROPERTY_COMPILED_QUERY_POOL_MIN_EVICTABLE_IDLE_TIME_MILLIS = "metamodel.jdbc.compiledquery.pool.idle.timeout";
@@ -98,6 +110,9 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcDataContext.class);
 
+    private static final int DEFAULT_PARAMETERIZED_QUERY_CACHE_SIZE = 64;
+    private static final int DEFAULT_REWRITTEN_QUERY_CACHE_SIZE = 256;
+
     private final FetchSizeCalculator _fetchSizeCalculator;
     private final Connection _connection;
     private final DataSource _dataSource;
@@ -111,8 +126,12 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
      * Defines the way that queries are written once dispatched to the database
      */
     private IQueryRewriter _queryRewriter;
+    private JdbcRewrittenQueryCache _rewrittenQueryCache;
+    private boolean _reuseRows;
+    private JdbcParameterizedQueryCache _parameterizedQueryCache;
     private final String _databaseProductName;
     private final String _databaseVersion;
+    private final String _databaseUrl;
 
     /**
      * There are some confusion as to the definition of catalogs and schemas.
@@ -180,11 +199,15 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
 
         // available memory for fetching is so far fixed at 16 megs.
         _fetchSizeCalculator = new FetchSizeCalculator(16 * 1024 * 1024);
+        if ("true".equals(System.getProperty(SYSTEM_PROPERTY_AUTO_PARAMETERIZE_QUERIES))) {
+            setAutoParameterizeQueries(true);
+        }
 
         boolean supportsBatchUpdates = false;
         String identifierQuoteString = null;
         String databaseProductName = null;
         String databaseVersion = null;
+        String databaseUrl = null;
         boolean usesCatalogsAsSchemas = false;
 
         final Connection con = getConnection();
@@ -216,6 +239,15 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
             } catch (SQLException e) {
                 logger.warn("Could not retrieve metadata: " + e.getMessage());
             }
+            try {
+                databaseUrl = metaData.getURL();
+                final String userName = metaData.getUserName();
+                if (databaseUrl != null && userName != null) {
+                    databaseUrl = userName + "@" + databaseUrl;
+                }
+            } catch (SQLException e) {
+                logger.debug("Could not retrieve database URL: " + e.getMessage());
+            }
         } catch (SQLException e) {
             logger.debug("Unexpected exception during JdbcDataContext initialization", e);
         } finally {
@@ -223,6 +255,7 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         }
         _databaseProductName = databaseProductName;
         _databaseVersion = databaseVersion;
+        _databaseUrl = databaseUrl;
         logger.debug("Database product name: {}", _databaseProductName);
         if (DATABASE_PRODUCT_MYSQL.equals(_databaseProductName)) {
             setQueryRewriter(new MysqlQueryRewriter(this));
@@ -327,7 +360,8 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         final JdbcCompiledQueryLease lease = jdbcCompiledQuery.borrowLease();
         final DataSet dataSet;
         try {
-            dataSet = execute(lease.getConnection(), query, lease.getStatement(), jdbcCompiledQuery, lease, values);
+            dataSet = execute(lease.getConnection(), query, lease.getStatement(), jdbcCompiledQuery, lease, values,
+                    null);
         } catch (SQLException e) {
             // only close in case of an error - the JdbcDataSet will close
             // otherwise
@@ -343,8 +377,30 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         return dataSet;
     }
 
+    /**
+     * Executes a query.
+     * 
+     * @param connection
+     * @param query
+     * @param statement
+     * @param compiledQuery
+     *            the compiled query to execute, or null if the query should be
+     *            rewritten and executed using the (non-prepared) statement
+     * @param lease
+     *            the lease of the compiled query, or null
+     * @param values
+     *            the values of the parameters of the compiled query, or null
+     * @param parameterColumns
+     *            the columns of the parameters of an auto-parameterized query,
+     *            which are bound using the query rewriter, or null if
+     *            parameters should be bound as is
+     * @return
+     * @throws SQLException
+     * @throws MetaModelException
+     */
     private DataSet execute(Connection connection, Query query, Statement statement, JdbcCompiledQuery compiledQuery,
-            JdbcCompiledQueryLease lease, Object[] values) throws SQLException, MetaModelException {
+            JdbcCompiledQueryLease lease, Object[] values, Column[] parameterColumns) throws SQLException,
+            MetaModelException {
         Integer maxRows = query.getMaxRows();
 
         final List<SelectItem> selectItems = query.getSelectClause().getItems();
@@ -440,7 +496,7 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
             }
 
             if (lease == null) {
-                final String queryString = _queryRewriter.rewriteQuery(query);
+                final String queryString = rewriteQuery(query);
 
                 logger.debug("Executing rewritten query: {}", queryString);
 
@@ -448,7 +504,11 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
             } else {
                 PreparedStatement preparedStatement = (PreparedStatement) statement;
                 for (int i = 0; i < values.length; i++) {
-                    preparedStatement.setObject(i + 1, values[i]);
+                    if (parameterColumns == null) {
+                        preparedStatement.setObject(i + 1, values[i]);
+                    } else {
+                        _queryRewriter.setStatementParameter(preparedStatement, i + 1, parameterColumns[i], values[i]);
+                    }
                 }
                 resultSet = preparedStatement.executeQuery();
             }
@@ -473,6 +533,8 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
 
             if (lease == null) {
                 dataSet = new JdbcDataSet(query, this, connection, statement, resultSet);
+            } else if (parameterColumns != null) {
+                dataSet = new JdbcDataSet(query, this, compiledQuery, lease, resultSet);
             } else {
                 dataSet = new JdbcDataSet(compiledQuery, lease, resultSet);
             }
@@ -496,6 +558,13 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
     }
 
     public DataSet executeQuery(Query query) throws MetaModelException {
+        final JdbcParameterizedQueryCache parameterizedQueryCache = _parameterizedQueryCache;
+        if (parameterizedQueryCache != null && isAutoParameterizable(query)) {
+            final JdbcParameterizedQuery parameterizedQuery = JdbcParameterizedQuery.create(query);
+            if (parameterizedQuery != null) {
+                return parameterizedQueryCache.executeQuery(query, parameterizedQuery);
+            }
+        }
 
         final Connection connection = getConnection();
         final Statement statement;
@@ -507,7 +576,7 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
 
         final DataSet dataSet;
         try {
-            dataSet = execute(connection, query, statement, null, null, null);
+            dataSet = execute(connection, query, statement, null, null, null, null);
         } catch (SQLException e) {
             // only close in case of an error - the JdbcDataSet will close
             // otherwise
@@ -523,6 +592,114 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         return dataSet;
     }
 
+    /**
+     * Creates a cursor for reading the result of a query page by page using
+     * keyset pagination, ie. by filtering on the key of the last row of the
+     * previous page in stead of skipping rows using OFFSET. The query must be
+     * ordered by the primary key of the table being queried.
+     * 
+     * @param query
+     *            the query to page through
+     * @param pageSize
+     *            the number of rows per page
+     * @return
+     * @see JdbcKeysetPagingCursor
+     */
+    public JdbcKeysetPagingCursor createKeysetPagingCursor(Query query, int pageSize) {
+        return new JdbcKeysetPagingCursor(this, query, pageSize, false);
+    }
+
+    /**
+     * Creates a cursor for reading the result of a query page by page using
+     * keyset pagination. The query must be ordered by a single column which is
+     * unique within the result of the query, eg. a column with a unique
+     * constraint.
+     * 
+     * @param query
+     *            the query to page through
+     * @param pageSize
+     *            the number of rows per page
+     * @param uniqueKey
+     *            whether the ordering column is known to be unique. If false,
+     *            the ordering column must be the primary key of the table
+     *            being queried.
+     * @return
+     * @see JdbcKeysetPagingCursor
+     */
+    public JdbcKeysetPagingCursor createKeysetPagingCursor(Query query, int pageSize, boolean uniqueKey) {
+        return new JdbcKeysetPagingCursor(this, query, pageSize, uniqueKey);
+    }
+
+    /**
+     * Determines if a query can be executed as an auto-parameterized query.
+     * Not the case when the first row or max rows of the query have to be
+     * applied outside of the SQL (eg. using {@link Statement#setMaxRows(int)}),
+     * since the prepared statements are shared by queries with different
+     * values for these properties.
+     */
+    private boolean isAutoParameterizable(Query query) {
+        if (query.getFirstRow() != null && !_queryRewriter.isFirstRowSupported()) {
+            return false;
+        }
+        if (query.getMaxRows() != null && !_queryRewriter.isMaxRowsSupported()) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Executes a compiled query whose parameter values are bound using the
+     * query rewriter.
+     * 
+     * @param query
+     *            the query that the data set should represent
+     * @param compiledQuery
+     * @param values
+     *            the values of the parameters
+     * @param parameterColumns
+     *            the columns of the parameters (elements may be null)
+     * @return
+     */
+    DataSet executeParameterizedQuery(Query query, JdbcCompiledQuery compiledQuery, Object[] values,
+            Column[] parameterColumns) {
+        final JdbcCompiledQueryLease lease = compiledQuery.borrowLease();
+        return executeParameterizedQuery(query, compiledQuery, lease, values, parameterColumns);
+    }
+
+    /**
+     * Executes a compiled query using a lease which has already been borrowed.
+     * The lease is returned when the data set is closed, or if the execution
+     * fails.
+     * 
+     * @param query
+     *            the query that the data set should represent
+     * @param compiledQuery
+     * @param lease
+     *            a lease borrowed from the compiled query
+     * @param values
+     *            the values of the parameters
+     * @param parameterColumns
+     *            the columns of the parameters (elements may be null)
+     * @return
+     */
+    DataSet executeParameterizedQuery(Query query, JdbcCompiledQuery compiledQuery, JdbcCompiledQueryLease lease,
+            Object[] values, Column[] parameterColumns) {
+        try {
+            return execute(lease.getConnection(), query, lease.getStatement(), compiledQuery, lease, values,
+                    parameterColumns);
+        } catch (SQLException e) {
+            // only close in case of an error - the JdbcDataSet will close
+            // otherwise
+            compiledQuery.returnLease(lease);
+            throw JdbcUtils.wrapException(e, "execute query");
+        } catch (RuntimeException e) {
+            // only close in case of an error - the JdbcDataSet will close
+            // otherwise
+            compiledQuery.returnLease(lease);
+            throw e;
+        }
+    }
+
     private int getFetchSize(Query query, final Statement statement) {
         try {
             final int defaultFetchSize = statement.getFetchSize();
@@ -771,6 +948,11 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
             throw new IllegalArgumentException("Query rewriter cannot be null");
         }
         _queryRewriter = queryRewriter;
+
+        // rendered SQL is cached per query rewriter
+        final int cacheSize = JdbcUpdateCallback.getSystemPropertyValue(SYSTEM_PROPERTY_REWRITTEN_QUERY_CACHE_SIZE,
+                DEFAULT_REWRITTEN_QUERY_CACHE_SIZE);
+        _rewrittenQueryCache = (cacheSize > 0 ? new JdbcRewrittenQueryCache(queryRewriter, cacheSize) : null);
         return this;
     }
 
@@ -778,6 +960,104 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         return _queryRewriter;
     }
 
+    /**
+     * Rewrites a query to SQL using the query rewriter of this DataContext.
+     * The SQL is cached (see {@link #SYSTEM_PROPERTY_REWRITTEN_QUERY_CACHE_SIZE}
+     * , default 256, 0 to disable), so that executing the same (or an
+     * identically structured) query again does not render it again.
+     *
+     * @param query
+     * @return
+     */
+    String rewriteQuery(Query query) {
+        final JdbcRewrittenQueryCache rewrittenQueryCache = _rewrittenQueryCache;
+        if (rewrittenQueryCache == null) {
+            return _queryRewriter.rewriteQuery(query);
+        }
+        return rewrittenQueryCache.rewriteQuery(query);
+    }
+
+    /**
+     * Gets the cache of rewritten queries, or null if rewritten queries are not
+     * cached.
+     *
+     * @return
+     */
+    JdbcRewrittenQueryCache getRewrittenQueryCache() {
+        return _rewrittenQueryCache;
+    }
+
+    /**
+     * Sets whether the DataSets of this DataContext should reuse the same
+     * {@link org.apache.metamodel.data.Row} (and value array) for every row,
+     * in stead of creating a new one per row. This reduces the overhead of
+     * iterating large results, but requires that consumers do not retain the
+     * rows beyond the next invocation of {@link DataSet#next()}. Rows
+     * retrieved with {@link DataSet#toRows()} or {@link DataSet#iterator()}
+     * are still copied. Defaults to false.
+     *
+     * @param reuseRows
+     * @return
+     */
+    public JdbcDataContext setReuseRows(boolean reuseRows) {
+        _reuseRows = reuseRows;
+        return this;
+    }
+
+    public boolean isReuseRows() {
+        return _reuseRows;
+    }
+
+    /**
+     * Sets whether the literal operands of the WHERE and HAVING clauses of
+     * queries executed using {@link #executeQuery(Query)} should be replaced by
+     * parameters. The resulting prepared statements are cached per distinct
+     * SQL (ie. per shape of the queries), so that queries which only differ in
+     * such literals reuse the prepared statements and the plans that the
+     * database has cached for them. The number of cached statements is set by
+     * the {@link #SYSTEM_PROPERTY_AUTO_PARAMETERIZE_QUERIES_CACHE_SIZE} system
+     * property (default 64). Defaults to the value of the
+     * {@link #SYSTEM_PROPERTY_AUTO_PARAMETERIZE_QUERIES} system property, or
+     * false if not set.
+     *
+     * Note that, like for compiled queries, idle prepared statements hold on
+     * to their connection until they are evicted.
+     *
+     * @param autoParameterizeQueries
+     * @return
+     */
+    public JdbcDataContext setAutoParameterizeQueries(boolean autoParameterizeQueries) {
+        final JdbcParameterizedQueryCache previousCache = _parameterizedQueryCache;
+        if (autoParameterizeQueries) {
+            if (previousCache == null) {
+                final int cacheSize = JdbcUpdateCallback.getSystemPropertyValue(
+                        SYSTEM_PROPERTY_AUTO_PARAMETERIZE_QUERIES_CACHE_SIZE, DEFAULT_PARAMETERIZED_QUERY_CACHE_SIZE);
+                _parameterizedQueryCache = new JdbcParameterizedQueryCache(this,
+                        cacheSize > 0 ? cacheSize : DEFAULT_PARAMETERIZED_QUERY_CACHE_SIZE);
+            }
+        } else {
+            _parameterizedQueryCache = null;
+            if (previousCache != null) {
+                previousCache.clear();
+            }
+        }
+        return this;
+    }
+
+    public boolean isAutoParameterizeQueries() {
+        return _parameterizedQueryCache != null;
+    }
+
+    /**
+     * Gets the cache of auto-parameterized queries, or null if queries are not
+     * auto-parameterized.
+     *
+     * @return
+     */
+    JdbcParameterizedQueryCache getParameterizedQueryCache() {
+        return _parameterizedQueryCache;
+    }
+
     public String getIdentifierQuoteString() {
         return _identifierQuoteString;
     }
@@ -836,6 +1116,91 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         return schema;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * JDBC schema snapshots are keyed by the database URL, user, catalog and
+     * table types.
+     */
+    @Override
+    protected String getSchemaSnapshotKey(String schemaName) {
+        if (_databaseUrl == null) {
+            return null;
+        }
+        return "jdbc:" + _databaseUrl + "|" + _catalogName + "|" + Arrays.toString(_tableTypes) + "|" + schemaName;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The version of a JDBC schema snapshot is derived from the database
+     * product and version, and a fingerprint of the names and types of the
+     * tables and columns of the schema. The fingerprint is retrieved with two
+     * metadata queries, in stead of the per-table queries that loading the
+     * schema requires. Changes to indexes, primary keys and relationships that
+     * are not made through this {@link JdbcDataContext} are not detected - use
+     * a time-to-live on the {@link SchemaSnapshotStore} to account for that.
+     */
+    @Override
+    protected String getSchemaSnapshotVersion(String schemaName) {
+        if (_databaseProductName == null) {
+            return null;
+        }
+        final Connection connection = getConnection();
+        try {
+            return _databaseProductName + " " + _databaseVersion + " "
+                    + _metadataLoader.getSchemaFingerprint(schemaName, connection);
+        } finally {
+            close(connection);
+        }
+    }
+
+    @Override
+    protected Schema restoreSchemaSnapshot(Schema snapshot) {
+        if (snapshot instanceof JdbcSchema) {
+            ((JdbcSchema) snapshot).restoreFromSnapshot(_metadataLoader);
+            return snapshot;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * JDBC tables are refreshed in place: the {@link Table} instance is kept,
+     * while its columns, indexes, primary keys and relationships are reloaded.
+     * Other tables of the schema are not affected. If the table no longer
+     * exists, its entire schema is refreshed instead.
+     */
+    @Override
+    protected boolean refreshTableInternal(Table table) {
+        if (!(table instanceof JdbcTable) || !(table.getSchema() instanceof JdbcSchema)) {
+            return false;
+        }
+        final Connection connection = getConnection();
+        try {
+            return _metadataLoader.refreshTable((JdbcTable) table, connection);
+        } finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Invoked when the tables of a schema has been modified through this
+     * {@link JdbcDataContext}, to invalidate any persisted snapshot of it.
+     * 
+     * @param schema
+     */
+    protected void onSchemaModified(Schema schema) {
+        final SchemaSnapshotStore schemaSnapshotStore = getSchemaSnapshotStore();
+        if (schemaSnapshotStore != null) {
+            final String key = getSchemaSnapshotKey(schema.getName());
+            if (key != null) {
+                schemaSnapshotStore.remove(key);
+            }
+        }
+    }
+
     public FetchSizeCalculator getFetchSizeCalculator() {
         return _fetchSizeCalculator;
     }
@@ -868,6 +1233,85 @@ public class JdbcDataContext extends AbstractDataContext implements UpdateableDa
         }
     }
 
+    /**
+     * Loads the rows of a {@link DataSet} into a table, using the native bulk
+     * load mechanism of the database if available (eg. COPY for PostgreSQL).
+     * The select items of the DataSet are mapped to the columns of the table
+     * by their aliases or column names. The DataSet is closed afterwards.
+     *
+     * @param table
+     *            the table to load the rows into
+     * @param dataSet
+     *            the rows to load
+     * @return the number of loaded rows
+     *
+     * @see #bulkLoad(Table, Column[], Iterator)
+     */
+    public long bulkLoad(Table table, DataSet dataSet) {
+        try {
+            final SelectItem[] selectItems = dataSet.getSelectItems();
+            final Column[] columns = new Column[selectItems.length];
+            for (int i = 0; i < selectItems.length; i++) {
+                final SelectItem selectItem = selectItems[i];
+                final String columnName;
+                if (selectItem.getAlias() != null) {
+                    columnName = selectItem.getAlias();
+                } else if (selectItem.getColumn() != null) {
+                    columnName = selectItem.getColumn().getName();
+                } else {
+                    columnName = selectItem.getExpression();
+                }
+                columns[i] = table.getColumnByName(columnName);
+                if (columns[i] == null) {
+                    throw new IllegalArgumentException("No such column in table " + table.getName() + ": "
+                            + columnName);
+                }
+            }
+
+            final Iterator<Row> iterator = dataSet.iterator();
+            return bulkLoad(table, columns, new Iterator<Object[]>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object[] next() {
+                    return iterator.next().getValues();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        } finally {
+            dataSet.close();
+        }
+    }
+
+    /**
+     * Loads rows into a table, using the native bulk load mechanism of the
+     * database if available: COPY FROM STDIN for PostgreSQL, LOAD DATA LOCAL
+     * INFILE for MySQL and CSVREAD for embedded H2 databases. For other
+     * databases, or tables with binary columns, the rows are inserted with
+     * batched (multi-row) INSERT statements.
+     *
+     * @param table
+     *            the table to load the rows into
+     * @param columns
+     *            the columns of the values of the rows
+     * @param rows
+     *            the rows to load, each an array with a value per column
+     * @return the number of loaded rows
+     */
+    public long bulkLoad(Table table, Column[] columns, Iterator<Object[]> rows) {
+        if (table == null || columns == null || rows == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        return JdbcBulkLoader.create(this).load(table, columns, rows);
+    }
+
     protected boolean isSingleConnection() {
         return _singleConnection;
     }
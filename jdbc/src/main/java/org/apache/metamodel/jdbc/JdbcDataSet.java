@@ -20,18 +20,23 @@ package org.apache.metamodel.jdbc;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.metamodel.MetaModelException;
 import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DataSetIterator;
 import org.apache.metamodel.data.DefaultRow;
 import org.apache.metamodel.data.Row;
 import org.apache.metamodel.jdbc.dialects.DefaultQueryRewriter;
 import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
-import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.util.FileHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,14 +48,26 @@ final class JdbcDataSet extends AbstractDataSet {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcDataSet.class);
 
+    /**
+     * The number of rows to sample value sizes from, see
+     * {@link FetchSizeCalculator#registerObservedValueSizes(java.util.List, long[], int)}
+     */
+    private static final int SAMPLE_ROWS = 100;
+
+    private final Query _query;
     private final JdbcCompiledQuery _compiledQuery;
     private final JdbcCompiledQueryLease _lease;
     private final Statement _statement;
     private final ResultSet _resultSet;
     private final JdbcDataContext _jdbcDataContext;
     private final Connection _connection;
+    private final JdbcValueExtractor[] _extractors;
+    private final Object[] _reusableValues;
+    private final Row _reusableRow;
     private Row _row;
     private boolean _closed;
+    private long[] _sampledValueSizes;
+    private int _sampledRows;
 
     /**
      * Constructor used for regular query execution.
@@ -67,6 +84,7 @@ final class JdbcDataSet extends AbstractDataSet {
         if (query == null || statement == null || resultSet == null) {
             throw new IllegalArgumentException("Arguments cannot be null");
         }
+        _query = query;
         _jdbcDataContext = jdbcDataContext;
         _connection = connection;
         _statement = statement;
@@ -74,6 +92,16 @@ final class JdbcDataSet extends AbstractDataSet {
         _closed = false;
         _compiledQuery = null;
         _lease = null;
+        if (jdbcDataContext == null) {
+            _extractors = createExtractors(new DefaultQueryRewriter(null), true);
+            _reusableValues = null;
+        } else {
+            _extractors = createExtractors(jdbcDataContext.getQueryRewriter(),
+                    isPrimitiveGettersAllowed(jdbcDataContext));
+            _reusableValues = (jdbcDataContext.isReuseRows() ? new Object[getHeader().size()] : null);
+            _sampledValueSizes = new long[getHeader().size()];
+        }
+        _reusableRow = (_reusableValues == null ? null : new DefaultRow(getHeader(), _reusableValues));
     }
 
     /**
@@ -92,11 +120,143 @@ final class JdbcDataSet extends AbstractDataSet {
         _compiledQuery = compiledQuery;
         _lease = lease;
 
+        _query = null;
         _jdbcDataContext = null;
         _connection = null;
         _statement = null;
         _resultSet = resultSet;
         _closed = false;
+
+        final JdbcDataContext dataContext = compiledQuery.getDataContext();
+        _extractors = createExtractors(new DefaultQueryRewriter(null), isPrimitiveGettersAllowed(dataContext));
+        _reusableValues = (dataContext.isReuseRows() ? new Object[getHeader().size()] : null);
+        _reusableRow = (_reusableValues == null ? null : new DefaultRow(getHeader(), _reusableValues));
+    }
+
+    /**
+     * Constructor used for execution of auto-parameterized queries (see
+     * {@link JdbcDataContext#setAutoParameterizeQueries(boolean)}), which are
+     * executed using a lease of a compiled query.
+     * 
+     * @param query
+     *            the original (non-parameterized) query
+     * @param jdbcDataContext
+     * @param compiledQuery
+     * @param lease
+     * @param resultSet
+     */
+    public JdbcDataSet(Query query, JdbcDataContext jdbcDataContext, JdbcCompiledQuery compiledQuery,
+            JdbcCompiledQueryLease lease, ResultSet resultSet) {
+        super(query.getSelectClause().getItems());
+        if (jdbcDataContext == null || compiledQuery == null || lease == null || resultSet == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        _query = query;
+        _jdbcDataContext = jdbcDataContext;
+        _compiledQuery = compiledQuery;
+        _lease = lease;
+        _connection = null;
+        _statement = null;
+        _resultSet = resultSet;
+        _closed = false;
+        _extractors = createExtractors(jdbcDataContext.getQueryRewriter(), isPrimitiveGettersAllowed(jdbcDataContext));
+        _reusableValues = (jdbcDataContext.isReuseRows() ? new Object[getHeader().size()] : null);
+        _reusableRow = (_reusableValues == null ? null : new DefaultRow(getHeader(), _reusableValues));
+        _sampledValueSizes = new long[getHeader().size()];
+    }
+
+    /**
+     * Determines if values may be retrieved with primitive getters. Not the
+     * case for SQLite, since its columns are dynamically typed, ie. the
+     * metadata of the first row does not necessarily apply to the others.
+     */
+    private static boolean isPrimitiveGettersAllowed(JdbcDataContext dataContext) {
+        return !JdbcDataContext.DATABASE_PRODUCT_SQLITE.equals(dataContext.getDatabaseProductName());
+    }
+
+    private JdbcValueExtractor[] createExtractors(IQueryRewriter queryRewriter, boolean primitiveGetters) {
+        ResultSetMetaData metaData;
+        try {
+            metaData = _resultSet.getMetaData();
+        } catch (Exception e) {
+            logger.debug("Could not get metadata of ResultSet: {}", e.getMessage());
+            metaData = null;
+        }
+
+        final SelectItem[] selectItems = getSelectItems();
+        final JdbcValueExtractor[] extractors = new JdbcValueExtractor[selectItems.length];
+        for (int i = 0; i < extractors.length; i++) {
+            extractors[i] = JdbcValueExtractor.create(queryRewriter, metaData, selectItems[i], i + 1,
+                    primitiveGetters);
+        }
+        return extractors;
+    }
+
+    /**
+     * Determines if this DataSet reuses the same {@link Row} object for every
+     * row.
+     *
+     * @see JdbcDataContext#setReuseRows(boolean)
+     */
+    public boolean isReusingRows() {
+        return _reusableRow != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * If this DataSet reuses rows, the rows are copied, since they are
+     * retained.
+     */
+    @Override
+    public List<Row> toRows() {
+        if (!isReusingRows()) {
+            return super.toRows();
+        }
+        try {
+            final List<Row> result = new ArrayList<Row>();
+            while (next()) {
+                result.add(copyRow(_row));
+            }
+            return result;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * If this DataSet reuses rows, the rows are copied, since the consumers of
+     * iterators commonly retain them.
+     */
+    @Override
+    public Iterator<Row> iterator() {
+        if (!isReusingRows()) {
+            return super.iterator();
+        }
+        final Iterator<Row> iterator = new DataSetIterator(this);
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                final Row row = iterator.next();
+                return (row == null ? null : copyRow(row));
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+            }
+        };
+    }
+
+    private Row copyRow(Row row) {
+        return new DefaultRow(getHeader(), row.getValues().clone());
     }
 
     /**
@@ -115,26 +275,26 @@ final class JdbcDataSet extends AbstractDataSet {
         try {
             boolean result = _resultSet.next();
             if (result) {
-                Object[] values = new Object[getHeader().size()];
+                final Object[] values;
+                if (_reusableValues == null) {
+                    values = new Object[_extractors.length];
+                } else {
+                    values = _reusableValues;
+                }
                 for (int i = 0; i < values.length; i++) {
-
-                    values[i] = getValue(_resultSet, i);
-
-                    try {
-                        // some drivers return boxed primitive types in stead of
-                        // nulls (such as false in stead of null for a Boolean
-                        // column)
-                        if (_resultSet.wasNull()) {
-                            values[i] = null;
-                        }
-                    } catch (Exception e) {
-                        logger.debug("Could not invoke wasNull() method on resultset, error message: {}", e
-                                .getMessage());
-                    }
+                    values[i] = _extractors[i].getValue(_resultSet);
+                }
+                if (_reusableRow == null) {
+                    _row = new DefaultRow(getHeader(), values);
+                } else {
+                    _row = _reusableRow;
+                }
+                if (_sampledValueSizes != null) {
+                    sample(values);
                 }
-                _row = new DefaultRow(getHeader(), values);
             } else {
                 _row = null;
+                registerSample();
             }
             return result;
         } catch (SQLException e) {
@@ -142,22 +302,50 @@ final class JdbcDataSet extends AbstractDataSet {
         }
     }
 
-    private Object getValue(ResultSet resultSet, int i) throws SQLException {
-        final SelectItem selectItem = getHeader().getSelectItem(i);
-        final int columnIndex = i + 1;
-        if (selectItem.getAggregateFunction() == null) {
-            final Column column = selectItem.getColumn();
-            if (column != null) {
-                final IQueryRewriter queryRewriter;
-                if (_jdbcDataContext == null) {
-                    queryRewriter = new DefaultQueryRewriter(null);
-                } else {
-                    queryRewriter = _jdbcDataContext.getQueryRewriter();
-                }
-                return queryRewriter.getResultSetValue(resultSet, columnIndex, column);
+    private void sample(Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            _sampledValueSizes[i] += FetchSizeCalculator.estimateValueSize(values[i]);
+        }
+        _sampledRows++;
+        if (_sampledRows == SAMPLE_ROWS) {
+            registerSample();
+            adjustFetchSize();
+        }
+    }
+
+    /**
+     * Registers the sampled value sizes with the fetch size calculator, so
+     * that later queries are given fetch sizes based on the actual row sizes.
+     */
+    private void registerSample() {
+        if (_sampledValueSizes == null) {
+            return;
+        }
+        final FetchSizeCalculator calculator = _jdbcDataContext.getFetchSizeCalculator();
+        calculator.registerObservedValueSizes(Arrays.asList(getSelectItems()), _sampledValueSizes, _sampledRows);
+        _sampledValueSizes = null;
+    }
+
+    /**
+     * Adjusts the fetch size of the remaining rows of the result set to the
+     * observed row sizes. Fetch sizes that were not set by us (eg. MySQL's
+     * streaming mode) are left untouched.
+     */
+    private void adjustFetchSize() {
+        try {
+            final int fetchSize = _resultSet.getFetchSize();
+            if (fetchSize <= 1) {
+                return;
             }
+            final int adjustedFetchSize = _jdbcDataContext.getFetchSizeCalculator().getFetchSize(_query);
+            if (adjustedFetchSize != fetchSize) {
+                logger.debug("Adjusting fetch_size from {} to {} based on observed row sizes", fetchSize,
+                        adjustedFetchSize);
+                _resultSet.setFetchSize(adjustedFetchSize);
+            }
+        } catch (Exception e) {
+            logger.debug("Could not adjust fetch size on ResultSet: {}", e.getMessage());
         }
-        return resultSet.getObject(columnIndex);
     }
 
     /**
@@ -169,18 +357,35 @@ final class JdbcDataSet extends AbstractDataSet {
             return;
         }
 
+        registerSample();
         FileHelper.safeClose(_resultSet);
 
-        if (_jdbcDataContext != null) {
-            FileHelper.safeClose(_statement);
-            _jdbcDataContext.close(_connection);
-        }
         if (_compiledQuery != null) {
             _compiledQuery.returnLease(_lease);
+        } else if (_jdbcDataContext != null) {
+            FileHelper.safeClose(_statement);
+            _jdbcDataContext.close(_connection);
         }
         _closed = true;
     }
 
+    /**
+     * Cancels the statement of this DataSet, if the JDBC driver supports it.
+     * Can be invoked from another thread than the one iterating the DataSet,
+     * which will typically fail with an exception afterwards.
+     */
+    void cancel() {
+        if (_closed) {
+            return;
+        }
+        final Statement statement = (_lease == null ? _statement : _lease.getStatement());
+        try {
+            statement.cancel();
+        } catch (Exception e) {
+            logger.debug("Could not cancel statement: {}", e.getMessage());
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
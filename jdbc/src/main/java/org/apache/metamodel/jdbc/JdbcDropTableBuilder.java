@@ -48,13 +48,14 @@ final class JdbcDropTableBuilder extends AbstractTableDropBuilder implements Tab
         final String sql = createSqlStatement();
         final PreparedStatement statement = _updateCallback.getPreparedStatement(sql, false);
         try {
-            _updateCallback.executePreparedStatement(statement, false);
+            _updateCallback.executePreparedStatement(getTable(), statement, false);
 
             // remove the table reference from the schema
             final Schema schema = getTable().getSchema();
             if (schema instanceof JdbcSchema) {
                 final Connection connection = _updateCallback.getConnection();
                 ((JdbcSchema) schema).refreshTables(connection);
+                _updateCallback.getDataContext().onSchemaModified(schema);
             }
         } catch (SQLException e) {
             throw JdbcUtils.wrapException(e, "execute drop table statement: " + sql);
@@ -20,7 +20,9 @@ package org.apache.metamodel.jdbc;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.metamodel.insert.AbstractRowInsertionBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
@@ -66,6 +68,9 @@ final class JdbcInsertBuilder extends AbstractRowInsertionBuilder<JdbcUpdateCall
 		}
 		final JdbcUpdateCallback updateCallback = getUpdateCallback();
 		final boolean reuseStatement = !_inlineValues;
+		if (reuseStatement && addMultiRowInsert(updateCallback, sql)) {
+			return;
+		}
 		final PreparedStatement st = updateCallback.getPreparedStatement(sql, reuseStatement);
 		try {
 			if (reuseStatement) {
@@ -81,7 +86,7 @@ final class JdbcInsertBuilder extends AbstractRowInsertionBuilder<JdbcUpdateCall
 					}
 				}
 			}
-			updateCallback.executePreparedStatement(st, reuseStatement);
+			updateCallback.executePreparedStatement(getTable(), st, reuseStatement);
 		} catch (SQLException e) {
 			throw JdbcUtils.wrapException(e, "execute insert statement: " + sql);
 		} finally {
@@ -91,6 +96,29 @@ final class JdbcInsertBuilder extends AbstractRowInsertionBuilder<JdbcUpdateCall
 		}
 	}
 	
+	/**
+	 * Adds the row to a multi-row INSERT statement of the update callback, if
+	 * supported.
+	 */
+	private boolean addMultiRowInsert(JdbcUpdateCallback updateCallback, String sql) {
+		final Column[] columns = getColumns();
+		final Object[] values = getValues();
+		final boolean[] explicitNulls = getExplicitNulls();
+		final List<Column> parameterColumns = new ArrayList<Column>(columns.length);
+		final List<Object> parameterValues = new ArrayList<Object>(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			if (values[i] != null || explicitNulls[i]) {
+				parameterColumns.add(columns[i]);
+				parameterValues.add(values[i]);
+			}
+		}
+		if (parameterColumns.isEmpty()) {
+			return false;
+		}
+		return updateCallback.addMultiRowInsert(getTable(), sql, parameterColumns.toArray(new Column[parameterColumns.size()]),
+				parameterValues.toArray());
+	}
+
 	protected String createSqlStatement() {
 	    return createSqlStatement(_inlineValues);
 	}
@@ -0,0 +1,355 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.EmptyDataSet;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.SubSelectionDataSet;
+import org.apache.metamodel.data.WrappingDataSet;
+import org.apache.metamodel.query.DefaultCompiledQuery;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FromItem;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.OrderByItem;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.QueryParameter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+
+/**
+ * A cursor for reading the result of a query page by page using keyset (aka.
+ * "seek") pagination. In stead of skipping the rows of the previous pages using
+ * OFFSET (which makes the database read and discard all of them, for every
+ * page), the cursor remembers the key of the last row read and fetches the
+ * next page as:
+ *
+ * <pre>
+ * SELECT ... WHERE ... AND key &gt; ? ORDER BY key LIMIT pageSize
+ * </pre>
+ *
+ * The cost of fetching a page is thereby independent of how deep into the
+ * result it is, given that the key column is indexed. The query for the
+ * subsequent pages is compiled once, so all of them reuse the same prepared
+ * statement.
+ *
+ * The query must be ordered by a single column only, which has to be unique
+ * within the result of the query - otherwise rows sharing a key value with the
+ * last row of a page would be skipped. Rows with null keys are not supported.
+ *
+ * A cursor is not thread-safe. Fetching a page closes the previous page, and
+ * the next page starts after the last row that was read from the previous
+ * page. Cursors should be closed when no longer used, to release their
+ * prepared statements.
+ *
+ * @see JdbcDataContext#createKeysetPagingCursor(Query, int)
+ */
+public final class JdbcKeysetPagingCursor implements Closeable {
+
+    private final JdbcDataContext _dataContext;
+    private final Query _query;
+    private final Query _pageQuery;
+    private final List<SelectItem> _selectItems;
+    private final Column _keyColumn;
+    private final int _keyIndex;
+    private final boolean _subSelection;
+    private final int _pageSize;
+    private JdbcCompiledQuery _nextPageQuery;
+    private Integer _rowsLeft;
+    private Object _lastKey;
+    private boolean _exhausted;
+    private DataSet _currentPage;
+
+    /**
+     * Creates a cursor
+     *
+     * @param dataContext
+     * @param query
+     *            the query to page through
+     * @param pageSize
+     *            the number of rows per page
+     * @param uniqueKey
+     *            whether the caller vouches for the ordering column being
+     *            unique. If false, the ordering column must be the (only)
+     *            primary key column of the (only) table being queried.
+     */
+    JdbcKeysetPagingCursor(JdbcDataContext dataContext, Query query, int pageSize, boolean uniqueKey) {
+        if (query == null) {
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be a positive number");
+        }
+        if (query.getFirstRow() != null) {
+            throw new IllegalArgumentException("Keyset paging does not support queries with a first row: " + query);
+        }
+        if (!query.getGroupByClause().isEmpty() || !query.getHavingClause().isEmpty()) {
+            throw new IllegalArgumentException("Keyset paging does not support grouped queries: " + query);
+        }
+        if (!new DefaultCompiledQuery(query).getParameters().isEmpty()) {
+            throw new IllegalArgumentException("Keyset paging does not support queries with parameters: " + query);
+        }
+        if (query.getOrderByClause().getItemCount() != 1) {
+            throw new IllegalArgumentException("Keyset paging requires the query to be ordered by a single column: "
+                    + query);
+        }
+
+        final SelectItem orderBySelectItem = query.getOrderByClause().getItem(0).getSelectItem();
+        final Column keyColumn = orderBySelectItem.getColumn();
+        if (keyColumn == null || orderBySelectItem.hasFunction()
+                || orderBySelectItem.getSubQuerySelectItem() != null) {
+            throw new IllegalArgumentException("Keyset paging requires the query to be ordered by a plain column: "
+                    + query);
+        }
+        if (!uniqueKey && !isPrimaryKeyOfQuery(query, keyColumn)) {
+            throw new IllegalArgumentException("Keyset paging requires the query to be ordered by the primary key of "
+                    + "the queried table, or by a column known to be unique: " + query);
+        }
+
+        _dataContext = dataContext;
+        _query = query;
+        _keyColumn = keyColumn;
+        _pageSize = pageSize;
+        _rowsLeft = query.getMaxRows();
+        _selectItems = query.getSelectClause().getItems();
+
+        _pageQuery = query.clone();
+        _pageQuery.setMaxRows(pageSize);
+
+        final SelectItem keySelectItem = _pageQuery.getOrderByClause().getItem(0).getSelectItem();
+        final int keyIndex = _pageQuery.getSelectClause().indexOf(keySelectItem);
+        if (keyIndex == -1) {
+            // the key has to be selected in order to remember it
+            _pageQuery.select(new SelectItem(keyColumn, keySelectItem.getFromItem()));
+            _keyIndex = _pageQuery.getSelectClause().getItemCount() - 1;
+            _subSelection = true;
+        } else {
+            _keyIndex = keyIndex;
+            _subSelection = false;
+        }
+    }
+
+    private static boolean isPrimaryKeyOfQuery(Query query, Column column) {
+        final List<FromItem> fromItems = query.getFromClause().getItems();
+        if (fromItems.size() != 1) {
+            return false;
+        }
+        final Table table = fromItems.get(0).getTable();
+        if (table == null || table != column.getTable() || !column.isPrimaryKey()) {
+            return false;
+        }
+        // a column of a composite primary key is not unique in itself
+        return table.getPrimaryKeys().length == 1;
+    }
+
+    /**
+     * Gets the query that is paged through
+     *
+     * @return
+     */
+    public Query getQuery() {
+        return _query;
+    }
+
+    public int getPageSize() {
+        return _pageSize;
+    }
+
+    public Column getKeyColumn() {
+        return _keyColumn;
+    }
+
+    /**
+     * Gets the key of the last row read, or null if no rows have been read.
+     * Can be stored in order to later resume paging using
+     * {@link #setLastKey(Object)}.
+     *
+     * @return
+     */
+    public Object getLastKey() {
+        return _lastKey;
+    }
+
+    /**
+     * Sets the key after which the next page should start, eg. in order to
+     * resume paging of a previous cursor.
+     *
+     * @param lastKey
+     *            the key of the last row already read, or null to start from
+     *            the first row
+     * @return
+     */
+    public JdbcKeysetPagingCursor setLastKey(Object lastKey) {
+        _lastKey = lastKey;
+        _exhausted = false;
+        return this;
+    }
+
+    /**
+     * Determines if there may be more pages to fetch. Returns false once a page
+     * has been read to its end and contained less rows than the page size (or
+     * the max rows of the query have been read). Note that if the last page is
+     * full, the page after it will be empty.
+     *
+     * @return
+     */
+    public boolean hasNextPage() {
+        return !_exhausted;
+    }
+
+    /**
+     * Fetches the next page, starting after the last row that has been read.
+     * Closes the previously fetched page, if any.
+     *
+     * @return
+     */
+    public DataSet nextPage() {
+        closeCurrentPage();
+        if (_exhausted || (_rowsLeft != null && _rowsLeft.intValue() <= 0)) {
+            _exhausted = true;
+            return new EmptyDataSet(_selectItems);
+        }
+
+        final DataSet dataSet;
+        if (_lastKey == null) {
+            dataSet = _dataContext.executeQuery(_pageQuery);
+        } else {
+            if (_nextPageQuery == null) {
+                _nextPageQuery = compileNextPageQuery();
+            }
+            dataSet = _dataContext.executeParameterizedQuery(_nextPageQuery.getQuery(), _nextPageQuery,
+                    new Object[] { _lastKey }, new Column[] { _keyColumn });
+        }
+
+        DataSet page = new PageDataSet(dataSet);
+        if (_subSelection) {
+            page = new SubSelectionDataSet(_selectItems, page);
+        }
+        _currentPage = page;
+        return page;
+    }
+
+    private JdbcCompiledQuery compileNextPageQuery() {
+        final Query query = _pageQuery.clone();
+        final OrderByItem orderByItem = query.getOrderByClause().getItem(0);
+        final OperatorType operator = orderByItem.isAscending() ? OperatorType.GREATER_THAN : OperatorType.LESS_THAN;
+        query.where(new FilterItem(orderByItem.getSelectItem(), operator, new QueryParameter()));
+        return new JdbcCompiledQuery(_dataContext, query);
+    }
+
+    /**
+     * Gets the compiled query used for fetching the pages after the first one,
+     * or null if it has not yet been used.
+     *
+     * @return
+     */
+    JdbcCompiledQuery getNextPageQuery() {
+        return _nextPageQuery;
+    }
+
+    private void closeCurrentPage() {
+        if (_currentPage != null) {
+            _currentPage.close();
+            _currentPage = null;
+        }
+    }
+
+    /**
+     * Closes the current page and releases the prepared statements of the
+     * cursor.
+     */
+    @Override
+    public void close() {
+        closeCurrentPage();
+        if (_nextPageQuery != null) {
+            _nextPageQuery.close();
+            _nextPageQuery = null;
+        }
+    }
+
+    /**
+     * Wraps the data set of a page in order to remember the key of the last
+     * row read and detect the end of the result.
+     */
+    private final class PageDataSet extends AbstractDataSet implements WrappingDataSet {
+
+        private final DataSet _dataSet;
+        private int _rowCount;
+        private boolean _closed;
+
+        public PageDataSet(DataSet dataSet) {
+            super(dataSet);
+            _dataSet = dataSet;
+            _rowCount = 0;
+            _closed = false;
+        }
+
+        @Override
+        public DataSet getWrappedDataSet() {
+            return _dataSet;
+        }
+
+        @Override
+        public boolean next() {
+            if (_closed) {
+                return false;
+            }
+            if (_rowsLeft != null && _rowsLeft.intValue() <= 0) {
+                _exhausted = true;
+                return false;
+            }
+            if (!_dataSet.next()) {
+                if (_rowCount < _pageSize) {
+                    _exhausted = true;
+                }
+                return false;
+            }
+
+            final Object key = _dataSet.getRow().getValue(_keyIndex);
+            if (key == null) {
+                throw new MetaModelException("Keyset paging encountered a null key in column: " + _keyColumn);
+            }
+            _lastKey = key;
+            _rowCount++;
+            if (_rowsLeft != null) {
+                _rowsLeft = _rowsLeft.intValue() - 1;
+            }
+            return true;
+        }
+
+        @Override
+        public Row getRow() {
+            return _dataSet.getRow();
+        }
+
+        @Override
+        public void close() {
+            if (!_closed) {
+                _closed = true;
+                _dataSet.close();
+            }
+        }
+    }
+}
@@ -92,27 +92,73 @@ final class JdbcMetadataLoader implements MetadataLoader {
     }
 
     private String getJdbcSchemaName(Schema schema) {
+        return getJdbcSchemaName(schema.getName());
+    }
+
+    private String getJdbcSchemaName(String schemaName) {
         if(_usesCatalogsAsSchemas) {
             return null;
         } else {
-            return schema.getName();
+            return schemaName;
         }
     }
 
     private String getCatalogName(Schema schema) {
+        return getCatalogName(schema.getName());
+    }
+
+    private String getCatalogName(String schemaName) {
         if(_usesCatalogsAsSchemas) {
-            return schema.getName();
+            return schemaName;
         } else {
             return _dataContext.getCatalogName();
         }
     }
 
+    @Override
+    public String getSchemaFingerprint(String schemaName, Connection connection) {
+        long hash = 1;
+        int count = 0;
+        try {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            final String[] types = JdbcUtils.getTableTypesAsStrings(_dataContext.getTableTypes());
+            try (ResultSet rs = metaData.getTables(getCatalogName(schemaName), getJdbcSchemaName(schemaName), null,
+                    types)) {
+                while (rs.next()) {
+                    hash = hash(hash, rs.getString(3), rs.getString(4));
+                    count++;
+                }
+            }
+            try (ResultSet rs = metaData.getColumns(getCatalogName(schemaName), getJdbcSchemaName(schemaName), null,
+                    null)) {
+                while (rs.next()) {
+                    // table, column, type, native type, size and nullability
+                    hash = hash(hash, rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
+                            rs.getString(7), rs.getString(11));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            throw JdbcUtils.wrapException(e, "retrieve schema fingerprint for " + schemaName);
+        }
+        return count + "-" + Long.toHexString(hash);
+    }
+
+    private static long hash(long hash, String... values) {
+        for (String value : values) {
+            hash = 31 * hash + (value == null ? 0 : value.hashCode());
+        }
+        return hash;
+    }
+
     private void loadTables(JdbcSchema schema, DatabaseMetaData metaData, String[] types) {
         try (ResultSet rs = metaData.getTables(getCatalogName(schema), getJdbcSchemaName(schema), null, types)) {
             logger.debug("Querying for table types {}, in catalog: {}, schema: {}", types,
                     _dataContext.getCatalogName(), schema.getName());
 
             schema.clearTables();
+            // relationships of the new tables are loaded on demand
+            _loadedRelations.remove(System.identityHashCode(schema));
             int tableNumber = -1;
             while (rs.next()) {
                 tableNumber++;
@@ -410,6 +456,59 @@ final class JdbcMetadataLoader implements MetadataLoader {
         }
     }
 
+    @Override
+    public boolean refreshTable(JdbcTable table, Connection connection) {
+        final Schema schema = table.getSchema();
+        final int identity = System.identityHashCode(table);
+        synchronized (this) {
+            try {
+                final DatabaseMetaData metaData = connection.getMetaData();
+                if (!tableExists(table, metaData)) {
+                    return false;
+                }
+
+                // the relationships reference the current columns, so they are
+                // removed and loaded again for the new columns
+                final boolean reloadRelations = table.removeRelationships()
+                        || _loadedRelations.contains(System.identityHashCode(schema));
+
+                table.setColumns();
+                _loadedColumns.remove(identity);
+                _loadedIndexes.remove(identity);
+                _loadedPrimaryKeys.remove(identity);
+
+                loadColumns(table, metaData);
+                _loadedColumns.add(identity);
+
+                if (reloadRelations) {
+                    loadRelations(table, metaData);
+                    try (ResultSet rs = metaData.getExportedKeys(getCatalogName(schema), getJdbcSchemaName(schema),
+                            table.getName())) {
+                        loadRelations(rs, schema);
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                throw JdbcUtils.wrapException(e, "refresh table " + table.getName());
+            }
+        }
+    }
+
+    private boolean tableExists(Table table, DatabaseMetaData metaData) throws SQLException {
+        final Schema schema = table.getSchema();
+        final String[] types = JdbcUtils.getTableTypesAsStrings(_dataContext.getTableTypes());
+        try (ResultSet rs = metaData.getTables(getCatalogName(schema), getJdbcSchemaName(schema), table.getName(),
+                types)) {
+            while (rs.next()) {
+                // the table name is a pattern, so the name has to be checked
+                if (table.getName().equals(rs.getString(3))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private void loadRelations(Table table, DatabaseMetaData metaData) {
         Schema schema = table.getSchema();
         try (ResultSet rs = metaData.getImportedKeys(getCatalogName(schema), getJdbcSchemaName(schema), table.getName())) {
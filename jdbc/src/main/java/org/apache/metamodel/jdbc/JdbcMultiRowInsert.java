@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.schema.Column;
+
+/**
+ * Buffer of rows to insert with the same parameterized INSERT statement, which
+ * are executed as multi-row INSERT statements, ie.
+ * <code>INSERT INTO table (a,b) VALUES (?,?),(?,?),...</code>.
+ *
+ * @see org.apache.metamodel.jdbc.dialects.AbstractQueryRewriter#getMultiRowInsertParameterLimit()
+ */
+final class JdbcMultiRowInsert {
+
+    /**
+     * The maximum number of rows per statement, regardless of the parameter
+     * limit, to keep statements within typical packet size limits.
+     */
+    static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private static final String VALUES_KEYWORD = " VALUES ";
+
+    private final String _sql;
+    private final String _rowSql;
+    private final Column[] _columns;
+    private final int _rowsPerStatement;
+    private final List<Object[]> _rows;
+
+    /**
+     * Creates the buffer.
+     *
+     * @param sql
+     *            the parameterized single-row INSERT statement
+     * @param columns
+     *            the columns of the parameters of a row
+     * @param parameterLimit
+     *            the maximum number of parameters of a statement
+     */
+    public JdbcMultiRowInsert(String sql, Column[] columns, int parameterLimit) {
+        _sql = sql;
+        _rowSql = sql.substring(sql.lastIndexOf(VALUES_KEYWORD) + VALUES_KEYWORD.length());
+        _columns = columns;
+        _rowsPerStatement = Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, parameterLimit / columns.length));
+        _rows = new ArrayList<Object[]>();
+    }
+
+    public void addRow(Object[] values) {
+        _rows.add(values);
+    }
+
+    public int getRowCount() {
+        return _rows.size();
+    }
+
+    public int getRowsPerStatement() {
+        return _rowsPerStatement;
+    }
+
+    public void clear() {
+        _rows.clear();
+    }
+
+    /**
+     * Gets the INSERT statement for a number of rows.
+     *
+     * @param rows
+     * @return
+     */
+    public String getSql(int rows) {
+        final StringBuilder sb = new StringBuilder(_sql.length() + (rows - 1) * (_rowSql.length() + 1));
+        sb.append(_sql);
+        for (int i = 1; i < rows; i++) {
+            sb.append(',');
+            sb.append(_rowSql);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets the parameters of a statement created with {@link #getSql(int)}.
+     *
+     * @param st
+     * @param queryRewriter
+     * @param firstRow
+     *            the (0-based) index of the first buffered row to set
+     * @param rows
+     *            the number of rows to set
+     * @throws SQLException
+     */
+    public void setParameters(PreparedStatement st, IQueryRewriter queryRewriter, int firstRow, int rows)
+            throws SQLException {
+        int valueIndex = 1;
+        for (int i = firstRow; i < firstRow + rows; i++) {
+            final Object[] values = _rows.get(i);
+            for (int j = 0; j < _columns.length; j++) {
+                queryRewriter.setStatementParameter(st, valueIndex, _columns[j], values[j]);
+                valueIndex++;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.query.FilterClause;
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.QueryParameter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+
+/**
+ * A clone of a {@link Query} where the literal operands of the WHERE and HAVING
+ * clauses have been replaced by {@link QueryParameter}s, along with the values
+ * (and columns) to bind to the parameters. Queries which only differ in such
+ * literals thereby share the same SQL, and thus the same prepared statements.
+ *
+ * Only operands which are bound to the same values as the inlined literals
+ * would evaluate to are parameterized, ie. strings compared to literal columns
+ * and numbers compared to number columns. Other operands (such as dates and
+ * booleans, which are rendered in dialect specific ways, and IN lists, which
+ * would make the shape of the query depend on the number of values) are kept
+ * as literals.
+ */
+final class JdbcParameterizedQuery {
+
+    private final Query _query;
+    private final Object[] _values;
+    private final Column[] _columns;
+
+    private JdbcParameterizedQuery(Query query, Object[] values, Column[] columns) {
+        _query = query;
+        _values = values;
+        _columns = columns;
+    }
+
+    /**
+     * Creates a parameterized version of a query.
+     *
+     * @param query
+     * @return the parameterized query, or null if the query does not have any
+     *         literals to parameterize (or already contains parameters)
+     */
+    public static JdbcParameterizedQuery create(Query query) {
+        final Query parameterizedQuery = query.clone();
+        final List<Object> values = new ArrayList<Object>();
+        final List<Column> columns = new ArrayList<Column>();
+        if (!parameterize(parameterizedQuery.getWhereClause(), values, columns)) {
+            return null;
+        }
+        if (!parameterize(parameterizedQuery.getHavingClause(), values, columns)) {
+            return null;
+        }
+        if (values.isEmpty()) {
+            return null;
+        }
+        return new JdbcParameterizedQuery(parameterizedQuery, values.toArray(), columns.toArray(new Column[columns
+                .size()]));
+    }
+
+    private static boolean parameterize(FilterClause clause, List<Object> values, List<Column> columns) {
+        final List<FilterItem> items = clause.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            final FilterItem item = items.get(i);
+            final FilterItem newItem = parameterize(item, values, columns);
+            if (newItem == null) {
+                return false;
+            }
+            if (newItem != item) {
+                clause.removeItem(i);
+                clause.addItem(i, newItem);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parameterizes a filter item.
+     *
+     * @return the parameterized filter item, the same filter item if it had no
+     *         operands to parameterize, or null if it contains a
+     *         {@link QueryParameter} already
+     */
+    private static FilterItem parameterize(FilterItem item, List<Object> values, List<Column> columns) {
+        if (item.getExpression() != null) {
+            return item;
+        }
+
+        if (item.isCompoundFilter()) {
+            final FilterItem[] childItems = item.getChildItems();
+            final FilterItem[] newChildItems = new FilterItem[childItems.length];
+            boolean changed = false;
+            for (int i = 0; i < childItems.length; i++) {
+                newChildItems[i] = parameterize(childItems[i], values, columns);
+                if (newChildItems[i] == null) {
+                    return null;
+                }
+                changed = changed || newChildItems[i] != childItems[i];
+            }
+            if (!changed) {
+                return item;
+            }
+            return new FilterItem(item.getLogicalOperator(), newChildItems);
+        }
+
+        final Object operand = item.getOperand();
+        if (operand instanceof QueryParameter) {
+            return null;
+        }
+        if (!isParameterizable(item.getSelectItem(), item.getOperator(), operand)) {
+            return item;
+        }
+
+        final SelectItem selectItem = item.getSelectItem();
+        values.add(operand);
+        columns.add(selectItem.getAggregateFunction() == null ? selectItem.getColumn() : null);
+        return new FilterItem(selectItem, item.getOperator(), new QueryParameter());
+    }
+
+    private static boolean isParameterizable(SelectItem selectItem, OperatorType operator, Object operand) {
+        if (operand == null || operator == OperatorType.IN || operator == OperatorType.NOT_IN) {
+            return false;
+        }
+        final ColumnType type = selectItem.getExpectedColumnType();
+        if (type == null) {
+            return false;
+        }
+        if (type.isLiteral() && operand instanceof String) {
+            // empty strings are treated as NULL by some databases (Oracle) and
+            // rewritten accordingly
+            return !((String) operand).isEmpty();
+        }
+        return type.isNumber() && operand instanceof Number;
+    }
+
+    /**
+     * Gets the parameterized query
+     *
+     * @return
+     */
+    public Query getQuery() {
+        return _query;
+    }
+
+    /**
+     * Gets the values of the parameters, in the order of the parameters
+     *
+     * @return
+     */
+    public Object[] getValues() {
+        return _values;
+    }
+
+    /**
+     * Gets the columns that the parameters are compared to (or null for
+     * parameters that are compared to aggregated values), in the order of the
+     * parameters
+     *
+     * @return
+     */
+    public Column[] getColumns() {
+        return _columns;
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.Query;
+
+/**
+ * A bounded cache of {@link JdbcCompiledQuery}s for auto-parameterized queries
+ * (see {@link JdbcParameterizedQuery}), keyed by their SQL. Since the compiled
+ * queries pool their prepared statements, repeated executions of queries with
+ * the same shape reuse the prepared statements in stead of having the database
+ * parse every variant of the query.
+ *
+ * Compiled queries which are evicted from the cache are closed. Since another
+ * thread may be about to borrow a lease of an evicted compiled query, the
+ * cache counts the threads using each compiled query, and closing is deferred
+ * until none of them are. Leases which have been borrowed stay usable after the
+ * compiled query is closed, and are closed when they are returned.
+ */
+final class JdbcParameterizedQueryCache {
+
+    private final JdbcDataContext _dataContext;
+    private final Map<String, CacheEntry> _entries;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+
+    /**
+     * Creates the cache
+     *
+     * @param dataContext
+     * @param maxSize
+     *            the maximum number of compiled queries to keep
+     */
+    public JdbcParameterizedQueryCache(JdbcDataContext dataContext, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be a positive number");
+        }
+        _dataContext = dataContext;
+        _entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+    }
+
+    /**
+     * Executes a query using the compiled query of its parameterized version,
+     * compiling it if it is not already cached.
+     *
+     * @param query
+     *            the query that the data set should represent
+     * @param parameterizedQuery
+     *            the parameterized version of the query
+     * @return
+     */
+    public DataSet executeQuery(Query query, JdbcParameterizedQuery parameterizedQuery) {
+        final CacheEntry entry = acquire(parameterizedQuery.getQuery());
+        final JdbcCompiledQueryLease lease;
+        try {
+            lease = entry.getCompiledQuery().borrowLease();
+        } finally {
+            release(entry);
+        }
+        return _dataContext.executeParameterizedQuery(query, entry.getCompiledQuery(), lease,
+                parameterizedQuery.getValues(), parameterizedQuery.getColumns());
+    }
+
+    /**
+     * Gets the entry of a parameterized query, compiling the query if it is not
+     * already cached, and marks it as used until {@link #release(CacheEntry)}
+     * is invoked.
+     *
+     * @param parameterizedQuery
+     * @return
+     */
+    CacheEntry acquire(Query parameterizedQuery) {
+        final String sql = _dataContext.rewriteQuery(parameterizedQuery);
+        synchronized (_entries) {
+            CacheEntry entry = _entries.get(sql);
+            if (entry == null) {
+                _misses.incrementAndGet();
+                entry = new CacheEntry(new JdbcCompiledQuery(_dataContext, parameterizedQuery, sql));
+                _entries.put(sql, entry);
+            } else {
+                _hits.incrementAndGet();
+            }
+            entry._users++;
+            return entry;
+        }
+    }
+
+    /**
+     * Releases an entry acquired using {@link #acquire(Query)}, closing its
+     * compiled query if it has been evicted in the meantime.
+     *
+     * @param entry
+     */
+    void release(CacheEntry entry) {
+        final boolean close;
+        synchronized (_entries) {
+            entry._users--;
+            close = entry._evicted && entry._users == 0;
+        }
+        if (close) {
+            entry.getCompiledQuery().close();
+        }
+    }
+
+    /**
+     * Closes and removes all compiled queries of the cache. Compiled queries
+     * which are in use are closed once they are no longer used.
+     */
+    public void clear() {
+        final List<JdbcCompiledQuery> compiledQueries = new ArrayList<JdbcCompiledQuery>();
+        synchronized (_entries) {
+            for (CacheEntry entry : _entries.values()) {
+                entry._evicted = true;
+                if (entry._users == 0) {
+                    compiledQueries.add(entry.getCompiledQuery());
+                }
+            }
+            _entries.clear();
+        }
+        for (JdbcCompiledQuery compiledQuery : compiledQueries) {
+            compiledQuery.close();
+        }
+    }
+
+    /**
+     * Gets the number of compiled queries currently in the cache
+     *
+     * @return
+     */
+    public int size() {
+        synchronized (_entries) {
+            return _entries.size();
+        }
+    }
+
+    /**
+     * Gets the number of times a query was served from a cached compiled query
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    /**
+     * Gets the number of times a query had to be compiled
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    /**
+     * A cached compiled query along with the number of threads using it. The
+     * fields are guarded by the map of entries.
+     */
+    static final class CacheEntry {
+
+        private final JdbcCompiledQuery _compiledQuery;
+        private int _users;
+        private boolean _evicted;
+
+        public CacheEntry(JdbcCompiledQuery compiledQuery) {
+            _compiledQuery = compiledQuery;
+            _users = 0;
+            _evicted = false;
+        }
+
+        public JdbcCompiledQuery getCompiledQuery() {
+            return _compiledQuery;
+        }
+
+        /**
+         * Marks the entry as evicted, and closes the compiled query if it is
+         * not in use. Invoked while holding the lock of the map of entries.
+         */
+        public void evict() {
+            _evicted = true;
+            if (_users == 0) {
+                _compiledQuery.close();
+            }
+        }
+    }
+}
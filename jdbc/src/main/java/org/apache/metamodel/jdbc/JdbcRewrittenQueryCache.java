@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.QueryFingerprint;
+
+/**
+ * A bounded cache of the SQL that a single {@link IQueryRewriter} renders
+ * queries to, keyed by the {@link QueryFingerprint}s of the queries. Rendering
+ * a query (which for most dialects also involves cloning it) is thereby
+ * replaced by creating its fingerprint and looking it up.
+ *
+ * Since fingerprints are snapshots of the queries, modifying a query means that
+ * its previously cached SQL will no longer be found. Such entries are
+ * eventually evicted as the least recently used ones.
+ */
+final class JdbcRewrittenQueryCache {
+
+    private final IQueryRewriter _queryRewriter;
+    private final Map<QueryFingerprint, String> _sqls;
+    private final AtomicLong _hits;
+    private final AtomicLong _misses;
+
+    /**
+     * Creates the cache
+     *
+     * @param queryRewriter
+     *            the query rewriter to render queries with
+     * @param maxSize
+     *            the maximum number of rendered queries to keep
+     */
+    public JdbcRewrittenQueryCache(IQueryRewriter queryRewriter, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be a positive number");
+        }
+        _queryRewriter = queryRewriter;
+        _sqls = new LinkedHashMap<QueryFingerprint, String>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryFingerprint, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+        _hits = new AtomicLong();
+        _misses = new AtomicLong();
+    }
+
+    /**
+     * Rewrites a query to SQL, using the cached SQL if the query has been
+     * rewritten before.
+     *
+     * @param query
+     * @return
+     */
+    public String rewriteQuery(Query query) {
+        final QueryFingerprint fingerprint = new QueryFingerprint(query);
+        synchronized (_sqls) {
+            final String sql = _sqls.get(fingerprint);
+            if (sql != null) {
+                _hits.incrementAndGet();
+                return sql;
+            }
+        }
+
+        _misses.incrementAndGet();
+        final String sql = _queryRewriter.rewriteQuery(query);
+        synchronized (_sqls) {
+            _sqls.put(fingerprint, sql);
+        }
+        return sql;
+    }
+
+    public IQueryRewriter getQueryRewriter() {
+        return _queryRewriter;
+    }
+
+    /**
+     * Gets the number of rendered queries currently in the cache
+     *
+     * @return
+     */
+    public int size() {
+        synchronized (_sqls) {
+            return _sqls.size();
+        }
+    }
+
+    /**
+     * Gets the number of times a query was served from the cache
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    /**
+     * Gets the number of times a query had to be rendered
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return _misses.get();
+    }
+}
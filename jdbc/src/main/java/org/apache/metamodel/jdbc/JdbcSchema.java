@@ -32,20 +32,36 @@ final class JdbcSchema extends MutableSchema {
 
     private static final long serialVersionUID = 7543633400859277467L;
     private transient MetadataLoader _metadataLoader;
+    private transient boolean _restoredFromSnapshot;
 
     public JdbcSchema(String name, MetadataLoader metadataLoader) {
         super(name);
         _metadataLoader = metadataLoader;
     }
 
+    /**
+     * Re-attaches the {@link MetadataLoader} to a schema which has been
+     * restored from a snapshot. The tables and relations of the snapshot are
+     * kept, but the schema can be refreshed again.
+     * 
+     * @param metadataLoader
+     */
+    protected void restoreFromSnapshot(MetadataLoader metadataLoader) {
+        _metadataLoader = metadataLoader;
+        _restoredFromSnapshot = true;
+    }
+
     protected void refreshTables(Connection connection) {
         if (_metadataLoader != null) {
             _metadataLoader.loadTables(this, connection);
+            // the tables have been recreated, so the relationships of the
+            // snapshot are gone and have to be loaded again
+            _restoredFromSnapshot = false;
         }
     }
 
     public void loadRelations(Connection connection) {
-        if (_metadataLoader != null) {
+        if (_metadataLoader != null && !_restoredFromSnapshot) {
             if (connection == null) {
                 _metadataLoader.loadRelations(this);
             } else {
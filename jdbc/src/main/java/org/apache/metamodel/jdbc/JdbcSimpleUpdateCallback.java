@@ -23,6 +23,7 @@ import java.sql.SQLException;
 
 import org.apache.metamodel.UpdateCallback;
 import org.apache.metamodel.UpdateScript;
+import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.util.FileHelper;
 
 /**
@@ -41,7 +42,7 @@ final class JdbcSimpleUpdateCallback extends JdbcUpdateCallback {
     }
 
     @Override
-    protected void executePreparedStatement(PreparedStatement st) throws SQLException {
+    protected void executePreparedStatement(Table table, PreparedStatement st) throws SQLException {
         st.executeUpdate();
     }
 }
@@ -19,9 +19,11 @@
 package org.apache.metamodel.jdbc;
 
 import java.io.ObjectStreamException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.MutableRelationship;
 import org.apache.metamodel.schema.MutableTable;
 import org.apache.metamodel.schema.Relationship;
 import org.apache.metamodel.schema.Schema;
@@ -58,6 +60,21 @@ final class JdbcTable extends MutableTable {
 		return super.getRelationshipsInternal();
 	}
 	
+	/**
+	 * Removes the relationships of this table, without loading them first.
+	 * 
+	 * @return true if any relationships were removed
+	 */
+	boolean removeRelationships() {
+		final List<Relationship> relationships = new ArrayList<Relationship>(super.getRelationshipsInternal());
+		for (Relationship relationship : relationships) {
+			if (relationship instanceof MutableRelationship) {
+				((MutableRelationship) relationship).remove();
+			}
+		}
+		return !relationships.isEmpty();
+	}
+
 	protected void loadIndexes() {
 		if (_metadataLoader != null) {
 			_metadataLoader.loadIndexes(this);
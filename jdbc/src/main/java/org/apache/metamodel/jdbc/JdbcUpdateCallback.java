@@ -21,6 +21,9 @@ package org.apache.metamodel.jdbc;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.metamodel.AbstractUpdateCallback;
 import org.apache.metamodel.UpdateCallback;
@@ -28,9 +31,11 @@ import org.apache.metamodel.create.TableCreationBuilder;
 import org.apache.metamodel.delete.RowDeletionBuilder;
 import org.apache.metamodel.drop.TableDropBuilder;
 import org.apache.metamodel.insert.RowInsertionBuilder;
+import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.update.RowUpdationBuilder;
+import org.apache.metamodel.util.FileHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,29 +43,89 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcUpdateCallback.class);
 
+    protected static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
+
     private final JdbcDataContext _dataContext;
+    private final int _statementCacheSize;
+    private final Map<String, PreparedStatement> _preparedStatements;
     private Connection _connection;
-    private String _preparedStatementSql;
-    private PreparedStatement _preparedStatement;
 
     public JdbcUpdateCallback(JdbcDataContext dataContext) {
+        this(dataContext, getSystemPropertyValue(JdbcDataContext.SYSTEM_PROPERTY_UPDATE_STATEMENT_CACHE_SIZE,
+                DEFAULT_STATEMENT_CACHE_SIZE));
+    }
+
+    /**
+     * Creates the update callback.
+     * 
+     * @param dataContext
+     * @param statementCacheSize
+     *            the number of reusable prepared statements (one per distinct
+     *            SQL statement) to keep open at the same time
+     */
+    public JdbcUpdateCallback(JdbcDataContext dataContext, int statementCacheSize) {
         super(dataContext);
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException("Statement cache size must be a positive number");
+        }
         _dataContext = dataContext;
+        _statementCacheSize = statementCacheSize;
+        // access ordered, so that the least recently used statement is evicted
+        _preparedStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    protected static int getSystemPropertyValue(String property, int defaultValue) {
+        final String str = System.getProperty(property);
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(str);
+        } catch (NumberFormatException e) {
+            logger.debug("Failed to parse system property '{}': '{}'", property, str);
+            return defaultValue;
+        }
     }
 
     protected abstract void closePreparedStatement(PreparedStatement preparedStatement);
 
-    protected abstract void executePreparedStatement(PreparedStatement preparedStatement) throws SQLException;
+    /**
+     * Executes any work that has been deferred for the prepared statements of
+     * this callback (such as batches). Invoked before statements that are not
+     * reused are executed, and before reused statements are closed.
+     */
+    protected void flushPreparedStatements() {
+    }
+
+    /**
+     * Waits for any work on the connection that is being done in the
+     * background. Invoked before the connection or any of the prepared
+     * statements are used.
+     */
+    protected void awaitBackgroundWork() {
+    }
+
+    /**
+     * Executes a prepared statement, or defers its execution.
+     * 
+     * @param table
+     *            the table that the statement modifies
+     * @param preparedStatement
+     * @throws SQLException
+     */
+    protected abstract void executePreparedStatement(Table table, PreparedStatement preparedStatement)
+            throws SQLException;
 
-    public void executePreparedStatement(PreparedStatement preparedStatement, boolean reusedStatement)
+    public void executePreparedStatement(Table table, PreparedStatement preparedStatement, boolean reusedStatement)
             throws SQLException {
-        executePreparedStatement(preparedStatement);
+        executePreparedStatement(table, preparedStatement);
         if (!reusedStatement) {
             closePreparedStatement(preparedStatement);
         }
     }
 
     protected final Connection getConnection() {
+        awaitBackgroundWork();
         if (_connection == null) {
             _connection = getDataContext().getConnection();
             if (_dataContext.getQueryRewriter().isTransactional()) {
@@ -76,9 +141,7 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
 
     public final void close(boolean success) {
         if (_connection != null) {
-            if (success && _preparedStatement != null) {
-                closePreparedStatement(_preparedStatement);
-            }
+            closePreparedStatements(success);
 
             if (_dataContext.getQueryRewriter().isTransactional()) {
                 try {
@@ -98,6 +161,33 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
         }
     }
 
+    /**
+     * Closes the prepared statements of this callback when the update script
+     * has finished. If the script was successful, any deferred work is
+     * executed first.
+     * 
+     * @param success
+     */
+    protected void closePreparedStatements(boolean success) {
+        if (success) {
+            awaitBackgroundWork();
+            flushPreparedStatements();
+            for (PreparedStatement preparedStatement : _preparedStatements.values()) {
+                closePreparedStatement(preparedStatement);
+            }
+        } else {
+            try {
+                awaitBackgroundWork();
+            } catch (RuntimeException e) {
+                logger.debug("Ignoring exception of background work, since the update failed", e);
+            }
+            for (PreparedStatement preparedStatement : _preparedStatements.values()) {
+                FileHelper.safeClose(preparedStatement);
+            }
+        }
+        _preparedStatements.clear();
+    }
+
     private void commitOrRollback(boolean success) {
         if (success) {
             try {
@@ -153,31 +243,68 @@ abstract class JdbcUpdateCallback extends AbstractUpdateCallback implements Upda
         return identifier;
     }
 
+    /**
+     * Gets a prepared statement for an SQL statement. Reusable statements are
+     * cached per SQL statement, so that eg. inserts into several tables can be
+     * interleaved without preparing the statements again.
+     * 
+     * @param sql
+     * @param reuseStatement
+     * @return
+     */
     public final PreparedStatement getPreparedStatement(String sql, boolean reuseStatement) {
-        final PreparedStatement preparedStatement;
-        if (reuseStatement) {
-            if (sql.equals(_preparedStatementSql)) {
-                preparedStatement = _preparedStatement;
-            } else {
-                if (_preparedStatement != null) {
-                    try {
-                        closePreparedStatement(_preparedStatement);
-                    } catch (RuntimeException e) {
-                        logger.error("Exception occurred while closing prepared statement: " + _preparedStatementSql);
-                        throw e;
-                    }
-                }
-                preparedStatement = createPreparedStatement(sql);
-                _preparedStatement = preparedStatement;
-                _preparedStatementSql = sql;
+        awaitBackgroundWork();
+        if (!reuseStatement) {
+            // make sure that previous statements are executed first
+            flushPreparedStatements();
+            return createPreparedStatement(sql);
+        }
+
+        PreparedStatement preparedStatement = _preparedStatements.get(sql);
+        if (preparedStatement == null) {
+            if (_preparedStatements.size() >= _statementCacheSize) {
+                evictPreparedStatement();
             }
-        } else {
             preparedStatement = createPreparedStatement(sql);
+            _preparedStatements.put(sql, preparedStatement);
         }
         return preparedStatement;
     }
 
-    private final PreparedStatement createPreparedStatement(String sql) {
+    private void evictPreparedStatement() {
+        flushPreparedStatements();
+        final Iterator<Map.Entry<String, PreparedStatement>> it = _preparedStatements.entrySet().iterator();
+        final Map.Entry<String, PreparedStatement> eldest = it.next();
+        it.remove();
+        try {
+            closePreparedStatement(eldest.getValue());
+        } catch (RuntimeException e) {
+            logger.error("Exception occurred while closing prepared statement: " + eldest.getKey());
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a row to be inserted with a multi-row INSERT statement, if the
+     * callback and the database support it. The row is not necessarily
+     * inserted until the callback is closed.
+     * 
+     * @param table
+     *            the table to insert into
+     * @param sql
+     *            the parameterized single-row INSERT statement
+     * @param columns
+     *            the columns of the parameters
+     * @param values
+     *            the values of the parameters
+     * @return true if the row was added, false if the INSERT statement should
+     *         be executed as usual
+     */
+    public boolean addMultiRowInsert(Table table, String sql, Column[] columns, Object[] values) {
+        return false;
+    }
+
+    protected final PreparedStatement createPreparedStatement(String sql) {
         try {
             return getConnection().prepareStatement(sql);
         } catch (SQLException e) {
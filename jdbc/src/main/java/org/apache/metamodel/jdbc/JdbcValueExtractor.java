@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.apache.metamodel.jdbc.dialects.AbstractQueryRewriter;
+import org.apache.metamodel.jdbc.dialects.IQueryRewriter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retrieves the value of a single column of a {@link ResultSet}. Extractors are
+ * chosen once per result set (see
+ * {@link #create(IQueryRewriter, ResultSetMetaData, SelectItem, int, boolean)})
+ * so that iterating the rows does not involve any type checks.
+ */
+abstract class JdbcValueExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcValueExtractor.class);
+
+    protected final int _columnIndex;
+
+    private JdbcValueExtractor(int columnIndex) {
+        _columnIndex = columnIndex;
+    }
+
+    /**
+     * Gets the value of the current row of a result set.
+     *
+     * @param resultSet
+     * @return
+     * @throws SQLException
+     */
+    public abstract Object getValue(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Creates the extractor for a column of a result set.
+     *
+     * @param queryRewriter
+     *            the query rewriter to retrieve values of columns with
+     * @param metaData
+     *            the metadata of the result set, or null if not available
+     * @param selectItem
+     *            the select item of the column
+     * @param columnIndex
+     *            the (1-based) index of the column
+     * @param primitiveGetters
+     *            whether primitive getters (such as getInt(...)) may be used
+     *            for numbers, when the metadata states that the value is of
+     *            the corresponding type
+     * @return
+     */
+    public static JdbcValueExtractor create(IQueryRewriter queryRewriter, ResultSetMetaData metaData,
+            SelectItem selectItem, int columnIndex, boolean primitiveGetters) {
+        final Column column = (selectItem.getAggregateFunction() == null ? selectItem.getColumn() : null);
+        final ColumnType type = (column == null ? null : column.getType());
+
+        if (primitiveGetters && (column == null || (type != null && type.isNumber()))) {
+            final JdbcValueExtractor extractor = createPrimitiveExtractor(metaData, columnIndex);
+            if (extractor != null) {
+                return extractor;
+            }
+        }
+
+        if (column == null) {
+            return new ObjectExtractor(columnIndex);
+        }
+
+        if (type == null || !isDefaultResultSetValueRetrieval(queryRewriter) || type.isTimeBased()
+                || type.isBinary() || type.isLargeObject() || type.isBoolean()) {
+            // types which are retrieved with type-specific getters by the query
+            // rewriter
+            return new QueryRewriterExtractor(columnIndex, queryRewriter, column);
+        }
+
+        return new ObjectExtractor(columnIndex);
+    }
+
+    private static JdbcValueExtractor createPrimitiveExtractor(ResultSetMetaData metaData, int columnIndex) {
+        if (metaData == null) {
+            return null;
+        }
+        final String className;
+        try {
+            className = metaData.getColumnClassName(columnIndex);
+        } catch (Exception e) {
+            logger.debug("Could not get class name of column {}: {}", columnIndex, e.getMessage());
+            return null;
+        }
+        if (Integer.class.getName().equals(className)) {
+            return new IntegerExtractor(columnIndex);
+        } else if (Long.class.getName().equals(className)) {
+            return new LongExtractor(columnIndex);
+        } else if (Double.class.getName().equals(className)) {
+            return new DoubleExtractor(columnIndex);
+        } else if (Float.class.getName().equals(className)) {
+            return new FloatExtractor(columnIndex);
+        }
+        return null;
+    }
+
+    /**
+     * Determines if a query rewriter retrieves values with getObject(...) for
+     * all types but time based, binary, large object and boolean types.
+     */
+    private static boolean isDefaultResultSetValueRetrieval(IQueryRewriter queryRewriter) {
+        return queryRewriter instanceof AbstractQueryRewriter
+                && ((AbstractQueryRewriter) queryRewriter).isDefaultResultSetValueRetrieval();
+    }
+
+    private static final class ObjectExtractor extends JdbcValueExtractor {
+
+        public ObjectExtractor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        public Object getValue(ResultSet resultSet) throws SQLException {
+            return resultSet.getObject(_columnIndex);
+        }
+    }
+
+    private static final class QueryRewriterExtractor extends JdbcValueExtractor {
+
+        private final IQueryRewriter _queryRewriter;
+        private final Column _column;
+
+        public QueryRewriterExtractor(int columnIndex, IQueryRewriter queryRewriter, Column column) {
+            super(columnIndex);
+            _queryRewriter = queryRewriter;
+            _column = column;
+        }
+
+        @Override
+        public Object getValue(ResultSet resultSet) throws SQLException {
+            final Object value = _queryRewriter.getResultSetValue(resultSet, _columnIndex, _column);
+            try {
+                // some drivers return boxed primitive types in stead of
+                // nulls (such as false in stead of null for a Boolean
+                // column)
+                if (resultSet.wasNull()) {
+                    return null;
+                }
+            } catch (Exception e) {
+                logger.debug("Could not invoke wasNull() method on resultset, error message: {}", e.getMessage());
+            }
+            return value;
+        }
+    }
+
+    private static final class IntegerExtractor extends JdbcValueExtractor {
+
+        public IntegerExtractor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        public Object getValue(ResultSet resultSet) throws SQLException {
+            final int value = resultSet.getInt(_columnIndex);
+            if (value == 0 && resultSet.wasNull()) {
+                return null;
+            }
+            return value;
+        }
+    }
+
+    private static final class LongExtractor extends JdbcValueExtractor {
+
+        public LongExtractor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        public Object getValue(ResultSet resultSet) throws SQLException {
+            final long value = resultSet.getLong(_columnIndex);
+            if (value == 0 && resultSet.wasNull()) {
+                return null;
+            }
+            return value;
+        }
+    }
+
+    private static final class DoubleExtractor extends JdbcValueExtractor {
+
+        public DoubleExtractor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        public Object getValue(ResultSet resultSet) throws SQLException {
+            final double value = resultSet.getDouble(_columnIndex);
+            if (value == 0 && resultSet.wasNull()) {
+                return null;
+            }
+            return value;
+        }
+    }
+
+    private static final class FloatExtractor extends JdbcValueExtractor {
+
+        public FloatExtractor(int columnIndex) {
+            super(columnIndex);
+        }
+
+        @Override
+        public Object getValue(ResultSet resultSet) throws SQLException {
+            final float value = resultSet.getFloat(_columnIndex);
+            if (value == 0 && resultSet.wasNull()) {
+                return null;
+            }
+            return value;
+        }
+    }
+}
@@ -45,4 +45,24 @@ interface MetadataLoader {
     public void loadIndexes(JdbcTable jdbcTable, Connection connection);
 
     public void loadPrimaryKeys(JdbcTable jdbcTable, Connection connection);
+
+    /**
+     * Reloads the metadata of a table in place, ie. its columns, indexes,
+     * primary keys and relationships.
+     * 
+     * @param jdbcTable
+     * @param connection
+     * @return true if the table was refreshed, or false if it no longer exists
+     */
+    public boolean refreshTable(JdbcTable jdbcTable, Connection connection);
+
+    /**
+     * Computes a fingerprint of the tables and columns of a schema, which
+     * changes when tables or columns are added, removed or altered.
+     * 
+     * @param schemaName
+     * @param connection
+     * @return
+     */
+    public String getSchemaFingerprint(String schemaName, Connection connection);
 }
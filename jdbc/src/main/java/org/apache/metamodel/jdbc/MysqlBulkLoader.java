@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+import org.apache.metamodel.util.FileHelper;
+
+/**
+ * {@link JdbcBulkLoader} for MySQL, which streams rows with
+ * <code>LOAD DATA LOCAL INFILE</code>, handing the data to the statement of the
+ * MySQL driver (Connector/J) in stead of a file. The driver is accessed
+ * reflectively, since it is not a compile time dependency. Note that the
+ * server and the connection (<code>allowLoadLocalInfile</code>) must permit
+ * loading local files.
+ */
+final class MysqlBulkLoader extends CsvBulkLoader {
+
+    private static final String[] STATEMENT_CLASS_NAMES = { "com.mysql.jdbc.Statement",
+            "com.mysql.cj.jdbc.JdbcStatement" };
+
+    public MysqlBulkLoader(JdbcDataContext dataContext) {
+        super(dataContext);
+    }
+
+    @Override
+    protected boolean isAvailable(Connection connection) throws SQLException {
+        final Statement st = connection.createStatement();
+        try {
+            return getSetInputStreamMethod(st) != null;
+        } finally {
+            FileHelper.safeClose(st);
+        }
+    }
+
+    @Override
+    protected long load(Connection connection, Table table, Column[] columns, InputStream csv) throws SQLException {
+        final String sql = "LOAD DATA LOCAL INFILE 'metamodel_bulk_load.csv' INTO TABLE " + getTableName(table)
+                + " CHARACTER SET utf8 FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY '\\\\'"
+                + " LINES TERMINATED BY '\\n' (" + getColumnNames(columns) + ")";
+        final Statement st = connection.createStatement();
+        try {
+            final Method setInputStreamMethod = getSetInputStreamMethod(st);
+            final Object mysqlStatement = st.unwrap(setInputStreamMethod.getDeclaringClass());
+            setInputStreamMethod.invoke(mysqlStatement, csv);
+            return st.executeUpdate(sql);
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Could not stream rows to MySQL statement", e);
+        } finally {
+            FileHelper.safeClose(st);
+        }
+    }
+
+    /**
+     * Writes values in the default format of LOAD DATA, ie. nulls as
+     * <code>\N</code> and special characters escaped with backslashes.
+     */
+    @Override
+    protected void appendValue(StringBuilder sb, Column column, Object value) {
+        if (value == null) {
+            sb.append("\\N");
+            return;
+        }
+        final String str;
+        if (value instanceof Boolean) {
+            str = ((Boolean) value).booleanValue() ? "1" : "0";
+        } else {
+            str = toString(column, value);
+        }
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                sb.append('\\').append(c);
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\0':
+                sb.append("\\0");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private Method getSetInputStreamMethod(Statement st) {
+        for (String className : STATEMENT_CLASS_NAMES) {
+            try {
+                final Class<?> statementClass = Class.forName(className, true, st.getClass().getClassLoader());
+                if (statementClass.isInstance(st) || st.isWrapperFor(statementClass)) {
+                    return statementClass.getMethod("setLocalInfileInputStream", InputStream.class);
+                }
+            } catch (Exception e) {
+                // try the next class name
+            } catch (AbstractMethodError e) {
+                // pre-JDBC 4 connection pool
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.metamodel.DataContext;
+import org.apache.metamodel.MetaModelException;
+import org.apache.metamodel.data.AbstractDataSet;
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.Row;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.util.SharedExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DataSet for split queries which are executed concurrently. A fixed number of
+ * workers execute the queries, each query on its own connection (as handed
+ * out by the DataContext), and pass the rows to the consumer through bounded
+ * queues. The rows are either returned in the order of the queries, or in the
+ * order they become available. Closing the DataSet cancels the statements
+ * which are still running.
+ *
+ * @see org.apache.metamodel.jdbc.QuerySplitter
+ */
+final class ParallelSplitQueriesDataSet extends AbstractDataSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelSplitQueriesDataSet.class);
+
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUE_CAPACITY = 8;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final List<Row> END_OF_QUERY = Collections.emptyList();
+
+    private final DataContext _dataContext;
+    private final List<Query> _queries;
+    private final boolean _ordered;
+    private final List<BlockingQueue<List<Row>>> _queues;
+    private final AtomicInteger _nextQuery;
+    private final Set<DataSet> _runningDataSets;
+    private final AtomicReference<Throwable> _error;
+
+    private volatile boolean _closed;
+    private int _currentQueue;
+    private int _queriesRemaining;
+    private List<Row> _batch;
+    private int _batchIndex;
+    private Row _row;
+
+    /**
+     * Creates the DataSet and starts executing the queries.
+     *
+     * @param dataContext
+     *            the DataContext to execute the queries with. It must be safe
+     *            to execute queries concurrently, eg. a {@link JdbcDataContext}
+     *            based on a {@link javax.sql.DataSource}.
+     * @param splitQueries
+     * @param parallelism
+     *            the number of queries to execute at the same time
+     * @param ordered
+     *            whether rows should be returned in the order of the queries
+     */
+    public ParallelSplitQueriesDataSet(DataContext dataContext, List<Query> splitQueries, int parallelism,
+            boolean ordered) {
+        super(getSelectItems(splitQueries));
+        if (dataContext == null || splitQueries == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be a positive number");
+        }
+        _dataContext = dataContext;
+        _queries = new ArrayList<Query>(splitQueries);
+        _ordered = ordered;
+        _nextQuery = new AtomicInteger();
+        _runningDataSets = Collections.newSetFromMap(new ConcurrentHashMap<DataSet, Boolean>());
+        _error = new AtomicReference<Throwable>();
+
+        final int queryCount = _queries.size();
+        _queriesRemaining = queryCount;
+        _queues = new ArrayList<BlockingQueue<List<Row>>>();
+        if (ordered) {
+            for (int i = 0; i < queryCount; i++) {
+                _queues.add(new ArrayBlockingQueue<List<Row>>(QUEUE_CAPACITY));
+            }
+        } else {
+            _queues.add(new ArrayBlockingQueue<List<Row>>(QUEUE_CAPACITY * parallelism));
+        }
+
+        final int workers = Math.min(parallelism, queryCount);
+        for (int i = 0; i < workers; i++) {
+            SharedExecutorService.get().submit(new Worker());
+        }
+    }
+
+    private static List<SelectItem> getSelectItems(List<Query> splitQueries) {
+        if (splitQueries == null || splitQueries.isEmpty()) {
+            return new ArrayList<SelectItem>(0);
+        }
+        return splitQueries.get(0).getSelectClause().getItems();
+    }
+
+    public boolean isOrdered() {
+        return _ordered;
+    }
+
+    @Override
+    public boolean next() {
+        while (true) {
+            if (_batch != null && _batchIndex < _batch.size()) {
+                _row = _batch.get(_batchIndex);
+                _batchIndex++;
+                return true;
+            }
+            if (_closed || _queriesRemaining == 0) {
+                _row = null;
+                return false;
+            }
+
+            final List<Row> batch;
+            try {
+                batch = _queues.get(_ordered ? _currentQueue : 0).take();
+            } catch (InterruptedException e) {
+                close();
+                throw new MetaModelException("Interrupted while waiting for rows of split queries", e);
+            }
+
+            final Throwable error = _error.get();
+            if (error != null) {
+                close();
+                if (error instanceof RuntimeException) {
+                    throw (RuntimeException) error;
+                }
+                if (error instanceof Error) {
+                    throw (Error) error;
+                }
+                throw new MetaModelException("Failed to execute split query", (Exception) error);
+            }
+
+            if (batch == END_OF_QUERY) {
+                _queriesRemaining--;
+                if (_ordered) {
+                    _currentQueue++;
+                }
+                _batch = null;
+            } else {
+                _batch = batch;
+                _batchIndex = 0;
+            }
+        }
+    }
+
+    @Override
+    public Row getRow() {
+        return _row;
+    }
+
+    @Override
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        for (DataSet dataSet : _runningDataSets) {
+            if (dataSet instanceof JdbcDataSet) {
+                ((JdbcDataSet) dataSet).cancel();
+            }
+        }
+        for (BlockingQueue<List<Row>> queue : _queues) {
+            queue.clear();
+        }
+        _batch = null;
+        _row = null;
+    }
+
+    /**
+     * Adds a batch to a queue, waiting for the consumer to make room. Workers
+     * are not interrupted when the DataSet is closed, since some JDBC drivers
+     * close their connections when interrupted.
+     *
+     * @return false if the DataSet was closed while waiting
+     */
+    private boolean offer(BlockingQueue<List<Row>> queue, List<Row> batch) throws InterruptedException {
+        while (!queue.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (_closed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes queries until there are no more queries to execute.
+     */
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!_closed) {
+                    final int queryIndex = _nextQuery.getAndIncrement();
+                    if (queryIndex >= _queries.size()) {
+                        return;
+                    }
+                    if (!execute(queryIndex, _queues.get(_ordered ? queryIndex : 0))) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Interrupted while executing split queries", e);
+            }
+        }
+
+        /**
+         * Executes a single query and queues its rows.
+         *
+         * @return false if the DataSet was closed
+         */
+        private boolean execute(int queryIndex, BlockingQueue<List<Row>> queue) throws InterruptedException {
+            DataSet dataSet = null;
+            try {
+                logger.debug("Executing query #{}", queryIndex + 1);
+                dataSet = _dataContext.executeQuery(_queries.get(queryIndex));
+                _runningDataSets.add(dataSet);
+
+                // rows are handed to another thread, so reused rows are copied
+                final boolean copyRows = (_dataContext instanceof JdbcDataContext && ((JdbcDataContext) _dataContext)
+                        .isReuseRows());
+
+                List<Row> batch = new ArrayList<Row>(BATCH_SIZE);
+                while (!_closed && dataSet.next()) {
+                    final Row row = dataSet.getRow();
+                    if (copyRows) {
+                        batch.add(new DefaultRow(getHeader(), row.getValues().clone()));
+                    } else {
+                        batch.add(row);
+                    }
+                    if (batch.size() == BATCH_SIZE) {
+                        if (!offer(queue, batch)) {
+                            return false;
+                        }
+                        batch = new ArrayList<Row>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty() && !offer(queue, batch)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                if (!_closed) {
+                    _error.compareAndSet(null, e);
+                }
+            } finally {
+                if (dataSet != null) {
+                    _runningDataSets.remove(dataSet);
+                    dataSet.close();
+                }
+            }
+            return !_closed && offer(queue, END_OF_QUERY);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.Table;
+import org.postgresql.PGConnection;
+
+/**
+ * {@link JdbcBulkLoader} for PostgreSQL, which streams rows with
+ * <code>COPY ... FROM STDIN</code> using the CopyManager of the JDBC driver.
+ * Requires that the connection can be unwrapped to a {@link PGConnection}.
+ */
+final class PostgresqlBulkLoader extends CsvBulkLoader {
+
+    public PostgresqlBulkLoader(JdbcDataContext dataContext) {
+        super(dataContext);
+    }
+
+    @Override
+    protected boolean isAvailable(Connection connection) throws SQLException {
+        try {
+            return connection instanceof PGConnection || connection.isWrapperFor(PGConnection.class);
+        } catch (NoClassDefFoundError e) {
+            // the PostgreSQL driver is on the classpath of another class loader
+            return false;
+        } catch (AbstractMethodError e) {
+            // pre-JDBC 4 connection pool
+            return false;
+        }
+    }
+
+    @Override
+    protected long load(Connection connection, Table table, Column[] columns, InputStream csv) throws SQLException,
+            IOException {
+        final PGConnection pgConnection;
+        if (connection instanceof PGConnection) {
+            pgConnection = (PGConnection) connection;
+        } else {
+            pgConnection = connection.unwrap(PGConnection.class);
+        }
+        final String sql = "COPY " + getTableName(table) + " (" + getColumnNames(columns) + ") FROM STDIN WITH CSV";
+        return pgConnection.getCopyAPI().copyIn(sql, csv);
+    }
+}
@@ -63,6 +63,8 @@ public final class QuerySplitter {
     private final DataContext _dataContext;
     private long _maxRows = DEFAULT_MAX_ROWS;
     private Long _cachedRowCount = null;
+    private int _parallelism = 1;
+    private boolean _parallelOrdered = true;
 
     public QuerySplitter(DataContext dc, Query q) {
         if (dc == null) {
@@ -330,7 +332,60 @@ public final class QuerySplitter {
         return executeQueries(splitQuery());
     }
 
+    /**
+     * Sets the number of split queries to execute concurrently when invoking
+     * {@link #executeQueries()}. Each concurrent query uses its own
+     * connection, so this only has an effect for DataContexts which hand out
+     * several connections, eg. a {@link JdbcDataContext} based on a pooled
+     * {@link javax.sql.DataSource}. Defaults to 1, ie. sequential execution.
+     * 
+     * @param parallelism
+     * @return
+     */
+    public QuerySplitter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be a positive number");
+        }
+        _parallelism = parallelism;
+        return this;
+    }
+
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * Sets whether the rows of concurrently executed split queries should be
+     * returned in the order of the queries (the default), or in the order they
+     * become available.
+     * 
+     * @param parallelOrdered
+     * @return
+     */
+    public QuerySplitter setParallelOrdered(boolean parallelOrdered) {
+        _parallelOrdered = parallelOrdered;
+        return this;
+    }
+
+    public boolean isParallelOrdered() {
+        return _parallelOrdered;
+    }
+
     public DataSet executeQueries(List<Query> splitQueries) {
+        if (isParallelExecutionPossible(splitQueries)) {
+            return new ParallelSplitQueriesDataSet(_dataContext, splitQueries, _parallelism, _parallelOrdered);
+        }
         return new SplitQueriesDataSet(_dataContext, splitQueries);
     }
+
+    private boolean isParallelExecutionPossible(List<Query> splitQueries) {
+        if (_parallelism < 2 || splitQueries.size() < 2) {
+            return false;
+        }
+        if (_dataContext instanceof JdbcDataContext && ((JdbcDataContext) _dataContext).isSingleConnection()) {
+            logger.info("Executing split queries sequentially, since the DataContext has a single connection");
+            return false;
+        }
+        return true;
+    }
 }
\ No newline at end of file
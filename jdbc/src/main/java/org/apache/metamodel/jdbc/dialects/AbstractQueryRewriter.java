@@ -85,6 +85,71 @@ public abstract class AbstractQueryRewriter implements IQueryRewriter {
         return ColumnTypeImpl.convertColumnType(jdbcType);
     }
 
+    /**
+     * Gets the maximum number of parameters of an INSERT statement with
+     * multiple rows in its VALUES clause, ie.
+     * <code>INSERT INTO table (a,b) VALUES (?,?),(?,?),...</code>. Batched
+     * inserts are coalesced into such statements, since many drivers send a
+     * separate statement per row of a JDBC batch.
+     * 
+     * Not part of {@link IQueryRewriter}, in order not to break other
+     * implementations of it.
+     * 
+     * @return the maximum number of parameters, or 0 if multi-row inserts are
+     *         not supported.
+     */
+    public int getMultiRowInsertParameterLimit() {
+        return 0;
+    }
+
+    /**
+     * Determines if {@link #getResultSetValue(ResultSet, int, Column)} only
+     * uses type-specific getters for time based, binary, large object and
+     * boolean columns, and getObject(...) for all other columns. If so, values
+     * of the other columns are retrieved with getObject(...) directly, without
+     * invoking the query rewriter for every value.
+     * 
+     * Subclasses which override
+     * {@link #getResultSetValue(ResultSet, int, Column)} for other columns
+     * must return false.
+     * 
+     * Not part of {@link IQueryRewriter}, in order not to break other
+     * implementations of it.
+     * 
+     * @return
+     */
+    public boolean isDefaultResultSetValueRetrieval() {
+        return true;
+    }
+
+    /**
+     * Determines if the version of the database is at least the given
+     * version. If the version is not known, it is assumed to be recent.
+     * 
+     * @param major
+     * @param minor
+     * @param patch
+     * @return
+     */
+    protected boolean isDatabaseVersionAtLeast(int major, int minor, int patch) {
+        if (_dataContext == null || _dataContext.getDatabaseVersion() == null) {
+            return true;
+        }
+        final String[] parts = _dataContext.getDatabaseVersion().trim().split("[^0-9]+", 4);
+        final int[] required = { major, minor, patch };
+        try {
+            for (int i = 0; i < required.length && i < parts.length; i++) {
+                final int part = Integer.parseInt(parts[i]);
+                if (part != required[i]) {
+                    return part > required[i];
+                }
+            }
+        } catch (NumberFormatException e) {
+            logger.debug("Could not parse database version: {}", _dataContext.getDatabaseVersion());
+        }
+        return true;
+    }
+
     public String rewriteQuery(Query query) {
         query = beforeRewrite(query);
 
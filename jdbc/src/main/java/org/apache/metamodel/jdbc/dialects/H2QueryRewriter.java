@@ -28,4 +28,9 @@ public class H2QueryRewriter extends LimitOffsetQueryRewriter {
     public H2QueryRewriter(JdbcDataContext dataContext) {
         super(dataContext);
     }
+
+    @Override
+    public int getMultiRowInsertParameterLimit() {
+        return 32767;
+    }
 }
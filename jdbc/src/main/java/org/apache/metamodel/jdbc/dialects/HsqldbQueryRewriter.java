@@ -46,6 +46,15 @@ public class HsqldbQueryRewriter extends DefaultQueryRewriter {
         return super.rewriteColumnType(columnType, columnSize);
     }
 
+    @Override
+    public int getMultiRowInsertParameterLimit() {
+        // multi-row VALUES clauses are supported as of HSQLDB 2.0
+        if (!isDatabaseVersionAtLeast(2, 0, 0)) {
+            return 0;
+        }
+        return 32767;
+    }
+
     @Override
     public boolean isFirstRowSupported() {
         return true;
@@ -30,6 +30,12 @@ public class MysqlQueryRewriter extends LimitOffsetQueryRewriter {
         super(dataContext);
     }
 
+    @Override
+    public int getMultiRowInsertParameterLimit() {
+        // the prepared statement protocol has a 16 bit parameter count
+        return 65535;
+    }
+
     @Override
     public String escapeQuotes(String filterItemOperand) {
         return filterItemOperand.replaceAll("\\'", "\\\\'");
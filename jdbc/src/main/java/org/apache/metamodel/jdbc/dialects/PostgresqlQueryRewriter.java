@@ -45,6 +45,12 @@ public class PostgresqlQueryRewriter extends LimitOffsetQueryRewriter {
         super(dataContext);
     }
 
+    @Override
+    public int getMultiRowInsertParameterLimit() {
+        // the driver sends the parameter count as a signed 16 bit number
+        return 32767;
+    }
+
     @Override
     public ColumnType getColumnType(int jdbcType, String nativeType, Integer columnSize) {
         switch (nativeType) {
@@ -104,6 +110,12 @@ public class PostgresqlQueryRewriter extends LimitOffsetQueryRewriter {
         super.setStatementParameter(st, valueIndex, column, value);
     }
 
+    @Override
+    public boolean isDefaultResultSetValueRetrieval() {
+        // json columns are read as maps
+        return false;
+    }
+
     @Override
     public Object getResultSetValue(ResultSet resultSet, int columnIndex, Column column) throws SQLException {
         switch (column.getNativeType()) {
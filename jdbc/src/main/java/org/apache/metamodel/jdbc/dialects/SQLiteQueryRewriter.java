@@ -31,6 +31,16 @@ public class SQLiteQueryRewriter extends DefaultQueryRewriter {
         super(dataContext);
     }
 
+    @Override
+    public int getMultiRowInsertParameterLimit() {
+        // multi-row VALUES clauses are supported as of SQLite 3.7.11, and
+        // SQLITE_MAX_VARIABLE_NUMBER defaults to 999
+        if (!isDatabaseVersionAtLeast(3, 7, 11)) {
+            return 0;
+        }
+        return 999;
+    }
+
     @Override
     protected String rewriteTimestamp(Timestamp ts) {
         // SQLite's driver does not support the JDBC escape syntax.
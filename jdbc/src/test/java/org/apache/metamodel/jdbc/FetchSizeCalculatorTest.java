@@ -20,6 +20,7 @@ package org.apache.metamodel.jdbc;
 
 import junit.framework.TestCase;
 
+import org.apache.metamodel.query.FunctionType;
 import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
@@ -126,4 +127,40 @@ public class FetchSizeCalculatorTest extends TestCase {
 				ColumnType.VARCHAR).setColumnSize(4000), new MutableColumn("",
 				ColumnType.VARCHAR)));
 	}
+
+	public void testObservedValueSizes() throws Exception {
+		FetchSizeCalculator calc = new FetchSizeCalculator(8 * 1024 * 1024);
+		MutableTable table = new MutableTable("tab");
+		MutableColumn clob = new MutableColumn("doc", ColumnType.CLOB, table,
+				0, true);
+		MutableColumn varchar = new MutableColumn("code", ColumnType.VARCHAR,
+				table, 1, true).setColumnSize(4000);
+		table.addColumn(clob).addColumn(varchar);
+		assertEquals(4096, calc.getValueSize(clob));
+		assertEquals(8000, calc.getValueSize(varchar));
+
+		Query query = new Query().from(table).select(clob, varchar);
+		assertEquals(8 * 1024 * 1024 / (4096 + 8000),
+				calc.getFetchSize(query));
+
+		// wide documents, narrow codes
+		calc.registerObservedValueSizes(query.getSelectClause().getItems(),
+				new long[] { 10 * 65536, 10 * 20 }, 10);
+		assertEquals(65536, calc.getValueSize(clob));
+		assertEquals(20, calc.getValueSize(varchar));
+		assertEquals(8 * 1024 * 1024 / (65536 + 20), calc.getFetchSize(query));
+
+		// later observations are smoothed into the average
+		calc.registerObservedValueSizes(query.getSelectClause().getItems(),
+				new long[] { 0, 60 }, 1);
+		assertEquals(32768, calc.getValueSize(clob));
+		assertEquals(40, calc.getValueSize(varchar));
+
+		// aggregates are not registered
+		Query countQuery = new Query().from(table).select(FunctionType.MAX,
+				varchar);
+		calc.registerObservedValueSizes(countQuery.getSelectClause()
+				.getItems(), new long[] { 16 }, 1);
+		assertEquals(40, calc.getValueSize(varchar));
+	}
 }
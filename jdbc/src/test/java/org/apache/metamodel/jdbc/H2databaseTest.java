@@ -18,10 +18,12 @@
  */
 package org.apache.metamodel.jdbc;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +43,7 @@ import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
 import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.FileSchemaSnapshotStore;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.update.Update;
@@ -84,6 +87,11 @@ public class H2databaseTest extends TestCase {
         JdbcDataContext dc = new JdbcDataContext(conn);
         JdbcTestTemplates.compositeKeyCreation(dc, "metamodel_test_composite_keys");
     }
+
+    public void testBulkLoad() throws Exception {
+        JdbcDataContext dc = new JdbcDataContext(conn);
+        JdbcTestTemplates.bulkLoad(dc, "metamodel_test_bulk_load");
+    }
     
     public void testTimestampValueInsertSelect() throws Exception {
         JdbcTestTemplates.timestampValueInsertSelect(conn, TimeUnit.NANOSECONDS);
@@ -521,4 +529,151 @@ public class H2databaseTest extends TestCase {
     public void testInterpretationOfNull() throws Exception {
         JdbcTestTemplates.interpretationOfNulls(conn);
     }
-}
\ No newline at end of file
+
+    public void testRefreshTable() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(conn);
+        final Schema schema = dc.getDefaultSchema();
+        dc.executeUpdate(new CreateTable(schema, "refresh_table").withColumn("id").ofType(ColumnType.INTEGER));
+        final Table table = schema.getTableByName("refresh_table");
+        assertEquals(1, table.getColumnCount());
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE refresh_table ADD COLUMN name VARCHAR(255)");
+        }
+        assertEquals(1, schema.getTableByName("refresh_table").getColumnCount());
+
+        dc.refreshTable(table);
+        assertSame(schema, dc.getDefaultSchema());
+        assertEquals("[ID, NAME]", Arrays.toString(schema.getTableByName("refresh_table").getColumnNames()));
+        assertSame(table, schema.getTableByName("refresh_table"));
+        assertEquals("[ID, NAME]", Arrays.toString(table.getColumnNames()));
+    }
+
+    public void testRefreshTableKeepsOtherTablesAndRelationships() throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE refresh_parent (id INTEGER PRIMARY KEY)");
+            st.execute("CREATE TABLE refresh_child (id INTEGER PRIMARY KEY, parent_id INTEGER, "
+                    + "FOREIGN KEY (parent_id) REFERENCES refresh_parent (id))");
+        }
+        final JdbcDataContext dc = new JdbcDataContext(conn);
+        final Schema schema = dc.getDefaultSchema();
+        final Table parentTable = schema.getTableByName("REFRESH_PARENT");
+        final Table childTable = schema.getTableByName("REFRESH_CHILD");
+        assertEquals(1, childTable.getRelationships().length);
+
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE refresh_parent ADD COLUMN name VARCHAR(255)");
+        }
+        dc.refreshTable(parentTable);
+
+        assertSame(parentTable, schema.getTableByName("REFRESH_PARENT"));
+        assertSame(childTable, schema.getTableByName("REFRESH_CHILD"));
+        assertEquals("[ID, NAME]", Arrays.toString(parentTable.getColumnNames()));
+        assertTrue(parentTable.getColumnByName("ID").isPrimaryKey());
+
+        // the relationship is recreated with the new columns of the table
+        assertEquals(1, parentTable.getRelationships().length);
+        assertEquals(1, childTable.getRelationships().length);
+        assertSame(parentTable.getColumnByName("ID"), childTable.getRelationships()[0].getPrimaryColumns()[0]);
+
+        // a dropped table is handled by refreshing the schema
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE refresh_child");
+        }
+        dc.refreshTable(childTable);
+        assertNull(dc.getDefaultSchema().getTableByName("REFRESH_CHILD"));
+    }
+
+    public void testSchemaSnapshot() throws Exception {
+        final String url = "jdbc:h2:mem:snapshot_test;DB_CLOSE_DELAY=-1";
+        final File directory = new File("target/tmp/H2databaseTest.testSchemaSnapshot");
+        final FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+
+        final Connection connection1 = DriverManager.getConnection(url);
+        final Connection connection2 = DriverManager.getConnection(url);
+        try {
+            final JdbcDataContext dc1 = new JdbcDataContext(connection1);
+            dc1.setSchemaSnapshotStore(store);
+            final Schema schema1 = dc1.getDefaultSchema();
+            dc1.executeUpdate(new CreateTable(schema1, "snapshot_table").withColumn("id").ofType(ColumnType.INTEGER)
+                    .asPrimaryKey().withColumn("name").ofType(ColumnType.VARCHAR));
+            dc1.executeUpdate(new InsertInto(schema1.getTableByName("snapshot_table")).value("id", 1).value("name",
+                    "foo"));
+
+            // the create table statement invalidated the snapshot, so a
+            // refresh will write a new one
+            dc1.refreshSchemas();
+            dc1.getDefaultSchema();
+            final String key = dc1.getSchemaSnapshotKey(schema1.getName());
+            assertNotNull(key);
+            assertNotNull(store.read(key, dc1.getSchemaSnapshotVersion(schema1.getName())));
+
+            final JdbcDataContext dc2 = new JdbcDataContext(connection2);
+            dc2.setSchemaSnapshotStore(store);
+            final Schema schema2 = dc2.getDefaultSchema();
+            final Table table = schema2.getTableByName("SNAPSHOT_TABLE");
+            assertNotNull(table);
+            assertEquals("[ID, NAME]", Arrays.toString(table.getColumnNames()));
+            assertSame(ColumnType.INTEGER, table.getColumnByName("ID").getType());
+            assertTrue(table.getColumnByName("ID").isPrimaryKey());
+
+            final DataSet ds = dc2.query().from(table).select("NAME").where("ID").eq(1).execute();
+            assertTrue(ds.next());
+            assertEquals("Row[values=[foo]]", ds.getRow().toString());
+            assertFalse(ds.next());
+            ds.close();
+
+            // changes that are not made through MetaModel change the version
+            final String version = dc2.getSchemaSnapshotVersion(schema2.getName());
+            final Statement st = connection2.createStatement();
+            st.execute("ALTER TABLE snapshot_table ADD COLUMN extra VARCHAR(10)");
+            st.close();
+            assertFalse(version.equals(dc2.getSchemaSnapshotVersion(schema2.getName())));
+            final JdbcDataContext dc3 = new JdbcDataContext(connection2);
+            dc3.setSchemaSnapshotStore(store);
+            assertEquals("[ID, NAME, EXTRA]", Arrays.toString(dc3.getDefaultSchema().getTableByName(
+                    "SNAPSHOT_TABLE").getColumnNames()));
+
+            dc2.executeUpdate(new DropTable(table));
+            assertNull(store.read(key, dc1.getSchemaSnapshotVersion(schema1.getName())));
+            assertNull(schema2.getTableByName("SNAPSHOT_TABLE"));
+        } finally {
+            connection1.close();
+            connection2.close();
+        }
+    }
+
+    public void testRelationshipsOfSnapshotAfterRefresh() throws Exception {
+        final String url = "jdbc:h2:mem:snapshot_relationships_test;DB_CLOSE_DELAY=-1";
+        final File directory = new File("target/tmp/H2databaseTest.testRelationshipsOfSnapshotAfterRefresh");
+        final FileSchemaSnapshotStore store = new FileSchemaSnapshotStore(directory);
+
+        final Connection connection1 = DriverManager.getConnection(url);
+        final Connection connection2 = DriverManager.getConnection(url);
+        try {
+            try (Statement st = connection1.createStatement()) {
+                st.execute("CREATE TABLE parent_table (id INTEGER PRIMARY KEY)");
+                st.execute("CREATE TABLE child_table (id INTEGER PRIMARY KEY, parent_id INTEGER, "
+                        + "FOREIGN KEY (parent_id) REFERENCES parent_table (id))");
+            }
+
+            final JdbcDataContext dc1 = new JdbcDataContext(connection1);
+            dc1.setSchemaSnapshotStore(store);
+            dc1.getDefaultSchema();
+
+            final JdbcDataContext dc2 = new JdbcDataContext(connection2);
+            dc2.setSchemaSnapshotStore(store);
+            final Schema schema2 = dc2.getDefaultSchema();
+            assertEquals(1, schema2.getTableByName("CHILD_TABLE").getRelationships().length);
+
+            // creating a table recreates the tables of the schema
+            dc2.executeUpdate(new CreateTable(schema2, "other_table").withColumn("id").ofType(ColumnType.INTEGER));
+            assertNotNull(schema2.getTableByName("OTHER_TABLE"));
+            assertEquals(1, schema2.getTableByName("CHILD_TABLE").getRelationships().length);
+            assertEquals(1, schema2.getTableByName("PARENT_TABLE").getRelationships().length);
+        } finally {
+            connection1.close();
+            connection2.close();
+        }
+    }
+}
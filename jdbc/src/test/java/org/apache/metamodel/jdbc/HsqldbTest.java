@@ -91,6 +91,12 @@ public class HsqldbTest extends TestCase {
         JdbcTestTemplates.simpleCreateInsertUpdateAndDrop(dc, "metamodel_test_simple");
     }
 
+    public void testBulkLoad() throws Exception {
+        Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:" + getName(), USERNAME, PASSWORD);
+        JdbcDataContext dc = new JdbcDataContext(connection);
+        JdbcTestTemplates.bulkLoad(dc, "metamodel_test_bulk_load");
+    }
+
     public void testCompositePrimaryKeyCreation() throws Exception {
         Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:" + getName(), USERNAME, PASSWORD);
         JdbcDataContext dc = new JdbcDataContext(connection);
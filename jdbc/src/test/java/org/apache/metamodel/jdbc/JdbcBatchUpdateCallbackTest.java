@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.schema.MutableColumn;
+import org.apache.metamodel.schema.Table;
+
+public class JdbcBatchUpdateCallbackTest extends TestCase {
+
+    private Connection _connection;
+    private List<String> _preparedSql;
+    private AtomicInteger _preparedStatements;
+    private AtomicInteger _executedBatches;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Class.forName("org.hsqldb.jdbcDriver");
+        _connection = DriverManager.getConnection("jdbc:hsqldb:mem:" + getName(), "SA", "");
+        createTables(_connection);
+        _preparedSql = Collections.synchronizedList(new ArrayList<String>());
+        _preparedStatements = new AtomicInteger();
+        _executedBatches = new AtomicInteger();
+    }
+
+    private void createTables(Connection connection) throws Exception {
+        final Statement st = connection.createStatement();
+        st.execute("CREATE TABLE parent (id INTEGER PRIMARY KEY, name VARCHAR(20))");
+        st.execute("CREATE TABLE child (id INTEGER PRIMARY KEY, parent_id INTEGER, "
+                + "FOREIGN KEY (parent_id) REFERENCES parent(id))");
+        st.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final Statement st = _connection.createStatement();
+        st.execute("SHUTDOWN");
+        st.close();
+        super.tearDown();
+    }
+
+    public void testInterleavedTablesStayBatched() throws Exception {
+        runParentChildInserts(16, 10, false);
+        assertEquals(2, _preparedStatements.get());
+        // 20 flushes, each executing the batches of both statements
+        assertEquals(40, _executedBatches.get());
+    }
+
+    public void testBackgroundFlush() throws Exception {
+        runParentChildInserts(16, 10, true);
+        assertEquals(2, _preparedStatements.get());
+        assertEquals(40, _executedBatches.get());
+    }
+
+    public void testFlushOnlyAtEnd() throws Exception {
+        runParentChildInserts(16, 0, false);
+        assertEquals(2, _preparedStatements.get());
+        assertEquals(2, _executedBatches.get());
+    }
+
+    public void testStatementCacheEviction() throws Exception {
+        runParentChildInserts(1, 10, false);
+        assertEquals(200, _preparedStatements.get());
+    }
+
+    public void testMultiRowInserts() throws Exception {
+        final Connection hsqldbConnection = _connection;
+        final Connection connection = DriverManager.getConnection("jdbc:h2:mem:");
+        try {
+            createTables(connection);
+            _connection = connection;
+            runParentChildInserts(16, 30, false);
+            // each flush inserts the rows of a table with a single statement
+            assertEquals(14, _executedBatches.get());
+            assertEquals("INSERT INTO PUBLIC.PARENT (ID,NAME) VALUES (?,?)" + repeat(",(?,?)", 14), _preparedSql.get(0)
+                    .replace("\"", ""));
+            assertEquals("INSERT INTO PUBLIC.CHILD (ID,PARENT_ID) VALUES (?,?)" + repeat(",(?,?)", 14), _preparedSql
+                    .get(1).replace("\"", ""));
+        } finally {
+            _connection = hsqldbConnection;
+            connection.close();
+        }
+    }
+
+    public void testStatementsOnSameTableStayInOrder() throws Exception {
+        assertEquals(EXPECTED_ROWS_AFTER_INSERT_DELETE_INSERT, runInsertDeleteInsert());
+        // the inserts are batched between the other statements
+        assertEquals(5, _executedBatches.get());
+    }
+
+    public void testMultiRowInsertsOnSameTableStayInOrder() throws Exception {
+        final Connection hsqldbConnection = _connection;
+        final Connection connection = DriverManager.getConnection("jdbc:h2:mem:");
+        try {
+            createTables(connection);
+            _connection = connection;
+            assertEquals(EXPECTED_ROWS_AFTER_INSERT_DELETE_INSERT, runInsertDeleteInsert());
+        } finally {
+            _connection = hsqldbConnection;
+            connection.close();
+        }
+    }
+
+    private static final String EXPECTED_ROWS_AFTER_INSERT_DELETE_INSERT = "[[0, updated], [1, second 1], "
+            + "[2, second 2], [3, first 3], [4, first 4], [5, third]]";
+
+    private String runInsertDeleteInsert() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(createCountingConnection());
+        final Table parent = dc.getTableByQualifiedLabel("PUBLIC.PARENT");
+
+        // batches are only executed when needed to keep the order
+        final JdbcBatchUpdateCallback callback = new JdbcBatchUpdateCallback(dc, 16, 0, false);
+        for (int i = 0; i < 5; i++) {
+            callback.insertInto(parent).value("ID", i).value("NAME", "first " + i).execute();
+        }
+        callback.deleteFrom(parent).where("ID").lessThan(3).execute();
+        for (int i = 0; i < 3; i++) {
+            callback.insertInto(parent).value("ID", i).value("NAME", "second " + i).execute();
+        }
+        callback.update(parent).value("NAME", "updated").where("ID").eq(0).execute();
+        callback.insertInto(parent).value("ID", 5).value("NAME", "third").execute();
+        callback.close(true);
+
+        final List<String> rows = new ArrayList<String>();
+        final DataSet ds = dc.query().from(parent).select("ID", "NAME").orderBy("ID").execute();
+        while (ds.next()) {
+            rows.add(Arrays.toString(ds.getRow().getValues()));
+        }
+        ds.close();
+        return rows.toString();
+    }
+
+    public void testMultiRowInsertStatements() throws Exception {
+        final MutableColumn[] columns = { new MutableColumn("a"), new MutableColumn("b"), new MutableColumn("c") };
+        JdbcMultiRowInsert multiRowInsert = new JdbcMultiRowInsert("INSERT INTO t (a,b,c) VALUES (?,?,?)", columns,
+                10);
+        assertEquals(3, multiRowInsert.getRowsPerStatement());
+        assertEquals("INSERT INTO t (a,b,c) VALUES (?,?,?)", multiRowInsert.getSql(1));
+        assertEquals("INSERT INTO t (a,b,c) VALUES (?,?,?),(?,?,?),(?,?,?)", multiRowInsert.getSql(3));
+
+        multiRowInsert = new JdbcMultiRowInsert("INSERT INTO t (a,b,c) VALUES (?,?,?)", columns, 65535);
+        assertEquals(JdbcMultiRowInsert.MAX_ROWS_PER_STATEMENT, multiRowInsert.getRowsPerStatement());
+    }
+
+    private static String repeat(String str, int times) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+
+    private void runParentChildInserts(int statementCacheSize, int flushSize, boolean backgroundFlush)
+            throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(createCountingConnection());
+        final Table parent = dc.getTableByQualifiedLabel("PUBLIC.PARENT");
+        final Table child = dc.getTableByQualifiedLabel("PUBLIC.CHILD");
+
+        final JdbcBatchUpdateCallback callback = new JdbcBatchUpdateCallback(dc, statementCacheSize, flushSize,
+                backgroundFlush);
+        for (int i = 0; i < 100; i++) {
+            callback.insertInto(parent).value("ID", i).value("NAME", "parent " + i).execute();
+            callback.insertInto(child).value("ID", i).value("PARENT_ID", i).execute();
+        }
+        callback.close(true);
+
+        for (Table table : new Table[] { parent, child }) {
+            final DataSet ds = dc.query().from(table).selectCount().execute();
+            assertTrue(ds.next());
+            assertEquals(100, ((Number) ds.getRow().getValue(0)).intValue());
+            ds.close();
+        }
+    }
+
+    private Connection createCountingConnection() {
+        final Connection connection = _connection;
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        final Object result = invokeDelegate(connection, method, args);
+                        if ("prepareStatement".equals(method.getName())) {
+                            _preparedSql.add((String) args[0]);
+                            _preparedStatements.incrementAndGet();
+                            return createCountingStatement((PreparedStatement) result);
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    private PreparedStatement createCountingStatement(final PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { PreparedStatement.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("executeBatch".equals(method.getName())) {
+                            _executedBatches.incrementAndGet();
+                        }
+                        return invokeDelegate(statement, method, args);
+                    }
+                });
+    }
+
+    private static Object invokeDelegate(Object delegate, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
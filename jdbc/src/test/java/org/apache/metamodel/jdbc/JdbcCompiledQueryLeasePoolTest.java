@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.dbcp.BasicDataSource;
+
+public class JdbcCompiledQueryLeasePoolTest extends JdbcTestCase {
+
+    private static final String SQL = "SELECT CUSTOMERNAME FROM CUSTOMERS WHERE CUSTOMERNUMBER = ?";
+
+    public void testHitsAndMisses() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(getTestDbConnection());
+        final JdbcCompiledQueryLeasePool pool = new JdbcCompiledQueryLeasePool(dc, SQL, -1, 0, 0);
+
+        final JdbcCompiledQueryLease lease1 = pool.borrowLease();
+        final JdbcCompiledQueryLease lease2 = pool.borrowLease();
+        assertNotSame(lease1, lease2);
+        assertEquals(2, pool.getMisses());
+        assertEquals(2, pool.getActiveCount());
+
+        pool.returnLease(lease1);
+        pool.returnLease(lease2);
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(2, pool.getIdleCount());
+
+        // the most recently returned lease is reused
+        assertSame(lease2, pool.borrowLease());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getIdleCount());
+
+        pool.returnLease(lease2);
+        pool.close();
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(lease1.getStatement().isClosed());
+        assertTrue(lease2.getStatement().isClosed());
+        assertFalse(dc.getConnection().isClosed());
+    }
+
+    public void testWaitWhenExhausted() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(getTestDbConnection());
+        final JdbcCompiledQueryLeasePool pool = new JdbcCompiledQueryLeasePool(dc, SQL, 1, 0, 0);
+
+        final JdbcCompiledQueryLease lease = pool.borrowLease();
+        final CountDownLatch borrowed = new CountDownLatch(1);
+        final AtomicReference<JdbcCompiledQueryLease> waitingLease = new AtomicReference<JdbcCompiledQueryLease>();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                waitingLease.set(pool.borrowLease());
+                borrowed.countDown();
+            }
+        };
+        thread.start();
+
+        assertFalse(borrowed.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, pool.getWaits());
+
+        pool.returnLease(lease);
+        assertTrue(borrowed.await(10, TimeUnit.SECONDS));
+        assertSame(lease, waitingLease.get());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        pool.returnLease(lease);
+        pool.close();
+    }
+
+    public void testLeaseReturnedWhileCreating() throws Exception {
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch created = new CountDownLatch(1);
+        final AtomicBoolean block = new AtomicBoolean(false);
+        final BasicDataSource ds = new BasicDataSource();
+        ds.setDriverClassName("org.hsqldb.jdbcDriver");
+        ds.setUrl("jdbc:hsqldb:res:metamodel");
+        final JdbcDataContext dc = new JdbcDataContext(ds) {
+            @Override
+            public Connection getConnection() {
+                if (block.compareAndSet(true, false)) {
+                    creating.countDown();
+                    try {
+                        created.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getConnection();
+            }
+        };
+        final JdbcCompiledQueryLeasePool pool = new JdbcCompiledQueryLeasePool(dc, SQL, -1, 0, 0);
+
+        final JdbcCompiledQueryLease lease = pool.borrowLease();
+        final JdbcCompiledQueryLease activeLease = pool.borrowLease();
+        block.set(true);
+        final AtomicReference<JdbcCompiledQueryLease> createdLease = new AtomicReference<JdbcCompiledQueryLease>();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                createdLease.set(pool.borrowLease());
+            }
+        };
+        thread.start();
+        assertTrue(creating.await(10, TimeUnit.SECONDS));
+
+        pool.returnLease(lease);
+        assertEquals(1, pool.getIdleCount());
+        assertFalse(lease.getStatement().isClosed());
+
+        // when no lease is active anymore, the idle leases are closed to
+        // release their connections
+        pool.returnLease(activeLease);
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(lease.getStatement().isClosed());
+        assertTrue(activeLease.getStatement().isClosed());
+
+        created.countDown();
+        thread.join(10000);
+        assertNotNull(createdLease.get());
+        pool.returnLease(createdLease.get());
+        assertEquals(1, pool.getIdleCount());
+        pool.close();
+        ds.close();
+    }
+
+    public void testIdleEviction() throws Exception {
+        final JdbcDataContext dc = new JdbcDataContext(getTestDbConnection());
+        final JdbcCompiledQueryLeasePool pool = new JdbcCompiledQueryLeasePool(dc, SQL, -1, 50, 50);
+
+        final JdbcCompiledQueryLease lease1 = pool.borrowLease();
+        final JdbcCompiledQueryLease lease2 = pool.borrowLease();
+        pool.returnLease(lease1);
+        pool.returnLease(lease2);
+        assertEquals(2, pool.getIdleCount());
+
+        Thread.sleep(200);
+
+        // eviction happens when borrowing, before looking for idle leases
+        final JdbcCompiledQueryLease lease3 = pool.borrowLease();
+        assertNotSame(lease1, lease3);
+        assertNotSame(lease2, lease3);
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(lease1.getStatement().isClosed());
+        assertTrue(lease2.getStatement().isClosed());
+
+        pool.returnLease(lease3);
+        pool.close();
+    }
+}
@@ -25,6 +25,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -54,6 +55,8 @@ import org.apache.metamodel.query.Query;
 import org.apache.metamodel.query.QueryParameter;
 import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
 import org.apache.metamodel.schema.Relationship;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
@@ -86,6 +89,194 @@ public class JdbcDataContextTest extends JdbcTestCase {
         dataSet.close();
     }
 
+    public void testFetchSizeLearnsObservedValueSizes() throws Exception {
+        final Connection con = getTestDbConnection();
+        final JdbcDataContext dc = new JdbcDataContext(con);
+        final FetchSizeCalculator calculator = dc.getFetchSizeCalculator();
+        final Table table = dc.getDefaultSchema().getTableByName("CUSTOMERS");
+        final Column column = table.getColumnByName("CUSTOMERNAME");
+        assertNull(calculator.getObservedValueSize(column));
+
+        final DataSet dataSet = dc.query().from(table).select(column).execute();
+        long sampledSize = 0;
+        int rows = 0;
+        while (dataSet.next()) {
+            if (rows < 100) {
+                sampledSize += 2 * ((String) dataSet.getRow().getValue(0)).length();
+            }
+            rows++;
+        }
+        dataSet.close();
+
+        assertTrue(rows > 100);
+        assertEquals(Integer.valueOf((int) (sampledSize / 100)), calculator.getObservedValueSize(column));
+        assertEquals(16 * 1024 * 1024 / (int) (sampledSize / 100 + 4096),
+                calculator.getFetchSize(column, new MutableColumn("doc", ColumnType.CLOB)));
+    }
+
+    public void testValuesOfTypedExtractors() throws Exception {
+        final Connection con = getTestDbConnection();
+        final JdbcDataContext dc = new JdbcDataContext(con);
+        final Table table = dc.getDefaultSchema().getTableByName("ORDERFACT");
+        final Column[] columns = table.getColumns();
+
+        final DataSet dataSet = dc.query().from(table).select(columns).orderBy(columns[0]).orderBy(columns[1])
+                .execute();
+        final Statement st = con.createStatement();
+        final ResultSet rs = st.executeQuery(dc.getQueryRewriter().rewriteQuery(dc.query().from(table).select(
+                columns).orderBy(columns[0]).orderBy(columns[1]).toQuery()));
+        int rows = 0;
+        while (dataSet.next()) {
+            assertTrue(rs.next());
+            final Object[] values = dataSet.getRow().getValues();
+            for (int i = 0; i < values.length; i++) {
+                final Object expected = (columns[i].getType().isTimeBased() ? rs.getTimestamp(i + 1) : rs
+                        .getObject(i + 1));
+                assertEquals(columns[i].getName(), expected, values[i]);
+            }
+            rows++;
+        }
+        assertFalse(rs.next());
+        rs.close();
+        st.close();
+        dataSet.close();
+        assertTrue(rows > 100);
+    }
+
+    public void testReuseRows() throws Exception {
+        final Connection con = getTestDbConnection();
+        final JdbcDataContext dc = new JdbcDataContext(con);
+        assertFalse(dc.isReuseRows());
+        dc.setReuseRows(true);
+
+        final Table table = dc.getDefaultSchema().getTableByName("CUSTOMERS");
+        final DataSet dataSet = dc.query().from(table).select("CUSTOMERNUMBER", "SALESREPEMPLOYEENUMBER").orderBy(
+                "CUSTOMERNUMBER").execute();
+        assertTrue(((JdbcDataSet) dataSet).isReusingRows());
+
+        Row firstRow = null;
+        int previousCustomerNumber = -1;
+        int nullSalesReps = 0;
+        while (dataSet.next()) {
+            final Row row = dataSet.getRow();
+            if (firstRow == null) {
+                firstRow = row;
+            }
+            assertSame(firstRow, row);
+
+            final int customerNumber = (Integer) row.getValue(0);
+            assertTrue(customerNumber > previousCustomerNumber);
+            previousCustomerNumber = customerNumber;
+            if (row.getValue(1) == null) {
+                nullSalesReps++;
+            }
+        }
+        dataSet.close();
+        assertEquals(22, nullSalesReps);
+
+        // retained rows are copied
+        final List<Row> rows = dc.query().from(table).select("CUSTOMERNUMBER").orderBy("CUSTOMERNUMBER").execute()
+                .toRows();
+        assertEquals(122, rows.size());
+        assertEquals(103, rows.get(0).getValue(0));
+        assertEquals(496, rows.get(121).getValue(0));
+
+        final Iterator<Row> iterator = dc.query().from(table).select("CUSTOMERNUMBER").orderBy("CUSTOMERNUMBER")
+                .execute().iterator();
+        assertTrue(iterator.hasNext());
+        final Row first = iterator.next();
+        assertTrue(iterator.hasNext());
+        final Row second = iterator.next();
+        assertNotSame(first, second);
+        assertEquals(103, first.getValue(0));
+        assertEquals(112, second.getValue(0));
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+    }
+
+    public void testAutoParameterizeQueries() throws Exception {
+        final Connection con = getTestDbConnection();
+        final JdbcDataContext dc = new JdbcDataContext(con);
+        assertFalse(dc.isAutoParameterizeQueries());
+        assertNull(dc.getParameterizedQueryCache());
+
+        final JdbcDataContext parameterizingDc = new JdbcDataContext(con).setAutoParameterizeQueries(true);
+        assertTrue(parameterizingDc.isAutoParameterizeQueries());
+        final JdbcParameterizedQueryCache cache = parameterizingDc.getParameterizedQueryCache();
+
+        final String[] countries = { "USA", "France", "USA", "Cote d'Ivoire", "Norway" };
+        for (String country : countries) {
+            final Query query = dc.query().from("CUSTOMERS").select("CUSTOMERNAME", "CREDITLIMIT").where("COUNTRY")
+                    .eq(country).and("CREDITLIMIT").gt(10000).orderBy("CUSTOMERNUMBER").toQuery();
+            assertEquals(readRows(dc.executeQuery(query)), readRows(parameterizingDc.executeQuery(query)));
+        }
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(4, cache.getHitCount());
+
+        for (int minCount = 1; minCount <= 3; minCount++) {
+            final Query query = dc.query().from("CUSTOMERS").select("COUNTRY").selectCount().groupBy("COUNTRY")
+                    .having("COUNT(CUSTOMERNUMBER)").greaterThan(minCount).orderBy("COUNTRY").toQuery();
+            final List<String> rows = readRows(parameterizingDc.executeQuery(query));
+            assertFalse(rows.isEmpty());
+            assertEquals(readRows(dc.executeQuery(query)), rows);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(6, cache.getHitCount());
+
+        // queries without literals are not cached
+        parameterizingDc.query().from("CUSTOMERS").selectCount().execute().close();
+        assertEquals(2, cache.size());
+
+        parameterizingDc.setAutoParameterizeQueries(false);
+        assertNull(parameterizingDc.getParameterizedQueryCache());
+        assertEquals(0, cache.size());
+    }
+
+    public void testRewrittenQueryCache() throws Exception {
+        final Connection con = getTestDbConnection();
+        final JdbcDataContext dc = new JdbcDataContext(con);
+        final JdbcRewrittenQueryCache cache = dc.getRewrittenQueryCache();
+        assertSame(dc.getQueryRewriter(), cache.getQueryRewriter());
+
+        final Query query = dc.query().from("CUSTOMERS").select("CUSTOMERNAME").where("COUNTRY").eq("Norway")
+                .orderBy("CUSTOMERNAME").toQuery();
+        final List<String> norwegianCustomers = readRows(dc.executeQuery(query));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(norwegianCustomers, readRows(dc.executeQuery(query)));
+        assertEquals(norwegianCustomers, readRows(dc.executeQuery(query.clone())));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+
+        // modifying the query yields a different fingerprint, and thus SQL
+        query.where(dc.getDefaultSchema().getTableByName("CUSTOMERS").getColumnByName("CREDITLIMIT"),
+                OperatorType.GREATER_THAN, 90000);
+        final List<String> norwegianCustomersWithHighCredit = readRows(dc.executeQuery(query));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(3, norwegianCustomers.size());
+        assertEquals(2, norwegianCustomersWithHighCredit.size());
+
+        final String sql = dc.rewriteQuery(query);
+        assertEquals(dc.getQueryRewriter().rewriteQuery(query), sql);
+        assertEquals(3, cache.getHitCount());
+
+        // the cache is replaced along with the query rewriter
+        dc.setQueryRewriter(new DefaultQueryRewriter(dc));
+        assertNotSame(cache, dc.getRewrittenQueryCache());
+        assertEquals(0, dc.getRewrittenQueryCache().size());
+    }
+
+    private List<String> readRows(DataSet dataSet) {
+        final List<String> rows = new ArrayList<String>();
+        while (dataSet.next()) {
+            rows.add(dataSet.getRow().toString());
+        }
+        dataSet.close();
+        return rows;
+    }
+
     public void testUsingDataSource() throws Exception {
         Connection con = getTestDbConnection();
         DataSource ds = EasyMock.createMock(DataSource.class);
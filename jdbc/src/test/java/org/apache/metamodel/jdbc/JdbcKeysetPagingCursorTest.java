@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.Query;
+
+public class JdbcKeysetPagingCursorTest extends JdbcTestCase {
+
+    private JdbcDataContext _dataContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _dataContext = new JdbcDataContext(getTestDbConnection());
+    }
+
+    private List<String> readRows(DataSet dataSet) {
+        final List<String> rows = new ArrayList<String>();
+        try {
+            while (dataSet.next()) {
+                rows.add(dataSet.getRow().toString());
+            }
+        } finally {
+            dataSet.close();
+        }
+        return rows;
+    }
+
+    private List<String> readPages(JdbcKeysetPagingCursor cursor, List<Integer> pageSizes) {
+        final List<String> rows = new ArrayList<String>();
+        try {
+            while (cursor.hasNextPage()) {
+                final List<String> page = readRows(cursor.nextPage());
+                pageSizes.add(page.size());
+                rows.addAll(page);
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    public void testPageThroughTable() throws Exception {
+        final Query query = _dataContext.query().from("CUSTOMERS").select("CUSTOMERNUMBER", "CUSTOMERNAME")
+                .where("CREDITLIMIT").greaterThan(0).orderBy("CUSTOMERNUMBER").toQuery();
+        final List<String> expected = readRows(_dataContext.executeQuery(query));
+        assertTrue(expected.size() > 20);
+
+        final JdbcKeysetPagingCursor cursor = _dataContext.createKeysetPagingCursor(query, 20);
+        final List<Integer> pageSizes = new ArrayList<Integer>();
+        assertEquals(expected, readPages(cursor, pageSizes));
+
+        for (int i = 0; i < pageSizes.size() - 1; i++) {
+            assertEquals(20, pageSizes.get(i).intValue());
+        }
+        assertTrue(pageSizes.get(pageSizes.size() - 1) < 20);
+
+        // the original query is untouched
+        assertNull(query.getMaxRows());
+        assertEquals(1, query.getWhereClause().getItemCount());
+    }
+
+    public void testNextPageQuery() throws Exception {
+        final Query query = _dataContext.query().from("CUSTOMERS").select("CUSTOMERNAME").orderBy("CUSTOMERNUMBER")
+                .desc().toQuery();
+        final JdbcKeysetPagingCursor cursor = _dataContext.createKeysetPagingCursor(query, 5);
+        try {
+            final List<String> firstPage = readRows(cursor.nextPage());
+            assertEquals(5, firstPage.size());
+            assertEquals(readRows(_dataContext.executeQuery(query.clone().setMaxRows(5))), firstPage);
+
+            final Object lastKey = cursor.getLastKey();
+            assertNotNull(lastKey);
+
+            final List<String> secondPage = readRows(cursor.nextPage());
+            assertEquals(readRows(_dataContext.executeQuery(query.clone().setFirstRow(6).setMaxRows(5))),
+                    secondPage);
+
+            final String sql = cursor.getNextPageQuery().toSql();
+            assertTrue(sql, sql.contains("\"CUSTOMERS\".\"CUSTOMERNUMBER\" < ?"));
+            assertTrue(sql, sql.contains("ORDER BY \"CUSTOMERS\".\"CUSTOMERNUMBER\" DESC"));
+
+            // resume from a previously remembered key
+            final JdbcKeysetPagingCursor resumedCursor = _dataContext.createKeysetPagingCursor(query, 5).setLastKey(
+                    lastKey);
+            try {
+                assertEquals(secondPage, readRows(resumedCursor.nextPage()));
+            } finally {
+                resumedCursor.close();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testMaxRowsAndPartiallyReadPages() throws Exception {
+        final Query query = _dataContext.query().from("CUSTOMERS").select("CUSTOMERNAME").orderBy("CUSTOMERNUMBER")
+                .maxRows(23).toQuery();
+        final List<String> expected = readRows(_dataContext.executeQuery(query));
+        assertEquals(23, expected.size());
+
+        final JdbcKeysetPagingCursor cursor = _dataContext.createKeysetPagingCursor(query, 10);
+        final List<String> rows = new ArrayList<String>();
+        try {
+            // read only 3 rows of the first page - the next page continues from
+            // there
+            final DataSet firstPage = cursor.nextPage();
+            for (int i = 0; i < 3; i++) {
+                assertTrue(firstPage.next());
+                rows.add(firstPage.getRow().toString());
+            }
+            assertEquals(1, firstPage.getSelectItems().length);
+
+            while (cursor.hasNextPage()) {
+                rows.addAll(readRows(cursor.nextPage()));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(expected, rows);
+    }
+
+    public void testUniqueKey() throws Exception {
+        final Query query = _dataContext.query().from("EMPLOYEES").select("LASTNAME", "FIRSTNAME")
+                .orderBy("EMAIL").toQuery();
+        try {
+            _dataContext.createKeysetPagingCursor(query, 10);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(
+                    "Keyset paging requires the query to be ordered by the primary key"));
+        }
+
+        final List<String> expected = readRows(_dataContext.executeQuery(query));
+        assertEquals(expected, readPages(_dataContext.createKeysetPagingCursor(query, 4, true),
+                new ArrayList<Integer>()));
+    }
+
+    public void testInvalidQueries() throws Exception {
+        assertInvalid(_dataContext.query().from("CUSTOMERS").select("CUSTOMERNAME").toQuery(),
+                "Keyset paging requires the query to be ordered by a single column");
+        assertInvalid(_dataContext.query().from("CUSTOMERS").select("CUSTOMERNAME").orderBy("CUSTOMERNUMBER")
+                .firstRow(5).toQuery(), "Keyset paging does not support queries with a first row");
+        assertInvalid(_dataContext.query().from("CUSTOMERS").select("COUNTRY").selectCount().groupBy("COUNTRY")
+                .orderBy("COUNTRY").toQuery(), "Keyset paging does not support grouped queries");
+        assertInvalid(_dataContext.query().from("CUSTOMERS").select("CUSTOMERNAME").orderBy("CUSTOMERNAME")
+                .toQuery(), "Keyset paging requires the query to be ordered by the primary key");
+    }
+
+    private void assertInvalid(Query query, String messagePrefix) {
+        try {
+            _dataContext.createKeysetPagingCursor(query, 10, false);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(messagePrefix));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.query.Query;
+
+public class JdbcParameterizedQueryCacheTest extends JdbcTestCase {
+
+    private JdbcDataContext _dataContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        _dataContext = new JdbcDataContext(getTestDbConnection());
+    }
+
+    private JdbcParameterizedQuery createParameterizedQuery(String column, Object operand) {
+        final Query query = _dataContext.query().from("CUSTOMERS").select("CUSTOMERNAME").where(column).eq(operand)
+                .toQuery();
+        return JdbcParameterizedQuery.create(query);
+    }
+
+    private int count(DataSet dataSet) {
+        int count = 0;
+        try {
+            while (dataSet.next()) {
+                count++;
+            }
+        } finally {
+            dataSet.close();
+        }
+        return count;
+    }
+
+    public void testEvictedQueryIsNotClosedWhileInUse() throws Exception {
+        final JdbcParameterizedQueryCache cache = new JdbcParameterizedQueryCache(_dataContext, 1);
+        final JdbcParameterizedQuery countryQuery = createParameterizedQuery("COUNTRY", "USA");
+        final JdbcParameterizedQuery cityQuery = createParameterizedQuery("CITY", "Paris");
+
+        // another thread evicts the compiled query before the lease is borrowed
+        final JdbcParameterizedQueryCache.CacheEntry entry = cache.acquire(countryQuery.getQuery());
+        assertTrue(count(cache.executeQuery(cityQuery.getQuery(), cityQuery)) > 0);
+        assertEquals(1, cache.size());
+
+        final JdbcCompiledQuery compiledQuery = entry.getCompiledQuery();
+        final JdbcCompiledQueryLease lease = compiledQuery.borrowLease();
+        cache.release(entry);
+
+        // the borrowed lease is still usable, but the compiled query is closed
+        assertTrue(count(_dataContext.executeParameterizedQuery(countryQuery.getQuery(), compiledQuery, lease,
+                countryQuery.getValues(), countryQuery.getColumns())) > 0);
+        try {
+            compiledQuery.borrowLease();
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Pool of compiled query is closed", e.getMessage());
+        }
+        assertEquals(0, compiledQuery.getActiveLeases());
+        assertEquals(0, compiledQuery.getIdleLeases());
+    }
+
+    public void testClearDefersClosingQueriesInUse() throws Exception {
+        final JdbcParameterizedQueryCache cache = new JdbcParameterizedQueryCache(_dataContext, 10);
+        final JdbcParameterizedQuery countryQuery = createParameterizedQuery("COUNTRY", "USA");
+
+        final JdbcParameterizedQueryCache.CacheEntry entry = cache.acquire(countryQuery.getQuery());
+        cache.clear();
+        assertEquals(0, cache.size());
+
+        final JdbcCompiledQueryLease lease = entry.getCompiledQuery().borrowLease();
+        cache.release(entry);
+        entry.getCompiledQuery().returnLease(lease);
+        assertEquals(0, entry.getCompiledQuery().getIdleLeases());
+
+        // a new compiled query is created for subsequent executions
+        assertTrue(count(cache.executeQuery(countryQuery.getQuery(), countryQuery)) > 0);
+        assertEquals(2, cache.getMissCount());
+    }
+}
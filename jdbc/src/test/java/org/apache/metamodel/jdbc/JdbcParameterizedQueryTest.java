@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.metamodel.jdbc;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.apache.metamodel.query.FilterItem;
+import org.apache.metamodel.query.FunctionType;
+import org.apache.metamodel.query.LogicalOperator;
+import org.apache.metamodel.query.OperatorType;
+import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.QueryParameter;
+import org.apache.metamodel.query.SelectItem;
+import org.apache.metamodel.schema.ColumnType;
+import org.apache.metamodel.schema.MutableColumn;
+import org.apache.metamodel.schema.MutableTable;
+
+public class JdbcParameterizedQueryTest extends TestCase {
+
+    private final MutableTable table = new MutableTable("tab");
+    private final MutableColumn nameColumn = new MutableColumn("name", ColumnType.VARCHAR, table, 0, true);
+    private final MutableColumn ageColumn = new MutableColumn("age", ColumnType.INTEGER, table, 1, true);
+    private final MutableColumn birthdateColumn = new MutableColumn("birthdate", ColumnType.DATE, table, 2, true);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        table.addColumn(nameColumn).addColumn(ageColumn).addColumn(birthdateColumn);
+    }
+
+    public void testParameterizeWhereAndHaving() throws Exception {
+        final Query query = new Query().from(table).select(nameColumn).selectCount().where(nameColumn,
+                OperatorType.LIKE, "J%").where(ageColumn, OperatorType.GREATER_THAN, 18).groupBy(nameColumn).having(
+                FunctionType.COUNT, ageColumn, OperatorType.GREATER_THAN, 2);
+
+        final JdbcParameterizedQuery parameterizedQuery = JdbcParameterizedQuery.create(query);
+        assertEquals("SELECT tab.name, COUNT(*) FROM tab WHERE tab.name LIKE ? AND tab.age > ? "
+                + "GROUP BY tab.name HAVING COUNT(tab.age) > ?", parameterizedQuery.getQuery().toSql());
+        assertEquals("[J%, 18, 2]", Arrays.toString(parameterizedQuery.getValues()));
+        assertEquals(Arrays.asList(nameColumn, ageColumn, null), Arrays.asList(parameterizedQuery.getColumns()));
+
+        // the original query is left untouched
+        assertEquals("SELECT tab.name, COUNT(*) FROM tab WHERE tab.name LIKE 'J%' AND tab.age > 18 "
+                + "GROUP BY tab.name HAVING COUNT(tab.age) > 2", query.toSql());
+    }
+
+    public void testParameterizeCompoundFilter() throws Exception {
+        final Query query = new Query().from(table).select(nameColumn);
+        query.where(new FilterItem(LogicalOperator.OR, new FilterItem(new SelectItem(nameColumn),
+                OperatorType.EQUALS_TO, "foo"), new FilterItem(new SelectItem(ageColumn), OperatorType.EQUALS_TO,
+                null)));
+
+        final JdbcParameterizedQuery parameterizedQuery = JdbcParameterizedQuery.create(query);
+        assertEquals("SELECT tab.name FROM tab WHERE (tab.name = ? OR tab.age IS NULL)", parameterizedQuery
+                .getQuery().toSql());
+        assertEquals("[foo]", Arrays.toString(parameterizedQuery.getValues()));
+    }
+
+    public void testKeepLiteralsWhichAreNotParameterizable() throws Exception {
+        final Query query = new Query().from(table).select(nameColumn).where(nameColumn, OperatorType.EQUALS_TO, "")
+                .where(ageColumn, OperatorType.IN, new int[] { 1, 2, 3 }).where(birthdateColumn,
+                        OperatorType.LESS_THAN, new Date()).where(ageColumn, OperatorType.EQUALS_TO, "42");
+        assertNull(JdbcParameterizedQuery.create(query));
+    }
+
+    public void testQueryWithParameters() throws Exception {
+        final Query query = new Query().from(table).select(nameColumn).where(nameColumn, OperatorType.EQUALS_TO, "foo")
+                .where(ageColumn, OperatorType.EQUALS_TO, new QueryParameter());
+        assertNull(JdbcParameterizedQuery.create(query));
+    }
+}
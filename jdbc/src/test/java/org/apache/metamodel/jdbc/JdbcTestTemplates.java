@@ -30,10 +30,13 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -44,10 +47,15 @@ import org.apache.metamodel.create.ColumnCreationBuilder;
 import org.apache.metamodel.create.CreateTable;
 import org.apache.metamodel.create.TableCreationBuilder;
 import org.apache.metamodel.data.DataSet;
+import org.apache.metamodel.data.DefaultRow;
+import org.apache.metamodel.data.InMemoryDataSet;
 import org.apache.metamodel.data.Row;
+import org.apache.metamodel.data.SimpleDataSetHeader;
 import org.apache.metamodel.drop.DropTable;
 import org.apache.metamodel.query.Query;
+import org.apache.metamodel.query.SelectItem;
 import org.apache.metamodel.schema.Column;
+import org.apache.metamodel.schema.MutableColumn;
 import org.apache.metamodel.schema.ColumnType;
 import org.apache.metamodel.schema.Schema;
 import org.apache.metamodel.schema.Table;
@@ -832,4 +840,73 @@ public class JdbcTestTemplates {
             }
         });
     }
+
+    public static void bulkLoad(final JdbcDataContext dataContext, final String testTableName) {
+        final Schema defaultSchema = dataContext.getDefaultSchema();
+
+        if (defaultSchema.getTableByName(testTableName) != null) {
+            // clean up before
+            dataContext.executeUpdate(new DropTable(defaultSchema, testTableName));
+        }
+
+        dataContext.executeUpdate(new CreateTable(defaultSchema, testTableName).withColumn("mykey")
+                .ofType(ColumnType.INTEGER).nullable(false).asPrimaryKey().withColumn("name")
+                .ofType(ColumnType.VARCHAR).ofSize(50).withColumn("amount").ofType(ColumnType.DOUBLE)
+                .withColumn("created").ofType(ColumnType.DATE));
+        try {
+            final Table table = defaultSchema.getTableByName(testTableName);
+            assertNotNull(table);
+
+            final Column[] columns = table.getColumns();
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            for (int i = 0; i < 2000; i++) {
+                final Date created = (i % 2 == 0 ? DateUtils.get(2016, Month.MARCH, 1 + i % 28) : null);
+                rows.add(new Object[] { i, "name " + i, i * 1.5, created });
+            }
+            rows.get(1)[1] = null;
+            rows.get(2)[1] = "Quotes \"and\", commas";
+            rows.get(3)[1] = "back\\slash";
+
+            assertEquals(2000, dataContext.bulkLoad(table, columns, rows.iterator()));
+
+            final SelectItem[] selectItems = new SelectItem[] { new SelectItem(new MutableColumn("MYKEY")),
+                    new SelectItem("'foo'", "name") };
+            final DataSet dataSet = new InMemoryDataSet(new SimpleDataSetHeader(selectItems), new DefaultRow(
+                    new SimpleDataSetHeader(selectItems), new Object[] { 2000, "from DataSet" }));
+            assertEquals(1, dataContext.bulkLoad(table, dataSet));
+
+            assertEquals(2001, getCount(dataContext.query().from(table).selectCount().execute()));
+            assertEquals(1001, getCount(dataContext.query().from(table).selectCount().where("created").isNull()
+                    .execute()));
+
+            final DataSet ds = dataContext.query().from(table).select("mykey", "name", "amount").where("mykey")
+                    .lessThan(4).or("mykey").eq(2000).orderBy("mykey").execute();
+            assertTrue(ds.next());
+            assertEquals("Row[values=[0, name 0, 0.0]]", ds.getRow().toString());
+            assertTrue(ds.next());
+            assertEquals("Row[values=[1, null, 1.5]]", ds.getRow().toString());
+            assertTrue(ds.next());
+            assertEquals("Row[values=[2, Quotes \"and\", commas, 3.0]]", ds.getRow().toString());
+            assertTrue(ds.next());
+            assertEquals("Row[values=[3, back\\slash, 4.5]]", ds.getRow().toString());
+            assertTrue(ds.next());
+            assertEquals("Row[values=[2000, from DataSet, null]]", ds.getRow().toString());
+            assertFalse(ds.next());
+            ds.close();
+
+            final DataSet dateDataSet = dataContext.query().from(table).select("created").where("mykey").eq(4)
+                    .execute();
+            assertTrue(dateDataSet.next());
+            Object created = dateDataSet.getRow().getValue(0);
+            dateDataSet.close();
+            // some databases (eg. SQLite) return dates as strings
+            if (created instanceof Date) {
+                created = new SimpleDateFormat("yyyy-MM-dd").format((Date) created);
+            }
+            assertEquals("2016-03-05", created);
+        } finally {
+            // clean up after
+            dataContext.executeUpdate(new DropTable(defaultSchema, testTableName));
+        }
+    }
 }
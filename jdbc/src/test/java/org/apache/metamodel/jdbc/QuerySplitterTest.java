@@ -19,9 +19,12 @@
 package org.apache.metamodel.jdbc;
 
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.metamodel.DataContext;
 import org.apache.metamodel.data.DataSet;
 import org.apache.metamodel.query.FromItem;
@@ -201,6 +204,71 @@ public class QuerySplitterTest extends JdbcTestCase {
 		assertEquals(2806, count);
 	}
 
+	public void testParallelExecution() throws Exception {
+		BasicDataSource ds = new BasicDataSource();
+		ds.setDriverClassName("org.hsqldb.jdbcDriver");
+		ds.setUrl("jdbc:hsqldb:res:metamodel");
+		ds.setMaxActive(4);
+		ds.setMaxWait(10000);
+		JdbcDataContext dc = new JdbcDataContext(ds);
+		try {
+			Schema schema = dc.getSchemaByName("PUBLIC");
+			Table employeesTable = schema.getTableByName("EMPLOYEES");
+			Table customersTable = schema.getTableByName("CUSTOMERS");
+			Query q = new Query().from(employeesTable, "e").from(customersTable, "c");
+			q.select(employeesTable.getColumns()[0], customersTable.getColumns()[0]);
+
+			QuerySplitter qs = new QuerySplitter(dc, q).setMaxRows(300);
+			List<Query> splitQueries = qs.splitQuery();
+			assertEquals(12, splitQueries.size());
+
+			List<String> expected = getRows(qs.executeQueries(splitQueries));
+			assertEquals(2806, expected.size());
+
+			qs.setParallelism(3);
+			DataSet data = qs.executeQueries(splitQueries);
+			assertTrue(data instanceof ParallelSplitQueriesDataSet);
+			assertEquals(expected, getRows(data));
+
+			qs.setParallelOrdered(false);
+			List<String> unordered = getRows(qs.executeQueries(splitQueries));
+			Collections.sort(expected);
+			Collections.sort(unordered);
+			assertEquals(expected, unordered);
+
+			// closing early should release all connections
+			data = qs.executeQueries(splitQueries);
+			assertTrue(data.next());
+			data.close();
+			for (int i = 0; i < 100 && ds.getNumActive() > 0; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(0, ds.getNumActive());
+		} finally {
+			ds.close();
+		}
+	}
+
+	public void testSingleConnectionExecutesSequentially() throws Exception {
+		Connection con = getTestDbConnection();
+		DataContext dc = new JdbcDataContext(con);
+		Table table = dc.getSchemaByName("PUBLIC").getTableByName("CUSTOMERS");
+		Query q = dc.query().from(table).select(table.getColumns()[0]).toQuery();
+		QuerySplitter qs = new QuerySplitter(dc, q).setMaxRows(100).setParallelism(4);
+		DataSet data = qs.executeQueries();
+		assertTrue(data instanceof SplitQueriesDataSet);
+		assertEquals(122, getRows(data).size());
+	}
+
+	private List<String> getRows(DataSet data) {
+		List<String> result = new ArrayList<String>();
+		while (data.next()) {
+			result.add(data.getRow().toString());
+		}
+		data.close();
+		return result;
+	}
+
 	/**
 	 * Utility method for asserting that a query and it's splitted queries have
 	 * the same total count
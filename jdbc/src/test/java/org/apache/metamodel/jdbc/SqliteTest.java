@@ -86,6 +86,11 @@ public class SqliteTest extends TestCase {
         JdbcTestTemplates.compositeKeyCreation(dc, "metamodel_test_composite_keys");
     }
 
+    public void testBulkLoad() throws Exception {
+        JdbcDataContext dc = new JdbcDataContext(_connection);
+        JdbcTestTemplates.bulkLoad(dc, "metamodel_test_bulk_load");
+    }
+
     public void testDifferentOperators() throws Exception {
         JdbcTestTemplates.differentOperatorsTest(_connection);
     }
@@ -40,6 +40,7 @@ import org.apache.metamodel.schema.Table;
 import org.apache.metamodel.schema.builder.DocumentSourceProvider;
 import org.apache.metamodel.schema.builder.SchemaBuilder;
 import org.apache.metamodel.schema.builder.SingleTableInferentialSchemaBuilder;
+import org.apache.metamodel.util.CompressedResource;
 import org.apache.metamodel.util.FileHelper;
 import org.apache.metamodel.util.FileResource;
 import org.apache.metamodel.util.Resource;
@@ -69,7 +70,7 @@ public class JsonDataContext extends QueryPostprocessDataContext implements Docu
     }
 
     public JsonDataContext(Resource resource, SchemaBuilder schemaBuilder) {
-        _resource = resource;
+        _resource = CompressedResource.wrapIfCompressed(resource);
         _schemaBuilder = schemaBuilder;
     }
 
@@ -250,6 +250,13 @@ public class MongoDbDataContext extends QueryPostprocessDataContext implements U
         return row;
     }
 
+    @Override
+    protected boolean isCompiledQueryPlanSupported() {
+        // compiled queries must go through executeQuery(Query), which pushes
+        // queries down when possible
+        return false;
+    }
+
     @Override
     public DataSet executeQuery(Query query) {
         // Check for queries containing only simple selects and where clauses,
@@ -129,6 +129,13 @@ public class SalesforceDataContext extends QueryPostprocessDataContext implement
         return "Salesforce";
     }
 
+    @Override
+    protected boolean isCompiledQueryPlanSupported() {
+        // compiled queries must go through executeQuery(Query), which pushes
+        // queries down when possible
+        return false;
+    }
+
     @Override
     public DataSet executeQuery(Query query) {
         final List<FromItem> fromItems = query.getFromClause().getItems();